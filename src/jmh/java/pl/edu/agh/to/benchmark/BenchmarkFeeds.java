@@ -0,0 +1,62 @@
+package pl.edu.agh.to.benchmark;
+
+import com.google.transit.realtime.GtfsRealtime;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible TripUpdates feeds shaped like the ZTP feed for benchmarks.
+ */
+final class BenchmarkFeeds {
+
+    static final long FEED_TIMESTAMP = 1_747_310_400L;
+
+    private BenchmarkFeeds() {
+    }
+
+    /**
+     * @param entities Number of TripUpdate entities.
+     * @param stopsPerTrip Number of StopTimeUpdates in every trip.
+     * @param departureRatio Share of StopTimeUpdates carrying a departure time, between 0 and 1.
+     * @return Serialized FeedMessage.
+     */
+    static byte[] tripUpdates(int entities, int stopsPerTrip, double departureRatio) {
+        Random random = new Random(entities);
+
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET)
+                        .setTimestamp(FEED_TIMESTAMP));
+
+        for (int entity = 0; entity < entities; entity++) {
+            GtfsRealtime.TripUpdate.Builder tripUpdate = GtfsRealtime.TripUpdate.newBuilder()
+                    .setTrip(GtfsRealtime.TripDescriptor.newBuilder()
+                            .setTripId("block-" + entity + "-trip-" + random.nextInt(40))
+                            .setRouteId(String.valueOf(random.nextInt(200))))
+                    .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("M:" + entity));
+
+            long time = FEED_TIMESTAMP + random.nextInt(3_600);
+            for (int stop = 0; stop < stopsPerTrip; stop++) {
+                time += 60 + random.nextInt(120);
+                GtfsRealtime.TripUpdate.StopTimeUpdate.Builder update =
+                        GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                                .setStopSequence(stop)
+                                .setStopId(String.valueOf(2_048_000 + random.nextInt(3_000)))
+                                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder()
+                                        .setTime(time)
+                                        .setDelay(random.nextInt(300) - 60));
+                if (random.nextDouble() < departureRatio) {
+                    update.setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(time + 20));
+                }
+                tripUpdate.addStopTimeUpdate(update);
+            }
+
+            feed.addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                    .setId(String.valueOf(entity))
+                    .setTripUpdate(tripUpdate));
+        }
+
+        return feed.build().toByteArray();
+    }
+}
@@ -0,0 +1,76 @@
+package pl.edu.agh.to.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.service.GtfsParser;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying a small DIFFERENTIAL update to feeds of growing size. Partitions hold a bounded number of trips,
+ * so the cost should stay flat as the feed grows instead of growing with the size of a fixed partition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DifferentialUpdateBenchmark {
+
+    private static final Instant FETCHED_AT = Instant.ofEpochSecond(BenchmarkFeeds.FEED_TIMESTAMP);
+
+    @Param({"1000", "10000", "100000"})
+    private int trips;
+
+    @Param({"20"})
+    private int changedTrips;
+
+    private FeedSnapshot feed;
+    private List<TripRecord> upserts;
+    private Set<String> deletions;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<TripRecord> parsed = new GtfsParser().parseTripUpdates(BenchmarkFeeds.tripUpdates(trips, 25, 0.95));
+        feed = FeedSnapshot.build("bus", FETCHED_AT, BenchmarkFeeds.FEED_TIMESTAMP, parsed);
+
+        // delayed copies of random trips, as a delta reporting new predictions would carry
+        Random random = new Random(42);
+        upserts = new ArrayList<>(changedTrips);
+        for (int i = 0; i < changedTrips; i++) {
+            TripRecord trip = parsed.get(random.nextInt(parsed.size()));
+            List<StopTimeRecord> delayed = trip.getStopTimes().stream()
+                    .map(stopTime -> new StopTimeRecord(stopTime.getStopId(),
+                            stopTime.getArrivalTime(), stopTime.getArrivalDelay(),
+                            stopTime.hasDepartureTime() ? stopTime.getDepartureTime() + 60 : StopTimeRecord.NO_TIME,
+                            stopTime.getDepartureDelay()))
+                    .toList();
+            upserts.add(TripRecord.builder()
+                    .entityId(trip.getEntityId())
+                    .tripId(trip.getTripId())
+                    .routeId(trip.getRouteId())
+                    .vehicleId(trip.getVehicleId())
+                    .stopTimes(delayed)
+                    .build());
+        }
+        deletions = Set.of(parsed.get(random.nextInt(parsed.size())).getEntityId());
+    }
+
+    @Benchmark
+    public FeedSnapshot applyDifferential() {
+        return feed.applyDifferential(FETCHED_AT, BenchmarkFeeds.FEED_TIMESTAMP + 15, upserts, deletions);
+    }
+}
@@ -0,0 +1,48 @@
+package pl.edu.agh.to.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.service.GtfsParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding cost of a whole TripUpdates feed, from a byte array and from a stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GtfsParserBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    private int entities;
+
+    private final GtfsParser parser = new GtfsParser();
+    private byte[] feed;
+
+    @Setup
+    public void setUp() {
+        feed = BenchmarkFeeds.tripUpdates(entities, 25, 0.9);
+    }
+
+    @Benchmark
+    public List<TripRecord> parseTripUpdates() throws IOException {
+        return parser.parseTripUpdates(feed);
+    }
+
+    @Benchmark
+    public void streamTripUpdates(Blackhole blackhole) throws IOException {
+        parser.streamTripUpdates(new ByteArrayInputStream(feed), header -> true, blackhole::consume);
+    }
+}
@@ -0,0 +1,65 @@
+package pl.edu.agh.to.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.RandomDepartureDto;
+import pl.edu.agh.to.service.GtfsParser;
+import pl.edu.agh.to.service.PipelineMetrics;
+import pl.edu.agh.to.service.RandomDepartureService;
+import pl.edu.agh.to.service.SnapshotLoader;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection cost of RandomDepartureService on dense feeds (almost every stop has a departure time)
+ * and sparse ones (few stops do).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RandomDepartureBenchmark {
+
+    @Param({"dense", "sparse"})
+    private String departures;
+
+    private RandomDepartureService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        double ratio = "dense".equals(departures) ? 0.95 : 0.02;
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+
+        TripUpdatesSnapshotStore store = new TripUpdatesSnapshotStore(Clock.systemUTC(), metrics, event -> { });
+        store.publish("bus", new GtfsParser().parseTripUpdates(BenchmarkFeeds.tripUpdates(10_000, 25, ratio)),
+                BenchmarkFeeds.FEED_TIMESTAMP);
+
+        // the store is warm and never expires, so the loader never falls back to the poller
+        SnapshotLoader loader = new SnapshotLoader(store, null, Clock.systemUTC(), 0, Long.MAX_VALUE);
+        service = new RandomDepartureService(loader, new Random(42), metrics, new GtfsFeedsProperties(
+                List.of(new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null))));
+    }
+
+    @Benchmark
+    public RandomDepartureDto randomDeparture() {
+        return service.getRandomDepartureInfo(null).block();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<RandomDepartureDto> randomDepartureBatch() {
+        return service.getRandomDepartures(100, true, null, null).collectList().block();
+    }
+}
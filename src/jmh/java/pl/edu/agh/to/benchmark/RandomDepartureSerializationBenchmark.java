@@ -0,0 +1,43 @@
+package pl.edu.agh.to.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.edu.agh.to.model.RandomDepartureDto;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of RandomDepartureDto with the ObjectMapper configuration Spring Boot uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RandomDepartureSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private RandomDepartureDto dto;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        dto = RandomDepartureDto.builder()
+                .vehicleId("M:401")
+                .stopId("2048408")
+                .departureTime(LocalDateTime.of(2025, 5, 15, 12, 0, 0))
+                .build();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dto);
+    }
+}
@@ -0,0 +1,63 @@
+package pl.edu.agh.to.config;
+
+import lombok.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * TripUpdates feeds polled from the GTFS API, bound from {@code ztp.gtfs.feeds[i].*}.
+ * Every feed is refreshed on its own schedule and merged into the shared snapshot under its name.
+ * A feed may also name the VehiclePositions and ServiceAlerts feeds of its mode, which are polled alongside it.
+ */
+@Value
+@ConfigurationProperties("ztp.gtfs")
+public class GtfsFeedsProperties {
+
+    List<Feed> feeds;
+
+    public GtfsFeedsProperties(List<Feed> feeds) {
+        if (feeds == null || feeds.isEmpty()) {
+            throw new IllegalArgumentException("At least one feed must be configured in ztp.gtfs.feeds");
+        }
+        Set<String> names = new HashSet<>();
+        for (Feed feed : feeds) {
+            if (feed.getName() == null || feed.getName().isBlank() || feed.getPath() == null) {
+                throw new IllegalArgumentException("Every feed in ztp.gtfs.feeds needs a name and a path");
+            }
+            if (!names.add(feed.getName())) {
+                throw new IllegalArgumentException("Duplicate feed name " + feed.getName() + " in ztp.gtfs.feeds");
+            }
+        }
+        this.feeds = List.copyOf(feeds);
+    }
+
+    /**
+     * Validates the mode filter of a request, so that a typo is reported instead of answered with no data.
+     *
+     * @param mode Mode filter of the request, or null for all feeds.
+     * @throws IllegalArgumentException if the mode is not the name of a configured feed.
+     */
+    public void checkMode(String mode) {
+        if (mode != null && feeds.stream().noneMatch(feed -> feed.getName().equals(mode))) {
+            throw new IllegalArgumentException("Unknown mode '" + mode + "'");
+        }
+    }
+
+    @Value
+    public static class Feed {
+        /** Transport mode covered by the feed, e.g. "bus"; used as the mode filter of the endpoints. */
+        String name;
+        /** Path of the feed relative to ztp.gtfs.url. */
+        String path;
+        /** Delay between the end of one refresh and the start of the next; ztp.gtfs.refresh-interval-ms if null. */
+        Duration refreshInterval;
+        /** Path of the VehiclePositions feed of the same mode, relative to ztp.gtfs.url; not polled if null. */
+        String positionsPath;
+        /** Path of the ServiceAlerts feed of the same mode, relative to ztp.gtfs.url; not polled if null. */
+        String alertsPath;
+    }
+}
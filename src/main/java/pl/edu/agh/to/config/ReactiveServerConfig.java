@@ -0,0 +1,32 @@
+package pl.edu.agh.to.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.edu.agh.to.controller.SnapshotFreshnessFilter;
+import pl.edu.agh.to.service.SnapshotLoader;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+
+/**
+ * Both web starters are on the classpath, and for the reactive stack Spring Boot would otherwise
+ * pick Tomcat's servlet adapter. Netty keeps request handling on event loop threads end to end.
+ * <p>
+ * Also registers the web filters of the reactive stack; declared here rather than as components
+ * so that controller slice tests do not pull in the snapshot services.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public SnapshotFreshnessFilter snapshotFreshnessFilter(TripUpdatesSnapshotStore snapshotStore,
+                                                           SnapshotLoader snapshotLoader) {
+        return new SnapshotFreshnessFilter(snapshotStore, snapshotLoader);
+    }
+}
@@ -0,0 +1,12 @@
+package pl.edu.agh.to.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Binds the TripUpdates feeds whose background polling is scheduled by the poller, one loop per feed.
+ */
+@Configuration
+@EnableConfigurationProperties(GtfsFeedsProperties.class)
+public class SchedulingConfig {
+}
@@ -1,28 +1,47 @@
 package pl.edu.agh.to.config;
 
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
 
     @Value("${ztp.gtfs.url}")
     private String gtfsUrl;
-    private static final int MAX_MEMORY_SIZE = 10 * 1024 * 1024; // 10 MB
+    @Value("${ztp.gtfs.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+    @Value("${ztp.gtfs.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+    private static final int MAX_MEMORY_SIZE = 10 * 1024 * 1024; // 10 MB, only for aggregated bodies; feeds are streamed
 
 
+    /**
+     * The read timeout bounds both the wait for response headers and every gap between body chunks,
+     * so a stalled upstream fails the refresh instead of holding it (and every request joined to it) open.
+     */
     @Bean
     public WebClient webClient() {
         ExchangeStrategies exchangeStrategies = ExchangeStrategies.builder()
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(MAX_MEMORY_SIZE))
                 .build();
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                // reactor netty applies it between network reads of the response and removes it afterwards,
+                // so pooled idle connections are not affected
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
 
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .exchangeStrategies(exchangeStrategies)
                 .baseUrl(gtfsUrl)
                 .build();
     }
-}
\ No newline at end of file
+}
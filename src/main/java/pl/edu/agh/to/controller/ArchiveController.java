@@ -0,0 +1,50 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pl.edu.agh.to.model.ArchiveSegmentDto;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.service.ArchiveReplayService;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class ArchiveController {
+
+    private final ArchiveReplayService archiveReplayService;
+
+    /**
+     * Returns the departure board of a stop as it was at the given time, replayed from the feed archive.
+     *
+     * @param stopId Stop identifier as used in the feed.
+     * @param at Point in time to replay (ISO date-time).
+     * @param limit Maximum number of departures.
+     * @param mode Optional feed to restrict the board to, e.g. bus or tram.
+     * @return Mono emitting departures at or after the given time, ordered by time.
+     */
+    @GetMapping("/archive/stops/{stopId}/departures")
+    public Mono<List<StopDepartureDto>> departures(
+            @PathVariable String stopId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String mode) {
+        return archiveReplayService.getDepartures(stopId, at, limit, mode);
+    }
+
+    /**
+     * Lists the segments of the feed archive.
+     *
+     * @return Feed, time range and size of every segment, by feed and oldest first.
+     */
+    @GetMapping("/archive/segments")
+    public List<ArchiveSegmentDto> segments() {
+        return archiveReplayService.getSegments();
+    }
+}
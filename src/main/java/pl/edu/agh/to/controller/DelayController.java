@@ -0,0 +1,49 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import pl.edu.agh.to.model.DelayStatsDto;
+import pl.edu.agh.to.model.RouteDelaysDto;
+import pl.edu.agh.to.model.StopDelaysDto;
+import pl.edu.agh.to.service.DelayStatisticsService;
+
+@RestController
+@RequiredArgsConstructor
+public class DelayController {
+
+    private final DelayStatisticsService delayStatisticsService;
+
+    /**
+     * Returns overall delay distributions and the distributions of every route.
+     *
+     * @return DelayStatsDto for the current snapshot and the rolling window.
+     */
+    @GetMapping("/stats/delays")
+    public DelayStatsDto delays() {
+        return delayStatisticsService.getStats();
+    }
+
+    /**
+     * Returns the delay distributions of a single route.
+     *
+     * @param routeId Route identifier as used in the feed.
+     * @return RouteDelaysDto for the current snapshot and the rolling window.
+     */
+    @GetMapping("/routes/{routeId}/delays")
+    public RouteDelaysDto routeDelays(@PathVariable String routeId) {
+        return delayStatisticsService.getRouteDelays(routeId);
+    }
+
+    /**
+     * Returns the delay distributions of a single stop.
+     *
+     * @param stopId Stop identifier as used in the feed.
+     * @return StopDelaysDto for the current snapshot and the rolling window.
+     */
+    @GetMapping("/stops/{stopId}/delays")
+    public StopDelaysDto stopDelays(@PathVariable String stopId) {
+        return delayStatisticsService.getStopDelays(stopId);
+    }
+}
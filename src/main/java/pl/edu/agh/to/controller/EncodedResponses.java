@@ -0,0 +1,24 @@
+package pl.edu.agh.to.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import pl.edu.agh.to.model.ResponseFormat;
+
+/**
+ * Wraps response bodies encoded by the services, which are written to the client as they are.
+ */
+final class EncodedResponses {
+
+    private EncodedResponses() {
+    }
+
+    /**
+     * @return 200 response with the content type of the format; it varies by Accept, which caches must respect.
+     */
+    static ResponseEntity<byte[]> ok(byte[] body, ResponseFormat format) {
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body);
+    }
+}
@@ -0,0 +1,37 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import pl.edu.agh.to.model.SnapshotChangesDto;
+import pl.edu.agh.to.model.SnapshotInfoDto;
+import pl.edu.agh.to.service.SnapshotDiffService;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+
+@RestController
+@RequiredArgsConstructor
+public class SnapshotController {
+
+    private final TripUpdatesSnapshotStore snapshotStore;
+    private final SnapshotDiffService snapshotDiffService;
+
+    /**
+     * Returns metadata of the TripUpdates snapshot currently used to serve requests.
+     *
+     * @return SnapshotInfoDto containing generation number and age of the snapshot.
+     */
+    @GetMapping("/snapshot")
+    public SnapshotInfoDto snapshot() {
+        return snapshotStore.getSnapshotInfo();
+    }
+
+    /**
+     * Returns how many trips, stop times and vehicle assignments changed with the current snapshot.
+     *
+     * @return SnapshotChangesDto comparing the current snapshot with the one it replaced.
+     */
+    @GetMapping("/snapshot/changes")
+    public SnapshotChangesDto changes() {
+        return snapshotDiffService.getLatestChanges();
+    }
+}
@@ -0,0 +1,49 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.service.SnapshotLoader;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tells clients how fresh the served data is, since it may come from a snapshot being revalidated in the background.
+ * Responses served while a snapshot exists get {@code Age}, the seconds since its least recently fetched feed was
+ * fetched, and {@code X-Snapshot-Stale}, whether any feed is restored from disk or due for revalidation.
+ * Archive replays and Actuator endpoints do not serve the current snapshot and are left alone.
+ */
+@RequiredArgsConstructor
+public class SnapshotFreshnessFilter implements WebFilter {
+
+    public static final String STALE_HEADER = "X-Snapshot-Stale";
+
+    private final TripUpdatesSnapshotStore snapshotStore;
+    private final SnapshotLoader snapshotLoader;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (!path.startsWith("/archive") && !path.startsWith("/actuator")) {
+            HttpHeaders headers = exchange.getResponse().getHeaders();
+            exchange.getResponse().beforeCommit(() -> {
+                snapshotStore.current().ifPresent(snapshot -> addHeaders(headers, snapshot));
+                return Mono.empty();
+            });
+        }
+        return chain.filter(exchange);
+    }
+
+    private void addHeaders(HttpHeaders headers, TripUpdatesSnapshot snapshot) {
+        boolean stale = false;
+        for (FeedSnapshot feed : snapshot.getFeeds()) {
+            stale |= snapshotLoader.isExpired(feed);
+        }
+        headers.set(HttpHeaders.AGE, String.valueOf(Math.max(0, snapshotLoader.age(snapshot).toSeconds())));
+        headers.set(STALE_HEADER, String.valueOf(stale));
+    }
+}
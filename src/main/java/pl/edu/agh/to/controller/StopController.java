@@ -0,0 +1,67 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.service.AlertService;
+import pl.edu.agh.to.service.StopDepartureService;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class StopController {
+
+    private final StopDepartureService stopDepartureService;
+    private final AlertService alertService;
+
+    /**
+     * Returns the departure board of a stop from the latest GTFS snapshot.
+     *
+     * @param stopId Stop identifier as used in the feed.
+     * @param limit Maximum number of departures.
+     * @param from Earliest departure time (ISO date-time); defaults to now.
+     * @param mode Optional feed to restrict the board to, e.g. bus or tram.
+     * @param includeAlerts Whether to attach the active service alerts to every departure.
+     * @param headers Request headers; {@code Accept: application/x-protobuf} selects the StopBoard message.
+     * @return Mono emitting departures ordered by time, as a JSON list of StopDepartureDto or a StopBoard.
+     */
+    @GetMapping("/stops/{stopId}/departures")
+    public Mono<ResponseEntity<byte[]>> departures(
+            @PathVariable String stopId,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) String mode,
+            @RequestParam(defaultValue = "false") boolean includeAlerts,
+            @RequestHeader HttpHeaders headers) {
+        ResponseFormat format = ResponseFormat.negotiate(headers.getAccept());
+        return stopDepartureService.getEncodedDepartures(stopId, from, limit, mode, includeAlerts, format)
+                .map(body -> EncodedResponses.ok(body, format));
+    }
+
+    /**
+     * Returns the service alerts currently shown at a stop.
+     *
+     * @param stopId Stop identifier as used in the feed.
+     * @param at Time the alerts must be active at (ISO date-time); defaults to now.
+     * @param mode Optional feed to restrict the alerts to, e.g. bus or tram.
+     * @return Mono emitting the active alerts.
+     */
+    @GetMapping("/stops/{stopId}/alerts")
+    public Mono<List<AlertDto>> alerts(
+            @PathVariable String stopId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at,
+            @RequestParam(required = false) String mode) {
+        return alertService.getStopAlerts(stopId, at, mode);
+    }
+}
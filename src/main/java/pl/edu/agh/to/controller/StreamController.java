@@ -0,0 +1,38 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pl.edu.agh.to.model.DepartureChangesDto;
+import pl.edu.agh.to.model.DepartureStreamFilter;
+import pl.edu.agh.to.service.DepartureStreamService;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequiredArgsConstructor
+public class StreamController {
+
+    private final DepartureStreamService departureStreamService;
+
+    /**
+     * Streams the departures of a stop, a route or a vehicle's current trip as Server-Sent Events.
+     * Exactly one of stopId, routeId and vehicleId must be given.
+     *
+     * @param stopId Stop identifier as used in the feed.
+     * @param routeId Route identifier as used in the feed.
+     * @param vehicleId Vehicle identifier as used in the feed.
+     * @param mode Optional feed to follow, e.g. bus or tram.
+     * @return Flux emitting a "snapshot" event with all followed departures, then a "changes" event with the
+     * changed and removed ones whenever a new snapshot changes them.
+     */
+    @GetMapping(path = "/stream/departures", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<DepartureChangesDto>> departures(@RequestParam(required = false) String stopId,
+                                                                 @RequestParam(required = false) String routeId,
+                                                                 @RequestParam(required = false) String vehicleId,
+                                                                 @RequestParam(required = false) String mode) {
+        return departureStreamService.subscribe(DepartureStreamFilter.of(stopId, routeId, vehicleId, mode));
+    }
+}
@@ -1,11 +1,13 @@
 package pl.edu.agh.to.controller;
 
-import com.google.protobuf.InvalidProtocolBufferException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import pl.edu.agh.to.model.RandomDepartureDto;
 import pl.edu.agh.to.service.RandomDepartureService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 
 @RestController
@@ -20,14 +22,31 @@ public class TransportController {
     }
 
     /**
-     * Returns random departure information fetched from the GTFS API.
+     * Returns random departure information from the latest GTFS snapshot.
      *
-     * @return RandomDepartureDto containing vehicle, stop, and time.
-     * @throws InvalidProtocolBufferException if GTFS data is corrupted.
+     * @param mode Optional feed to draw from, e.g. bus or tram.
+     * @return Mono emitting RandomDepartureDto containing vehicle, stop, and time.
      */
     @GetMapping("/random-departure")
-    public RandomDepartureDto randomDeparture() throws InvalidProtocolBufferException {
-        return randomDepartureService.getRandomDepartureInfo();
+    public Mono<RandomDepartureDto> randomDeparture(@RequestParam(required = false) String mode) {
+        return randomDepartureService.getRandomDepartureInfo(mode);
     }
 
+    /**
+     * Returns a batch of random departures drawn from the same GTFS snapshot.
+     * The JSON array is written element by element while samples are drawn.
+     *
+     * @param count Number of departures to draw.
+     * @param distinct Whether every departure may appear at most once.
+     * @param seed Optional seed making the batch reproducible for the same snapshot.
+     * @param mode Optional feed to draw from, e.g. bus or tram.
+     * @return Flux emitting RandomDepartureDto for every sample.
+     */
+    @GetMapping("/random-departures")
+    public Flux<RandomDepartureDto> randomDepartures(@RequestParam int count,
+                                                     @RequestParam(defaultValue = "false") boolean distinct,
+                                                     @RequestParam(required = false) Long seed,
+                                                     @RequestParam(required = false) String mode) {
+        return randomDepartureService.getRandomDepartures(count, distinct, seed, mode);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package pl.edu.agh.to.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pl.edu.agh.to.model.NearbyVehicleDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.service.VehicleService;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class VehicleController {
+
+    private final VehicleService vehicleService;
+
+    /**
+     * Returns the vehicles around a point from the latest VehiclePositions snapshot.
+     *
+     * @param lat Latitude of the point (WGS-84 degrees).
+     * @param lon Longitude of the point (WGS-84 degrees).
+     * @param radius Optional search radius in meters; without it the nearest vehicles are returned.
+     * @param limit Maximum number of vehicles.
+     * @param mode Optional feed to search, e.g. bus or tram.
+     * @return Mono emitting the vehicles nearest first, each with the next stop of its trip.
+     */
+    @GetMapping("/vehicles/nearby")
+    public Mono<List<NearbyVehicleDto>> nearby(@RequestParam double lat,
+                                               @RequestParam double lon,
+                                               @RequestParam(required = false) Double radius,
+                                               @RequestParam(defaultValue = "10") int limit,
+                                               @RequestParam(required = false) String mode) {
+        return vehicleService.getNearbyVehicles(lat, lon, radius, limit, mode);
+    }
+
+    /**
+     * Returns the current trip of a vehicle from the latest GTFS snapshot.
+     *
+     * @param vehicleId Vehicle identifier as used in the feed.
+     * @param mode Optional feed to look the vehicle up in, e.g. bus or tram.
+     * @param headers Request headers; {@code Accept: application/x-protobuf} selects the Vehicle message.
+     * @return Mono emitting the trip and its remaining stops, as JSON VehicleDto or a Vehicle message.
+     */
+    @GetMapping("/vehicles/{vehicleId}")
+    public Mono<ResponseEntity<byte[]>> vehicle(@PathVariable String vehicleId,
+                                                @RequestParam(required = false) String mode,
+                                                @RequestHeader HttpHeaders headers) {
+        ResponseFormat format = ResponseFormat.negotiate(headers.getAccept());
+        return vehicleService.getEncodedVehicle(vehicleId, mode, format)
+                .map(body -> EncodedResponses.ok(body, format));
+    }
+}
@@ -2,6 +2,7 @@ package pl.edu.agh.to.exceptions;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -28,6 +29,43 @@ public class GlobalExceptionHandler {
                 .body("Internal Server Error: " + ex.getMessage());
     }
 
+    /**
+     * Handles invalid request parameters (e.g. limit out of range).
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException ex) {
+        log.warn("Bad request: {}", ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body("Bad Request: " + ex.getMessage());
+    }
+
+    /**
+     * Handles lookups of ids missing from the current snapshot.
+     */
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<String> handleNotFound(NotFoundException ex) {
+        log.debug("Not found: {}", ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body("Not Found: " + ex.getMessage());
+    }
+
+    /**
+     * Handles requests that need upstream data while the GTFS API is unavailable and there is nothing to serve.
+     */
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<String> handleUpstreamUnavailable(UpstreamUnavailableException ex) {
+        log.warn("Upstream unavailable: {}", ex.getMessage());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (ex.getRetryAfter().isPositive()) {
+            // whole seconds, rounded up so the client never retries before the circuit lets a trial through
+            long seconds = ex.getRetryAfter().plusMillis(999).toSeconds();
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        }
+        return response.body("Service Unavailable: " + ex.getMessage());
+    }
+
     /**
      * Handles exceptions related to Protobuf data parsing errors.
      */
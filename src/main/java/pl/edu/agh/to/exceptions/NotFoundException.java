@@ -0,0 +1,11 @@
+package pl.edu.agh.to.exceptions;
+
+/**
+ * Thrown when a resource requested by id (e.g. a vehicle) is not present in the current snapshot.
+ */
+public class NotFoundException extends RuntimeException {
+
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+package pl.edu.agh.to.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Thrown when data has to come from the GTFS API but cannot, e.g. the upstream is down,
+ * serves corrupted data, or its circuit is open, and there is no earlier snapshot to serve instead.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    /** Suggested wait before retrying, zero if unknown. */
+    private final Duration retryAfter;
+
+    public UpstreamUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public UpstreamUnavailableException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,330 @@
+package pl.edu.agh.to.index;
+
+import pl.edu.agh.to.model.AlertRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index of ServiceAlerts by the stop, trip and route they inform about, with an interval lookup
+ * over their active periods.
+ * <p>
+ * Every informed entity is posted under its most specific identifier - stop, then trip, then route - once per
+ * active period of its alert; any less specific identifiers it names become conditions checked on lookup.
+ * Entities naming none of them, e.g. a whole agency, are posted to a list every lookup reads.
+ * In a posting list, periods without an end (including alerts that are always active) are kept apart sorted by
+ * start, so the ones containing a time are a prefix. Bounded periods form a centered interval tree: every node
+ * keeps the periods containing its center sorted by start and by end, and a lookup walks one root-to-leaf path,
+ * reading at each node only the periods that contain the time plus one more. A lookup therefore costs a few hash
+ * probes, a logarithmic walk and the matches, not a pass over all alerts, however long their periods are.
+ */
+public final class AlertIndex {
+
+    public static final AlertIndex EMPTY = build(List.of());
+
+    private static final int[] NO_ALERTS = new int[0];
+
+    private final Map<String, Postings> byStop;
+    private final Map<String, Postings> byTrip;
+    private final Map<String, Postings> byRoute;
+    private final Postings everywhere;
+
+    private AlertIndex(Map<String, Postings> byStop, Map<String, Postings> byTrip, Map<String, Postings> byRoute,
+                       Postings everywhere) {
+        this.byStop = byStop;
+        this.byTrip = byTrip;
+        this.byRoute = byRoute;
+        this.everywhere = everywhere;
+    }
+
+    /**
+     * @return Index over the alerts, which are referred to by their position in the list.
+     */
+    public static AlertIndex build(List<AlertRecord> alerts) {
+        Map<String, List<Posting>> byStop = new HashMap<>();
+        Map<String, List<Posting>> byTrip = new HashMap<>();
+        Map<String, List<Posting>> byRoute = new HashMap<>();
+        List<Posting> everywhere = new ArrayList<>();
+
+        for (int alert = 0; alert < alerts.size(); alert++) {
+            AlertRecord record = alerts.get(alert);
+            List<AlertRecord.Period> periods = record.getActivePeriods().isEmpty()
+                    ? List.of(new AlertRecord.Period(AlertRecord.Period.NO_START, AlertRecord.Period.NO_END))
+                    : record.getActivePeriods();
+            for (AlertRecord.Selector selector : record.getInformedEntities()) {
+                String stop = emptyToNull(selector.getStopId());
+                String trip = emptyToNull(selector.getTripId());
+                String route = emptyToNull(selector.getRouteId());
+                for (AlertRecord.Period period : periods) {
+                    if (stop != null) {
+                        post(byStop, stop, new Posting(alert, period, route, trip));
+                    } else if (trip != null) {
+                        post(byTrip, trip, new Posting(alert, period, route, null));
+                    } else if (route != null) {
+                        post(byRoute, route, new Posting(alert, period, null, null));
+                    } else {
+                        everywhere.add(new Posting(alert, period, null, null));
+                    }
+                }
+            }
+        }
+        return new AlertIndex(seal(byStop), seal(byTrip), seal(byRoute), Postings.of(everywhere));
+    }
+
+    /**
+     * Finds the alerts active at a time that inform about a stop, a trip or a route, or about none in particular.
+     * A null or empty identifier is unknown: entities naming it only as a condition still match,
+     * but it selects nothing.
+     *
+     * @param time POSIX time in seconds.
+     * @return Positions of the matching alerts, ascending and without duplicates.
+     */
+    public int[] matching(String stopId, String routeId, String tripId, long time) {
+        String stop = emptyToNull(stopId);
+        String route = emptyToNull(routeId);
+        String trip = emptyToNull(tripId);
+        Matches matches = new Matches();
+        everywhere.collect(route, trip, time, matches);
+        if (stop != null) {
+            collect(byStop, stop, route, trip, time, matches);
+        }
+        if (trip != null) {
+            collect(byTrip, trip, route, trip, time, matches);
+        }
+        if (route != null) {
+            collect(byRoute, route, route, trip, time, matches);
+        }
+        return matches.toSortedArray();
+    }
+
+    private static void collect(Map<String, Postings> index, String key, String routeId, String tripId, long time,
+                                Matches matches) {
+        Postings postings = index.get(key);
+        if (postings != null) {
+            postings.collect(routeId, tripId, time, matches);
+        }
+    }
+
+    private static void post(Map<String, List<Posting>> index, String key, Posting posting) {
+        index.computeIfAbsent(key, k -> new ArrayList<>()).add(posting);
+    }
+
+    private static Map<String, Postings> seal(Map<String, List<Posting>> index) {
+        Map<String, Postings> sealed = new HashMap<>(index.size() * 2);
+        index.forEach((key, postings) -> sealed.put(key, Postings.of(postings)));
+        return sealed;
+    }
+
+    private static String emptyToNull(String id) {
+        return id == null || id.isEmpty() ? null : id;
+    }
+
+    /**
+     * One active period of an alert, with the route and trip the informed entity is restricted to, if any.
+     */
+    private record Posting(int alert, AlertRecord.Period period, String route, String trip) {
+    }
+
+    /**
+     * Postings of one key as columns: first the unbounded ones sorted by period start, then the bounded ones
+     * indexed by an interval tree.
+     */
+    private static final class Postings {
+
+        private final int[] alerts;
+        private final long[] starts;
+        private final long[] ends;
+        /** Route each posting is restricted to, null if none; null if no posting is restricted. */
+        private final String[] routes;
+        /** Trip each posting is restricted to, null if none; null if no posting is restricted. */
+        private final String[] trips;
+        /** Number of leading postings whose period has no end. */
+        private final int unbounded;
+        /** Interval tree over the bounded postings, null if there are none. */
+        private final Node bounded;
+
+        private Postings(int[] alerts, long[] starts, long[] ends, String[] routes, String[] trips, int unbounded) {
+            this.alerts = alerts;
+            this.starts = starts;
+            this.ends = ends;
+            this.routes = routes;
+            this.trips = trips;
+            this.unbounded = unbounded;
+            int[] rest = new int[alerts.length - unbounded];
+            Arrays.setAll(rest, i -> unbounded + i);
+            this.bounded = Node.build(rest, starts, ends);
+        }
+
+        private static Postings of(List<Posting> postings) {
+            List<Posting> sorted = new ArrayList<>(postings);
+            sorted.sort(Comparator.comparing((Posting posting) -> !isUnbounded(posting))
+                    .thenComparingLong(posting -> posting.period().getStart()));
+            int size = sorted.size();
+            int[] alerts = new int[size];
+            long[] starts = new long[size];
+            long[] ends = new long[size];
+            String[] routes = new String[size];
+            String[] trips = new String[size];
+            int unbounded = 0;
+            boolean restricted = false;
+            for (int i = 0; i < size; i++) {
+                Posting posting = sorted.get(i);
+                alerts[i] = posting.alert();
+                starts[i] = posting.period().getStart();
+                ends[i] = posting.period().getEnd();
+                routes[i] = posting.route();
+                trips[i] = posting.trip();
+                if (isUnbounded(posting)) {
+                    unbounded++;
+                }
+                restricted |= posting.route() != null || posting.trip() != null;
+            }
+            return new Postings(alerts, starts, ends, restricted ? routes : null, restricted ? trips : null,
+                    unbounded);
+        }
+
+        private static boolean isUnbounded(Posting posting) {
+            return posting.period().getEnd() == AlertRecord.Period.NO_END;
+        }
+
+        private void collect(String routeId, String tripId, long time, Matches matches) {
+            for (int i = 0; i < unbounded && starts[i] <= time; i++) {
+                collect(i, routeId, tripId, matches);
+            }
+            Node node = bounded;
+            while (node != null) {
+                if (time < node.center) {
+                    // every period of the node ends at or after the center, so it contains the time once started
+                    for (int i = 0; i < node.byStart.length && starts[node.byStart[i]] <= time; i++) {
+                        collect(node.byStart[i], routeId, tripId, matches);
+                    }
+                    node = node.left;
+                } else if (time > node.center) {
+                    for (int i = 0; i < node.byEnd.length && ends[node.byEnd[i]] >= time; i++) {
+                        collect(node.byEnd[i], routeId, tripId, matches);
+                    }
+                    node = node.right;
+                } else {
+                    for (int posting : node.byStart) {
+                        collect(posting, routeId, tripId, matches);
+                    }
+                    node = null;
+                }
+            }
+        }
+
+        private void collect(int posting, String routeId, String tripId, Matches matches) {
+            if (routes == null || satisfies(routes[posting], routeId) && satisfies(trips[posting], tripId)) {
+                matches.add(alerts[posting]);
+            }
+        }
+
+        private static boolean satisfies(String required, String actual) {
+            return required == null || actual == null || required.equals(actual);
+        }
+    }
+
+    /**
+     * Node of a centered interval tree over postings: holds the periods containing its center, while
+     * the periods ending before it go to the left subtree and the ones starting after it to the right.
+     */
+    private static final class Node {
+
+        private final long center;
+        /** Postings containing the center, by ascending start. */
+        private final int[] byStart;
+        /** The same postings by descending end. */
+        private final int[] byEnd;
+        private final Node left;
+        private final Node right;
+
+        private Node(long center, int[] byStart, int[] byEnd, Node left, Node right) {
+            this.center = center;
+            this.byStart = byStart;
+            this.byEnd = byEnd;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @param postings Positions of the postings to index.
+         * @return Root of the tree, null if there are no postings.
+         */
+        private static Node build(int[] postings, long[] starts, long[] ends) {
+            if (postings.length == 0) {
+                return null;
+            }
+            // the median midpoint lies in its own period, so every node holds at least one posting
+            long[] midpoints = new long[postings.length];
+            for (int i = 0; i < postings.length; i++) {
+                midpoints[i] = (starts[postings[i]] >> 1) + (ends[postings[i]] >> 1);
+            }
+            Arrays.sort(midpoints);
+            long center = midpoints[postings.length / 2];
+
+            int[] before = new int[postings.length];
+            int[] containing = new int[postings.length];
+            int[] after = new int[postings.length];
+            int beforeCount = 0;
+            int containingCount = 0;
+            int afterCount = 0;
+            for (int posting : postings) {
+                if (ends[posting] < center) {
+                    before[beforeCount++] = posting;
+                } else if (starts[posting] > center) {
+                    after[afterCount++] = posting;
+                } else {
+                    containing[containingCount++] = posting;
+                }
+            }
+
+            int[] byStart = sorted(Arrays.copyOf(containing, containingCount), starts, false);
+            int[] byEnd = sorted(Arrays.copyOf(containing, containingCount), ends, true);
+            return new Node(center, byStart, byEnd,
+                    build(Arrays.copyOf(before, beforeCount), starts, ends),
+                    build(Arrays.copyOf(after, afterCount), starts, ends));
+        }
+
+        private static int[] sorted(int[] postings, long[] keys, boolean descending) {
+            Comparator<Integer> order = Comparator.comparingLong(posting -> keys[posting]);
+            return Arrays.stream(postings).boxed()
+                    .sorted(descending ? order.reversed() : order)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+    }
+
+    /**
+     * Growable list of matched alert positions; an alert may match through several postings.
+     */
+    private static final class Matches {
+
+        private int[] alerts = NO_ALERTS;
+        private int size;
+
+        private void add(int alert) {
+            if (size == alerts.length) {
+                alerts = Arrays.copyOf(alerts, Math.max(4, size * 2));
+            }
+            alerts[size++] = alert;
+        }
+
+        private int[] toSortedArray() {
+            if (size == 0) {
+                return NO_ALERTS;
+            }
+            Arrays.sort(alerts, 0, size);
+            int distinct = 1;
+            for (int i = 1; i < size; i++) {
+                if (alerts[i] != alerts[distinct - 1]) {
+                    alerts[distinct++] = alerts[i];
+                }
+            }
+            return Arrays.copyOf(alerts, distinct);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package pl.edu.agh.to.index;
+
+import pl.edu.agh.to.model.StopTimeRecord;
+
+/**
+ * Flat index of every valid departure in a snapshot, i.e. every stop time that has a departure time.
+ * Tuples (trip, stop, departure epoch) are stored in parallel primitive arrays, so picking
+ * a uniformly random departure is a single array lookup without retries.
+ */
+public final class DepartureIndex {
+
+    private final int[] tripIndexes;
+    private final int[] stopIndexes;
+    private final long[] departureTimes;
+
+    private DepartureIndex(int[] tripIndexes, int[] stopIndexes, long[] departureTimes) {
+        this.tripIndexes = tripIndexes;
+        this.stopIndexes = stopIndexes;
+        this.departureTimes = departureTimes;
+    }
+
+    /**
+     * @param columns Trips of the partition; tuple trip indexes refer to trip positions in the columns.
+     * @return Index of all stop times with a departure time.
+     */
+    public static DepartureIndex build(TripColumns columns) {
+        int count = 0;
+        for (int row = 0; row < columns.rowCount(); row++) {
+            if (columns.departureTime(row) != StopTimeRecord.NO_TIME) {
+                count++;
+            }
+        }
+
+        int[] tripIndexes = new int[count];
+        int[] stopIndexes = new int[count];
+        long[] departureTimes = new long[count];
+
+        int next = 0;
+        for (int tripIndex = 0; tripIndex < columns.tripCount(); tripIndex++) {
+            int firstRow = columns.firstRow(tripIndex);
+            for (int row = firstRow; row < columns.endRow(tripIndex); row++) {
+                if (columns.departureTime(row) != StopTimeRecord.NO_TIME) {
+                    tripIndexes[next] = tripIndex;
+                    stopIndexes[next] = row - firstRow;
+                    departureTimes[next] = columns.departureTime(row);
+                    next++;
+                }
+            }
+        }
+
+        return new DepartureIndex(tripIndexes, stopIndexes, departureTimes);
+    }
+
+    public int size() {
+        return departureTimes.length;
+    }
+
+    public boolean isEmpty() {
+        return departureTimes.length == 0;
+    }
+
+    /**
+     * @return Position of the departure's trip in the partition.
+     */
+    public int tripIndex(int departure) {
+        return tripIndexes[departure];
+    }
+
+    /**
+     * @return Position of the departure's stop time within its trip.
+     */
+    public int stopIndex(int departure) {
+        return stopIndexes[departure];
+    }
+
+    /**
+     * @return Departure time in POSIX seconds.
+     */
+    public long departureTime(int departure) {
+        return departureTimes[departure];
+    }
+}
@@ -0,0 +1,74 @@
+package pl.edu.agh.to.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only dictionary assigning every identifier (stop, trip, route, vehicle, entity id) a dense int code.
+ * Every feed has its own dictionary, shared by all of its partitions and carried over from one version
+ * of the feed to the next, so columns of different snapshot generations can be compared and shared without
+ * translating codes, and every distinct id is held as a single String.
+ * <p>
+ * The empty string, used for missing ids, always has code {@link #EMPTY}.
+ * Lookups are lock-free; adding new ids is serialized.
+ * Ids are never evicted; instead the feed replaces its dictionary by one holding only its live ids
+ * when a full dataset leaves too many of them unused.
+ */
+public final class IdDictionary {
+
+    public static final int EMPTY = 0;
+    public static final int ABSENT = -1;
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[1024];
+    private int size;
+
+    public IdDictionary() {
+        encode("");
+    }
+
+    /**
+     * @return Code of the id, assigning the next free code if it is new.
+     */
+    public int encode(String id) {
+        Integer code = codes.get(id);
+        return code != null ? code : add(id);
+    }
+
+    /**
+     * @return Code of the id, or {@link #ABSENT} if it was never encoded.
+     */
+    public int find(String id) {
+        Integer code = codes.get(id);
+        return code != null ? code : ABSENT;
+    }
+
+    /**
+     * @param code Code returned by {@link #encode(String)}.
+     * @return The canonical String instance of the id.
+     */
+    public String decode(int code) {
+        return ids[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    private synchronized int add(String id) {
+        Integer existing = codes.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = ids;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        int code = size++;
+        current[code] = id;
+        ids = current;
+        // published only after the array holds the id, so any thread that sees the code can decode it
+        codes.put(id, code);
+        return code;
+    }
+}
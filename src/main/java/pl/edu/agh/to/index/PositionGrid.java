@@ -0,0 +1,285 @@
+package pl.edu.agh.to.index;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over vehicle coordinates answering radius and k-nearest queries without scanning every vehicle.
+ * <p>
+ * Cells are {@link #CELL_METERS} high and, at the mean latitude of the indexed positions, as wide, so they are
+ * roughly square over a city. Positions are stored cell after cell (CSR layout): the keys of the occupied cells
+ * ascending, the offset of each cell's run, and the runs of position numbers. A query binary-searches only
+ * the cells overlapping its search area and measures great-circle distances to the vehicles in them.
+ * <p>
+ * Longitudes are not wrapped at the antimeridian, which no city feed crosses.
+ */
+public final class PositionGrid {
+
+    public static final PositionGrid EMPTY = build(new double[0], new double[0]);
+
+    /** Cell height; a nearby query with a typical walking radius touches a handful of cells. */
+    static final double CELL_METERS = 250;
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double cellLatitude;
+    private final double cellLongitude;
+    /** Keys of the occupied cells, ascending. */
+    private final long[] cellKeys;
+    private final int[] offsets;
+    private final int[] positions;
+    private final int minRow;
+    private final int maxRow;
+    private final int minColumn;
+    private final int maxColumn;
+
+    private PositionGrid(double[] latitudes, double[] longitudes, double cellLatitude, double cellLongitude,
+                         long[] cellKeys, int[] offsets, int[] positions) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.cellLatitude = cellLatitude;
+        this.cellLongitude = cellLongitude;
+        this.cellKeys = cellKeys;
+        this.offsets = offsets;
+        this.positions = positions;
+        int rowLow = Integer.MAX_VALUE;
+        int rowHigh = Integer.MIN_VALUE;
+        int columnLow = Integer.MAX_VALUE;
+        int columnHigh = Integer.MIN_VALUE;
+        for (long key : cellKeys) {
+            rowLow = Math.min(rowLow, row(key));
+            rowHigh = Math.max(rowHigh, row(key));
+            columnLow = Math.min(columnLow, column(key));
+            columnHigh = Math.max(columnHigh, column(key));
+        }
+        this.minRow = rowLow;
+        this.maxRow = rowHigh;
+        this.minColumn = columnLow;
+        this.maxColumn = columnHigh;
+    }
+
+    /**
+     * @param latitudes WGS-84 latitude of every position, in degrees; the array is copied.
+     * @param longitudes WGS-84 longitude of every position, in degrees; the array is copied.
+     * @return Grid over the positions, which are referred to by their index in the arrays.
+     */
+    public static PositionGrid build(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Every position needs both a latitude and a longitude");
+        }
+        int count = latitudes.length;
+        double meanLatitude = 0;
+        for (double latitude : latitudes) {
+            meanLatitude += latitude / count;
+        }
+        double cellLatitude = CELL_METERS / METERS_PER_DEGREE;
+        double cellLongitude = cellLatitude / Math.max(Math.cos(Math.toRadians(meanLatitude)), 0.01);
+
+        long[] keys = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(cell(latitudes[i], cellLatitude), cell(longitudes[i], cellLongitude));
+            order[i] = i;
+        }
+        // boxed sort by cell; runs once per feed refresh
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        int[] positions = new int[count];
+        long[] cellKeys = new long[count];
+        int[] offsets = new int[count + 1];
+        int cells = 0;
+        for (int i = 0; i < count; i++) {
+            positions[i] = order[i];
+            long key = keys[order[i]];
+            if (cells == 0 || cellKeys[cells - 1] != key) {
+                cellKeys[cells] = key;
+                offsets[cells] = i;
+                cells++;
+            }
+        }
+        offsets[cells] = count;
+
+        return new PositionGrid(latitudes.clone(), longitudes.clone(), cellLatitude, cellLongitude,
+                Arrays.copyOf(cellKeys, cells), Arrays.copyOf(offsets, cells + 1), positions);
+    }
+
+    public int size() {
+        return latitudes.length;
+    }
+
+    /**
+     * @param radiusMeters Search radius around the point, in meters.
+     * @param limit Maximum number of positions returned.
+     * @return Positions within the radius, nearest first.
+     */
+    public int[] within(double latitude, double longitude, double radiusMeters, int limit) {
+        double latitudeSpan = radiusMeters / METERS_PER_DEGREE;
+        double longitudeSpan = latitudeSpan / Math.max(Math.cos(Math.toRadians(Math.abs(latitude) + latitudeSpan)),
+                0.01);
+        int rowLow = Math.max(cell(latitude - latitudeSpan, cellLatitude), minRow);
+        int rowHigh = Math.min(cell(latitude + latitudeSpan, cellLatitude), maxRow);
+        int columnLow = Math.max(cell(longitude - longitudeSpan, cellLongitude), minColumn);
+        int columnHigh = Math.min(cell(longitude + longitudeSpan, cellLongitude), maxColumn);
+
+        Candidates candidates = new Candidates(limit);
+        if (rowLow > rowHigh || columnLow > columnHigh) {
+            return candidates.toArray();
+        }
+        if ((long) (rowHigh - rowLow + 1) * (columnHigh - columnLow + 1) > cellKeys.length) {
+            // the area spans more cells than are occupied, so walking the occupied ones is cheaper
+            for (int slot = 0; slot < cellKeys.length; slot++) {
+                int row = row(cellKeys[slot]);
+                int column = column(cellKeys[slot]);
+                if (row >= rowLow && row <= rowHigh && column >= columnLow && column <= columnHigh) {
+                    collect(slot, latitude, longitude, radiusMeters, candidates);
+                }
+            }
+        } else {
+            for (int row = rowLow; row <= rowHigh; row++) {
+                for (int column = columnLow; column <= columnHigh; column++) {
+                    collect(find(row, column), latitude, longitude, radiusMeters, candidates);
+                }
+            }
+        }
+        return candidates.toArray();
+    }
+
+    /**
+     * Visits rings of cells around the point's cell until no unvisited cell can hold a position
+     * nearer than the k-th nearest one found so far.
+     *
+     * @param k Maximum number of positions returned.
+     * @return The k positions nearest to the point, nearest first; all positions if there are fewer.
+     */
+    public int[] nearest(double latitude, double longitude, int k) {
+        Candidates candidates = new Candidates(k);
+        if (cellKeys.length == 0 || k <= 0) {
+            return candidates.toArray();
+        }
+        int centerRow = cell(latitude, cellLatitude);
+        int centerColumn = cell(longitude, cellLongitude);
+        // rings nearer than the occupied cells are empty, and rings are clipped to them
+        int firstRing = Math.max(Math.max(minRow - centerRow, centerRow - maxRow),
+                Math.max(Math.max(minColumn - centerColumn, centerColumn - maxColumn), 0));
+        int lastRing = Math.max(
+                Math.max(Math.abs(centerRow - minRow), Math.abs(centerRow - maxRow)),
+                Math.max(Math.abs(centerColumn - minColumn), Math.abs(centerColumn - maxColumn)));
+
+        for (int ring = firstRing; ring <= lastRing; ring++) {
+            int columnLow = Math.max(centerColumn - ring, minColumn);
+            int columnHigh = Math.min(centerColumn + ring, maxColumn);
+            for (int column = columnLow; column <= columnHigh; column++) {
+                collect(find(centerRow - ring, column), latitude, longitude, Double.MAX_VALUE, candidates);
+                if (ring > 0) {
+                    collect(find(centerRow + ring, column), latitude, longitude, Double.MAX_VALUE, candidates);
+                }
+            }
+            int rowLow = Math.max(centerRow - ring + 1, minRow);
+            int rowHigh = Math.min(centerRow + ring - 1, maxRow);
+            for (int row = rowLow; row <= rowHigh; row++) {
+                collect(find(row, centerColumn - ring), latitude, longitude, Double.MAX_VALUE, candidates);
+                collect(find(row, centerColumn + ring), latitude, longitude, Double.MAX_VALUE, candidates);
+            }
+            // cells beyond this ring are at least `ring` whole cells away; their narrowest width is
+            // at the latitude farthest from the equator they can reach
+            double farthestLatitude = Math.min(Math.abs(latitude) + (ring + 1) * cellLatitude, 90);
+            double cellWidth = cellLongitude * Math.cos(Math.toRadians(farthestLatitude)) * METERS_PER_DEGREE;
+            double unvisited = ring * Math.min(CELL_METERS, cellWidth);
+            if (candidates.isFull() && candidates.worstDistance() <= unvisited) {
+                break;
+            }
+        }
+        return candidates.toArray();
+    }
+
+    /**
+     * @return Great-circle distance between the position and the point, in meters.
+     */
+    public double distanceMeters(int position, double latitude, double longitude) {
+        return distance(latitudes[position], longitudes[position], latitude, longitude);
+    }
+
+    private void collect(int slot, double latitude, double longitude, double radiusMeters, Candidates candidates) {
+        if (slot < 0) {
+            return;
+        }
+        for (int i = offsets[slot]; i < offsets[slot + 1]; i++) {
+            double distance = distanceMeters(positions[i], latitude, longitude);
+            if (distance <= radiusMeters) {
+                candidates.offer(positions[i], distance);
+            }
+        }
+    }
+
+    private int find(int row, int column) {
+        int slot = Arrays.binarySearch(cellKeys, key(row, column));
+        return slot < 0 ? -1 : slot;
+    }
+
+    private static double distance(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+        double deltaLatitude = Math.toRadians(latitudeB - latitudeA);
+        double deltaLongitude = Math.toRadians(longitudeB - longitudeA);
+        double h = Math.sin(deltaLatitude / 2) * Math.sin(deltaLatitude / 2)
+                + Math.cos(Math.toRadians(latitudeA)) * Math.cos(Math.toRadians(latitudeB))
+                * Math.sin(deltaLongitude / 2) * Math.sin(deltaLongitude / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    private static int cell(double degrees, double cellDegrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long key(int row, int column) {
+        return (long) row << 32 | (column & 0xFFFFFFFFL);
+    }
+
+    private static int row(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int column(long key) {
+        return (int) key;
+    }
+
+    /**
+     * The best positions seen so far, kept sorted by distance by insertion; limits are small.
+     */
+    private static final class Candidates {
+
+        private final int[] positions;
+        private final double[] distances;
+        private int size;
+
+        private Candidates(int limit) {
+            this.positions = new int[Math.max(limit, 0)];
+            this.distances = new double[Math.max(limit, 0)];
+        }
+
+        private void offer(int position, double distance) {
+            if (positions.length == 0 || isFull() && distance >= distances[size - 1]) {
+                return;
+            }
+            int i = isFull() ? size - 1 : size++;
+            while (i > 0 && distances[i - 1] > distance) {
+                positions[i] = positions[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            positions[i] = position;
+            distances[i] = distance;
+        }
+
+        private boolean isFull() {
+            return size == positions.length;
+        }
+
+        private double worstDistance() {
+            return distances[size - 1];
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package pl.edu.agh.to.index;
+
+import java.util.Arrays;
+
+/**
+ * Departure board index: for every stop, its departures sorted by time.
+ * <p>
+ * All boards share two flat arrays laid out stop after stop (CSR layout): departure times
+ * and references into the partition's {@link DepartureIndex}. Boards are ordered by the stop's dictionary code,
+ * so a lookup is one dictionary probe, a binary search for the board, a binary search for the first
+ * departure at or after the requested time and a bounded slice.
+ */
+public final class StopDepartureIndex {
+
+    private static final int[] NO_DEPARTURES = new int[0];
+
+    private final IdDictionary dictionary;
+    /** Dictionary codes of the stops, ascending; the position of a code is the stop's board. */
+    private final int[] stopCodes;
+    private final int[] offsets;
+    private final long[] times;
+    private final int[] departureRefs;
+
+    private StopDepartureIndex(IdDictionary dictionary, int[] stopCodes, int[] offsets, long[] times,
+                               int[] departureRefs) {
+        this.dictionary = dictionary;
+        this.stopCodes = stopCodes;
+        this.offsets = offsets;
+        this.times = times;
+        this.departureRefs = departureRefs;
+    }
+
+    /**
+     * @param columns Trips of the partition.
+     * @param departures Departure index built from the same columns.
+     * @return Board index over all departures.
+     */
+    public static StopDepartureIndex build(TripColumns columns, DepartureIndex departures) {
+        int size = departures.size();
+        int[] stopOfDeparture = new int[size];
+        long minTime = Long.MAX_VALUE;
+        for (int departure = 0; departure < size; departure++) {
+            int trip = departures.tripIndex(departure);
+            stopOfDeparture[departure] = columns.stopId(columns.firstRow(trip) + departures.stopIndex(departure));
+            minTime = Math.min(minTime, departures.departureTime(departure));
+        }
+
+        int[] stopCodes = Arrays.stream(stopOfDeparture).sorted().distinct().toArray();
+        int[] slotOfDeparture = new int[size];
+        int[] counts = new int[stopCodes.length];
+        for (int departure = 0; departure < size; departure++) {
+            int slot = Arrays.binarySearch(stopCodes, stopOfDeparture[departure]);
+            slotOfDeparture[departure] = slot;
+            counts[slot]++;
+        }
+
+        int[] offsets = new int[stopCodes.length + 1];
+        for (int slot = 0; slot < stopCodes.length; slot++) {
+            offsets[slot + 1] = offsets[slot] + counts[slot];
+        }
+
+        // Sort all departures by time once, then scatter them into their stop ranges in that order,
+        // which leaves every range sorted. Packing (time offset, departure) into a long lets
+        // the primitive sort do the work; the offset stays far below 2^31 for any realistic feed.
+        long[] packed = new long[size];
+        for (int departure = 0; departure < size; departure++) {
+            packed[departure] = (departures.departureTime(departure) - minTime) << 32 | departure;
+        }
+        Arrays.sort(packed);
+
+        long[] times = new long[size];
+        int[] departureRefs = new int[size];
+        int[] next = Arrays.copyOf(offsets, stopCodes.length);
+        for (long entry : packed) {
+            int departure = (int) entry;
+            int position = next[slotOfDeparture[departure]]++;
+            times[position] = departures.departureTime(departure);
+            departureRefs[position] = departure;
+        }
+
+        return new StopDepartureIndex(columns.dictionary(), stopCodes, offsets, times, departureRefs);
+    }
+
+    /**
+     * @param stopId Stop to look up.
+     * @param fromTime Earliest departure time in POSIX seconds, inclusive.
+     * @param limit Maximum number of departures to return.
+     * @return Positions in the partition's DepartureIndex, ordered by departure time.
+     */
+    public int[] departuresFrom(String stopId, long fromTime, int limit) {
+        return departuresFrom(dictionary.find(stopId), fromTime, limit);
+    }
+
+    /**
+     * Same as {@link #departuresFrom(String, long, int)} for a stop already looked up in the dictionary,
+     * which saves the hash probe when many partitions are queried for the same stop.
+     *
+     * @param stopCode Dictionary code of the stop, or {@link IdDictionary#ABSENT}.
+     */
+    public int[] departuresFrom(int stopCode, long fromTime, int limit) {
+        int slot = stopCode == IdDictionary.ABSENT ? -1 : Arrays.binarySearch(stopCodes, stopCode);
+        if (slot < 0) {
+            return NO_DEPARTURES;
+        }
+
+        int end = offsets[slot + 1];
+        int start = lowerBound(offsets[slot], end, fromTime);
+        return Arrays.copyOfRange(departureRefs, start, Math.min(end, start + limit));
+    }
+
+    public int stopCount() {
+        return stopCodes.length;
+    }
+
+    private int lowerBound(int from, int to, long time) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
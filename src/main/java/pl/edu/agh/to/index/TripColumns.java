@@ -0,0 +1,343 @@
+package pl.edu.agh.to.index;
+
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar storage of trips and their stop times.
+ * <p>
+ * Trip identifiers are dictionary codes in parallel int arrays; stop times are rows of parallel
+ * primitive arrays, stored trip after trip, with {@code firstRows[t]} pointing at the first row of trip t.
+ * Compared to TripRecord/StopTimeRecord object graphs this keeps no per-row objects or duplicated Strings,
+ * and scans over a column touch contiguous memory.
+ * <p>
+ * {@link #trip(int)} exposes a trip as a TripRecord view whose stop times are materialized on access,
+ * so callers that need a single trip or stop time allocate only what they read.
+ * <p>
+ * Every trip also carries a 64-bit hash of its content, so consecutive versions of a trip can be compared
+ * without reading their stop times.
+ */
+public final class TripColumns {
+
+    private static final long HASH_SEED = 0x2545F4914F6CDD1DL;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final IdDictionary dictionary;
+
+    private final int[] entityIds;
+    private final int[] tripIds;
+    private final int[] routeIds;
+    private final int[] vehicleIds;
+    private final int[] firstRows;
+    private final long[] contentHashes;
+
+    private final int[] stopIds;
+    private final long[] arrivalTimes;
+    private final int[] arrivalDelays;
+    private final long[] departureTimes;
+    private final int[] departureDelays;
+
+    private TripColumns(Builder builder) {
+        this.dictionary = builder.dictionary;
+        int trips = builder.trips;
+        int rows = builder.rows;
+        this.entityIds = Arrays.copyOf(builder.entityIds, trips);
+        this.tripIds = Arrays.copyOf(builder.tripIds, trips);
+        this.routeIds = Arrays.copyOf(builder.routeIds, trips);
+        this.vehicleIds = Arrays.copyOf(builder.vehicleIds, trips);
+        this.firstRows = Arrays.copyOf(builder.firstRows, trips + 1);
+        this.firstRows[trips] = rows;
+        this.contentHashes = Arrays.copyOf(builder.contentHashes, trips);
+        this.stopIds = Arrays.copyOf(builder.stopIds, rows);
+        this.arrivalTimes = Arrays.copyOf(builder.arrivalTimes, rows);
+        this.arrivalDelays = Arrays.copyOf(builder.arrivalDelays, rows);
+        this.departureTimes = Arrays.copyOf(builder.departureTimes, rows);
+        this.departureDelays = Arrays.copyOf(builder.departureDelays, rows);
+    }
+
+    /**
+     * @param dictionary Dictionary of the feed the trips belong to.
+     * @param trips Trips to encode.
+     * @return Columns holding the trips in the given order.
+     */
+    public static TripColumns of(IdDictionary dictionary, List<TripRecord> trips) {
+        int rows = 0;
+        for (TripRecord trip : trips) {
+            rows += trip.getStopTimes().size();
+        }
+        Builder builder = builder(dictionary, trips.size(), rows);
+        for (TripRecord trip : trips) {
+            builder.add(trip);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param dictionary Dictionary to encode ids with; columns are only comparable with columns of the same one.
+     * @param expectedTrips Initial trip capacity.
+     * @param expectedRows Initial stop time capacity.
+     */
+    public static Builder builder(IdDictionary dictionary, int expectedTrips, int expectedRows) {
+        return new Builder(dictionary, expectedTrips, expectedRows);
+    }
+
+    public IdDictionary dictionary() {
+        return dictionary;
+    }
+
+    public int tripCount() {
+        return entityIds.length;
+    }
+
+    public int rowCount() {
+        return stopIds.length;
+    }
+
+    public int entityId(int trip) {
+        return entityIds[trip];
+    }
+
+    public int tripId(int trip) {
+        return tripIds[trip];
+    }
+
+    public int routeId(int trip) {
+        return routeIds[trip];
+    }
+
+    public int vehicleId(int trip) {
+        return vehicleIds[trip];
+    }
+
+    /**
+     * Hash of everything known about the trip except its entity id: trip, route and vehicle ids and all stop
+     * time rows in order. Trips with equal content have equal hashes in any columns using the same dictionary;
+     * different content colliding is as unlikely as with any 64-bit hash, and is treated as equal.
+     */
+    public long contentHash(int trip) {
+        return contentHashes[trip];
+    }
+
+    /**
+     * @return First stop time row of the trip.
+     */
+    public int firstRow(int trip) {
+        return firstRows[trip];
+    }
+
+    /**
+     * @return Row after the last stop time row of the trip.
+     */
+    public int endRow(int trip) {
+        return firstRows[trip + 1];
+    }
+
+    public int stopId(int row) {
+        return stopIds[row];
+    }
+
+    public long arrivalTime(int row) {
+        return arrivalTimes[row];
+    }
+
+    public int arrivalDelay(int row) {
+        return arrivalDelays[row];
+    }
+
+    public long departureTime(int row) {
+        return departureTimes[row];
+    }
+
+    public int departureDelay(int row) {
+        return departureDelays[row];
+    }
+
+    /**
+     * @return Departure time if present, otherwise arrival time, NO_TIME if the row has neither.
+     */
+    public long eventTime(int row) {
+        return departureTimes[row] != StopTimeRecord.NO_TIME ? departureTimes[row] : arrivalTimes[row];
+    }
+
+    /**
+     * @return Stop time row materialized as a record.
+     */
+    public StopTimeRecord stopTime(int row) {
+        return new StopTimeRecord(dictionary.decode(stopIds[row]),
+                arrivalTimes[row], arrivalDelays[row], departureTimes[row], departureDelays[row]);
+    }
+
+    /**
+     * @return View of the trip; its stop time list materializes rows on access.
+     */
+    public TripRecord trip(int trip) {
+        return TripRecord.builder()
+                .entityId(dictionary.decode(entityIds[trip]))
+                .tripId(dictionary.decode(tripIds[trip]))
+                .routeId(dictionary.decode(routeIds[trip]))
+                .vehicleId(dictionary.decode(vehicleIds[trip]))
+                .stopTimes(new StopTimeView(firstRows[trip], firstRows[trip + 1]))
+                .build();
+    }
+
+    /**
+     * Folds a value into a running hash; the rotation keeps values in different positions from cancelling out.
+     */
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft((hash ^ value) * HASH_MULTIPLIER, 31);
+    }
+
+    /**
+     * @return View of all trips, each materialized by {@link #trip(int)} on access.
+     */
+    public List<TripRecord> asTrips() {
+        return new TripView();
+    }
+
+    private final class TripView extends AbstractList<TripRecord> implements RandomAccess {
+
+        @Override
+        public TripRecord get(int index) {
+            return trip(index);
+        }
+
+        @Override
+        public int size() {
+            return tripCount();
+        }
+    }
+
+    private final class StopTimeView extends AbstractList<StopTimeRecord> implements RandomAccess {
+
+        private final int first;
+        private final int end;
+
+        private StopTimeView(int first, int end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        public StopTimeRecord get(int index) {
+            if (index < 0 || index >= end - first) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return stopTime(first + index);
+        }
+
+        @Override
+        public int size() {
+            return end - first;
+        }
+    }
+
+    /**
+     * Accumulates trips into growable columns.
+     */
+    public static final class Builder {
+
+        private final IdDictionary dictionary;
+        private int trips;
+        private int rows;
+
+        private int[] entityIds;
+        private int[] tripIds;
+        private int[] routeIds;
+        private int[] vehicleIds;
+        private int[] firstRows;
+        private long[] contentHashes;
+
+        private int[] stopIds;
+        private long[] arrivalTimes;
+        private int[] arrivalDelays;
+        private long[] departureTimes;
+        private int[] departureDelays;
+
+        private Builder(IdDictionary dictionary, int expectedTrips, int expectedRows) {
+            this.dictionary = dictionary;
+            int tripCapacity = Math.max(expectedTrips, 1);
+            int rowCapacity = Math.max(expectedRows, 1);
+            entityIds = new int[tripCapacity];
+            tripIds = new int[tripCapacity];
+            routeIds = new int[tripCapacity];
+            vehicleIds = new int[tripCapacity];
+            firstRows = new int[tripCapacity + 1];
+            contentHashes = new long[tripCapacity];
+            stopIds = new int[rowCapacity];
+            arrivalTimes = new long[rowCapacity];
+            arrivalDelays = new int[rowCapacity];
+            departureTimes = new long[rowCapacity];
+            departureDelays = new int[rowCapacity];
+        }
+
+        public Builder add(TripRecord trip) {
+            startTrip(dictionary.encode(trip.getEntityId()), dictionary.encode(trip.getTripId()),
+                    dictionary.encode(trip.getRouteId()), dictionary.encode(trip.getVehicleId()));
+            for (StopTimeRecord stopTime : trip.getStopTimes()) {
+                addRow(dictionary.encode(stopTime.getStopId()), stopTime.getArrivalTime(), stopTime.getArrivalDelay(),
+                        stopTime.getDepartureTime(), stopTime.getDepartureDelay());
+            }
+            return this;
+        }
+
+        /**
+         * Copies a trip from other columns without decoding it; both must use the same dictionary.
+         */
+        public Builder copy(TripColumns source, int trip) {
+            startTrip(source.entityIds[trip], source.tripIds[trip], source.routeIds[trip], source.vehicleIds[trip]);
+            for (int row = source.firstRow(trip); row < source.endRow(trip); row++) {
+                addRow(source.stopIds[row], source.arrivalTimes[row], source.arrivalDelays[row],
+                        source.departureTimes[row], source.departureDelays[row]);
+            }
+            return this;
+        }
+
+        public TripColumns build() {
+            return new TripColumns(this);
+        }
+
+        private void startTrip(int entityId, int tripId, int routeId, int vehicleId) {
+            if (trips == entityIds.length) {
+                int capacity = trips * 2;
+                entityIds = Arrays.copyOf(entityIds, capacity);
+                tripIds = Arrays.copyOf(tripIds, capacity);
+                routeIds = Arrays.copyOf(routeIds, capacity);
+                vehicleIds = Arrays.copyOf(vehicleIds, capacity);
+                firstRows = Arrays.copyOf(firstRows, capacity + 1);
+                contentHashes = Arrays.copyOf(contentHashes, capacity);
+            }
+            entityIds[trips] = entityId;
+            tripIds[trips] = tripId;
+            routeIds[trips] = routeId;
+            vehicleIds[trips] = vehicleId;
+            firstRows[trips] = rows;
+            contentHashes[trips] = mix(mix(mix(HASH_SEED, tripId), routeId), vehicleId);
+            trips++;
+        }
+
+        private void addRow(int stopId, long arrivalTime, int arrivalDelay, long departureTime, int departureDelay) {
+            if (rows == stopIds.length) {
+                int capacity = rows * 2;
+                stopIds = Arrays.copyOf(stopIds, capacity);
+                arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+                arrivalDelays = Arrays.copyOf(arrivalDelays, capacity);
+                departureTimes = Arrays.copyOf(departureTimes, capacity);
+                departureDelays = Arrays.copyOf(departureDelays, capacity);
+            }
+            stopIds[rows] = stopId;
+            arrivalTimes[rows] = arrivalTime;
+            arrivalDelays[rows] = arrivalDelay;
+            departureTimes[rows] = departureTime;
+            departureDelays[rows] = departureDelay;
+            rows++;
+            long hash = contentHashes[trips - 1];
+            hash = mix(mix(mix(hash, stopId), arrivalTime), arrivalDelay);
+            contentHashes[trips - 1] = mix(mix(hash, departureTime), departureDelay);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package pl.edu.agh.to.index;
+
+import java.util.Arrays;
+
+/**
+ * Index from TripDescriptor.trip_id to the trip's position in the partition, used to join other feeds
+ * (e.g. VehiclePositions) to TripUpdates. Dictionary codes and positions are stored as parallel arrays
+ * sorted by code, so a lookup is a binary search and allocates nothing.
+ */
+public final class TripIdIndex {
+
+    /** Dictionary codes of the trip ids, ascending. */
+    private final int[] tripCodes;
+    private final int[] trips;
+
+    private TripIdIndex(int[] tripCodes, int[] trips) {
+        this.tripCodes = tripCodes;
+        this.trips = trips;
+    }
+
+    /**
+     * @param columns Trips of the partition; trips without a trip id are not indexed.
+     * If a trip id occurs more than once, the first trip wins.
+     * @return Index of all trip ids in the partition.
+     */
+    public static TripIdIndex build(TripColumns columns) {
+        int tripCount = columns.tripCount();
+        long[] entries = new long[tripCount];
+        int indexed = 0;
+        for (int trip = 0; trip < tripCount; trip++) {
+            if (columns.tripId(trip) != IdDictionary.EMPTY) {
+                // code in the high half, position in the low half, so sorting orders by code, then position
+                entries[indexed++] = (long) columns.tripId(trip) << 32 | trip;
+            }
+        }
+        Arrays.sort(entries, 0, indexed);
+
+        int[] tripCodes = new int[indexed];
+        int[] trips = new int[indexed];
+        int size = 0;
+        for (int i = 0; i < indexed; i++) {
+            int code = (int) (entries[i] >>> 32);
+            if (size == 0 || tripCodes[size - 1] != code) {
+                tripCodes[size] = code;
+                trips[size] = (int) entries[i];
+                size++;
+            }
+        }
+        return new TripIdIndex(Arrays.copyOf(tripCodes, size), Arrays.copyOf(trips, size));
+    }
+
+    /**
+     * @param tripCode Dictionary code of the trip id, or {@link IdDictionary#ABSENT}.
+     * @return Position of the trip in the partition, -1 if the partition has no such trip.
+     */
+    public int find(int tripCode) {
+        int slot = tripCode == IdDictionary.ABSENT ? -1 : Arrays.binarySearch(tripCodes, tripCode);
+        return slot < 0 ? -1 : trips[slot];
+    }
+
+    public int size() {
+        return tripCodes.length;
+    }
+}
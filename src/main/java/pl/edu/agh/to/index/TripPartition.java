@@ -0,0 +1,99 @@
+package pl.edu.agh.to.index;
+
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable slice of a snapshot's trips, stored in {@link TripColumns}, together with the indexes built over them.
+ * <p>
+ * Snapshots split their trips into partitions by FeedEntity.id. A differential update rebuilds only
+ * the partitions containing changed entities and shares all other partitions, indexes included,
+ * with the previous generation.
+ */
+public final class TripPartition {
+
+    private final TripColumns columns;
+    private final DepartureIndex departures;
+    private final StopDepartureIndex stopDepartures;
+    private final VehicleIndex vehicles;
+    private final TripIdIndex tripIds;
+
+    private TripPartition(TripColumns columns) {
+        this.columns = columns;
+        this.departures = DepartureIndex.build(columns);
+        this.stopDepartures = StopDepartureIndex.build(columns, departures);
+        this.vehicles = VehicleIndex.build(columns);
+        this.tripIds = TripIdIndex.build(columns);
+    }
+
+    /**
+     * @param dictionary Dictionary of the feed the partition belongs to.
+     * @param trips Trips of the partition; they are encoded into columns and not retained.
+     * @return Partition with all of its indexes built.
+     */
+    public static TripPartition build(IdDictionary dictionary, List<TripRecord> trips) {
+        return new TripPartition(TripColumns.of(dictionary, trips));
+    }
+
+    /**
+     * Builds the next version of this partition. The receiver is left untouched.
+     *
+     * @param upserts Trips replacing any trip with the same entity id, or added if there is none.
+     * @param deletedEntityIds Entity ids whose trips are removed.
+     * @return New partition with rebuilt indexes.
+     */
+    public TripPartition apply(Collection<TripRecord> upserts, Set<String> deletedEntityIds) {
+        IdDictionary dictionary = columns.dictionary();
+        Set<Integer> replaced = new HashSet<>();
+        for (String entityId : deletedEntityIds) {
+            replaced.add(dictionary.find(entityId));
+        }
+        for (TripRecord trip : upserts) {
+            replaced.add(dictionary.find(trip.getEntityId()));
+        }
+
+        TripColumns.Builder next =
+                TripColumns.builder(dictionary, columns.tripCount() + upserts.size(), columns.rowCount());
+        for (int trip = 0; trip < columns.tripCount(); trip++) {
+            if (!replaced.contains(columns.entityId(trip))) {
+                next.copy(columns, trip);
+            }
+        }
+        for (TripRecord trip : upserts) {
+            next.add(trip);
+        }
+
+        return new TripPartition(next.build());
+    }
+
+    /**
+     * @return View of the partition's trips, materialized from the columns on access.
+     */
+    public List<TripRecord> getTrips() {
+        return columns.asTrips();
+    }
+
+    public TripColumns getColumns() {
+        return columns;
+    }
+
+    public DepartureIndex getDepartures() {
+        return departures;
+    }
+
+    public StopDepartureIndex getStopDepartures() {
+        return stopDepartures;
+    }
+
+    public VehicleIndex getVehicles() {
+        return vehicles;
+    }
+
+    public TripIdIndex getTripIds() {
+        return tripIds;
+    }
+}
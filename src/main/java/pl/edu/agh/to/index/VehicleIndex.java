@@ -0,0 +1,139 @@
+package pl.edu.agh.to.index;
+
+import pl.edu.agh.to.model.StopTimeRecord;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Index from VehicleDescriptor.id to the vehicle's trips in the partition.
+ * A vehicle usually serves one trip per feed, sometimes also the next one, so each vehicle has a short
+ * run of trip positions ordered by the trip's first stop time. Runs are stored back to back (CSR layout)
+ * in the order of the vehicles' dictionary codes, so a lookup is a binary search and allocates nothing.
+ */
+public final class VehicleIndex {
+
+    private final IdDictionary dictionary;
+    /** Dictionary codes of the vehicles, ascending. */
+    private final int[] vehicleCodes;
+    private final int[] offsets;
+    private final int[] trips;
+    private final long[] tripStartTimes;
+    private final long[] tripEndTimes;
+
+    private VehicleIndex(IdDictionary dictionary, int[] vehicleCodes, int[] offsets, int[] trips,
+                         long[] tripStartTimes, long[] tripEndTimes) {
+        this.dictionary = dictionary;
+        this.vehicleCodes = vehicleCodes;
+        this.offsets = offsets;
+        this.trips = trips;
+        this.tripStartTimes = tripStartTimes;
+        this.tripEndTimes = tripEndTimes;
+    }
+
+    /**
+     * @param columns Trips of the partition; trips without a vehicle id are not indexed.
+     * @return Index of all vehicles in the partition.
+     */
+    public static VehicleIndex build(TripColumns columns) {
+        int tripCount = columns.tripCount();
+        long[] startTimes = new long[tripCount];
+        long[] endTimes = new long[tripCount];
+        int indexed = 0;
+
+        for (int tripIndex = 0; tripIndex < tripCount; tripIndex++) {
+            long start = Long.MAX_VALUE;
+            long end = StopTimeRecord.NO_TIME;
+            for (int row = columns.firstRow(tripIndex); row < columns.endRow(tripIndex); row++) {
+                long time = columns.eventTime(row);
+                if (time != StopTimeRecord.NO_TIME) {
+                    start = Math.min(start, time);
+                    end = Math.max(end, time);
+                }
+            }
+            startTimes[tripIndex] = start;
+            endTimes[tripIndex] = end;
+            if (columns.vehicleId(tripIndex) != IdDictionary.EMPTY) {
+                indexed++;
+            }
+        }
+
+        // sort by (vehicle, start time) through boxed positions; runs once per partition build
+        Integer[] order = new Integer[indexed];
+        int next = 0;
+        for (int tripIndex = 0; tripIndex < tripCount; tripIndex++) {
+            if (columns.vehicleId(tripIndex) != IdDictionary.EMPTY) {
+                order[next++] = tripIndex;
+            }
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(columns::vehicleId)
+                .thenComparingLong(tripIndex -> startTimes[tripIndex]));
+
+        int[] trips = new int[indexed];
+        int[] vehicleCodes = new int[indexed];
+        int[] offsets = new int[indexed + 1];
+        int vehicles = 0;
+        for (int i = 0; i < indexed; i++) {
+            trips[i] = order[i];
+            int vehicle = columns.vehicleId(order[i]);
+            if (vehicles == 0 || vehicleCodes[vehicles - 1] != vehicle) {
+                vehicleCodes[vehicles] = vehicle;
+                offsets[vehicles] = i;
+                vehicles++;
+            }
+        }
+        offsets[vehicles] = indexed;
+
+        return new VehicleIndex(columns.dictionary(), Arrays.copyOf(vehicleCodes, vehicles),
+                Arrays.copyOf(offsets, vehicles + 1), trips, startTimes, endTimes);
+    }
+
+    /**
+     * Picks the trip the vehicle is currently serving: the earliest one that still has a stop time
+     * at or after {@code now}, or its last trip if all of them are already finished.
+     *
+     * @param vehicleId VehicleDescriptor.id to look up.
+     * @param now Reference time in POSIX seconds.
+     * @return Position of the trip in the partition, -1 if the vehicle is not in the partition.
+     */
+    public int currentTrip(String vehicleId, long now) {
+        return currentTrip(dictionary.find(vehicleId), now);
+    }
+
+    /**
+     * Same as {@link #currentTrip(String, long)} for a vehicle already looked up in the dictionary.
+     *
+     * @param vehicleCode Dictionary code of the vehicle, or {@link IdDictionary#ABSENT}.
+     */
+    public int currentTrip(int vehicleCode, long now) {
+        int slot = vehicleCode == IdDictionary.ABSENT ? -1 : Arrays.binarySearch(vehicleCodes, vehicleCode);
+        if (slot < 0) {
+            return -1;
+        }
+
+        for (int i = offsets[slot]; i < offsets[slot + 1]; i++) {
+            if (isRunning(trips[i], now)) {
+                return trips[i];
+            }
+        }
+        return trips[offsets[slot + 1] - 1];
+    }
+
+    /**
+     * @return Whether the trip still has a stop time at or after {@code now}.
+     */
+    public boolean isRunning(int tripIndex, long now) {
+        return tripEndTimes[tripIndex] != StopTimeRecord.NO_TIME && tripEndTimes[tripIndex] >= now;
+    }
+
+    /**
+     * @return Earliest stop time of the trip, Long.MAX_VALUE if it has none.
+     */
+    public long tripStartTime(int tripIndex) {
+        return tripStartTimes[tripIndex];
+    }
+
+    public int vehicleCount() {
+        return vehicleCodes.length;
+    }
+}
@@ -0,0 +1,13 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * An alert found for a query, together with the feed that reported it.
+ */
+@Value
+public class ActiveAlert {
+
+    String feed;
+    AlertRecord alert;
+}
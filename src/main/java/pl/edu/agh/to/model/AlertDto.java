@@ -0,0 +1,24 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Active service alert; absent texts are null.
+ */
+@Value
+@Builder
+@JsonPropertyOrder({ "alertId", "mode", "cause", "effect", "severity", "header", "description", "url" })
+public class AlertDto {
+
+    String alertId;
+    /** Feed that reported the alert. */
+    String mode;
+    String cause;
+    String effect;
+    String severity;
+    String header;
+    String description;
+    String url;
+}
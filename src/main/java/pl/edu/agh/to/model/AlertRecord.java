@@ -0,0 +1,86 @@
+package pl.edu.agh.to.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * The subset of a ServiceAlert entity used by the service: what it says, when it is active and what it affects.
+ * Missing identifiers and texts are empty strings, mirroring the defaults of the generated GtfsRealtime classes.
+ */
+@Value
+@Builder
+public class AlertRecord {
+
+    /** FeedEntity.id of the alert. */
+    @Builder.Default
+    String alertId = "";
+    /** Name of the Alert.Cause value, e.g. CONSTRUCTION. */
+    @Builder.Default
+    String cause = "UNKNOWN_CAUSE";
+    /** Name of the Alert.Effect value, e.g. DETOUR. */
+    @Builder.Default
+    String effect = "UNKNOWN_EFFECT";
+    /** Name of the Alert.SeverityLevel value, e.g. WARNING. */
+    @Builder.Default
+    String severity = "UNKNOWN_SEVERITY";
+    @Builder.Default
+    String headerText = "";
+    @Builder.Default
+    String descriptionText = "";
+    @Builder.Default
+    String url = "";
+    /** Periods the alert is shown in; an alert without periods is always active. */
+    @Builder.Default
+    List<Period> activePeriods = List.of();
+    /** Entities the alert affects. */
+    @Builder.Default
+    List<Selector> informedEntities = List.of();
+
+    /**
+     * @param time POSIX time in seconds.
+     */
+    public boolean isActiveAt(long time) {
+        if (activePeriods.isEmpty()) {
+            return true;
+        }
+        for (Period period : activePeriods) {
+            if (period.contains(time)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A TimeRange; either end may be open.
+     */
+    @Value
+    public static class Period {
+        /** Marks an open start. */
+        public static final long NO_START = 0;
+        /** Marks an open end. */
+        public static final long NO_END = Long.MAX_VALUE;
+
+        /** POSIX time in seconds the period starts at, inclusive. */
+        long start;
+        /** POSIX time in seconds the period ends at, inclusive. */
+        long end;
+
+        public boolean contains(long time) {
+            return start <= time && time <= end;
+        }
+    }
+
+    /**
+     * An EntitySelector narrowed to the identifiers the service can match; absent ones are empty strings.
+     * A selector naming several identifiers applies only where all of them match, e.g. to a stop on one route.
+     */
+    @Value
+    public static class Selector {
+        String routeId;
+        String stopId;
+        String tripId;
+    }
+}
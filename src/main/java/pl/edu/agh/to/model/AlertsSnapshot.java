@@ -0,0 +1,82 @@
+package pl.edu.agh.to.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable view of all ServiceAlerts feeds. A new instance is published for every refresh of any feed;
+ * refreshing one feed shares all other feeds, indexes included, with the previous snapshot.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class AlertsSnapshot {
+
+    long generation;
+    /** Time the most recently refreshed feed was fetched. */
+    Instant fetchedAt;
+    /** Feeds ordered by name. */
+    List<FeedAlerts> feeds;
+
+    public static AlertsSnapshot of(long generation, Instant fetchedAt, List<FeedAlerts> feeds) {
+        List<FeedAlerts> ordered = new ArrayList<>(feeds);
+        ordered.sort(Comparator.comparing(FeedAlerts::getName));
+        return new AlertsSnapshot(generation, fetchedAt, List.copyOf(ordered));
+    }
+
+    /**
+     * Builds the next snapshot with the given feed added, or replacing the feed of the same name.
+     */
+    public AlertsSnapshot withFeed(long generation, Instant fetchedAt, FeedAlerts feed) {
+        List<FeedAlerts> next = new ArrayList<>(feeds.size() + 1);
+        for (FeedAlerts existing : feeds) {
+            if (!existing.getName().equals(feed.getName())) {
+                next.add(existing);
+            }
+        }
+        next.add(feed);
+        return of(generation, fetchedAt, next);
+    }
+
+    /**
+     * @return The feed with the given name, or empty if the snapshot has no data from it.
+     */
+    public Optional<FeedAlerts> feed(String name) {
+        for (FeedAlerts feed : feeds) {
+            if (feed.getName().equals(name)) {
+                return Optional.of(feed);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public int getAlertCount() {
+        int count = 0;
+        for (FeedAlerts feed : feeds) {
+            count += feed.getAlerts().size();
+        }
+        return count;
+    }
+
+    /**
+     * @param time POSIX time in seconds the alerts must be active at.
+     * @param feed Feed name, or null for all feeds.
+     * @return Alerts shown at the stop, feed after feed.
+     */
+    public List<ActiveAlert> forStop(String stopId, long time, String feed) {
+        List<FeedAlerts> selected = feed == null ? feeds : feed(feed).map(List::of).orElse(List.of());
+        List<ActiveAlert> found = new ArrayList<>();
+        for (FeedAlerts alerts : selected) {
+            for (AlertRecord alert : alerts.forStop(stopId, time)) {
+                found.add(new ActiveAlert(alerts.getName(), alert));
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,26 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "mode", "firstFeedTimestamp", "lastFeedTimestamp", "bytes" })
+public class ArchiveSegmentDto {
+
+    /** Feed the segment belongs to. */
+    String mode;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime firstFeedTimestamp;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime lastFeedTimestamp;
+
+    /** Compressed size of the segment file. */
+    long bytes;
+}
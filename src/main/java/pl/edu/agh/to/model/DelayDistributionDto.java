@@ -0,0 +1,24 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Summary of a delay distribution in seconds. Mean and percentiles are null if there are no observations.
+ */
+@Value
+@Builder
+@JsonPropertyOrder({ "count", "mean", "p50", "p90", "p99", "lateCount", "earlyCount" })
+public class DelayDistributionDto {
+
+    long count;
+    Double mean;
+    Integer p50;
+    Integer p90;
+    Integer p99;
+    /** Observations delayed by at least a minute. */
+    long lateCount;
+    /** Observations at least a minute ahead of schedule. */
+    long earlyCount;
+}
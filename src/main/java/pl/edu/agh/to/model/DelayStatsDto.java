@@ -0,0 +1,19 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "windowMinutes", "current", "rolling", "routes" })
+public class DelayStatsDto {
+
+    long windowMinutes;
+    DelayDistributionDto current;
+    DelayDistributionDto rolling;
+    /** Every route with observations in the current snapshot or the rolling window, ordered by id. */
+    List<RouteDelaysDto> routes;
+}
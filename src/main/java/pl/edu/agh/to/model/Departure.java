@@ -0,0 +1,19 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * A single departure resolved from the snapshot indexes: the trip and its stop time with a departure time,
+ * together with the feed that reported it.
+ */
+@Value
+public class Departure {
+
+    String feed;
+    TripRecord trip;
+    StopTimeRecord stopTime;
+
+    public long getDepartureTime() {
+        return stopTime.getDepartureTime();
+    }
+}
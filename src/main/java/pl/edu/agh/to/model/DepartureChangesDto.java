@@ -0,0 +1,23 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One event of a departure stream. The first event of a subscription carries every followed departure
+ * as changed; later ones only the departures that are new or differ, and those no longer followed.
+ */
+@Value
+@Builder
+@JsonPropertyOrder({ "generation", "changed", "removed" })
+public class DepartureChangesDto {
+
+    /** Generation of the TripUpdates snapshot the event was computed from. */
+    long generation;
+    List<StopDepartureDto> changed;
+    /** Departures that left the stream, e.g. because they departed or their trip was cancelled. */
+    List<DepartureRefDto> removed;
+}
@@ -0,0 +1,16 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Value;
+
+/**
+ * Identifies a departure of a stream: a trip calling at a stop, in a feed.
+ */
+@Value
+@JsonPropertyOrder({ "mode", "tripId", "stopId" })
+public class DepartureRefDto {
+
+    String mode;
+    String tripId;
+    String stopId;
+}
@@ -0,0 +1,35 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * Selects the departures a push stream follows: those of a stop, of a route or of a vehicle's current trip,
+ * optionally within a single feed. Subscribers with equal filters share one stream.
+ */
+@Value
+public class DepartureStreamFilter {
+
+    public enum Kind { STOP, ROUTE, VEHICLE }
+
+    Kind kind;
+    String id;
+    /** Feed name, or null for all feeds. */
+    String mode;
+
+    /**
+     * @return Filter on whichever of the ids is given.
+     * @throws IllegalArgumentException unless exactly one of the ids is given.
+     */
+    public static DepartureStreamFilter of(String stopId, String routeId, String vehicleId, String mode) {
+        int given = (stopId != null ? 1 : 0) + (routeId != null ? 1 : 0) + (vehicleId != null ? 1 : 0);
+        if (given != 1) {
+            throw new IllegalArgumentException("Exactly one of stopId, routeId and vehicleId must be given");
+        }
+        if (stopId != null) {
+            return new DepartureStreamFilter(Kind.STOP, stopId, mode);
+        }
+        return routeId != null
+                ? new DepartureStreamFilter(Kind.ROUTE, routeId, mode)
+                : new DepartureStreamFilter(Kind.VEHICLE, vehicleId, mode);
+    }
+}
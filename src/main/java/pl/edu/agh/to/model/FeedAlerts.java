@@ -0,0 +1,68 @@
+package pl.edu.agh.to.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
+import pl.edu.agh.to.index.AlertIndex;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The alerts of a single ServiceAlerts feed, e.g. the bus or the tram feed,
+ * together with the index over the entities and periods they inform about.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class FeedAlerts {
+
+    /** Name of the configured feed, which is also the transport mode it covers. */
+    String name;
+    Instant fetchedAt;
+    /** FeedHeader.timestamp of the feed, 0 if unknown. */
+    long feedTimestamp;
+    List<AlertRecord> alerts;
+    @Getter(AccessLevel.PACKAGE)
+    AlertIndex index;
+
+    /**
+     * @param alerts Parsed alerts; the list is copied.
+     */
+    public static FeedAlerts build(String name, Instant fetchedAt, long feedTimestamp, List<AlertRecord> alerts) {
+        List<AlertRecord> copy = List.copyOf(alerts);
+        return new FeedAlerts(name, fetchedAt, feedTimestamp, copy, AlertIndex.build(copy));
+    }
+
+    /**
+     * Alerts of a single departure: those about its stop, trip or route, or about the whole feed.
+     *
+     * @param time POSIX time in seconds the alerts must be active at.
+     * @return Matching alerts in feed order.
+     */
+    public List<AlertRecord> forDeparture(String stopId, String routeId, String tripId, long time) {
+        return resolve(index.matching(stopId, routeId, tripId, time));
+    }
+
+    /**
+     * Alerts shown at a stop: those about the stop, on any route, or about the whole feed.
+     *
+     * @param time POSIX time in seconds the alerts must be active at.
+     * @return Matching alerts in feed order.
+     */
+    public List<AlertRecord> forStop(String stopId, long time) {
+        return resolve(index.matching(stopId, null, null, time));
+    }
+
+    private List<AlertRecord> resolve(int[] matches) {
+        if (matches.length == 0) {
+            return List.of();
+        }
+        List<AlertRecord> resolved = new ArrayList<>(matches.length);
+        for (int match : matches) {
+            resolved.add(alerts.get(match));
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,25 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+/**
+ * Outcome of a conditional feed download.
+ * The body is streamed as it arrives from the network and must be consumed exactly once;
+ * it is null when the GTFS API answered 304 Not Modified.
+ */
+@Value
+public class FeedFetchResult {
+
+    Flux<DataBuffer> body;
+    FeedValidators validators;
+
+    public static FeedFetchResult notModified(FeedValidators validators) {
+        return new FeedFetchResult(null, validators);
+    }
+
+    public boolean isNotModified() {
+        return body == null;
+    }
+}
@@ -0,0 +1,29 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "mode", "fetchedAt", "feedTimestamp", "ageSeconds", "stale", "tripCount", "departureCount" })
+public class FeedInfoDto {
+
+    /** Name of the feed, accepted by the mode filter of the endpoints. */
+    String mode;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime fetchedAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime feedTimestamp;
+
+    long ageSeconds;
+    /** True while the feed's data is restored from disk instead of freshly fetched. */
+    boolean stale;
+    int tripCount;
+    int departureCount;
+}
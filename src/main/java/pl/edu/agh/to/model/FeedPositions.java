@@ -0,0 +1,43 @@
+package pl.edu.agh.to.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
+import pl.edu.agh.to.index.PositionGrid;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The vehicle positions of a single VehiclePositions feed, e.g. the bus or the tram feed,
+ * together with the grid index over their coordinates.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class FeedPositions {
+
+    /** Name of the configured feed, which is also the transport mode it covers. */
+    String name;
+    Instant fetchedAt;
+    /** FeedHeader.timestamp of the feed, 0 if unknown. */
+    long feedTimestamp;
+    List<VehiclePositionRecord> vehicles;
+    @Getter(AccessLevel.PACKAGE)
+    PositionGrid grid;
+
+    /**
+     * @param vehicles Parsed positions; the list is copied.
+     */
+    public static FeedPositions build(String name, Instant fetchedAt, long feedTimestamp,
+                                      List<VehiclePositionRecord> vehicles) {
+        double[] latitudes = new double[vehicles.size()];
+        double[] longitudes = new double[vehicles.size()];
+        for (int i = 0; i < vehicles.size(); i++) {
+            latitudes[i] = vehicles.get(i).getLatitude();
+            longitudes[i] = vehicles.get(i).getLongitude();
+        }
+        return new FeedPositions(name, fetchedAt, feedTimestamp, List.copyOf(vehicles),
+                PositionGrid.build(latitudes, longitudes));
+    }
+}
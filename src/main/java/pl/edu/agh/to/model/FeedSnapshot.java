@@ -0,0 +1,196 @@
+package pl.edu.agh.to.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import pl.edu.agh.to.index.IdDictionary;
+import pl.edu.agh.to.index.TripColumns;
+import pl.edu.agh.to.index.TripPartition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The part of a {@link TripUpdatesSnapshot} built from a single TripUpdates feed, e.g. the bus or the tram feed.
+ * <p>
+ * Trips are split into partitions by FeedEntity.id, each with its own indexes. The number of partitions is a power
+ * of two derived from the trip count, about {@value #TRIPS_PER_PARTITION} trips each, so rebuilding a partition
+ * costs the same however large the feed is. A full dataset builds every partition; a differential update rebuilds
+ * only the partitions holding changed entities and shares the rest with the previous version of the feed, unless
+ * the feed has outgrown its partitions, in which case they are split anew.
+ * Entity ids only have to be unique within their feed.
+ * <p>
+ * All partitions of a feed encode their ids with the feed's {@link IdDictionary}, which is carried over to the next
+ * version of the feed, so unchanged trips keep their codes. A full dataset replacing a version that leaves more
+ * than half of the dictionary's ids unused is encoded into a new dictionary holding only the ids it uses.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class FeedSnapshot {
+
+    /** Trips per partition the partition count aims at. */
+    public static final int TRIPS_PER_PARTITION = 256;
+
+    /** Name of the configured feed, which is also the transport mode it covers. */
+    String name;
+    Instant fetchedAt;
+    /** FeedHeader.timestamp of the feed, 0 if unknown. */
+    long feedTimestamp;
+    /** Whether the data comes from a previous run instead of a feed fetched by this process. */
+    boolean stale;
+    List<TripPartition> partitions;
+    IdDictionary dictionary;
+    int tripCount;
+    int departureCount;
+
+    /**
+     * Builds the feed and all of its indexes from a full dataset.
+     *
+     * @param trips Parsed trips; the list is copied.
+     */
+    public static FeedSnapshot build(String name, Instant fetchedAt, long feedTimestamp, List<TripRecord> trips) {
+        return partition(name, fetchedAt, feedTimestamp, false, new IdDictionary(), trips);
+    }
+
+    /**
+     * Builds the next version of the feed from a full dataset, encoding it with this version's dictionary
+     * or, if most of the dictionary's ids are no longer used by this version, with a new one holding only
+     * the dataset's ids. The choice is made before encoding, so the partitions are built once; ids the dataset
+     * stops using are only taken into account by the next full dataset.
+     *
+     * @param trips Parsed trips; the list is copied.
+     */
+    public FeedSnapshot applyFullDataset(Instant fetchedAt, long feedTimestamp, List<TripRecord> trips) {
+        IdDictionary encoding = dictionary.size() <= 2 * liveIds() ? dictionary : new IdDictionary();
+        return partition(name, fetchedAt, feedTimestamp, false, encoding, trips);
+    }
+
+    /**
+     * Rebuilds a feed persisted by a previous run. The result is marked stale.
+     *
+     * @param fetchedAt Time the persisted feed was originally fetched.
+     */
+    public static FeedSnapshot restore(String name, Instant fetchedAt, long feedTimestamp, List<TripRecord> trips) {
+        return partition(name, fetchedAt, feedTimestamp, true, new IdDictionary(), trips);
+    }
+
+    private static FeedSnapshot partition(String name, Instant fetchedAt, long feedTimestamp, boolean stale,
+                                          IdDictionary dictionary, List<TripRecord> trips) {
+        int partitionCount = partitionCount(trips.size());
+        List<List<TripRecord>> grouped = new ArrayList<>(partitionCount);
+        for (int p = 0; p < partitionCount; p++) {
+            grouped.add(new ArrayList<>());
+        }
+        for (TripRecord trip : trips) {
+            grouped.get(partitionOf(trip.getEntityId(), partitionCount)).add(trip);
+        }
+
+        List<TripPartition> partitions = new ArrayList<>(partitionCount);
+        for (List<TripRecord> group : grouped) {
+            partitions.add(TripPartition.build(dictionary, group));
+        }
+        return assemble(name, fetchedAt, feedTimestamp, stale, dictionary, partitions);
+    }
+
+    /**
+     * Builds the next version of the feed by applying a DIFFERENTIAL feed to this one.
+     * Partitions without changed entities are shared with this version as they are; if the feed grows past
+     * {@value #TRIPS_PER_PARTITION} trips per partition on average, all of them are rebuilt into twice as many
+     * or more. A delta applied to a stale feed stays stale, since the base may be missing earlier deltas.
+     *
+     * @param upserts Trips replacing the trips with the same entity id, or added if there are none.
+     * If an entity id occurs more than once, the last trip wins.
+     * @param deletedEntityIds Entity ids marked with is_deleted.
+     */
+    public FeedSnapshot applyDifferential(Instant fetchedAt, long feedTimestamp,
+                                          List<TripRecord> upserts, Set<String> deletedEntityIds) {
+        Map<Integer, Map<String, TripRecord>> upsertsByPartition = new HashMap<>();
+        for (TripRecord trip : upserts) {
+            upsertsByPartition.computeIfAbsent(partitionOf(trip.getEntityId()), p -> new LinkedHashMap<>())
+                    .put(trip.getEntityId(), trip);
+        }
+        Map<Integer, Set<String>> deletionsByPartition = new HashMap<>();
+        for (String entityId : deletedEntityIds) {
+            deletionsByPartition.computeIfAbsent(partitionOf(entityId), p -> new HashSet<>()).add(entityId);
+        }
+
+        List<TripPartition> next = new ArrayList<>(partitions);
+        int tripCount = 0;
+        for (int p = 0; p < partitions.size(); p++) {
+            Collection<TripRecord> changed = upsertsByPartition.getOrDefault(p, Map.of()).values();
+            Set<String> deleted = deletionsByPartition.getOrDefault(p, Set.of());
+            if (!changed.isEmpty() || !deleted.isEmpty()) {
+                next.set(p, partitions.get(p).apply(changed, deleted));
+            }
+            tripCount += next.get(p).getColumns().tripCount();
+        }
+        if (partitionCount(tripCount) > partitions.size()) {
+            // doubling at least, so the cost of splitting is amortized over the trips added since the last split
+            List<TripRecord> trips = new ArrayList<>(tripCount);
+            next.forEach(partition -> trips.addAll(partition.getTrips()));
+            return partition(name, fetchedAt, feedTimestamp, stale, dictionary, trips);
+        }
+        return assemble(name, fetchedAt, feedTimestamp, stale, dictionary, next);
+    }
+
+    /**
+     * @return Partition of this feed holding the entity with the given FeedEntity.id.
+     */
+    public int partitionOf(String entityId) {
+        return partitionOf(entityId, partitions.size());
+    }
+
+    /**
+     * @return Number of partitions for a feed with the given number of trips: the least power of two
+     * keeping them at most {@value #TRIPS_PER_PARTITION} trips each on average.
+     */
+    public static int partitionCount(int tripCount) {
+        int needed = Math.max(1, (tripCount + TRIPS_PER_PARTITION - 1) / TRIPS_PER_PARTITION);
+        return needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static int partitionOf(String entityId, int partitionCount) {
+        return entityId.hashCode() & (partitionCount - 1);
+    }
+
+    /**
+     * @return Number of distinct ids, the empty one included, used by the trips of this version of the feed.
+     */
+    private int liveIds() {
+        BitSet live = new BitSet(dictionary.size());
+        live.set(IdDictionary.EMPTY);
+        for (TripPartition partition : partitions) {
+            TripColumns columns = partition.getColumns();
+            for (int trip = 0; trip < columns.tripCount(); trip++) {
+                live.set(columns.entityId(trip));
+                live.set(columns.tripId(trip));
+                live.set(columns.routeId(trip));
+                live.set(columns.vehicleId(trip));
+            }
+            for (int row = 0; row < columns.rowCount(); row++) {
+                live.set(columns.stopId(row));
+            }
+        }
+        return live.cardinality();
+    }
+
+    private static FeedSnapshot assemble(String name, Instant fetchedAt, long feedTimestamp, boolean stale,
+                                         IdDictionary dictionary, List<TripPartition> partitions) {
+        int tripCount = 0;
+        int departureCount = 0;
+        for (TripPartition partition : partitions) {
+            tripCount += partition.getColumns().tripCount();
+            departureCount += partition.getDepartures().size();
+        }
+        return new FeedSnapshot(name, fetchedAt, feedTimestamp, stale, List.copyOf(partitions), dictionary,
+                tripCount, departureCount);
+    }
+}
@@ -0,0 +1,16 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * HTTP cache validators returned by the GTFS API for the last processed feed.
+ * Sent back as If-None-Match / If-Modified-Since so an unchanged feed is answered with 304.
+ */
+@Value
+public class FeedValidators {
+
+    public static final FeedValidators NONE = new FeedValidators(null, null);
+
+    String etag;
+    String lastModified;
+}
@@ -0,0 +1,14 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * A vehicle found around a point, together with the feed that reported it and its distance from the point.
+ */
+@Value
+public class NearbyVehicle {
+
+    String feed;
+    VehiclePositionRecord position;
+    double distanceMeters;
+}
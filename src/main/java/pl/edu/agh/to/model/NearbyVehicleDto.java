@@ -0,0 +1,32 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "vehicleId", "mode", "tripId", "routeId", "latitude", "longitude", "bearing",
+        "distanceMeters", "positionTime", "nextStop" })
+public class NearbyVehicleDto {
+
+    String vehicleId;
+    /** Feed that reported the position. */
+    String mode;
+    String tripId;
+    String routeId;
+    double latitude;
+    double longitude;
+    /** Degrees clockwise from true north, null if unknown. */
+    Float bearing;
+    /** Great-circle distance from the queried point, rounded to whole meters. */
+    long distanceMeters;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime positionTime;
+    /** Next stop of the vehicle's trip from TripUpdates, null if the trip is not in the TripUpdates snapshot. */
+    VehicleStopDto nextStop;
+}
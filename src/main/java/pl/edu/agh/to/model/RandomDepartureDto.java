@@ -9,7 +9,7 @@ import java.time.LocalDateTime;
 
 @Value
 @Builder
-@JsonPropertyOrder({ "vehicleId", "stopId", "departureTime" })
+@JsonPropertyOrder({ "vehicleId", "stopId", "departureTime", "mode", "stale" })
 public class RandomDepartureDto {
 
     String vehicleId;
@@ -17,4 +17,9 @@ public class RandomDepartureDto {
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
     LocalDateTime departureTime;
+
+    /** Feed that reported the departure. */
+    String mode;
+    /** True if the departure comes from a feed restored from disk rather than a freshly fetched one. */
+    boolean stale;
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package pl.edu.agh.to.model;
+
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+/**
+ * Encodings of the responses that are served pre-encoded: JSON by default, or the Protobuf messages
+ * of {@code ztp-api.proto} for clients that ask for them.
+ */
+public enum ResponseFormat {
+
+    JSON(MediaType.APPLICATION_JSON),
+    PROTOBUF(new MediaType("application", "x-protobuf"));
+
+    private final MediaType mediaType;
+
+    ResponseFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Picks Protobuf only if the client names it explicitly and prefers it at least as much as JSON;
+     * wildcards, a missing Accept header and unsupported types all get JSON.
+     *
+     * @param accept Media types of the Accept header.
+     */
+    public static ResponseFormat negotiate(List<MediaType> accept) {
+        double jsonQuality = accept.isEmpty() ? 1 : 0;
+        double protobufQuality = 0;
+        for (MediaType type : accept) {
+            if (type.includes(JSON.mediaType)) {
+                jsonQuality = Math.max(jsonQuality, type.getQualityValue());
+            }
+            if (type.equalsTypeAndSubtype(PROTOBUF.mediaType)) {
+                protobufQuality = Math.max(protobufQuality, type.getQualityValue());
+            }
+        }
+        return protobufQuality > 0 && protobufQuality >= jsonQuality ? PROTOBUF : JSON;
+    }
+}
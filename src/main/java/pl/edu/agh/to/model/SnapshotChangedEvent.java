@@ -0,0 +1,14 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * Published synchronously after every {@link SnapshotPublishedEvent}, in generation order, with what changed
+ * between the two snapshots.
+ */
+@Value
+public class SnapshotChangedEvent {
+
+    TripUpdatesSnapshot current;
+    SnapshotChanges changes;
+}
@@ -0,0 +1,75 @@
+package pl.edu.agh.to.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * What changed between two consecutive TripUpdates snapshots, entity by entity.
+ * <p>
+ * Trips are matched by feed and FeedEntity.id. A trip whose trip or route id changed is reported as removed
+ * and added; otherwise its vehicle reassignment and stop time changes are reported. Stop times are matched
+ * by stop in sequence order, so a stop that starts or stops being reported is a change with one side null.
+ */
+@Value
+@Builder
+public class SnapshotChanges {
+
+    /** Generation of the earlier snapshot, 0 if there was none. */
+    long previousGeneration;
+    long generation;
+    @Builder.Default
+    List<TripChange> addedTrips = List.of();
+    @Builder.Default
+    List<TripChange> removedTrips = List.of();
+    @Builder.Default
+    List<StopTimeChange> stopTimeChanges = List.of();
+    @Builder.Default
+    List<VehicleReassignment> vehicleReassignments = List.of();
+    /** Trips present in both snapshots with the same content. */
+    int unchangedTrips;
+
+    public boolean isEmpty() {
+        return addedTrips.isEmpty() && removedTrips.isEmpty() && stopTimeChanges.isEmpty()
+                && vehicleReassignments.isEmpty();
+    }
+
+    /**
+     * A trip added to or removed from a feed.
+     */
+    @Value
+    public static class TripChange {
+        String feed;
+        TripRecord trip;
+    }
+
+    /**
+     * A stop time of a trip whose times or delays changed, or that was added (previous is null)
+     * or dropped (current is null).
+     */
+    @Value
+    public static class StopTimeChange {
+        String feed;
+        String entityId;
+        String tripId;
+        /** Route and vehicle of the trip in the later snapshot; empty if absent. */
+        String routeId;
+        String vehicleId;
+        String stopId;
+        StopTimeRecord previous;
+        StopTimeRecord current;
+    }
+
+    /**
+     * A trip now reported as served by another vehicle; either id is empty if absent.
+     */
+    @Value
+    public static class VehicleReassignment {
+        String feed;
+        String entityId;
+        String tripId;
+        String previousVehicleId;
+        String vehicleId;
+    }
+}
@@ -0,0 +1,22 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "generation", "previousGeneration", "addedTrips", "removedTrips", "changedStopTimes",
+        "reassignedVehicles", "unchangedTrips" })
+public class SnapshotChangesDto {
+
+    long generation;
+    /** Generation the current snapshot was compared with, 0 for the first snapshot. */
+    long previousGeneration;
+    int addedTrips;
+    int removedTrips;
+    /** Stop times whose times or delays changed, or that started or stopped being reported. */
+    int changedStopTimes;
+    int reassignedVehicles;
+    int unchangedTrips;
+}
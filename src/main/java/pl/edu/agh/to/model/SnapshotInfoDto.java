@@ -0,0 +1,32 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "generation", "fetchedAt", "feedTimestamp", "ageSeconds", "stale", "tripCount", "departureCount",
+        "feeds" })
+public class SnapshotInfoDto {
+
+    long generation;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime fetchedAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime feedTimestamp;
+
+    long ageSeconds;
+    /** True while serving a snapshot restored from disk instead of a freshly fetched feed. */
+    boolean stale;
+    int tripCount;
+    int departureCount;
+    /** Provenance of the snapshot: the state of every feed it was merged from, ordered by mode. */
+    List<FeedInfoDto> feeds;
+}
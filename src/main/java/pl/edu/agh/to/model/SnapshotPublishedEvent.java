@@ -0,0 +1,15 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * Published synchronously by the snapshot store after every snapshot swap, in generation order.
+ * Listeners can compare partitions of both snapshots by identity to find what changed.
+ */
+@Value
+public class SnapshotPublishedEvent {
+
+    /** Snapshot replaced by this one, null for the first snapshot. */
+    TripUpdatesSnapshot previous;
+    TripUpdatesSnapshot current;
+}
@@ -0,0 +1,17 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "stopId", "current", "rolling" })
+public class StopDelaysDto {
+
+    String stopId;
+    /** Delays in the current snapshot. */
+    DelayDistributionDto current;
+    /** Delays reported by the feeds received within the rolling window. */
+    DelayDistributionDto rolling;
+}
@@ -0,0 +1,33 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "stopId", "departureTime", "departureDelay", "vehicleId", "tripId", "routeId", "mode", "alerts" })
+public class StopDepartureDto {
+
+    String stopId;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime departureTime;
+
+    /** Delay in seconds reported by the feed, null if absent. */
+    Integer departureDelay;
+
+    String vehicleId;
+    String tripId;
+    String routeId;
+    /** Feed that reported the departure. */
+    String mode;
+    /** Alerts active at the departure time; only present when requested. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    List<AlertDto> alerts;
+}
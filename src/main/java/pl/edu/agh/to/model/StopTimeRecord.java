@@ -0,0 +1,43 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * The subset of a TripUpdate.StopTimeUpdate used by the service.
+ * Absent times and delays are encoded as sentinels instead of wrapper objects.
+ */
+@Value
+public class StopTimeRecord {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+    public static final int NO_DELAY = Integer.MIN_VALUE;
+
+    String stopId;
+    long arrivalTime;
+    int arrivalDelay;
+    long departureTime;
+    int departureDelay;
+
+    public boolean hasArrivalTime() {
+        return arrivalTime != NO_TIME;
+    }
+
+    public boolean hasDepartureTime() {
+        return departureTime != NO_TIME;
+    }
+
+    public boolean hasArrivalDelay() {
+        return arrivalDelay != NO_DELAY;
+    }
+
+    public boolean hasDepartureDelay() {
+        return departureDelay != NO_DELAY;
+    }
+
+    /**
+     * @return Departure time if present, otherwise arrival time, NO_TIME if the update has neither.
+     */
+    public long eventTime() {
+        return hasDepartureTime() ? departureTime : arrivalTime;
+    }
+}
@@ -0,0 +1,26 @@
+package pl.edu.agh.to.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * The subset of a TripUpdate entity used by the service: identifiers and stop times only.
+ * Missing identifiers are empty strings, mirroring the defaults of the generated GtfsRealtime classes.
+ */
+@Value
+@Builder(toBuilder = true)
+public class TripRecord {
+
+    @Builder.Default
+    String entityId = "";
+    @Builder.Default
+    String tripId = "";
+    @Builder.Default
+    String routeId = "";
+    @Builder.Default
+    String vehicleId = "";
+    @Builder.Default
+    List<StopTimeRecord> stopTimes = List.of();
+}
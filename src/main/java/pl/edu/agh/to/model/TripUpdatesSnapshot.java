@@ -0,0 +1,443 @@
+package pl.edu.agh.to.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
+import pl.edu.agh.to.index.DepartureIndex;
+import pl.edu.agh.to.index.IdDictionary;
+import pl.edu.agh.to.index.TripColumns;
+import pl.edu.agh.to.index.TripPartition;
+import pl.edu.agh.to.index.VehicleIndex;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable view of all TripUpdates feeds together with the indexes built from them.
+ * A new instance is published for every successful refresh of any feed, so readers never observe
+ * a partially built state.
+ * <p>
+ * Every feed keeps its own {@link FeedSnapshot}; refreshing one feed shares all other feeds,
+ * indexes included, with the previous snapshot. Departures are numbered across all feeds in feed name order,
+ * so the departures of a single feed form one contiguous range.
+ * <p>
+ * A feed restored from disk after a restart is marked stale until the first full dataset of that feed replaces it.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class TripUpdatesSnapshot {
+
+    long generation;
+    /** Time the most recently refreshed feed was fetched. */
+    Instant fetchedAt;
+    /** Feeds ordered by name. */
+    List<FeedSnapshot> feeds;
+    int tripCount;
+    /** Partitions of all feeds, feed after feed. */
+    @Getter(AccessLevel.NONE)
+    List<TripPartition> partitions;
+    /** departureOffsets[p] is the global number of the first departure in partition p. */
+    @Getter(AccessLevel.NONE)
+    int[] departureOffsets;
+    /** partitionOffsets[f] is the position of the first partition of feed f; the last entry is the total. */
+    @Getter(AccessLevel.NONE)
+    int[] partitionOffsets;
+
+    /**
+     * @param feeds Feeds of the snapshot, at most one per name.
+     */
+    public static TripUpdatesSnapshot of(long generation, Instant fetchedAt, Collection<FeedSnapshot> feeds) {
+        List<FeedSnapshot> ordered = new ArrayList<>(feeds);
+        ordered.sort(Comparator.comparing(FeedSnapshot::getName));
+
+        List<TripPartition> partitions = new ArrayList<>();
+        int[] partitionOffsets = new int[ordered.size() + 1];
+        int tripCount = 0;
+        for (int f = 0; f < ordered.size(); f++) {
+            partitions.addAll(ordered.get(f).getPartitions());
+            partitionOffsets[f + 1] = partitions.size();
+            tripCount += ordered.get(f).getTripCount();
+        }
+        int[] departureOffsets = new int[partitions.size() + 1];
+        for (int p = 0; p < partitions.size(); p++) {
+            departureOffsets[p + 1] = departureOffsets[p] + partitions.get(p).getDepartures().size();
+        }
+        return new TripUpdatesSnapshot(generation, fetchedAt, List.copyOf(ordered), tripCount,
+                List.copyOf(partitions), departureOffsets, partitionOffsets);
+    }
+
+    /**
+     * Builds a snapshot holding a single feed from its full dataset.
+     *
+     * @param trips Parsed trips; the list is copied.
+     */
+    public static TripUpdatesSnapshot build(long generation, Instant fetchedAt, String feed, long feedTimestamp,
+                                            List<TripRecord> trips) {
+        return of(generation, fetchedAt, List.of(FeedSnapshot.build(feed, fetchedAt, feedTimestamp, trips)));
+    }
+
+    /**
+     * Builds the next snapshot with the given feed added, or replacing the feed of the same name.
+     * All other feeds are shared with this snapshot as they are.
+     */
+    public TripUpdatesSnapshot withFeed(long generation, Instant fetchedAt, FeedSnapshot feed) {
+        List<FeedSnapshot> next = new ArrayList<>(feeds.size() + 1);
+        for (FeedSnapshot existing : feeds) {
+            if (!existing.getName().equals(feed.getName())) {
+                next.add(existing);
+            }
+        }
+        next.add(feed);
+        return of(generation, fetchedAt, next);
+    }
+
+    /**
+     * @return The feed with the given name, or empty if the snapshot has no data from it.
+     */
+    public Optional<FeedSnapshot> feed(String name) {
+        for (FeedSnapshot feed : feeds) {
+            if (feed.getName().equals(name)) {
+                return Optional.of(feed);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return The newest FeedHeader.timestamp among the feeds, 0 if none is known.
+     */
+    public long getFeedTimestamp() {
+        long newest = 0;
+        for (FeedSnapshot feed : feeds) {
+            newest = Math.max(newest, feed.getFeedTimestamp());
+        }
+        return newest;
+    }
+
+    /**
+     * @return Whether any feed still serves data restored from a previous run.
+     */
+    public boolean isStale() {
+        for (FeedSnapshot feed : feeds) {
+            if (feed.isStale()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return All trips of the snapshot, grouped by feed and partition. Copies references, so not meant for hot paths.
+     */
+    public List<TripRecord> getTrips() {
+        List<TripRecord> trips = new ArrayList<>(tripCount);
+        for (TripPartition partition : partitions) {
+            trips.addAll(partition.getTrips());
+        }
+        return trips;
+    }
+
+    /**
+     * @return Number of stop times with a departure time across all feeds.
+     */
+    public int getDepartureCount() {
+        return departureOffsets[partitions.size()];
+    }
+
+    /**
+     * @param feed Feed name, or null for all feeds.
+     * @return Number of stop times with a departure time in the feed, 0 if the snapshot has no such feed.
+     */
+    public int getDepartureCount(String feed) {
+        if (feed == null) {
+            return getDepartureCount();
+        }
+        int index = feedIndex(feed);
+        return index < 0 ? 0 : firstDeparture(index + 1) - firstDeparture(index);
+    }
+
+    /**
+     * @param departure Global departure number, between 0 and {@link #getDepartureCount()} exclusive.
+     * @return The departure resolved from its partition.
+     */
+    public Departure departure(int departure) {
+        int low = 0;
+        int high = partitions.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (departureOffsets[mid] <= departure) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return resolve(low, departure - departureOffsets[low]);
+    }
+
+    /**
+     * @param feed Feed name, or null for all feeds.
+     * @param departure Departure number within the feed, between 0 and {@link #getDepartureCount(String)} exclusive.
+     * @return The departure resolved from its partition.
+     */
+    public Departure departure(String feed, int departure) {
+        return departure(feed == null ? departure : firstDeparture(feedIndex(feed)) + departure);
+    }
+
+    /**
+     * Merges the departure boards of a stop from all partitions of all feeds.
+     *
+     * @see #stopDepartures(String, long, int, String)
+     */
+    public List<Departure> stopDepartures(String stopId, long fromTime, int limit) {
+        return stopDepartures(stopId, fromTime, limit, null);
+    }
+
+    /**
+     * Merges the departure boards of a stop from all partitions of the selected feeds.
+     *
+     * @param stopId Stop to look up.
+     * @param fromTime Earliest departure time in POSIX seconds, inclusive.
+     * @param limit Maximum number of departures.
+     * @param feed Feed name, or null for all feeds.
+     * @return Departures ordered by time, empty if the stop has none.
+     */
+    public List<Departure> stopDepartures(String stopId, long fromTime, int limit, String feed) {
+        int first = firstPartition(feed);
+        int end = endPartition(feed);
+        if (first >= end) {
+            return List.of();
+        }
+        int[] stopCodes = codes(stopId, first, end);
+
+        int[][] boards = new int[end - first][];
+        int[] cursors = new int[end - first];
+        for (int p = first; p < end; p++) {
+            int stopCode = stopCodes[p - first];
+            boards[p - first] = stopCode == IdDictionary.ABSENT
+                    ? new int[0]
+                    : partitions.get(p).getStopDepartures().departuresFrom(stopCode, fromTime, limit);
+        }
+
+        List<Departure> merged = new ArrayList<>();
+        while (merged.size() < limit) {
+            int best = -1;
+            long bestTime = Long.MAX_VALUE;
+            for (int b = 0; b < boards.length; b++) {
+                if (cursors[b] < boards[b].length) {
+                    long time = partitions.get(first + b).getDepartures().departureTime(boards[b][cursors[b]]);
+                    if (best < 0 || time < bestTime) {
+                        best = b;
+                        bestTime = time;
+                    }
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            merged.add(resolve(first + best, boards[best][cursors[best]++]));
+        }
+        return merged;
+    }
+
+    /**
+     * Collects the departures of every trip on a route, e.g. for a live view of the whole route.
+     * Trips are matched by comparing dictionary codes in the trip columns; only matching trips are materialized.
+     *
+     * @param routeId TripDescriptor.route_id to look up.
+     * @param fromTime Earliest departure time in POSIX seconds, inclusive.
+     * @param feed Feed name, or null for all feeds.
+     * @return Departures ordered by time, empty if the route has none.
+     */
+    public List<Departure> routeDepartures(String routeId, long fromTime, String feed) {
+        int first = firstPartition(feed);
+        int end = endPartition(feed);
+        int[] routeCodes = codes(routeId, first, end);
+
+        List<Departure> found = new ArrayList<>();
+        for (int p = first; p < end; p++) {
+            int routeCode = routeCodes[p - first];
+            if (routeCode == IdDictionary.ABSENT || routeCode == IdDictionary.EMPTY) {
+                continue;
+            }
+            TripColumns columns = partitions.get(p).getColumns();
+            for (int trip = 0; trip < columns.tripCount(); trip++) {
+                if (columns.routeId(trip) != routeCode) {
+                    continue;
+                }
+                TripRecord record = null;
+                for (int row = columns.firstRow(trip); row < columns.endRow(trip); row++) {
+                    // absent departure times are Long.MIN_VALUE and never pass the check
+                    if (columns.departureTime(row) >= fromTime) {
+                        record = record == null ? columns.trip(trip) : record;
+                        found.add(new Departure(feedName(p), record, columns.stopTime(row)));
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(Departure::getDepartureTime));
+        return found;
+    }
+
+    /**
+     * Picks the trip the vehicle is currently serving in any feed.
+     *
+     * @see #currentVehicleTrip(String, long, String)
+     */
+    public Optional<VehicleTrip> currentVehicleTrip(String vehicleId, long now) {
+        return currentVehicleTrip(vehicleId, now, null);
+    }
+
+    /**
+     * Picks the trip the vehicle is currently serving: the earliest-starting one that still has a stop time
+     * at or after {@code now}, or its latest-starting trip if all of them are already finished.
+     *
+     * @param vehicleId VehicleDescriptor.id to look up.
+     * @param now Reference time in POSIX seconds.
+     * @param feed Feed name, or null for all feeds.
+     * @return The trip with the feed reporting it, or empty if the vehicle is not in the selected feeds.
+     */
+    public Optional<VehicleTrip> currentVehicleTrip(String vehicleId, long now, String feed) {
+        int first = firstPartition(feed);
+        int end = endPartition(feed);
+        int[] vehicleCodes = codes(vehicleId, first, end);
+
+        int best = -1;
+        int bestTrip = -1;
+        boolean bestRunning = false;
+        long bestStart = 0;
+
+        for (int p = first; p < end; p++) {
+            int vehicleCode = vehicleCodes[p - first];
+            if (vehicleCode == IdDictionary.ABSENT || vehicleCode == IdDictionary.EMPTY) {
+                continue;
+            }
+            VehicleIndex vehicles = partitions.get(p).getVehicles();
+            int trip = vehicles.currentTrip(vehicleCode, now);
+            if (trip < 0) {
+                continue;
+            }
+
+            boolean running = vehicles.isRunning(trip, now);
+            long start = vehicles.tripStartTime(trip);
+            boolean better = best < 0
+                    || (running && !bestRunning)
+                    || (running == bestRunning && (running ? start < bestStart : start > bestStart));
+            if (better) {
+                best = p;
+                bestTrip = trip;
+                bestRunning = running;
+                bestStart = start;
+            }
+        }
+        if (best < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new VehicleTrip(feedName(best), partitions.get(best).getColumns().trip(bestTrip)));
+    }
+
+    /**
+     * Looks a trip up by its TripDescriptor.trip_id, e.g. to join a vehicle position to its TripUpdate.
+     *
+     * @param tripId Trip id to look up.
+     * @param feed Feed name, or null for all feeds.
+     * @return The trip with the feed reporting it, or empty if no selected feed has the trip.
+     */
+    public Optional<VehicleTrip> trip(String tripId, String feed) {
+        int first = firstPartition(feed);
+        int end = endPartition(feed);
+        int[] tripCodes = codes(tripId, first, end);
+        for (int p = first; p < end; p++) {
+            int tripCode = tripCodes[p - first];
+            if (tripCode == IdDictionary.ABSENT || tripCode == IdDictionary.EMPTY) {
+                continue;
+            }
+            int trip = partitions.get(p).getTripIds().find(tripCode);
+            if (trip >= 0) {
+                return Optional.of(new VehicleTrip(feedName(p), partitions.get(p).getColumns().trip(trip)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return Code of the id in the dictionary of every partition in [first, end), {@link IdDictionary#ABSENT}
+     * where it is unknown. Partitions of a feed share its dictionary, so the id is looked up once per feed.
+     */
+    private int[] codes(String id, int first, int end) {
+        int[] codes = new int[end - first];
+        IdDictionary dictionary = null;
+        int code = IdDictionary.ABSENT;
+        for (int p = first; p < end; p++) {
+            IdDictionary partitionDictionary = partitions.get(p).getColumns().dictionary();
+            if (partitionDictionary != dictionary) {
+                dictionary = partitionDictionary;
+                code = dictionary.find(id);
+            }
+            codes[p - first] = code;
+        }
+        return codes;
+    }
+
+    /**
+     * @param now Reference point, usually the current instant of the application clock.
+     * @return Time elapsed since this snapshot was fetched.
+     */
+    public Duration age(Instant now) {
+        return Duration.between(fetchedAt, now);
+    }
+
+    private Departure resolve(int partitionIndex, int departure) {
+        TripPartition partition = partitions.get(partitionIndex);
+        DepartureIndex departures = partition.getDepartures();
+        TripColumns columns = partition.getColumns();
+        int trip = departures.tripIndex(departure);
+        return new Departure(feedName(partitionIndex), columns.trip(trip),
+                columns.stopTime(columns.firstRow(trip) + departures.stopIndex(departure)));
+    }
+
+    private String feedName(int partitionIndex) {
+        int feed = 0;
+        while (partitionOffsets[feed + 1] <= partitionIndex) {
+            feed++;
+        }
+        return feeds.get(feed).getName();
+    }
+
+    /**
+     * @return Position of the feed in {@link #feeds}, -1 if the snapshot has no such feed.
+     */
+    private int feedIndex(String feed) {
+        for (int f = 0; f < feeds.size(); f++) {
+            if (feeds.get(f).getName().equals(feed)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    private int firstDeparture(int feedIndex) {
+        return departureOffsets[partitionOffsets[feedIndex]];
+    }
+
+    private int firstPartition(String feed) {
+        if (feed == null) {
+            return 0;
+        }
+        int index = feedIndex(feed);
+        return index < 0 ? 0 : partitionOffsets[index];
+    }
+
+    private int endPartition(String feed) {
+        if (feed == null) {
+            return partitions.size();
+        }
+        int index = feedIndex(feed);
+        return index < 0 ? 0 : partitionOffsets[index + 1];
+    }
+}
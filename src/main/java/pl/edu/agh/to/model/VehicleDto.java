@@ -0,0 +1,21 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+@JsonPropertyOrder({ "vehicleId", "tripId", "routeId", "mode", "stops" })
+public class VehicleDto {
+
+    String vehicleId;
+    String tripId;
+    String routeId;
+    /** Feed that reported the trip. */
+    String mode;
+    /** Remaining stop-time updates of the current trip, in stop sequence order. */
+    List<VehicleStopDto> stops;
+}
@@ -0,0 +1,39 @@
+package pl.edu.agh.to.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The subset of a VehiclePosition entity used by the service: identifiers, coordinates and the time of the fix.
+ * Missing identifiers are empty strings, mirroring the defaults of the generated GtfsRealtime classes.
+ */
+@Value
+@Builder
+public class VehiclePositionRecord {
+
+    /** Marks a bearing the feed did not report. */
+    public static final float NO_BEARING = Float.NaN;
+    /** Marks a fix time the feed did not report. */
+    public static final long NO_TIMESTAMP = 0;
+
+    @Builder.Default
+    String vehicleId = "";
+    @Builder.Default
+    String tripId = "";
+    @Builder.Default
+    String routeId = "";
+    /** WGS-84 latitude in degrees. */
+    double latitude;
+    /** WGS-84 longitude in degrees. */
+    double longitude;
+    /** Degrees clockwise from true north, {@link #NO_BEARING} if unknown. */
+    @Builder.Default
+    float bearing = NO_BEARING;
+    /** POSIX time of the fix in seconds, {@link #NO_TIMESTAMP} if unknown. */
+    @Builder.Default
+    long timestamp = NO_TIMESTAMP;
+
+    public boolean hasBearing() {
+        return !Float.isNaN(bearing);
+    }
+}
@@ -0,0 +1,117 @@
+package pl.edu.agh.to.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import pl.edu.agh.to.index.PositionGrid;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable view of all VehiclePositions feeds. A new instance is published for every refresh of any feed;
+ * refreshing one feed shares all other feeds, grid indexes included, with the previous snapshot.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class VehiclePositionsSnapshot {
+
+    long generation;
+    /** Time the most recently refreshed feed was fetched. */
+    Instant fetchedAt;
+    /** Feeds ordered by name. */
+    List<FeedPositions> feeds;
+
+    public static VehiclePositionsSnapshot of(long generation, Instant fetchedAt, List<FeedPositions> feeds) {
+        List<FeedPositions> ordered = new ArrayList<>(feeds);
+        ordered.sort(Comparator.comparing(FeedPositions::getName));
+        return new VehiclePositionsSnapshot(generation, fetchedAt, List.copyOf(ordered));
+    }
+
+    /**
+     * Builds the next snapshot with the given feed added, or replacing the feed of the same name.
+     */
+    public VehiclePositionsSnapshot withFeed(long generation, Instant fetchedAt, FeedPositions feed) {
+        List<FeedPositions> next = new ArrayList<>(feeds.size() + 1);
+        for (FeedPositions existing : feeds) {
+            if (!existing.getName().equals(feed.getName())) {
+                next.add(existing);
+            }
+        }
+        next.add(feed);
+        return of(generation, fetchedAt, next);
+    }
+
+    /**
+     * @return The feed with the given name, or empty if the snapshot has no data from it.
+     */
+    public Optional<FeedPositions> feed(String name) {
+        for (FeedPositions feed : feeds) {
+            if (feed.getName().equals(name)) {
+                return Optional.of(feed);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public int getVehicleCount() {
+        int count = 0;
+        for (FeedPositions feed : feeds) {
+            count += feed.getVehicles().size();
+        }
+        return count;
+    }
+
+    /**
+     * @param radiusMeters Search radius around the point, in meters.
+     * @param limit Maximum number of vehicles.
+     * @param feed Feed name, or null for all feeds.
+     * @return Vehicles of the selected feeds within the radius, nearest first.
+     */
+    public List<NearbyVehicle> within(double latitude, double longitude, double radiusMeters, int limit,
+                                      String feed) {
+        List<NearbyVehicle> found = new ArrayList<>();
+        for (FeedPositions positions : selected(feed)) {
+            collect(positions, positions.getGrid().within(latitude, longitude, radiusMeters, limit),
+                    latitude, longitude, found);
+        }
+        return nearestFirst(found, limit);
+    }
+
+    /**
+     * @param k Maximum number of vehicles.
+     * @param feed Feed name, or null for all feeds.
+     * @return The k vehicles of the selected feeds nearest to the point, nearest first.
+     */
+    public List<NearbyVehicle> nearest(double latitude, double longitude, int k, String feed) {
+        List<NearbyVehicle> found = new ArrayList<>();
+        for (FeedPositions positions : selected(feed)) {
+            collect(positions, positions.getGrid().nearest(latitude, longitude, k), latitude, longitude, found);
+        }
+        return nearestFirst(found, k);
+    }
+
+    private List<FeedPositions> selected(String feed) {
+        return feed == null ? feeds : feed(feed).map(List::of).orElse(List.of());
+    }
+
+    private static void collect(FeedPositions positions, int[] matches, double latitude, double longitude,
+                                List<NearbyVehicle> found) {
+        PositionGrid grid = positions.getGrid();
+        for (int match : matches) {
+            found.add(new NearbyVehicle(positions.getName(), positions.getVehicles().get(match),
+                    grid.distanceMeters(match, latitude, longitude)));
+        }
+    }
+
+    /**
+     * Merges the per-feed results, each already nearest first and at most {@code limit} long.
+     */
+    private static List<NearbyVehicle> nearestFirst(List<NearbyVehicle> found, int limit) {
+        found.sort(Comparator.comparingDouble(NearbyVehicle::getDistanceMeters));
+        return found.size() > limit ? List.copyOf(found.subList(0, limit)) : found;
+    }
+}
@@ -0,0 +1,27 @@
+package pl.edu.agh.to.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single stop-time update of a vehicle's trip; absent values are null.
+ */
+@Value
+@Builder
+@JsonPropertyOrder({ "stopId", "arrivalTime", "arrivalDelay", "departureTime", "departureDelay" })
+public class VehicleStopDto {
+
+    String stopId;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime arrivalTime;
+    Integer arrivalDelay;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime departureTime;
+    Integer departureDelay;
+}
@@ -0,0 +1,13 @@
+package pl.edu.agh.to.model;
+
+import lombok.Value;
+
+/**
+ * The trip a vehicle is currently serving, together with the feed that reported it.
+ */
+@Value
+public class VehicleTrip {
+
+    String feed;
+    TripRecord trip;
+}
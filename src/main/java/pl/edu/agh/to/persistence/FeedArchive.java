@@ -0,0 +1,558 @@
+package pl.edu.agh.to.persistence;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only archive of raw TripUpdates feeds, one entry per distinct FeedHeader.timestamp of each feed.
+ * Every feed (e.g. bus, tram) has its own subdirectory with its own chain of segments.
+ * <p>
+ * Entries are appended to segment files that are rotated once they exceed the configured size.
+ * Each entry is compressed on its own behind a small uncompressed header
+ * (feed timestamp, incrementality, lengths and CRC32), so entries can be located by skipping
+ * over payloads and only the ones actually needed are inflated.
+ * A sparse in-memory index maps the first feed timestamp of every segment to the segment,
+ * so seeking to a point in time only scans the headers of one or a few segments.
+ * <p>
+ * A torn entry at the end of the last segment (e.g. after a crash) is truncated on startup.
+ * Once the archive exceeds {@code ztp.archive.max-bytes}, its oldest segments are deleted.
+ */
+@Slf4j
+@Component
+public class FeedArchive {
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".log";
+    /** feedTimestamp, full flag, raw length, compressed length, CRC32 of the compressed bytes. */
+    static final int ENTRY_HEADER_BYTES = Long.BYTES + 1 + 3 * Integer.BYTES;
+    /** New segment being written, renamed after the first feed timestamp it holds once its first entry completes. */
+    static final String PENDING_SEGMENT = SEGMENT_PREFIX + "pending" + SEGMENT_SUFFIX + ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    /** Feed name to the first feed timestamp of each of its segments to the segment's current state. */
+    private final Map<String, ConcurrentSkipListMap<Long, Segment>> segments = new ConcurrentHashMap<>();
+
+    public FeedArchive(@Value("${ztp.archive.path:}") String directory,
+                       @Value("${ztp.archive.segment-bytes:16777216}") long segmentBytes,
+                       @Value("${ztp.archive.max-bytes:1073741824}") long maxBytes) {
+        this.directory = directory.isBlank() ? null : Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return Whether feeds are archived; false if no archive directory is configured.
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Rebuilds the segment index from the archive directory and truncates a torn entry at its end.
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        segments.clear();
+
+        List<Path> feedDirectories = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            stream.forEach(feedDirectories::add);
+        }
+        for (Path feedDirectory : feedDirectories) {
+            openFeed(feedDirectory);
+        }
+        log.info("Opened feed archive {} with {} segments", directory, segments().size());
+    }
+
+    private void openFeed(Path feedDirectory) throws IOException {
+        String feed = feedDirectory.getFileName().toString();
+        List<Path> files = new ArrayList<>();
+        String glob = SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(feedDirectory, glob)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        Files.deleteIfExists(feedDirectory.resolve(PENDING_SEGMENT));
+
+        for (Path file : files) {
+            List<EntryRef> entries = scan(file, Files.size(file));
+            long validBytes = entries.isEmpty() ? 0 : entries.getLast().end();
+            if (validBytes < Files.size(file)) {
+                log.warn("Truncating torn entry at the end of archive segment {}", file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                }
+            }
+            if (entries.isEmpty()) {
+                Files.delete(file);
+                continue;
+            }
+            segmentsOf(feed).put(entries.getFirst().getFeedTimestamp(), new Segment(feed, file,
+                    entries.getFirst().getFeedTimestamp(), entries.getLast().getFeedTimestamp(), validBytes));
+        }
+    }
+
+    /**
+     * Compresses the feed and appends it to the feed's newest segment, rotating it if it is full.
+     * Feeds not newer than the last archived one of the same name are ignored, which deduplicates repeated feeds.
+     *
+     * @param name Name of the configured feed; also the name of its subdirectory.
+     * @param feedTimestamp FeedHeader.timestamp of the feed; feeds without one are not archived.
+     * @param fullDataset Whether the feed is a FULL_DATASET rather than a DIFFERENTIAL one.
+     * @param feed Raw Protobuf bytes of the feed.
+     * @return Whether the feed was appended.
+     */
+    public boolean append(String name, long feedTimestamp, boolean fullDataset, byte[] feed) throws IOException {
+        if (!isEnabled()) {
+            return false;
+        }
+        try (Appender appender = begin(name)) {
+            appender.write(feed);
+            return appender.commit(feedTimestamp, fullDataset);
+        }
+    }
+
+    /**
+     * Starts streaming a feed into the feed's newest segment, or into a new one if it is full.
+     * The feed is compressed as it is written, so it is never held in memory;
+     * its header is only known once it has been parsed, so the entry is completed by {@link Appender#commit}.
+     * Closing an appender that was not committed discards the partial entry.
+     * Entries of one feed are appended one at a time; a second appender of the same feed waits for the first.
+     *
+     * @param name Name of the configured feed; also the name of its subdirectory.
+     * @return Appender to write the raw Protobuf bytes of the feed to.
+     */
+    public Appender begin(String name) throws IOException {
+        if (!isEnabled()) {
+            throw new IllegalStateException("The feed archive is disabled");
+        }
+        ReentrantLock lock = locks.computeIfAbsent(name, feed -> new ReentrantLock());
+        lock.lock();
+        try {
+            Map.Entry<Long, Segment> newest = segmentsOf(name).lastEntry();
+            Segment segment = newest == null || newest.getValue().getBytes() >= segmentBytes
+                    ? null
+                    : newest.getValue();
+            Path feedDirectory = Files.createDirectories(directory.resolve(name));
+            return new Appender(name, lock, segment,
+                    segment != null ? segment.getPath() : feedDirectory.resolve(PENDING_SEGMENT));
+        } catch (IOException | RuntimeException ex) {
+            lock.unlock();
+            throw ex;
+        }
+    }
+
+    /**
+     * Deletes the oldest segments, regardless of their feed, until the archive fits into its size limit.
+     * The newest segment of every feed is kept, as it is the one being appended to.
+     */
+    private void enforceRetention() {
+        if (maxBytes <= 0) {
+            return;
+        }
+        synchronized (segments) {
+            List<Segment> all = segments();
+            long total = 0;
+            for (Segment segment : all) {
+                total += segment.getBytes();
+            }
+            List<Segment> deletable = new ArrayList<>();
+            for (Segment segment : all) {
+                if (!segment.getPath().equals(segmentsOf(segment.getFeed()).lastEntry().getValue().getPath())) {
+                    deletable.add(segment);
+                }
+            }
+            deletable.sort(Comparator.comparingLong(Segment::getLastTimestamp));
+            for (Segment segment : deletable) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                try {
+                    segmentsOf(segment.getFeed()).remove(segment.getFirstTimestamp());
+                    Files.deleteIfExists(segment.getPath());
+                    total -= segment.getBytes();
+                    log.info("Deleted archive segment {} to keep the archive under {} bytes",
+                            segment.getPath(), maxBytes);
+                } catch (IOException ex) {
+                    log.warn("Could not delete archive segment {}: {}", segment.getPath(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the feeds needed to reconstruct the state of one feed at the given time: the last FULL_DATASET feed
+     * archived at or before it, followed by every DIFFERENTIAL feed archived after that one, up to the time.
+     * If no full dataset precedes the time, the chain starts with the oldest archived feed.
+     *
+     * @param name Name of the configured feed.
+     * @param at Point in time in POSIX seconds, compared with FeedHeader.timestamp.
+     * @return Decompressed feeds in archive order, empty if nothing was archived at or before the time.
+     */
+    public List<ArchivedFeed> replayChain(String name, long at) {
+        Deque<EntryRef> chain = new ArrayDeque<>();
+        try {
+            NavigableMap<Long, Segment> feedSegments = segments.getOrDefault(name, new ConcurrentSkipListMap<>());
+            for (Segment segment : feedSegments.headMap(at, true).descendingMap().values()) {
+                List<EntryRef> entries = scan(segment.getPath(), segment.getBytes());
+                for (EntryRef entry : entries.reversed()) {
+                    if (entry.getFeedTimestamp() > at) {
+                        continue;
+                    }
+                    chain.addFirst(entry);
+                    if (entry.isFullDataset()) {
+                        return read(chain);
+                    }
+                }
+            }
+            return read(chain);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read the feed archive", ex);
+        }
+    }
+
+    /**
+     * @return Names of the feeds with archived entries, ordered by name.
+     */
+    public List<String> feeds() {
+        List<String> feeds = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentSkipListMap<Long, Segment>> feed : segments.entrySet()) {
+            if (!feed.getValue().isEmpty()) {
+                feeds.add(feed.getKey());
+            }
+        }
+        feeds.sort(null);
+        return feeds;
+    }
+
+    /**
+     * @return Segments ordered by feed name, then by their first feed timestamp.
+     */
+    public List<Segment> segments() {
+        List<Segment> all = new ArrayList<>();
+        for (String feed : feeds()) {
+            all.addAll(segments.get(feed).values());
+        }
+        return all;
+    }
+
+    private ConcurrentSkipListMap<Long, Segment> segmentsOf(String feed) {
+        return segments.computeIfAbsent(feed, name -> new ConcurrentSkipListMap<>());
+    }
+
+    private static List<EntryRef> scan(Path file, long limit) throws IOException {
+        List<EntryRef> entries = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position + ENTRY_HEADER_BYTES <= limit) {
+                header.clear();
+                readFully(channel, header, position);
+                long feedTimestamp = header.getLong();
+                boolean fullDataset = header.get() == 1;
+                int rawLength = header.getInt();
+                int compressedLength = header.getInt();
+                int checksum = header.getInt();
+
+                long payload = position + ENTRY_HEADER_BYTES;
+                // a zero timestamp marks an entry whose header was never written, as every archived feed has one
+                if (feedTimestamp <= 0 || compressedLength < 0 || rawLength < 0 || payload + compressedLength > limit) {
+                    break;
+                }
+                entries.add(new EntryRef(file, feedTimestamp, fullDataset, payload, rawLength, compressedLength, checksum));
+                position = payload + compressedLength;
+            }
+        }
+        return entries;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive segment");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static List<ArchivedFeed> read(Deque<EntryRef> chain) throws IOException {
+        Map<Path, FileChannel> channels = new HashMap<>();
+        try {
+            List<ArchivedFeed> feeds = new ArrayList<>(chain.size());
+            for (EntryRef entry : chain) {
+                FileChannel channel = channels.get(entry.getPath());
+                if (channel == null) {
+                    channel = FileChannel.open(entry.getPath(), StandardOpenOption.READ);
+                    channels.put(entry.getPath(), channel);
+                }
+                ByteBuffer compressed = channel.map(FileChannel.MapMode.READ_ONLY,
+                        entry.getOffset(), entry.getCompressedLength());
+
+                CRC32 checksum = new CRC32();
+                checksum.update(compressed.duplicate());
+                if ((int) checksum.getValue() != entry.getChecksum()) {
+                    throw new IOException("Archived feed " + entry.getFeedTimestamp() + " is corrupted: checksum mismatch");
+                }
+                feeds.add(new ArchivedFeed(entry.getFeedTimestamp(), entry.isFullDataset(),
+                        inflate(compressed, entry.getRawLength())));
+            }
+            return feeds;
+        } finally {
+            for (FileChannel channel : channels.values()) {
+                channel.close();
+            }
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] feed = new byte[rawLength];
+            int inflated = inflater.inflate(feed);
+            if (inflated != rawLength || !inflater.finished()) {
+                throw new IOException("Archived feed has " + inflated + " bytes, expected " + rawLength);
+            }
+            return feed;
+        } catch (DataFormatException ex) {
+            throw new IOException("Archived feed is not valid deflate data", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String segmentName(long firstTimestamp) {
+        // zero-padded, so lexicographic order of file names is chronological
+        return SEGMENT_PREFIX + String.format("%020d", firstTimestamp) + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * Entry being streamed into a segment: a placeholder header followed by the feed deflated as it is written.
+     * Write errors do not fail the writer, whose feed is still being parsed; they are reported by {@link #commit}.
+     */
+    public final class Appender extends OutputStream {
+
+        private final String name;
+        private final ReentrantLock lock;
+        /** Segment appended to, or null if the entry starts a new segment. */
+        private final Segment segment;
+        private final Path path;
+        private final long start;
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final CRC32 checksum = new CRC32();
+        private final DeflaterOutputStream payload;
+        private IOException failure;
+        private boolean closed;
+        private boolean released;
+
+        private Appender(String name, ReentrantLock lock, Segment segment, Path path) throws IOException {
+            this.name = name;
+            this.lock = lock;
+            this.segment = segment;
+            this.path = path;
+            this.start = segment != null ? segment.getBytes() : 0;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                // drops a partial entry left by a write that failed after the segment was indexed
+                channel.truncate(start);
+                channel.position(start + ENTRY_HEADER_BYTES);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+            this.payload = new DeflaterOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), checksum), deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            if (failure != null || closed) {
+                return;
+            }
+            try {
+                payload.write(buffer, offset, length);
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        /**
+         * Completes the entry and makes it visible to readers, unless the feed is not newer than the last archived
+         * one of the same name, in which case the entry is discarded. Closes the appender either way.
+         *
+         * @param feedTimestamp FeedHeader.timestamp of the feed; feeds without one are not archived.
+         * @param fullDataset Whether the feed is a FULL_DATASET rather than a DIFFERENTIAL one.
+         * @return Whether the feed was appended.
+         * @throws IOException If the entry could not be written; it is discarded.
+         */
+        public boolean commit(long feedTimestamp, boolean fullDataset) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("The archive entry is already closed");
+            }
+            ConcurrentSkipListMap<Long, Segment> feedSegments = segmentsOf(name);
+            Map.Entry<Long, Segment> newest = feedSegments.lastEntry();
+            if (failure != null || feedTimestamp <= 0
+                    || (newest != null && feedTimestamp <= newest.getValue().getLastTimestamp())) {
+                close();
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            try {
+                payload.finish();
+                long compressedLength = channel.position() - start - ENTRY_HEADER_BYTES;
+                if (deflater.getBytesRead() > Integer.MAX_VALUE || compressedLength > Integer.MAX_VALUE) {
+                    throw new IOException("Feed of " + deflater.getBytesRead() + " bytes is too large to archive");
+                }
+                ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES)
+                        .putLong(feedTimestamp)
+                        .put((byte) (fullDataset ? 1 : 0))
+                        .putInt((int) deflater.getBytesRead())
+                        .putInt((int) compressedLength)
+                        .putInt((int) checksum.getValue())
+                        .flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, start + header.position());
+                }
+                long end = channel.position();
+                channel.close();
+
+                Path segmentPath = path;
+                long firstTimestamp = feedTimestamp;
+                if (segment != null) {
+                    firstTimestamp = segment.getFirstTimestamp();
+                } else {
+                    segmentPath = Files.move(path, path.resolveSibling(segmentName(feedTimestamp)),
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                feedSegments.put(firstTimestamp, new Segment(name, segmentPath, firstTimestamp, feedTimestamp, end));
+                closed = true;
+            } catch (IOException ex) {
+                close();
+                throw ex;
+            } finally {
+                release();
+            }
+            enforceRetention();
+            return true;
+        }
+
+        /**
+         * Discards the entry unless it was committed.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                channel.close();
+                if (segment != null) {
+                    try (FileChannel truncating = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        truncating.truncate(start);
+                    }
+                } else {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException ex) {
+                log.warn("Could not discard a partial entry of archive segment {}: {}", path, ex.getMessage());
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                deflater.end();
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * State of one segment file.
+     */
+    @lombok.Value
+    public static class Segment {
+        String feed;
+        Path path;
+        long firstTimestamp;
+        long lastTimestamp;
+        long bytes;
+    }
+
+    /**
+     * Decompressed feed read back from the archive.
+     */
+    @lombok.Value
+    public static class ArchivedFeed {
+        long feedTimestamp;
+        boolean fullDataset;
+        byte[] feed;
+    }
+
+    @lombok.Value
+    private static class EntryRef {
+        Path path;
+        long feedTimestamp;
+        boolean fullDataset;
+        long offset;
+        int rawLength;
+        int compressedLength;
+        int checksum;
+
+        long end() {
+            return offset + compressedLength;
+        }
+    }
+}
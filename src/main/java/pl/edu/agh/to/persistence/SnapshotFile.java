@@ -0,0 +1,257 @@
+package pl.edu.agh.to.persistence;
+
+import pl.edu.agh.to.index.IdDictionary;
+import pl.edu.agh.to.index.TripColumns;
+import pl.edu.agh.to.index.TripPartition;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary layout of a TripUpdates snapshot, used to survive restarts.
+ * <p>
+ * The file holds a fixed header, a table of distinct strings shared by all feeds and one section per feed
+ * with its header and its trips with their stop times, where every identifier is an index into the string table.
+ * All numbers are big-endian; a CRC32 of everything before it closes the file, so truncated or corrupted files are rejected.
+ * Indexes are not stored: they are rebuilt on load, which is cheaper than keeping their layout stable.
+ */
+public final class SnapshotFile {
+
+    /** "ZTPS" in ASCII. */
+    static final int MAGIC = 0x5A545053;
+    static final int VERSION = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the target and atomically moves it into place,
+     * so readers never see a partially written file.
+     *
+     * @param path Target file; its parent directories are created if needed.
+     * @param snapshot Snapshot to persist.
+     */
+    public static void write(Path path, TripUpdatesSnapshot snapshot) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary)) {
+                CRC32 checksum = new CRC32();
+                DataOutputStream out = new DataOutputStream(
+                        new CheckedOutputStream(new BufferedOutputStream(file, BUFFER_SIZE), checksum));
+                encode(out, snapshot);
+                out.flush();
+                // written past the checked stream, so it does not cover itself
+                new DataOutputStream(file).writeInt((int) checksum.getValue());
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Memory-maps the file and rebuilds the snapshot from it. All of its feeds are marked stale.
+     *
+     * @param path File written by {@link #write(Path, TripUpdatesSnapshot)}.
+     * @return The restored snapshot.
+     * @throws IOException if the file cannot be read, or is truncated, corrupted or of an unknown version.
+     */
+    public static TripUpdatesSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot file " + path + " has an invalid size of " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            ByteBuffer body = buffer.slice(0, (int) size - Integer.BYTES);
+            CRC32 checksum = new CRC32();
+            checksum.update(body.duplicate());
+            if ((int) checksum.getValue() != buffer.getInt((int) size - Integer.BYTES)) {
+                throw new IOException("Snapshot file " + path + " is corrupted: checksum mismatch");
+            }
+            return decode(body);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException("Snapshot file " + path + " is truncated", ex);
+        }
+    }
+
+    private static void encode(DataOutputStream out, TripUpdatesSnapshot snapshot) throws IOException {
+        List<FeedSnapshot> feeds = snapshot.getFeeds();
+        StringTable table = new StringTable();
+        for (FeedSnapshot feed : feeds) {
+            table.slot(feed.getName());
+            for (TripPartition partition : feed.getPartitions()) {
+                TripColumns columns = partition.getColumns();
+                for (int trip = 0; trip < columns.tripCount(); trip++) {
+                    table.slot(columns.dictionary(), columns.entityId(trip));
+                    table.slot(columns.dictionary(), columns.tripId(trip));
+                    table.slot(columns.dictionary(), columns.routeId(trip));
+                    table.slot(columns.dictionary(), columns.vehicleId(trip));
+                }
+                for (int row = 0; row < columns.rowCount(); row++) {
+                    table.slot(columns.dictionary(), columns.stopId(row));
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(snapshot.getGeneration());
+        out.writeLong(snapshot.getFetchedAt().toEpochMilli());
+        out.writeInt(table.strings.size());
+        out.writeInt(feeds.size());
+
+        for (String string : table.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        for (FeedSnapshot feed : feeds) {
+            out.writeInt(table.slot(feed.getName()));
+            out.writeLong(feed.getFetchedAt().toEpochMilli());
+            out.writeLong(feed.getFeedTimestamp());
+            out.writeInt(feed.getTripCount());
+            for (TripPartition partition : feed.getPartitions()) {
+                encodeTrips(out, partition.getColumns(), table);
+            }
+        }
+    }
+
+    private static void encodeTrips(DataOutputStream out, TripColumns columns, StringTable table) throws IOException {
+        IdDictionary dictionary = columns.dictionary();
+        for (int trip = 0; trip < columns.tripCount(); trip++) {
+            out.writeInt(table.slot(dictionary, columns.entityId(trip)));
+            out.writeInt(table.slot(dictionary, columns.tripId(trip)));
+            out.writeInt(table.slot(dictionary, columns.routeId(trip)));
+            out.writeInt(table.slot(dictionary, columns.vehicleId(trip)));
+            out.writeInt(columns.endRow(trip) - columns.firstRow(trip));
+            for (int row = columns.firstRow(trip); row < columns.endRow(trip); row++) {
+                out.writeInt(table.slot(dictionary, columns.stopId(row)));
+                out.writeLong(columns.arrivalTime(row));
+                out.writeInt(columns.arrivalDelay(row));
+                out.writeLong(columns.departureTime(row));
+                out.writeInt(columns.departureDelay(row));
+            }
+        }
+    }
+
+    private static TripUpdatesSnapshot decode(ByteBuffer in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot file version " + version);
+        }
+        long generation = in.getLong();
+        Instant fetchedAt = Instant.ofEpochMilli(in.getLong());
+        int stringCount = in.getInt();
+        int feedCount = in.getInt();
+
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<FeedSnapshot> feeds = new ArrayList<>(feedCount);
+        for (int f = 0; f < feedCount; f++) {
+            String name = strings[in.getInt()];
+            Instant feedFetchedAt = Instant.ofEpochMilli(in.getLong());
+            long feedTimestamp = in.getLong();
+            feeds.add(FeedSnapshot.restore(name, feedFetchedAt, feedTimestamp, decodeTrips(in, strings, in.getInt())));
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Snapshot file has " + in.remaining() + " unexpected trailing bytes");
+        }
+        return TripUpdatesSnapshot.of(generation, fetchedAt, feeds);
+    }
+
+    private static List<TripRecord> decodeTrips(ByteBuffer in, String[] strings, int tripCount) {
+        List<TripRecord> trips = new ArrayList<>(tripCount);
+        for (int i = 0; i < tripCount; i++) {
+            TripRecord.TripRecordBuilder trip = TripRecord.builder()
+                    .entityId(strings[in.getInt()])
+                    .tripId(strings[in.getInt()])
+                    .routeId(strings[in.getInt()])
+                    .vehicleId(strings[in.getInt()]);
+
+            int stopCount = in.getInt();
+            List<StopTimeRecord> stopTimes = new ArrayList<>(stopCount);
+            for (int s = 0; s < stopCount; s++) {
+                stopTimes.add(new StopTimeRecord(strings[in.getInt()],
+                        in.getLong(), in.getInt(), in.getLong(), in.getInt()));
+            }
+            trips.add(trip.stopTimes(List.copyOf(stopTimes)).build());
+        }
+        return trips;
+    }
+
+    /**
+     * Strings of the file in slot order. Dictionary codes are translated through a per-dictionary array,
+     * so every distinct id is decoded and hashed once, not once per occurrence.
+     */
+    private static final class StringTable {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<IdDictionary, int[]> slotsByCode = new HashMap<>();
+
+        private int slot(String string) {
+            Integer slot = slots.putIfAbsent(string, strings.size());
+            if (slot == null) {
+                strings.add(string);
+                return strings.size() - 1;
+            }
+            return slot;
+        }
+
+        private int slot(IdDictionary dictionary, int code) {
+            int[] codes = slotsByCode.get(dictionary);
+            if (codes == null || code >= codes.length) {
+                // the dictionary may have grown since, as it is shared with snapshots being built
+                int[] grown = new int[Math.max(code + 1, dictionary.size())];
+                Arrays.fill(grown, -1);
+                if (codes != null) {
+                    System.arraycopy(codes, 0, grown, 0, codes.length);
+                }
+                codes = grown;
+                slotsByCode.put(dictionary, codes);
+            }
+            if (codes[code] < 0) {
+                codes[code] = slot(dictionary.decode(code));
+            }
+            return codes[code];
+        }
+    }
+}
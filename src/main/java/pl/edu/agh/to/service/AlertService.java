@@ -0,0 +1,108 @@
+package pl.edu.agh.to.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.ActiveAlert;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.AlertRecord;
+import pl.edu.agh.to.model.AlertsSnapshot;
+import pl.edu.agh.to.model.Departure;
+import pl.edu.agh.to.model.FeedAlerts;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service resolving the active ServiceAlerts of stops and departures from the current alerts snapshot.
+ */
+@Service
+@RequiredArgsConstructor
+public class AlertService {
+
+    private final AlertsStore alertsStore;
+    private final Clock clock;
+    private final GtfsFeedsProperties feedsProperties;
+
+    /**
+     * Returns the alerts shown at a stop: those about the stop, on any route, and those about a whole feed.
+     *
+     * @param stopId Stop to find the alerts of.
+     * @param at Time the alerts must be active at; the current time if null.
+     * @param mode Feed to restrict the alerts to, or null for all feeds.
+     * @return Mono emitting the alerts, feed after feed; empty list if there are none.
+     * Fails with IllegalArgumentException if the mode is not a configured feed,
+     * or with UpstreamUnavailableException if no alerts have been loaded yet.
+     */
+    public Mono<List<AlertDto>> getStopAlerts(String stopId, LocalDateTime at, String mode) {
+        return Mono.fromCallable(() -> {
+            feedsProperties.checkMode(mode);
+            AlertsSnapshot snapshot = alertsStore.current()
+                    .orElseThrow(() -> new UpstreamUnavailableException("No ServiceAlerts loaded yet", Duration.ZERO));
+            long time = at == null
+                    ? clock.instant().getEpochSecond()
+                    : at.atZone(ZoneId.systemDefault()).toEpochSecond();
+
+            List<ActiveAlert> alerts = snapshot.forStop(stopId, time, mode);
+            List<AlertDto> dtos = new ArrayList<>(alerts.size());
+            for (ActiveAlert alert : alerts) {
+                dtos.add(toDto(alert.getFeed(), alert.getAlert()));
+            }
+            return dtos;
+        });
+    }
+
+    /**
+     * Resolves the alerts of every departure of a board against a single alerts snapshot,
+     * each active at its departure's time. An alert shared by several departures is converted once.
+     *
+     * @return The alerts of each departure, in the order of the departures;
+     * empty lists if no alerts have been loaded yet, so boards never fail for lack of alerts.
+     */
+    public List<List<AlertDto>> forDepartures(List<Departure> departures) {
+        Optional<AlertsSnapshot> snapshot = alertsStore.current();
+        Map<AlertRecord, AlertDto> converted = new IdentityHashMap<>();
+        List<List<AlertDto>> alerts = new ArrayList<>(departures.size());
+        for (Departure departure : departures) {
+            Optional<FeedAlerts> feed = snapshot.flatMap(current -> current.feed(departure.getFeed()));
+            if (feed.isEmpty()) {
+                alerts.add(List.of());
+                continue;
+            }
+            List<AlertRecord> matches = feed.get().forDeparture(departure.getStopTime().getStopId(),
+                    departure.getTrip().getRouteId(), departure.getTrip().getTripId(), departure.getDepartureTime());
+            List<AlertDto> dtos = new ArrayList<>(matches.size());
+            for (AlertRecord match : matches) {
+                dtos.add(converted.computeIfAbsent(match, alert -> toDto(departure.getFeed(), alert)));
+            }
+            alerts.add(dtos);
+        }
+        return alerts;
+    }
+
+    private static AlertDto toDto(String feed, AlertRecord alert) {
+        return AlertDto.builder()
+                .alertId(alert.getAlertId())
+                .mode(feed)
+                .cause(alert.getCause())
+                .effect(alert.getEffect())
+                .severity(alert.getSeverity())
+                .header(emptyToNull(alert.getHeaderText()))
+                .description(emptyToNull(alert.getDescriptionText()))
+                .url(emptyToNull(alert.getUrl()))
+                .build();
+    }
+
+    private static String emptyToNull(String text) {
+        return text.isEmpty() ? null : text;
+    }
+}
@@ -0,0 +1,57 @@
+package pl.edu.agh.to.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.model.AlertRecord;
+import pl.edu.agh.to.model.AlertsSnapshot;
+import pl.edu.agh.to.model.FeedAlerts;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the most recent ServiceAlerts snapshot, merged from all configured feeds.
+ * Alerts are refetched with every refresh, so unlike TripUpdates they are neither persisted nor archived.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AlertsStore {
+
+    private final Clock clock;
+    private final AtomicReference<AlertsSnapshot> current = new AtomicReference<>();
+
+    /**
+     * Builds the feed and its index and publishes it, replacing the previous alerts of that feed.
+     * Publishing is serialized so generations stay strictly increasing; readers are never blocked.
+     *
+     * @param feed Name of the feed the alerts come from.
+     * @param alerts Freshly parsed alerts.
+     * @param feedTimestamp FeedHeader.timestamp of the parsed feed, 0 if unknown.
+     * @return The published snapshot.
+     */
+    public synchronized AlertsSnapshot publish(String feed, List<AlertRecord> alerts, long feedTimestamp) {
+        AlertsSnapshot previous = current.get();
+        Instant now = clock.instant();
+        FeedAlerts feedAlerts = FeedAlerts.build(feed, now, feedTimestamp, alerts);
+        AlertsSnapshot published = previous == null
+                ? AlertsSnapshot.of(1, now, List.of(feedAlerts))
+                : previous.withFeed(previous.getGeneration() + 1, now, feedAlerts);
+        current.set(published);
+
+        log.info("Published ServiceAlerts snapshot #{} with {} {} alerts, {} alerts in total",
+                published.getGeneration(), alerts.size(), feed, published.getAlertCount());
+        return published;
+    }
+
+    /**
+     * @return The current snapshot, or empty if no alerts have been loaded yet.
+     */
+    public Optional<AlertsSnapshot> current() {
+        return Optional.ofNullable(current.get());
+    }
+}
@@ -0,0 +1,120 @@
+package pl.edu.agh.to.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.model.ArchiveSegmentDto;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.persistence.FeedArchive;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Answers questions about past states of the feed from the local feed archive,
+ * without querying the GTFS API.
+ */
+@Service
+@RequiredArgsConstructor
+public class ArchiveReplayService {
+
+    private final FeedArchive feedArchive;
+    private final GtfsParser gtfsParser;
+    private final StopDepartureService stopDepartureService;
+
+    /**
+     * Rebuilds the departure board of a stop as it was shown at the given time.
+     * Reads and inflates archived feeds, so the work runs on the bounded elastic scheduler.
+     *
+     * @param stopId Stop to build the board for.
+     * @param at Point in time to replay; also the earliest departure time on the board.
+     * @param limit Maximum number of departures, between 1 and {@link StopDepartureService#MAX_LIMIT}.
+     * @param mode Feed to restrict the board to, or null for all feeds.
+     * @return Mono emitting the departures ordered by time.
+     * Fails with IllegalArgumentException if the limit is out of range or the mode is not a configured feed,
+     * IllegalStateException if the archive is disabled,
+     * or NotFoundException if no feed was archived at or before the time.
+     */
+    public Mono<List<StopDepartureDto>> getDepartures(String stopId, LocalDateTime at, int limit, String mode) {
+        return Mono.fromCallable(() -> {
+                    long time = at.atZone(ZoneId.systemDefault()).toEpochSecond();
+                    return stopDepartureService.board(replay(time), stopId, time, limit, mode);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * @return Segments of the archive, oldest first.
+     */
+    public List<ArchiveSegmentDto> getSegments() {
+        List<ArchiveSegmentDto> segments = new ArrayList<>();
+        for (FeedArchive.Segment segment : feedArchive.segments()) {
+            segments.add(ArchiveSegmentDto.builder()
+                    .mode(segment.getFeed())
+                    .firstFeedTimestamp(toLocalDateTime(segment.getFirstTimestamp()))
+                    .lastFeedTimestamp(toLocalDateTime(segment.getLastTimestamp()))
+                    .bytes(segment.getBytes())
+                    .build());
+        }
+        return segments;
+    }
+
+    /**
+     * Parses the archived entries of every feed needed for the given time and applies them in order,
+     * the same way the poller did when they were received, then merges the feeds.
+     *
+     * @param at Point in time in POSIX seconds.
+     * @return Snapshot of the state of all feeds at that time.
+     */
+    TripUpdatesSnapshot replay(long at) throws IOException {
+        if (!feedArchive.isEnabled()) {
+            throw new IllegalStateException("Feed archive is disabled");
+        }
+        List<FeedSnapshot> feeds = new ArrayList<>();
+        for (String name : feedArchive.feeds()) {
+            FeedSnapshot feed = replay(name, feedArchive.replayChain(name, at));
+            if (feed != null) {
+                feeds.add(feed);
+            }
+        }
+        if (feeds.isEmpty()) {
+            throw new NotFoundException("No feed archived at or before " + toLocalDateTime(at));
+        }
+        return TripUpdatesSnapshot.of(1, Instant.ofEpochSecond(at), feeds);
+    }
+
+    /**
+     * @return The feed rebuilt from its chain, or null if the chain is empty.
+     */
+    private FeedSnapshot replay(String name, List<FeedArchive.ArchivedFeed> chain) throws IOException {
+        FeedSnapshot feed = null;
+        for (FeedArchive.ArchivedFeed entry : chain) {
+            List<TripRecord> trips = new ArrayList<>();
+            Set<String> deletedEntityIds = new HashSet<>();
+            gtfsParser.streamTripUpdates(new ByteArrayInputStream(entry.getFeed()),
+                    header -> true, trips::add, deletedEntityIds::add);
+
+            Instant fetchedAt = Instant.ofEpochSecond(entry.getFeedTimestamp());
+            feed = feed == null
+                    ? FeedSnapshot.build(name, fetchedAt, entry.getFeedTimestamp(), trips)
+                    : feed.applyDifferential(fetchedAt, entry.getFeedTimestamp(), trips, deletedEntityIds);
+        }
+        return feed;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+}
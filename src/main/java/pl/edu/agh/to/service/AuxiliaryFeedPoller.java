@@ -0,0 +1,145 @@
+package pl.edu.agh.to.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Refresh loop shared by the feeds polled alongside TripUpdates, e.g. VehiclePositions or ServiceAlerts.
+ * <p>
+ * Every configured feed that names such a feed is polled by its own fixed-delay loop with the refresh interval
+ * of its TripUpdates feed. As with TripUpdates, unchanged feeds are skipped by HTTP validators, the body is
+ * decoded while it arrives, and each feed has its own circuit breaker, configured by the same
+ * {@code ztp.gtfs.circuit.*} properties. Failures are logged and the previously ingested data stays in place.
+ */
+public abstract class AuxiliaryFeedPoller {
+
+    /** Number of network buffers requested ahead of the decoder. */
+    private static final int BUFFER_DEMAND = 16;
+
+    private final List<GtfsFeedsProperties.Feed> feeds;
+    private final Duration initialDelay;
+    private final Duration refreshInterval;
+
+    /** Validators of the last processed response, by feed name. */
+    private final Map<String, FeedValidators> validators = new ConcurrentHashMap<>();
+    /** Circuits guarding the upstream, by feed name. */
+    private final Map<String, FeedGuard> guards = new ConcurrentHashMap<>();
+    private volatile Disposable schedule;
+
+    /**
+     * @param kind Name of the polled feed type, used in logs, e.g. "VehiclePositions".
+     * @param metricSuffix Appended to the feed name in fetch and circuit metrics.
+     * @param path Path of the polled feed of a configured feed; feeds for which it is null are not polled.
+     */
+    protected AuxiliaryFeedPoller(String kind, String metricSuffix, PipelineMetrics metrics,
+                                  GtfsFeedsProperties feedsProperties,
+                                  Function<GtfsFeedsProperties.Feed, String> path, Clock clock,
+                                  long initialDelayMs, long refreshIntervalMs, int failureThreshold, long openMs) {
+        this.feeds = feedsProperties.getFeeds().stream()
+                .filter(feed -> path.apply(feed) != null)
+                .toList();
+        this.initialDelay = Duration.ofMillis(initialDelayMs);
+        this.refreshInterval = Duration.ofMillis(refreshIntervalMs);
+        for (GtfsFeedsProperties.Feed feed : feeds) {
+            guards.put(feed.getName(), new FeedGuard(feed.getName() + " " + kind, feed.getName() + metricSuffix,
+                    metrics, failureThreshold, Duration.ofMillis(openMs), clock));
+        }
+    }
+
+    /**
+     * Fetches the polled feed of a configured feed unless it has not changed since the given validators.
+     */
+    protected abstract Mono<FeedFetchResult> fetch(GtfsFeedsProperties.Feed feed, FeedValidators validators);
+
+    /**
+     * Decodes a changed feed and publishes it; called on a thread that may block.
+     *
+     * @param feed Name of the configured feed.
+     * @param body Response body, read as it arrives from the network.
+     */
+    protected abstract void ingest(String feed, InputStream body) throws IOException;
+
+    /**
+     * Starts one refresh loop per polled feed once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (schedule != null || feeds.isEmpty()) {
+            return;
+        }
+        schedule = Flux.fromIterable(feeds)
+                .flatMap(feed -> Mono.delay(initialDelay)
+                        .thenMany(poll(feed).then(Mono.delay(refreshInterval(feed))).repeat()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+            schedule = null;
+        }
+    }
+
+    /**
+     * Refreshes every polled feed, e.g. on demand.
+     *
+     * @return Mono completing once every feed's refresh has finished.
+     */
+    public Mono<Void> poll() {
+        return Flux.fromIterable(feeds)
+                .flatMap(this::poll)
+                .then();
+    }
+
+    /**
+     * Refreshes a single feed. Failures are logged and the previous data stays in place.
+     *
+     * @return Mono completing once the refresh has finished.
+     */
+    public Mono<Void> poll(GtfsFeedsProperties.Feed feed) {
+        return guards.get(feed.getName()).refresh(() -> refresh(feed))
+                .onErrorComplete()
+                .then();
+    }
+
+    /**
+     * @return Mono emitting true once a changed feed is published, or empty if the feed has not changed.
+     */
+    private Mono<Boolean> refresh(GtfsFeedsProperties.Feed feed) {
+        return Mono.defer(() -> fetch(feed, validators.getOrDefault(feed.getName(), FeedValidators.NONE)))
+                .filter(result -> !result.isNotModified())
+                .flatMap(result -> Mono.fromCallable(() -> ingest(feed.getName(), result))
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private boolean ingest(String feed, FeedFetchResult result) throws IOException {
+        try (InputStream body = DataBufferUtils.subscriberInputStream(result.getBody(), BUFFER_DEMAND)) {
+            ingest(feed, body);
+        }
+        validators.put(feed, result.getValidators());
+        return true;
+    }
+
+    private Duration refreshInterval(GtfsFeedsProperties.Feed feed) {
+        return feed.getRefreshInterval() != null ? feed.getRefreshInterval() : refreshInterval;
+    }
+}
@@ -0,0 +1,108 @@
+package pl.edu.agh.to.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Consecutive-failure circuit breaker guarding the calls to one upstream endpoint.
+ * <p>
+ * A CLOSED circuit lets every call through and opens after {@code failureThreshold} failures in a row.
+ * An OPEN circuit rejects calls until {@code openDuration} has passed, then lets a single trial call through
+ * (HALF_OPEN): its success closes the circuit, its failure opens it for another period.
+ * Every permitted call must be reported through {@link #onSuccess()} or {@link #onFailure()}; a cancelled call
+ * counts as a failure. A trial that is never reported is given up after another {@code openDuration},
+ * and the next call becomes a new trial.
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private Instant openedAt;
+    private Instant trialStartedAt;
+
+    /**
+     * @param name Name of the guarded endpoint, used in logs.
+     * @param failureThreshold Failures in a row that open the circuit, at least 1.
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Clock clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * @return Whether the call may proceed. A true result from an OPEN circuit is its trial call.
+     */
+    public synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (clock.instant().isBefore(openedAt.plus(openDuration))) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                trialStartedAt = clock.instant();
+                yield true;
+            }
+            case HALF_OPEN -> {
+                // the trial call is still in flight, unless it was lost without being reported
+                if (clock.instant().isBefore(trialStartedAt.plus(openDuration))) {
+                    yield false;
+                }
+                log.warn("Trial call of {} not reported within {} ms, starting another", name, openDuration.toMillis());
+                trialStartedAt = clock.instant();
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuit of {} closed", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("Circuit of {} opened after {} failures, retrying in {} ms",
+                        name, failures, openDuration.toMillis());
+            }
+            state = State.OPEN;
+            openedAt = clock.instant();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Time until an OPEN circuit lets a trial call through, zero in any other state.
+     */
+    public synchronized Duration retryAfter() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        Duration remaining = Duration.between(clock.instant(), openedAt.plus(openDuration));
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+}
@@ -0,0 +1,272 @@
+package pl.edu.agh.to.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.index.TripPartition;
+import pl.edu.agh.to.model.DelayDistributionDto;
+import pl.edu.agh.to.model.DelayStatsDto;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.RouteDelaysDto;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.StopDelaysDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.stats.DelayAggregate;
+import pl.edu.agh.to.stats.DelayHistogram;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Maintains delay distributions by route and by stop, for the current snapshot and for a rolling window.
+ * <p>
+ * Aggregates are updated when a snapshot is published, never per request: only partitions that are not
+ * shared with the previous snapshot are visited, their old trips are subtracted and their new trips added.
+ * The rolling window is a ring of time slots holding the delays the feeds reported; a slot leaving the window
+ * is subtracted from the running window total, so requests only summarize ready histograms.
+ * A stop time enters the window when its delay is first reported, not every time a full dataset repeats it,
+ * so the window does not depend on the incrementality of the feed.
+ */
+@Service
+public class DelayStatisticsService {
+
+    private final Clock clock;
+    private final long slotSeconds;
+    private final Slot[] slots;
+
+    private final DelayAggregate current = new DelayAggregate();
+    private final DelayAggregate rolling = new DelayAggregate();
+    /** Number of the newest slot, counted in slot lengths since the epoch. */
+    private long newestSlot = Long.MIN_VALUE;
+    /** Snapshot the current distributions describe. */
+    private TripUpdatesSnapshot applied;
+
+    public DelayStatisticsService(Clock clock,
+                                  @Value("${ztp.stats.window-minutes:60}") int windowMinutes,
+                                  @Value("${ztp.stats.window-slots:6}") int windowSlots) {
+        if (windowMinutes < 1 || windowSlots < 1 || windowMinutes * 60 % windowSlots != 0) {
+            throw new IllegalArgumentException("The delay window must split into whole-second slots");
+        }
+        this.clock = clock;
+        this.slotSeconds = windowMinutes * 60L / windowSlots;
+        this.slots = new Slot[windowSlots];
+        for (int i = 0; i < windowSlots; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Applies the partitions of every feed that changed between the two snapshots.
+     * Observations of a snapshot fetched before the rolling window (e.g. restored from disk) only affect
+     * the current distributions. If the previous snapshot is not the one the distributions describe,
+     * they are rebuilt from the new snapshot instead of being updated by difference.
+     */
+    @EventListener
+    public synchronized void onSnapshotPublished(SnapshotPublishedEvent event) {
+        TripUpdatesSnapshot previous = event.getPrevious();
+        TripUpdatesSnapshot next = event.getCurrent();
+        if (previous != applied) {
+            current.clear();
+            previous = null;
+        }
+        applied = next;
+
+        long slotNumber = Math.floorDiv(next.getFetchedAt().getEpochSecond(), slotSeconds);
+        advance(slotNumber);
+        Slot slot = slotNumber > newestSlot - slots.length ? slotFor(slotNumber) : null;
+
+        TreeSet<String> feedNames = new TreeSet<>();
+        if (previous != null) {
+            previous.getFeeds().forEach(feed -> feedNames.add(feed.getName()));
+        }
+        next.getFeeds().forEach(feed -> feedNames.add(feed.getName()));
+
+        for (String feedName : feedNames) {
+            List<TripPartition> before = partitionsOf(previous, feedName);
+            List<TripPartition> after = partitionsOf(next, feedName);
+            if (before.size() == after.size()) {
+                for (int p = 0; p < after.size(); p++) {
+                    if (before.get(p) != after.get(p)) {
+                        replace(List.of(before.get(p)), List.of(after.get(p)), slot);
+                    }
+                }
+            } else {
+                // a feed added, removed or split into more partitions shares none of them
+                replace(before, after, slot);
+            }
+        }
+    }
+
+    private void replace(List<TripPartition> before, List<TripPartition> after, Slot slot) {
+        for (TripPartition partition : before) {
+            current.remove(partition.getTrips());
+        }
+        for (TripPartition partition : after) {
+            current.add(partition.getTrips());
+        }
+        if (slot != null) {
+            List<TripRecord> observed = newObservations(before, after);
+            slot.observations.add(observed);
+            rolling.add(observed);
+        }
+    }
+
+    /**
+     * @return The trips of the later partitions, each reduced to the stop times whose delays the earlier
+     * partitions did not report for the same entity and stop; trips left without stop times are dropped.
+     */
+    private static List<TripRecord> newObservations(List<TripPartition> before, List<TripPartition> after) {
+        Map<String, TripRecord> earlier = new HashMap<>();
+        for (TripPartition partition : before) {
+            for (TripRecord trip : partition.getTrips()) {
+                earlier.put(trip.getEntityId(), trip);
+            }
+        }
+
+        List<TripRecord> observed = new ArrayList<>();
+        for (TripPartition partition : after) {
+            for (TripRecord trip : partition.getTrips()) {
+                TripRecord previous = earlier.get(trip.getEntityId());
+                if (previous == null) {
+                    observed.add(trip);
+                } else if (!previous.equals(trip)) {
+                    List<StopTimeRecord> changed = trip.getStopTimes().stream()
+                            .filter(stopTime -> !reported(previous, stopTime))
+                            .toList();
+                    if (!changed.isEmpty()) {
+                        observed.add(trip.toBuilder().stopTimes(changed).build());
+                    }
+                }
+            }
+        }
+        return observed;
+    }
+
+    private static boolean reported(TripRecord trip, StopTimeRecord stopTime) {
+        for (StopTimeRecord earlier : trip.getStopTimes()) {
+            if (earlier.getStopId().equals(stopTime.getStopId())
+                    && earlier.getArrivalDelay() == stopTime.getArrivalDelay()
+                    && earlier.getDepartureDelay() == stopTime.getDepartureDelay()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<TripPartition> partitionsOf(TripUpdatesSnapshot snapshot, String feedName) {
+        return Optional.ofNullable(snapshot)
+                .flatMap(s -> s.feed(feedName))
+                .map(FeedSnapshot::getPartitions)
+                .orElse(List.of());
+    }
+
+    /**
+     * @return Overall distributions and the distributions of every route with observations.
+     */
+    public synchronized DelayStatsDto getStats() {
+        advance(currentSlot());
+
+        TreeSet<String> routeIds = new TreeSet<>(current.routes().keySet());
+        routeIds.addAll(rolling.routes().keySet());
+        List<RouteDelaysDto> routes = new ArrayList<>(routeIds.size());
+        for (String routeId : routeIds) {
+            routes.add(routeDelays(routeId));
+        }
+
+        return DelayStatsDto.builder()
+                .windowMinutes(Duration.ofSeconds(slotSeconds * slots.length).toMinutes())
+                .current(summarize(current.overall()))
+                .rolling(summarize(rolling.overall()))
+                .routes(routes)
+                .build();
+    }
+
+    /**
+     * @throws NotFoundException if the route has no delay observations in the snapshot or the window.
+     */
+    public synchronized RouteDelaysDto getRouteDelays(String routeId) {
+        advance(currentSlot());
+        if (current.route(routeId) == null && rolling.route(routeId) == null) {
+            throw new NotFoundException("No delays reported for route " + routeId);
+        }
+        return routeDelays(routeId);
+    }
+
+    /**
+     * @throws NotFoundException if the stop has no delay observations in the snapshot or the window.
+     */
+    public synchronized StopDelaysDto getStopDelays(String stopId) {
+        advance(currentSlot());
+        if (current.stop(stopId) == null && rolling.stop(stopId) == null) {
+            throw new NotFoundException("No delays reported for stop " + stopId);
+        }
+        return StopDelaysDto.builder()
+                .stopId(stopId)
+                .current(summarize(current.stop(stopId)))
+                .rolling(summarize(rolling.stop(stopId)))
+                .build();
+    }
+
+    private RouteDelaysDto routeDelays(String routeId) {
+        return RouteDelaysDto.builder()
+                .routeId(routeId)
+                .current(summarize(current.route(routeId)))
+                .rolling(summarize(rolling.route(routeId)))
+                .build();
+    }
+
+    private long currentSlot() {
+        return Math.floorDiv(clock.instant().getEpochSecond(), slotSeconds);
+    }
+
+    /**
+     * Moves the window forward to the given slot, expiring the slots that fall out of it.
+     */
+    private void advance(long slotNumber) {
+        if (slotNumber <= newestSlot) {
+            return;
+        }
+        for (Slot slot : slots) {
+            if (slot.number <= slotNumber - slots.length) {
+                rolling.subtract(slot.observations);
+                slot.observations.clear();
+            }
+        }
+        newestSlot = slotNumber;
+    }
+
+    private Slot slotFor(long slotNumber) {
+        Slot slot = slots[(int) Math.floorMod(slotNumber, (long) slots.length)];
+        slot.number = slotNumber;
+        return slot;
+    }
+
+    private static DelayDistributionDto summarize(DelayHistogram histogram) {
+        if (histogram == null || histogram.isEmpty()) {
+            return DelayDistributionDto.builder().build();
+        }
+        return DelayDistributionDto.builder()
+                .count(histogram.getCount())
+                .mean(Math.round(histogram.mean() * 10) / 10.0)
+                .p50(histogram.percentile(0.5))
+                .p90(histogram.percentile(0.9))
+                .p99(histogram.percentile(0.99))
+                .lateCount(histogram.getLateCount())
+                .earlyCount(histogram.getEarlyCount())
+                .build();
+    }
+
+    private static final class Slot {
+        private long number = Long.MIN_VALUE;
+        private final DelayAggregate observations = new DelayAggregate();
+    }
+}
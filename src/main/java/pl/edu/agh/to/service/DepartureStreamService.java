@@ -0,0 +1,334 @@
+package pl.edu.agh.to.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.Departure;
+import pl.edu.agh.to.model.DepartureChangesDto;
+import pl.edu.agh.to.model.DepartureRefDto;
+import pl.edu.agh.to.model.DepartureStreamFilter;
+import pl.edu.agh.to.model.SnapshotChangedEvent;
+import pl.edu.agh.to.model.SnapshotChanges;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.model.VehicleTrip;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes the changes of followed departures to Server-Sent Events subscribers as new snapshots are published.
+ * <p>
+ * Subscribers with equal filters share one topic. On every published snapshot each topic computes its departures
+ * once and diffs them against the previous ones, so the work per update grows with the number of distinct
+ * filters, not with the number of subscribers. A topic replays its latest state to new subscribers and
+ * is dropped with its last subscriber.
+ * <p>
+ * Topics follow the {@link SnapshotChangedEvent}s of {@link SnapshotDiffService}: a topic none of whose
+ * departures has left yet skips a snapshot unless the changes touch its stop, route or vehicle,
+ * or a trip it follows.
+ * <p>
+ * Every subscriber has its own bounded buffer. A subscriber whose buffer overflows is disconnected rather than
+ * silently losing changes; EventSource clients reconnect and start again from the full state.
+ */
+@Slf4j
+@Service
+public class DepartureStreamService {
+
+    /** Departures followed by a stop stream, as on a departure board display. */
+    public static final int STOP_BOARD_SIZE = 20;
+
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String CHANGES_EVENT = "changes";
+
+    private final TripUpdatesSnapshotStore snapshotStore;
+    private final PipelineMetrics metrics;
+    private final Clock clock;
+    private final GtfsFeedsProperties feedsProperties;
+    private final int bufferSize;
+    private final Duration heartbeat;
+
+    private final Map<DepartureStreamFilter, Topic> topics = new ConcurrentHashMap<>();
+
+    public DepartureStreamService(TripUpdatesSnapshotStore snapshotStore, PipelineMetrics metrics, Clock clock,
+                                  GtfsFeedsProperties feedsProperties,
+                                  @Value("${ztp.stream.buffer-size:64}") int bufferSize,
+                                  @Value("${ztp.stream.heartbeat-ms:15000}") long heartbeatMs) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("ztp.stream.buffer-size must be at least 1");
+        }
+        this.snapshotStore = snapshotStore;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.feedsProperties = feedsProperties;
+        this.bufferSize = bufferSize;
+        this.heartbeat = Duration.ofMillis(heartbeatMs);
+        metrics.registerStreams(topics::size, this::subscriberCount);
+    }
+
+    /**
+     * Subscribes to the departures selected by the filter. The first event ({@value #SNAPSHOT_EVENT}) carries
+     * all of them, later ones ({@value #CHANGES_EVENT}) only what changed; comments keep idle connections open.
+     *
+     * @return Infinite stream of events; completes if the subscriber falls {@code ztp.stream.buffer-size}
+     * events behind, or on shutdown. Fails with IllegalArgumentException if the mode is not a configured feed.
+     */
+    public Flux<ServerSentEvent<DepartureChangesDto>> subscribe(DepartureStreamFilter filter) {
+        return Flux.defer(() -> {
+            feedsProperties.checkMode(filter.getMode());
+            Topic topic = acquire(filter);
+            snapshotStore.current().ifPresent(snapshot -> topic.update(snapshot, -1, null));
+            AtomicBoolean first = new AtomicBoolean(true);
+            return topic.updates()
+                    .publish(updates -> Flux.merge(updates,
+                            Flux.interval(heartbeat).map(tick -> Update.HEARTBEAT).takeUntilOther(updates.then())))
+                    .onBackpressureBuffer(bufferSize)
+                    .onErrorResume(Exceptions::isOverflow, ex -> {
+                        metrics.streamOverflowed();
+                        log.debug("Disconnecting slow subscriber of {}", filter);
+                        return Flux.empty();
+                    })
+                    .map(update -> toEvent(update, first))
+                    .doFinally(signal -> release(filter, topic));
+        });
+    }
+
+    /**
+     * Recomputes every topic affected by the changes and pushes what changed to its subscribers.
+     */
+    @EventListener
+    public void onSnapshotChanged(SnapshotChangedEvent event) {
+        Affected affected = Affected.of(event.getChanges());
+        for (Topic topic : topics.values()) {
+            topic.update(event.getCurrent(), event.getChanges().getPreviousGeneration(), affected);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        topics.values().forEach(Topic::complete);
+    }
+
+    int subscriberCount() {
+        int subscribers = 0;
+        for (Topic topic : topics.values()) {
+            subscribers += topic.subscribers;
+        }
+        return subscribers;
+    }
+
+    private Topic acquire(DepartureStreamFilter filter) {
+        return topics.compute(filter, (key, topic) -> {
+            Topic acquired = topic != null ? topic : new Topic(key);
+            acquired.subscribers++;
+            return acquired;
+        });
+    }
+
+    private void release(DepartureStreamFilter filter, Topic topic) {
+        topics.computeIfPresent(filter, (key, current) ->
+                current == topic && --current.subscribers == 0 ? null : current);
+    }
+
+    private static ServerSentEvent<DepartureChangesDto> toEvent(Update update, AtomicBoolean first) {
+        if (update == Update.HEARTBEAT) {
+            return ServerSentEvent.<DepartureChangesDto>builder().comment("heartbeat").build();
+        }
+        boolean initial = first.getAndSet(false);
+        DepartureChangesDto changes = DepartureChangesDto.builder()
+                .generation(update.generation)
+                .changed(initial ? update.departures : update.changed)
+                .removed(initial ? List.of() : update.removed)
+                .build();
+        return ServerSentEvent.builder(changes)
+                .id(String.valueOf(update.generation))
+                .event(initial ? SNAPSHOT_EVENT : CHANGES_EVENT)
+                .build();
+    }
+
+    private List<Departure> departures(DepartureStreamFilter filter, TripUpdatesSnapshot snapshot) {
+        long now = clock.instant().getEpochSecond();
+        return switch (filter.getKind()) {
+            case STOP -> snapshot.stopDepartures(filter.getId(), now, STOP_BOARD_SIZE, filter.getMode());
+            case ROUTE -> snapshot.routeDepartures(filter.getId(), now, filter.getMode());
+            case VEHICLE -> vehicleDepartures(snapshot.currentVehicleTrip(filter.getId(), now, filter.getMode()), now);
+        };
+    }
+
+    private static List<Departure> vehicleDepartures(Optional<VehicleTrip> vehicleTrip, long now) {
+        if (vehicleTrip.isEmpty()) {
+            return List.of();
+        }
+        List<Departure> departures = new ArrayList<>();
+        for (StopTimeRecord stopTime : vehicleTrip.get().getTrip().getStopTimes()) {
+            if (stopTime.hasDepartureTime() && stopTime.getDepartureTime() >= now) {
+                departures.add(new Departure(vehicleTrip.get().getFeed(), vehicleTrip.get().getTrip(), stopTime));
+            }
+        }
+        return departures;
+    }
+
+    /**
+     * A departure followed by a topic; a trip calling twice at the same stop is followed at its first call.
+     */
+    private record DepartureKey(String mode, String tripId, String stopId) {
+    }
+
+    /**
+     * A trip of a feed.
+     */
+    private record TripRef(String mode, String tripId) {
+    }
+
+    /**
+     * Everything a change set touches: the stops, routes and vehicles whose departures it may add,
+     * and the trips it changes or removes.
+     */
+    private record Affected(Set<String> stops, Set<String> routes, Set<String> vehicles, Set<TripRef> trips) {
+
+        static Affected of(SnapshotChanges changes) {
+            Affected affected = new Affected(new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>());
+            for (SnapshotChanges.TripChange added : changes.getAddedTrips()) {
+                added.getTrip().getStopTimes().forEach(stopTime -> affected.stops.add(stopTime.getStopId()));
+                affected.routes.add(added.getTrip().getRouteId());
+                affected.vehicles.add(added.getTrip().getVehicleId());
+            }
+            for (SnapshotChanges.TripChange removed : changes.getRemovedTrips()) {
+                affected.trips.add(new TripRef(removed.getFeed(), removed.getTrip().getTripId()));
+            }
+            for (SnapshotChanges.StopTimeChange change : changes.getStopTimeChanges()) {
+                affected.stops.add(change.getStopId());
+                affected.routes.add(change.getRouteId());
+                affected.vehicles.add(change.getVehicleId());
+                affected.trips.add(new TripRef(change.getFeed(), change.getTripId()));
+            }
+            for (SnapshotChanges.VehicleReassignment change : changes.getVehicleReassignments()) {
+                affected.vehicles.add(change.getPreviousVehicleId());
+                affected.vehicles.add(change.getVehicleId());
+                affected.trips.add(new TripRef(change.getFeed(), change.getTripId()));
+            }
+            return affected;
+        }
+
+        boolean touches(DepartureStreamFilter filter, Set<DepartureKey> followed) {
+            boolean selected = switch (filter.getKind()) {
+                case STOP -> stops.contains(filter.getId());
+                case ROUTE -> routes.contains(filter.getId());
+                case VEHICLE -> vehicles.contains(filter.getId());
+            };
+            if (selected) {
+                return true;
+            }
+            for (DepartureKey key : followed) {
+                if (trips.contains(new TripRef(key.mode(), key.tripId()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The state of a topic after a snapshot and what changed since the previous one.
+     */
+    private record Update(long generation, List<StopDepartureDto> departures, List<StopDepartureDto> changed,
+                          List<DepartureRefDto> removed) {
+
+        /** Marks a keep-alive tick between updates. */
+        static final Update HEARTBEAT = new Update(-1, List.of(), List.of(), List.of());
+    }
+
+    /**
+     * Shared state of all subscribers with the same filter.
+     */
+    private final class Topic {
+
+        private final DepartureStreamFilter filter;
+        /** Replays the latest update to every new subscriber. */
+        private final Sinks.Many<Update> sink = Sinks.many().replay().latest();
+        /** Guarded by the topics map. */
+        private int subscribers;
+        /** Guarded by this topic. */
+        private long generation = -1;
+        private Map<DepartureKey, StopDepartureDto> state = Map.of();
+        /** Earliest departure time in the state; once it has passed the state is out of date. */
+        private long validUntil = Long.MAX_VALUE;
+
+        private Topic(DepartureStreamFilter filter) {
+            this.filter = filter;
+        }
+
+        private Flux<Update> updates() {
+            return sink.asFlux();
+        }
+
+        /**
+         * Diffs the topic's departures in the snapshot against the previous ones. Snapshots are applied
+         * at most once and in generation order; a topic's first snapshot is always pushed.
+         *
+         * @param previousGeneration Generation the changes are relative to.
+         * @param affected What changed since that generation, or null if unknown.
+         */
+        private synchronized void update(TripUpdatesSnapshot snapshot, long previousGeneration, Affected affected) {
+            if (snapshot.getGeneration() <= generation) {
+                return;
+            }
+            boolean first = generation < 0;
+            boolean unaffected = affected != null && previousGeneration == generation
+                    && clock.instant().getEpochSecond() <= validUntil && !affected.touches(filter, state.keySet());
+            generation = snapshot.getGeneration();
+            metrics.streamTopicUpdated(!unaffected);
+            if (unaffected) {
+                return;
+            }
+
+            Map<DepartureKey, StopDepartureDto> next = new LinkedHashMap<>();
+            long earliest = Long.MAX_VALUE;
+            for (Departure departure : departures(filter, snapshot)) {
+                StopDepartureDto dto = StopDepartureService.toDto(departure, null);
+                next.putIfAbsent(new DepartureKey(dto.getMode(), dto.getTripId(), dto.getStopId()), dto);
+                earliest = Math.min(earliest, departure.getDepartureTime());
+            }
+            validUntil = earliest;
+
+            List<StopDepartureDto> changed = new ArrayList<>();
+            for (Map.Entry<DepartureKey, StopDepartureDto> entry : next.entrySet()) {
+                if (!entry.getValue().equals(state.get(entry.getKey()))) {
+                    changed.add(entry.getValue());
+                }
+            }
+            List<DepartureRefDto> removed = new ArrayList<>();
+            for (DepartureKey key : state.keySet()) {
+                if (!next.containsKey(key)) {
+                    removed.add(new DepartureRefDto(key.mode(), key.tripId(), key.stopId()));
+                }
+            }
+            state = next;
+
+            if (first || !changed.isEmpty() || !removed.isEmpty()) {
+                sink.tryEmitNext(new Update(generation, List.copyOf(next.values()), changed, removed));
+            }
+        }
+
+        private synchronized void complete() {
+            sink.tryEmitComplete();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package pl.edu.agh.to.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Encoded response bodies computed from the current snapshot, reused until the next snapshot is published.
+ * <p>
+ * Entries belong to a snapshot generation; a newer generation, seen either on lookup or when it is published,
+ * replaces all of them at once, so no entry outlives the data it was encoded from. Requests still reading
+ * an older snapshot are encoded without being cached. At most {@code ztp.response-cache.max-entries} responses
+ * are kept; caching another one evicts the least recently used.
+ * <p>
+ * Responses that depend on the current time are computed as of the start of its
+ * {@code ztp.response-cache.time-bucket-ms} bucket (see {@link #timeBucket(Instant)}), so requests within
+ * one bucket share an entry and the entries of past buckets are the first to be evicted.
+ */
+@Component
+public class EncodedResponseCache {
+
+    private final PipelineMetrics metrics;
+    private final int maxEntries;
+    private final long timeBucketMs;
+
+    private final AtomicReference<Generation> current;
+
+    public EncodedResponseCache(PipelineMetrics metrics,
+                                @Value("${ztp.response-cache.max-entries:10000}") int maxEntries,
+                                @Value("${ztp.response-cache.time-bucket-ms:5000}") long timeBucketMs) {
+        if (timeBucketMs < 1000) {
+            throw new IllegalArgumentException("ztp.response-cache.time-bucket-ms must be at least 1000");
+        }
+        this.metrics = metrics;
+        this.maxEntries = maxEntries;
+        this.timeBucketMs = timeBucketMs;
+        this.current = new AtomicReference<>(new Generation(-1, maxEntries));
+    }
+
+    /**
+     * @return Start of the time bucket containing {@code now}, in POSIX seconds; responses computed as of
+     * the current time use it both as that time and in their key.
+     */
+    public long timeBucket(Instant now) {
+        return Math.floorDiv(now.toEpochMilli(), timeBucketMs) * timeBucketMs / 1000;
+    }
+
+    /**
+     * @param generation Generation of the snapshot the response is computed from.
+     * @param key Everything the response depends on besides the snapshot, including its format.
+     * @param encoder Computes and encodes the response on a miss; exceptions it throws are not cached.
+     * @return Encoded response; must not be modified.
+     */
+    public byte[] get(long generation, Object key, Supplier<byte[]> encoder) {
+        Generation entries = entriesFor(generation);
+        if (entries == null) {
+            return encoder.get();
+        }
+        byte[] cached = entries.responses.get(key);
+        metrics.responseCacheLookup(cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] encoded = encoder.get();
+        entries.responses.putIfAbsent(key, encoded);
+        return encoded;
+    }
+
+    /**
+     * Drops the responses of the previous snapshot as soon as a new one is published.
+     */
+    @EventListener
+    public void onSnapshotPublished(SnapshotPublishedEvent event) {
+        entriesFor(event.getCurrent().getGeneration());
+    }
+
+    int size() {
+        return current.get().responses.size();
+    }
+
+    /**
+     * @return Entries of the generation, null if it is older than the cached one.
+     */
+    private Generation entriesFor(long generation) {
+        Generation entries = current.get();
+        while (entries.generation < generation) {
+            Generation next = new Generation(generation, maxEntries);
+            if (current.compareAndSet(entries, next)) {
+                return next;
+            }
+            entries = current.get();
+        }
+        return entries.generation == generation ? entries : null;
+    }
+
+    private static final class Generation {
+
+        private final long generation;
+        /** In access order, evicting the least recently used entry beyond the limit. */
+        private final Map<Object, byte[]> responses;
+
+        private Generation(long generation, int maxEntries) {
+            this.generation = generation;
+            this.responses = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, byte[]> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+        }
+    }
+}
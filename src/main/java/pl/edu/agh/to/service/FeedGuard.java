@@ -0,0 +1,93 @@
+package pl.edu.agh.to.service;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.extern.slf4j.Slf4j;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Guards the refreshes of one polled feed with its own {@link CircuitBreaker}, shared by all pollers.
+ * <p>
+ * Every refresh let through by the circuit reports its outcome exactly once: success, error or cancellation,
+ * whichever comes first, so neither a cancelled trial (e.g. on shutdown) nor a cancellation arriving after
+ * a success can leave the circuit in the wrong state. Failures are counted in the pipeline metrics and logged;
+ * the previous data of the feed stays in place.
+ */
+@Slf4j
+final class FeedGuard {
+
+    private final String name;
+    private final String metricName;
+    private final PipelineMetrics metrics;
+    private final CircuitBreaker circuit;
+
+    /**
+     * @param name Name of the feed in logs and errors, e.g. "bus TripUpdates".
+     * @param metricName Name of the feed in fetch and circuit metrics.
+     * @param failureThreshold Failed refreshes in a row that open the circuit.
+     * @param openDuration Time an open circuit rejects refreshes for.
+     */
+    FeedGuard(String name, String metricName, PipelineMetrics metrics, int failureThreshold, Duration openDuration,
+              Clock clock) {
+        this.name = name;
+        this.metricName = metricName;
+        this.metrics = metrics;
+        this.circuit = new CircuitBreaker(name, failureThreshold, openDuration, clock);
+        metrics.registerCircuit(metricName, circuit);
+    }
+
+    /**
+     * Runs a refresh unless the circuit is open.
+     *
+     * @param refresh Supplies the refresh; only called when the circuit lets it through.
+     * @return Mono emitting the result of the refresh.
+     * Fails with the error of the refresh, or with UpstreamUnavailableException
+     * without calling the refresh while the circuit is open.
+     */
+    <T> Mono<T> refresh(Supplier<Mono<T>> refresh) {
+        return Mono.defer(() -> {
+            if (!circuit.tryAcquire()) {
+                log.debug("Circuit of {} is open, skipping refresh", name);
+                return Mono.error(new UpstreamUnavailableException(
+                        "circuit of " + name + " is open", circuit.retryAfter()));
+            }
+            AtomicBoolean reported = new AtomicBoolean();
+            return refresh.get()
+                    .doOnSuccess(result -> report(reported, true))
+                    .doOnError(ex -> report(reported, false))
+                    // an unreported trial would keep the circuit half-open
+                    .doOnCancel(() -> report(reported, false))
+                    .doOnError(InvalidProtocolBufferException.class, ex -> {
+                        metrics.parseFailed();
+                        log.error("Parsing {} failed, keeping previous data: {}", name, ex.getMessage());
+                    })
+                    .doOnError(ex -> !(ex instanceof InvalidProtocolBufferException), ex -> {
+                        metrics.fetchFailed(metricName);
+                        log.error("Fetching {} failed, keeping previous data: {}", name, ex.getMessage());
+                    });
+        });
+    }
+
+    /**
+     * @return Time until the open circuit lets a trial refresh through, zero if the circuit is not open.
+     */
+    Duration retryAfter() {
+        return circuit.retryAfter();
+    }
+
+    private void report(AtomicBoolean reported, boolean success) {
+        if (!reported.compareAndSet(false, true)) {
+            return;
+        }
+        if (success) {
+            circuit.onSuccess();
+        } else {
+            circuit.onFailure();
+        }
+    }
+}
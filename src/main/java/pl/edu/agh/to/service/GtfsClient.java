@@ -1,9 +1,23 @@
 package pl.edu.agh.to.service;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Client for fetching GTFS Realtime data from the external ZTP API.
@@ -13,18 +27,105 @@ import org.springframework.web.reactive.function.client.WebClient;
 @RequiredArgsConstructor
 public class GtfsClient {
 
+    /** Appended to the feed name in the metrics of VehiclePositions fetches. */
+    public static final String POSITIONS_SUFFIX = "-positions";
+    /** Appended to the feed name in the metrics of ServiceAlerts fetches. */
+    public static final String ALERTS_SUFFIX = "-alerts";
+
     private final WebClient webClient;
+    private final PipelineMetrics metrics;
+
+    /**
+     * Fetches binary trip update data of one feed from the GTFS API unless it has not changed
+     * since the response described by the given validators.
+     * The body is not aggregated; it is handed over as a stream of network buffers.
+     *
+     * @param feed Feed to fetch.
+     * @param validators ETag and Last-Modified of the last processed response, or {@link FeedValidators#NONE}.
+     * @return Mono emitting raw GTFS Realtime Protobuf data with its validators, or a not-modified result.
+     */
+    public Mono<FeedFetchResult> fetchTripUpdates(GtfsFeedsProperties.Feed feed, FeedValidators validators) {
+        return fetch(feed.getName(), feed.getPath(), validators);
+    }
+
+    /**
+     * Same as {@link #fetchTripUpdates}, for the VehiclePositions feed of the same mode.
+     * Its fetch metrics are tagged with the feed name followed by {@link #POSITIONS_SUFFIX}.
+     *
+     * @param feed Feed whose positions path to fetch; must have one.
+     */
+    public Mono<FeedFetchResult> fetchVehiclePositions(GtfsFeedsProperties.Feed feed, FeedValidators validators) {
+        return fetch(feed.getName() + POSITIONS_SUFFIX, feed.getPositionsPath(), validators);
+    }
+
+    /**
+     * Same as {@link #fetchTripUpdates}, for the ServiceAlerts feed of the same mode.
+     * Its fetch metrics are tagged with the feed name followed by {@link #ALERTS_SUFFIX}.
+     *
+     * @param feed Feed whose alerts path to fetch; must have one.
+     */
+    public Mono<FeedFetchResult> fetchAlerts(GtfsFeedsProperties.Feed feed, FeedValidators validators) {
+        return fetch(feed.getName() + ALERTS_SUFFIX, feed.getAlertsPath(), validators);
+    }
+
+    private Mono<FeedFetchResult> fetch(String name, String path, FeedValidators validators) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = metrics.startTimer();
+            return webClient.get()
+                    .uri(path)
+                    .headers(headers -> applyValidators(headers, validators))
+                    .retrieve()
+                    .toEntityFlux(DataBuffer.class)
+                    .doOnSubscribe(subscription -> log.info("Fetching {} from GTFS API", path))
+                    .doOnError(ex -> metrics.fetchCompleted(sample, name, PipelineMetrics.OUTCOME_ERROR))
+                    .flatMap(response -> toResult(name, path, response, validators, sample));
+        });
+    }
+
+    private Mono<FeedFetchResult> toResult(String name, String path, ResponseEntity<Flux<DataBuffer>> response,
+                                           FeedValidators validators, Timer.Sample sample) {
+        Flux<DataBuffer> body = response.getBody() == null ? Flux.empty() : response.getBody();
+
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            metrics.fetchCompleted(sample, name, PipelineMetrics.OUTCOME_NOT_MODIFIED);
+            log.info("{} not modified since last fetch", path);
+            // drain the (empty) body so the connection goes back to the pool
+            return body.doOnNext(DataBufferUtils::release)
+                    .then(Mono.just(FeedFetchResult.notModified(validators)));
+        }
+
+        HttpHeaders headers = response.getHeaders();
+        return Mono.just(new FeedFetchResult(
+                timed(name, body, sample),
+                new FeedValidators(headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED))));
+    }
 
     /**
-     * Fetches binary trip update data from the GTFS API endpoint.
-     * @return Raw byte array containing GTFS Realtime Protobuf data.
+     * The body is read by the consumer of the result, so the fetch is timed until the body terminates.
      */
-    public byte[] fetchTripUpdatesAsBytes() {
-        log.info("Fetching TripUpdates.pb from GTFS API");
-        return webClient.get()
-                .uri("/TripUpdates.pb")
-                .retrieve()
-                .bodyToMono(byte[].class)
-                .block();
+    private Flux<DataBuffer> timed(String name, Flux<DataBuffer> body, Timer.Sample sample) {
+        return Flux.defer(() -> {
+            AtomicLong bytes = new AtomicLong();
+            return body.doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                    .doFinally(signal -> {
+                        if (signal == SignalType.ON_COMPLETE) {
+                            metrics.bodyDownloaded(bytes.get());
+                        }
+                        metrics.fetchCompleted(sample, name, switch (signal) {
+                            case ON_COMPLETE -> PipelineMetrics.OUTCOME_OK;
+                            case CANCEL -> PipelineMetrics.OUTCOME_CANCELLED;
+                            default -> PipelineMetrics.OUTCOME_ERROR;
+                        });
+                    });
+        });
+    }
+
+    private static void applyValidators(HttpHeaders headers, FeedValidators validators) {
+        if (validators.getEtag() != null) {
+            headers.setIfNoneMatch(validators.getEtag());
+        }
+        if (validators.getLastModified() != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+        }
     }
-}
\ No newline at end of file
+}
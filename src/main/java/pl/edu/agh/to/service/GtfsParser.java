@@ -1,34 +1,515 @@
 package pl.edu.agh.to.service;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.WireFormat;
 import com.google.transit.realtime.GtfsRealtime;
 import org.springframework.stereotype.Service;
+import pl.edu.agh.to.model.AlertRecord;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.VehiclePositionRecord;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Responsible for parsing raw GTFS Realtime Protobuf data.
+ * <p>
+ * Instead of materializing GtfsRealtime messages, the parser walks the wire format and extracts
+ * only the fields the service needs (trip, route and vehicle ids, stop ids, arrival/departure time and delay;
+ * coordinates, bearing and fix time of vehicle positions).
+ * Everything else - TripProperties, StopTimeProperties, occupancy - is skipped
+ * without creating objects. The feed is consumed one entity at a time, so neither the whole
+ * FeedMessage nor (when streaming) the whole response body is ever held in memory at once.
+ * Only the FeedHeader and ServiceAlerts are decoded with the generated classes: the header is read once per feed,
+ * and alerts are few and mostly made of the translated texts the service keeps anyway.
  */
 @Service
 public class GtfsParser {
 
+    private static final int LENGTH_DELIMITED = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int VARINT = WireFormat.WIRETYPE_VARINT;
+    private static final int FIXED32 = WireFormat.WIRETYPE_FIXED32;
+
+    private static final int FEED_HEADER_TAG =
+            GtfsRealtime.FeedMessage.HEADER_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int FEED_ENTITY_TAG =
+            GtfsRealtime.FeedMessage.ENTITY_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+
+    private static final int ENTITY_ID_TAG =
+            GtfsRealtime.FeedEntity.ID_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int ENTITY_IS_DELETED_TAG =
+            GtfsRealtime.FeedEntity.IS_DELETED_FIELD_NUMBER << 3 | VARINT;
+    private static final int ENTITY_TRIP_UPDATE_TAG =
+            GtfsRealtime.FeedEntity.TRIP_UPDATE_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int ENTITY_VEHICLE_TAG =
+            GtfsRealtime.FeedEntity.VEHICLE_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int ENTITY_ALERT_TAG =
+            GtfsRealtime.FeedEntity.ALERT_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+
+    private static final int TRIP_UPDATE_TRIP_TAG =
+            GtfsRealtime.TripUpdate.TRIP_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int TRIP_UPDATE_VEHICLE_TAG =
+            GtfsRealtime.TripUpdate.VEHICLE_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int TRIP_UPDATE_STOP_TIME_UPDATE_TAG =
+            GtfsRealtime.TripUpdate.STOP_TIME_UPDATE_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+
+    private static final int TRIP_ID_TAG =
+            GtfsRealtime.TripDescriptor.TRIP_ID_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int ROUTE_ID_TAG =
+            GtfsRealtime.TripDescriptor.ROUTE_ID_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+
+    private static final int VEHICLE_ID_TAG =
+            GtfsRealtime.VehicleDescriptor.ID_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+
+    private static final int STOP_ID_TAG =
+            GtfsRealtime.TripUpdate.StopTimeUpdate.STOP_ID_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int ARRIVAL_TAG =
+            GtfsRealtime.TripUpdate.StopTimeUpdate.ARRIVAL_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int DEPARTURE_TAG =
+            GtfsRealtime.TripUpdate.StopTimeUpdate.DEPARTURE_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+
+    private static final int POSITION_TRIP_TAG =
+            GtfsRealtime.VehiclePosition.TRIP_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int POSITION_VEHICLE_TAG =
+            GtfsRealtime.VehiclePosition.VEHICLE_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int POSITION_POSITION_TAG =
+            GtfsRealtime.VehiclePosition.POSITION_FIELD_NUMBER << 3 | LENGTH_DELIMITED;
+    private static final int POSITION_TIMESTAMP_TAG =
+            GtfsRealtime.VehiclePosition.TIMESTAMP_FIELD_NUMBER << 3 | VARINT;
+
+    private static final int LATITUDE_TAG =
+            GtfsRealtime.Position.LATITUDE_FIELD_NUMBER << 3 | FIXED32;
+    private static final int LONGITUDE_TAG =
+            GtfsRealtime.Position.LONGITUDE_FIELD_NUMBER << 3 | FIXED32;
+    private static final int BEARING_TAG =
+            GtfsRealtime.Position.BEARING_FIELD_NUMBER << 3 | FIXED32;
+
+    private static final int EVENT_DELAY_TAG =
+            GtfsRealtime.TripUpdate.StopTimeEvent.DELAY_FIELD_NUMBER << 3 | VARINT;
+    private static final int EVENT_TIME_TAG =
+            GtfsRealtime.TripUpdate.StopTimeEvent.TIME_FIELD_NUMBER << 3 | VARINT;
+
     /**
-     * Parses the raw byte array into a list of GtfsRealtime.TripUpdate objects.
-     * Filters out entities that are not TripUpdates.
+     * Parses the raw byte array into a list of trip records.
+     * Filters out entities that are not TripUpdates or are marked as deleted.
      *
      * @param data Raw Protobuf byte array from the client.
-     * @return A list of valid TripUpdate entities.
+     * @return A list of records, one per TripUpdate entity.
      * @throws InvalidProtocolBufferException if the byte data is corrupted or invalid.
      */
-    public List<GtfsRealtime.TripUpdate> parseTripUpdates(byte[] data)
+    public List<TripRecord> parseTripUpdates(byte[] data)
             throws InvalidProtocolBufferException {
 
-        GtfsRealtime.FeedMessage feedMessage =
-                GtfsRealtime.FeedMessage.parseFrom(data);
+        List<TripRecord> trips = new ArrayList<>();
+        try {
+            decode(CodedInputStream.newInstance(data), header -> true,
+                    entity -> scanEntity(entity, trips::add, entityId -> { }));
+        } catch (InvalidProtocolBufferException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            throw new InvalidProtocolBufferException(ex);
+        }
+        return List.copyOf(trips);
+    }
+
+    /**
+     * Decodes the feed from a stream, handing every trip record to the consumer as soon as it is read.
+     * Entities that are not TripUpdates are skipped.
+     *
+     * @param input Raw Protobuf stream, e.g. the response body as it arrives from the network.
+     * @param headerCheck Called with the FeedHeader as soon as it is decoded; returning false stops decoding.
+     * @param trips Receives a record for every TripUpdate entity.
+     * @return The decoded FeedHeader.
+     * @throws InvalidProtocolBufferException if the data is corrupted or invalid.
+     * @throws IOException if reading the stream fails.
+     */
+    public GtfsRealtime.FeedHeader streamTripUpdates(InputStream input,
+                                                     Predicate<GtfsRealtime.FeedHeader> headerCheck,
+                                                     Consumer<TripRecord> trips)
+            throws IOException {
+
+        return streamTripUpdates(input, headerCheck, trips, entityId -> { });
+    }
+
+    /**
+     * Same as {@link #streamTripUpdates(InputStream, Predicate, Consumer)}, but also reports
+     * entities marked with is_deleted, as used by DIFFERENTIAL feeds. Deleted entities are never
+     * handed to the trip consumer.
+     *
+     * @param deletedEntityIds Receives the FeedEntity.id of every deleted entity.
+     */
+    public GtfsRealtime.FeedHeader streamTripUpdates(InputStream input,
+                                                     Predicate<GtfsRealtime.FeedHeader> headerCheck,
+                                                     Consumer<TripRecord> trips,
+                                                     Consumer<String> deletedEntityIds)
+            throws IOException {
+
+        return decode(CodedInputStream.newInstance(input), headerCheck,
+                entity -> scanEntity(entity, trips, deletedEntityIds));
+    }
+
+    /**
+     * Decodes a VehiclePositions feed from a stream, handing every located vehicle to the consumer
+     * as soon as it is read. Entities without a VehiclePosition or without coordinates, and deleted
+     * entities, are skipped; the feed is always read as a full dataset.
+     *
+     * @param input Raw Protobuf stream, e.g. the response body as it arrives from the network.
+     * @param positions Receives a record for every located vehicle.
+     * @return The decoded FeedHeader.
+     * @throws InvalidProtocolBufferException if the data is corrupted or invalid.
+     * @throws IOException if reading the stream fails.
+     */
+    public GtfsRealtime.FeedHeader streamVehiclePositions(InputStream input,
+                                                          Consumer<VehiclePositionRecord> positions)
+            throws IOException {
+
+        return decode(CodedInputStream.newInstance(input), header -> true,
+                entity -> scanPositionEntity(entity, positions));
+    }
+
+    /**
+     * Decodes a ServiceAlerts feed from a stream, handing every alert to the consumer as soon as it is read.
+     * Entities without an Alert and deleted entities are skipped; the feed is always read as a full dataset.
+     *
+     * @param input Raw Protobuf stream, e.g. the response body as it arrives from the network.
+     * @param alerts Receives a record for every alert.
+     * @return The decoded FeedHeader.
+     * @throws InvalidProtocolBufferException if the data is corrupted or invalid.
+     * @throws IOException if reading the stream fails.
+     */
+    public GtfsRealtime.FeedHeader streamAlerts(InputStream input, Consumer<AlertRecord> alerts) throws IOException {
+        return decode(CodedInputStream.newInstance(input), header -> true,
+                entity -> scanAlertEntity(entity, alerts));
+    }
+
+    /**
+     * Reads the body of one FeedEntity, up to the limit pushed by the caller.
+     */
+    @FunctionalInterface
+    private interface EntityScanner {
+        void scan(CodedInputStream input) throws IOException;
+    }
+
+    private GtfsRealtime.FeedHeader decode(CodedInputStream input,
+                                           Predicate<GtfsRealtime.FeedHeader> headerCheck,
+                                           EntityScanner entities)
+            throws IOException {
+
+        GtfsRealtime.FeedHeader header = null;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case FEED_HEADER_TAG -> {
+                    header = input.readMessage(GtfsRealtime.FeedHeader.parser(), ExtensionRegistryLite.getEmptyRegistry());
+                    if (!header.isInitialized()) {
+                        throw new UninitializedMessageException(header).asInvalidProtocolBufferException();
+                    }
+                    if (!headerCheck.test(header)) {
+                        return header;
+                    }
+                }
+                case FEED_ENTITY_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    entities.scan(input);
+                    input.popLimit(limit);
+                }
+                default -> input.skipField(tag);
+            }
+        }
+
+        if (header == null) {
+            throw new InvalidProtocolBufferException("FeedMessage is missing the required header");
+        }
+        return header;
+    }
+
+    /**
+     * Hands the entity to the trip consumer if it carries a TripUpdate,
+     * or to the deletion consumer if it is marked with is_deleted.
+     */
+    private void scanEntity(CodedInputStream input, Consumer<TripRecord> trips,
+                            Consumer<String> deletedEntityIds) throws IOException {
+        TripRecord.TripRecordBuilder trip = null;
+        List<StopTimeRecord> stopTimes = null;
+        String entityId = "";
+        boolean deleted = false;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case ENTITY_ID_TAG -> entityId = input.readString();
+                case ENTITY_IS_DELETED_TAG -> deleted = input.readBool();
+                case ENTITY_TRIP_UPDATE_TAG -> {
+                    if (trip == null) {
+                        trip = TripRecord.builder();
+                        stopTimes = new ArrayList<>();
+                    }
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    scanTripUpdate(input, trip, stopTimes);
+                    input.popLimit(limit);
+                }
+                default -> input.skipField(tag);
+            }
+        }
+
+        if (deleted) {
+            deletedEntityIds.accept(entityId);
+        } else if (trip != null) {
+            trips.accept(trip.entityId(entityId)
+                    .stopTimes(List.copyOf(stopTimes))
+                    .build());
+        }
+    }
+
+    /**
+     * Hands the entity to the consumer if it carries a VehiclePosition with coordinates and is not deleted.
+     */
+    private void scanPositionEntity(CodedInputStream input, Consumer<VehiclePositionRecord> positions)
+            throws IOException {
+        VehiclePositionRecord.VehiclePositionRecordBuilder position = null;
+        boolean located = false;
+        boolean deleted = false;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case ENTITY_IS_DELETED_TAG -> deleted = input.readBool();
+                case ENTITY_VEHICLE_TAG -> {
+                    if (position == null) {
+                        position = VehiclePositionRecord.builder();
+                    }
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    located |= scanVehiclePosition(input, position);
+                    input.popLimit(limit);
+                }
+                default -> input.skipField(tag);
+            }
+        }
+
+        if (!deleted && located) {
+            positions.accept(position.build());
+        }
+    }
+
+    /**
+     * @return Whether the VehiclePosition carried a Position.
+     */
+    private boolean scanVehiclePosition(CodedInputStream input,
+                                        VehiclePositionRecord.VehiclePositionRecordBuilder position)
+            throws IOException {
+        boolean located = false;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case POSITION_TRIP_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    int descriptorTag;
+                    while ((descriptorTag = input.readTag()) != 0) {
+                        switch (descriptorTag) {
+                            case TRIP_ID_TAG -> position.tripId(input.readString());
+                            case ROUTE_ID_TAG -> position.routeId(input.readString());
+                            default -> input.skipField(descriptorTag);
+                        }
+                    }
+                    input.popLimit(limit);
+                }
+                case POSITION_VEHICLE_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    int descriptorTag;
+                    while ((descriptorTag = input.readTag()) != 0) {
+                        if (descriptorTag == VEHICLE_ID_TAG) {
+                            position.vehicleId(input.readString());
+                        } else {
+                            input.skipField(descriptorTag);
+                        }
+                    }
+                    input.popLimit(limit);
+                }
+                case POSITION_POSITION_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    int coordinateTag;
+                    while ((coordinateTag = input.readTag()) != 0) {
+                        switch (coordinateTag) {
+                            case LATITUDE_TAG -> position.latitude(input.readFloat());
+                            case LONGITUDE_TAG -> position.longitude(input.readFloat());
+                            case BEARING_TAG -> position.bearing(input.readFloat());
+                            default -> input.skipField(coordinateTag);
+                        }
+                    }
+                    input.popLimit(limit);
+                    located = true;
+                }
+                case POSITION_TIMESTAMP_TAG -> position.timestamp(input.readUInt64());
+                default -> input.skipField(tag);
+            }
+        }
+        return located;
+    }
+
+    /**
+     * Hands the entity to the consumer if it carries an Alert and is not deleted.
+     */
+    private void scanAlertEntity(CodedInputStream input, Consumer<AlertRecord> alerts) throws IOException {
+        GtfsRealtime.Alert.Builder alert = null;
+        String entityId = "";
+        boolean deleted = false;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case ENTITY_ID_TAG -> entityId = input.readString();
+                case ENTITY_IS_DELETED_TAG -> deleted = input.readBool();
+                case ENTITY_ALERT_TAG -> {
+                    if (alert == null) {
+                        alert = GtfsRealtime.Alert.newBuilder();
+                    }
+                    // repeated occurrences of a message field are merged
+                    input.readMessage(alert, ExtensionRegistryLite.getEmptyRegistry());
+                }
+                default -> input.skipField(tag);
+            }
+        }
+
+        if (!deleted && alert != null) {
+            if (!alert.isInitialized()) {
+                throw new UninitializedMessageException(alert.build()).asInvalidProtocolBufferException();
+            }
+            alerts.accept(toAlertRecord(entityId, alert));
+        }
+    }
+
+    private static AlertRecord toAlertRecord(String entityId, GtfsRealtime.AlertOrBuilder alert) {
+        List<AlertRecord.Period> periods = new ArrayList<>(alert.getActivePeriodCount());
+        for (GtfsRealtime.TimeRange range : alert.getActivePeriodList()) {
+            periods.add(new AlertRecord.Period(
+                    range.hasStart() ? range.getStart() : AlertRecord.Period.NO_START,
+                    range.hasEnd() ? range.getEnd() : AlertRecord.Period.NO_END));
+        }
+        List<AlertRecord.Selector> selectors = new ArrayList<>(alert.getInformedEntityCount());
+        for (GtfsRealtime.EntitySelector selector : alert.getInformedEntityList()) {
+            selectors.add(new AlertRecord.Selector(selector.getRouteId(), selector.getStopId(),
+                    selector.getTrip().getTripId()));
+        }
+        return AlertRecord.builder()
+                .alertId(entityId)
+                .cause(alert.getCause().name())
+                .effect(alert.getEffect().name())
+                .severity(alert.getSeverityLevel().name())
+                .headerText(text(alert.getHeaderText()))
+                .descriptionText(text(alert.getDescriptionText()))
+                .url(text(alert.getUrl()))
+                .activePeriods(List.copyOf(periods))
+                .informedEntities(List.copyOf(selectors))
+                .build();
+    }
+
+    /**
+     * @return The translation without a language, which the spec reserves for the default text,
+     * otherwise the first one; empty if there is none.
+     */
+    private static String text(GtfsRealtime.TranslatedString string) {
+        for (GtfsRealtime.TranslatedString.Translation translation : string.getTranslationList()) {
+            if (!translation.hasLanguage()) {
+                return translation.getText();
+            }
+        }
+        return string.getTranslationCount() > 0 ? string.getTranslation(0).getText() : "";
+    }
+
+    private void scanTripUpdate(CodedInputStream input, TripRecord.TripRecordBuilder trip,
+                                List<StopTimeRecord> stopTimes) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case TRIP_UPDATE_TRIP_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    scanTripDescriptor(input, trip);
+                    input.popLimit(limit);
+                }
+                case TRIP_UPDATE_VEHICLE_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    scanVehicleDescriptor(input, trip);
+                    input.popLimit(limit);
+                }
+                case TRIP_UPDATE_STOP_TIME_UPDATE_TAG -> {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    stopTimes.add(scanStopTimeUpdate(input));
+                    input.popLimit(limit);
+                }
+                default -> input.skipField(tag);
+            }
+        }
+    }
+
+    private void scanTripDescriptor(CodedInputStream input, TripRecord.TripRecordBuilder trip) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case TRIP_ID_TAG -> trip.tripId(input.readString());
+                case ROUTE_ID_TAG -> trip.routeId(input.readString());
+                default -> input.skipField(tag);
+            }
+        }
+    }
+
+    private void scanVehicleDescriptor(CodedInputStream input, TripRecord.TripRecordBuilder trip) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == VEHICLE_ID_TAG) {
+                trip.vehicleId(input.readString());
+            } else {
+                input.skipField(tag);
+            }
+        }
+    }
+
+    private StopTimeRecord scanStopTimeUpdate(CodedInputStream input) throws IOException {
+        String stopId = "";
+        long arrivalTime = StopTimeRecord.NO_TIME;
+        int arrivalDelay = StopTimeRecord.NO_DELAY;
+        long departureTime = StopTimeRecord.NO_TIME;
+        int departureDelay = StopTimeRecord.NO_DELAY;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (tag) {
+                case STOP_ID_TAG -> stopId = input.readString();
+                case ARRIVAL_TAG, DEPARTURE_TAG -> {
+                    long time = StopTimeRecord.NO_TIME;
+                    int delay = StopTimeRecord.NO_DELAY;
+
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    int eventTag;
+                    while ((eventTag = input.readTag()) != 0) {
+                        switch (eventTag) {
+                            case EVENT_TIME_TAG -> time = input.readInt64();
+                            case EVENT_DELAY_TAG -> delay = input.readInt32();
+                            default -> input.skipField(eventTag);
+                        }
+                    }
+                    input.popLimit(limit);
+
+                    // repeated occurrences of a message field are merged, so only present values overwrite
+                    if (tag == ARRIVAL_TAG) {
+                        arrivalTime = time == StopTimeRecord.NO_TIME ? arrivalTime : time;
+                        arrivalDelay = delay == StopTimeRecord.NO_DELAY ? arrivalDelay : delay;
+                    } else {
+                        departureTime = time == StopTimeRecord.NO_TIME ? departureTime : time;
+                        departureDelay = delay == StopTimeRecord.NO_DELAY ? departureDelay : delay;
+                    }
+                }
+                default -> input.skipField(tag);
+            }
+        }
 
-        return feedMessage.getEntityList().stream()
-                .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                .toList();
+        return new StopTimeRecord(stopId, arrivalTime, arrivalDelay, departureTime, departureDelay);
     }
-}
\ No newline at end of file
+}
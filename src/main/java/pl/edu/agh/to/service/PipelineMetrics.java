@@ -0,0 +1,252 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import pl.edu.agh.to.model.SnapshotChanges;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for every stage of the pipeline: upstream fetch, parse, snapshot build and request serving.
+ * Exposed through the Actuator endpoints, including /actuator/prometheus.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String OUTCOME_OK = "ok";
+    public static final String OUTCOME_NOT_MODIFIED = "not_modified";
+    public static final String OUTCOME_ERROR = "error";
+    /** The consumer stopped reading the body, e.g. once the feed header showed an unchanged feed. */
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String MODE_FULL = "full";
+    public static final String MODE_DIFFERENTIAL = "differential";
+    public static final String OPERATION_SAVE = "save";
+    public static final String OPERATION_LOAD = "load";
+
+    private final MeterRegistry registry;
+
+    private final DistributionSummary downloadedBytes;
+    private final Timer parseTimer;
+    private final DistributionSummary feedEntities;
+    private final Counter parseErrors;
+    private final Timer selectionTimer;
+
+    private final AtomicLong snapshotGeneration = new AtomicLong();
+    private final AtomicLong snapshotTrips = new AtomicLong();
+    private final AtomicLong snapshotDepartures = new AtomicLong();
+    private final AtomicLong snapshotStale = new AtomicLong();
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        this.downloadedBytes = DistributionSummary.builder("ztp.gtfs.fetch.bytes")
+                .description("Size of downloaded TripUpdates response bodies")
+                .baseUnit("bytes")
+                .register(registry);
+        this.parseTimer = Timer.builder("ztp.gtfs.parse")
+                .description("Time to decode a TripUpdates body while it is being downloaded")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.feedEntities = DistributionSummary.builder("ztp.gtfs.feed.entities")
+                .description("TripUpdate entities (including deletions) decoded per feed")
+                .register(registry);
+        this.parseErrors = Counter.builder("ztp.gtfs.parse.errors")
+                .description("Feeds rejected because of invalid Protobuf data")
+                .register(registry);
+        this.selectionTimer = Timer.builder("ztp.departure.selection")
+                .description("Time to select a random departure from the snapshot")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        Gauge.builder("ztp.snapshot.generation", snapshotGeneration, AtomicLong::get)
+                .description("Generation of the current snapshot")
+                .register(registry);
+        Gauge.builder("ztp.snapshot.trips", snapshotTrips, AtomicLong::get)
+                .description("Trips in the current snapshot")
+                .register(registry);
+        Gauge.builder("ztp.snapshot.departures", snapshotDepartures, AtomicLong::get)
+                .description("Departures in the current snapshot")
+                .register(registry);
+        Gauge.builder("ztp.snapshot.stale", snapshotStale, AtomicLong::get)
+                .description("1 while serving a snapshot restored from disk, 0 once a feed has been fetched")
+                .register(registry);
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Records the time until the upstream response body ended, or until the headers of a response without one.
+     *
+     * @param feed Name of the fetched feed.
+     * @param outcome One of {@link #OUTCOME_OK}, {@link #OUTCOME_NOT_MODIFIED}, {@link #OUTCOME_ERROR},
+     * {@link #OUTCOME_CANCELLED}.
+     */
+    public void fetchCompleted(Timer.Sample sample, String feed, String outcome) {
+        sample.stop(Timer.builder("ztp.gtfs.fetch")
+                .description("Upstream feed fetch latency until the response body is received")
+                .tag("feed", feed)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void bodyDownloaded(long bytes) {
+        downloadedBytes.record(bytes);
+    }
+
+    public void fetchFailed(String feed) {
+        Counter.builder("ztp.gtfs.fetch.failures")
+                .description("Refreshes that failed to fetch the feed from upstream")
+                .tag("feed", feed)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts a caller that joined a refresh already in flight instead of fetching the feed itself.
+     */
+    public void fetchCoalesced(String feed) {
+        Counter.builder("ztp.gtfs.fetch.coalesced")
+                .description("Refresh requests served by joining a fetch of the same feed already in flight")
+                .tag("feed", feed)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Exposes the state of a feed's circuit: 0 closed, 1 open, 2 half-open.
+     */
+    public void registerCircuit(String feed, CircuitBreaker circuit) {
+        Gauge.builder("ztp.gtfs.circuit.state", circuit, c -> c.getState().ordinal())
+                .description("State of the circuit guarding the upstream feed: 0 closed, 1 open, 2 half-open")
+                .tag("feed", feed)
+                .register(registry);
+    }
+
+    /**
+     * Exposes the number of departure streams with subscribers and the number of their subscribers.
+     */
+    public void registerStreams(Supplier<Number> topics, Supplier<Number> subscribers) {
+        Gauge.builder("ztp.stream.topics", topics)
+                .description("Departure stream filters with at least one subscriber")
+                .register(registry);
+        Gauge.builder("ztp.stream.subscribers", subscribers)
+                .description("Subscribers of departure streams")
+                .register(registry);
+    }
+
+    /**
+     * Counts a stream subscriber disconnected because it fell too far behind.
+     */
+    public void streamOverflowed() {
+        Counter.builder("ztp.stream.overflows")
+                .description("Departure stream subscribers disconnected because their buffer overflowed")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts a new snapshot applied to a departure stream topic, by whether its departures had to be recomputed.
+     */
+    public void streamTopicUpdated(boolean recomputed) {
+        Counter.builder("ztp.stream.topic.updates")
+                .description("Snapshots applied to departure stream topics, recomputed or skipped as unaffected")
+                .tag("result", recomputed ? "recomputed" : "skipped")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts a lookup of a pre-encoded response.
+     */
+    public void responseCacheLookup(boolean hit) {
+        Counter.builder("ztp.response.cache")
+                .description("Lookups of pre-encoded responses of the current snapshot")
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    public void parseCompleted(Timer.Sample sample, int entities) {
+        sample.stop(parseTimer);
+        feedEntities.record(entities);
+    }
+
+    public void parseFailed() {
+        parseErrors.increment();
+    }
+
+    /**
+     * Records the snapshot build time and updates the snapshot gauges.
+     *
+     * @param mode {@link #MODE_FULL} or {@link #MODE_DIFFERENTIAL}.
+     */
+    public void snapshotPublished(Timer.Sample sample, String mode, TripUpdatesSnapshot snapshot) {
+        sample.stop(Timer.builder("ztp.snapshot.build")
+                .description("Time to build a snapshot and its indexes")
+                .tag("mode", mode)
+                .register(registry));
+        updateSnapshotGauges(snapshot);
+    }
+
+    /**
+     * Updates the snapshot gauges for a snapshot published without being built, i.e. loaded from disk.
+     */
+    public void snapshotRestored(TripUpdatesSnapshot snapshot) {
+        updateSnapshotGauges(snapshot);
+    }
+
+    private void updateSnapshotGauges(TripUpdatesSnapshot snapshot) {
+        snapshotGeneration.set(snapshot.getGeneration());
+        snapshotTrips.set(snapshot.getTripCount());
+        snapshotDepartures.set(snapshot.getDepartureCount());
+        snapshotStale.set(snapshot.isStale() ? 1 : 0);
+    }
+
+    /**
+     * Records the time to diff a snapshot against the previous one and counts the changes found.
+     */
+    public void snapshotDiffed(Timer.Sample sample, SnapshotChanges changes) {
+        sample.stop(Timer.builder("ztp.snapshot.diff")
+                .description("Time to find the changes between consecutive snapshots")
+                .register(registry));
+        countChanges("trip_added", changes.getAddedTrips().size());
+        countChanges("trip_removed", changes.getRemovedTrips().size());
+        countChanges("stop_time", changes.getStopTimeChanges().size());
+        countChanges("vehicle_reassigned", changes.getVehicleReassignments().size());
+    }
+
+    private void countChanges(String kind, int count) {
+        Counter.builder("ztp.snapshot.changes")
+                .description("Entity changes between consecutive snapshots")
+                .tag("kind", kind)
+                .register(registry)
+                .increment(count);
+    }
+
+    /**
+     * Records writing or loading the snapshot file.
+     *
+     * @param operation {@link #OPERATION_SAVE} or {@link #OPERATION_LOAD}.
+     * @param outcome {@link #OUTCOME_OK} or {@link #OUTCOME_ERROR}.
+     */
+    public void snapshotFileAccessed(Timer.Sample sample, String operation, String outcome) {
+        sample.stop(Timer.builder("ztp.snapshot.file")
+                .description("Time to write or memory-map the persisted snapshot")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry));
+    }
+
+    public <T> T timeSelection(Supplier<T> selection) {
+        return selectionTimer.record(selection);
+    }
+}
@@ -1,83 +1,138 @@
 package pl.edu.agh.to.service;
 
-import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.transit.realtime.GtfsRealtime;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.model.Departure;
+import pl.edu.agh.to.model.FeedSnapshot;
 import pl.edu.agh.to.model.RandomDepartureDto;
-
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 /**
- * Service responsible for fetching, parsing, and processing GTFS data
- * to return a randomly selected departure.
+ * Service responsible for selecting a random departure
+ * from the current TripUpdates snapshot.
  */
 @Service
 @RequiredArgsConstructor
 public class RandomDepartureService {
 
-    private final GtfsClient gtfsClient;
-    private final GtfsParser gtfsParser;
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    private final SnapshotLoader snapshotLoader;
     private final Random random;
-    private static final int MAX_ATTEMPTS = 20;
+    private final PipelineMetrics metrics;
+    private final GtfsFeedsProperties feedsProperties;
 
     /**
-     * Fetches GTFS data, selects a random trip update, and extracts departure information.
+     * Selects a departure uniformly at random from the departure index of the current snapshot.
+     * Reads the in-memory snapshot and never blocks; before the first snapshot it waits for the shared initial load.
      *
-     * @return RandomDepartureDto containing the processed information.
-     * @throws InvalidProtocolBufferException if Protobuf data is invalid.
-     * @throws NoSuchElementException if critical data (trips, stops, or time) is still missing
-     * after a specific number of unsuccessful attempts.
+     * @param mode Feed to draw from, or null for all feeds.
+     * @return Mono emitting RandomDepartureDto containing the processed information.
+     * Fails with IllegalArgumentException if the mode is not a configured feed,
+     * IllegalStateException if no snapshot could be loaded,
+     * or NotFoundException if the selected feeds contain no stop with a departure time.
      */
-    public RandomDepartureDto getRandomDepartureInfo() throws InvalidProtocolBufferException {
+    public Mono<RandomDepartureDto> getRandomDepartureInfo(String mode) {
+        return Mono.fromRunnable(() -> feedsProperties.checkMode(mode))
+                .then(Mono.defer(snapshotLoader::load))
+                .map(snapshot -> metrics.timeSelection(() -> selectRandomDeparture(snapshot, mode)));
+    }
 
-        byte[] data = gtfsClient.fetchTripUpdatesAsBytes();
+    /**
+     * Draws a batch of departures from a single snapshot.
+     * Samples are produced lazily, so the response can be written while it is being generated.
+     *
+     * @param count Number of samples, between 1 and {@link #MAX_BATCH_SIZE}.
+     * @param distinct Whether to sample without replacement; the batch is then capped at the number of departures.
+     * @param seed Seed making the batch reproducible for the same snapshot, or null for a random one.
+     * @param mode Feed to draw from, or null for all feeds.
+     * @return Flux emitting the sampled departures.
+     * Fails with IllegalArgumentException if the count is out of range or the mode is not a configured feed,
+     * IllegalStateException if no snapshot could be loaded,
+     * or NotFoundException if the selected feeds contain no departures.
+     */
+    public Flux<RandomDepartureDto> getRandomDepartures(int count, boolean distinct, Long seed, String mode) {
+        return Flux.defer(() -> {
+            if (count < 1 || count > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("count must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            feedsProperties.checkMode(mode);
+            return snapshotLoader.load().flatMapMany(snapshot -> sample(snapshot, count, distinct, seed, mode));
+        });
+    }
 
-        List<GtfsRealtime.TripUpdate> trips = gtfsParser.parseTripUpdates(data);
+    private Flux<RandomDepartureDto> sample(TripUpdatesSnapshot snapshot, int count, boolean distinct, Long seed,
+                                            String mode) {
+        requireDepartures(snapshot, mode);
+        Random generator = seed == null ? random : new Random(seed);
+        int size = snapshot.getDepartureCount(mode);
 
-        if (trips.isEmpty()) {
-            throw new NoSuchElementException("No trip updates available");
+        if (distinct) {
+            return Flux.fromStream(Arrays.stream(sampleDistinct(size, Math.min(count, size), generator)).boxed())
+                    .map(departure -> toDto(snapshot, snapshot.departure(mode, departure)));
         }
+        return Flux.range(0, count)
+                .map(i -> toDto(snapshot, snapshot.departure(mode, generator.nextInt(size))));
+    }
 
-        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
-            GtfsRealtime.TripUpdate randomTrip =
-                    trips.get(random.nextInt(trips.size()));
-
-            List<GtfsRealtime.TripUpdate.StopTimeUpdate> stops =
-                    randomTrip.getStopTimeUpdateList();
-
-            if (stops.isEmpty())
-                continue;
+    private RandomDepartureDto selectRandomDeparture(TripUpdatesSnapshot snapshot, String mode) {
 
-            GtfsRealtime.TripUpdate.StopTimeUpdate randomStop =
-                    stops.get(random.nextInt(stops.size()));
+        requireDepartures(snapshot, mode);
 
-            if (!randomStop.hasDeparture() || !randomStop.getDeparture().hasTime())
-                continue;
+        return toDto(snapshot, snapshot.departure(mode, random.nextInt(snapshot.getDepartureCount(mode))));
+    }
 
+    private static void requireDepartures(TripUpdatesSnapshot snapshot, String mode) {
+        if (snapshot.getDepartureCount(mode) == 0) {
+            throw new NotFoundException(mode == null
+                    ? "No departures available"
+                    : "No " + mode + " departures available");
+        }
+    }
 
-            String stopId = randomStop.getStopId();
-            long departureEpoch = randomStop.getDeparture().getTime();
+    /**
+     * Floyd's algorithm: k distinct values from [0, n) using k random draws and O(k) memory,
+     * independently of n.
+     */
+    static int[] sampleDistinct(int n, int k, Random generator) {
+        Set<Integer> chosen = new HashSet<>(k * 4 / 3 + 1);
+        int[] sample = new int[k];
+        int next = 0;
+
+        for (int j = n - k; j < n; j++) {
+            int candidate = generator.nextInt(j + 1);
+            int value = chosen.contains(candidate) ? j : candidate;
+            chosen.add(value);
+            sample[next++] = value;
+        }
+        return sample;
+    }
 
-            LocalDateTime departureTime = LocalDateTime.ofInstant(
-                    Instant.ofEpochSecond(departureEpoch),
-                    ZoneId.systemDefault()
-            );
+    private static RandomDepartureDto toDto(TripUpdatesSnapshot snapshot, Departure departure) {
 
-            return RandomDepartureDto.builder()
-                    .vehicleId(randomTrip.getVehicle().getId())
-                    .stopId(stopId)
-                    .departureTime(departureTime)
-                    .build();
-        }
+        LocalDateTime departureTime = LocalDateTime.ofInstant(
+                Instant.ofEpochSecond(departure.getDepartureTime()),
+                ZoneId.systemDefault()
+        );
 
-        throw new NoSuchElementException(
-                "Unable to find full valid random departure after " + MAX_ATTEMPTS + " attempts");
+        return RandomDepartureDto.builder()
+                .vehicleId(departure.getTrip().getVehicleId())
+                .stopId(departure.getStopTime().getStopId())
+                .departureTime(departureTime)
+                .mode(departure.getFeed())
+                .stale(snapshot.feed(departure.getFeed()).map(FeedSnapshot::isStale).orElse(false))
+                .build();
     }
-}
\ No newline at end of file
+}
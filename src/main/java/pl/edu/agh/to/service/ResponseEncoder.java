@@ -0,0 +1,126 @@
+package pl.edu.agh.to.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import pl.edu.agh.to.api.ZtpApi;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.Departure;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.VehicleTrip;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Encodes responses into the bytes sent to clients: as JSON of the response DTOs with the application's
+ * ObjectMapper, or as the Protobuf messages of {@code ztp-api.proto}, whose POSIX times are copied from the
+ * snapshot records without a round trip through local time.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResponseEncoder {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param departures Departures of the board, as resolved from the snapshot.
+     * @param alerts Alerts of every departure, in the same order, or null if they were not requested.
+     */
+    public byte[] stopBoard(List<Departure> departures, List<List<AlertDto>> alerts, ResponseFormat format) {
+        if (format == ResponseFormat.JSON) {
+            List<StopDepartureDto> board = new ArrayList<>(departures.size());
+            for (int i = 0; i < departures.size(); i++) {
+                board.add(StopDepartureService.toDto(departures.get(i), alerts == null ? null : alerts.get(i)));
+            }
+            return json(board);
+        }
+        ZtpApi.StopBoard.Builder message = ZtpApi.StopBoard.newBuilder();
+        for (int i = 0; i < departures.size(); i++) {
+            Departure departure = departures.get(i);
+            TripRecord trip = departure.getTrip();
+            StopTimeRecord stopTime = departure.getStopTime();
+            ZtpApi.StopDeparture.Builder encoded = message.addDeparturesBuilder()
+                    .setDepartureTime(departure.getDepartureTime());
+            setIfPresent(stopTime.getStopId(), encoded::setStopId);
+            if (stopTime.hasDepartureDelay()) {
+                encoded.setDepartureDelay(stopTime.getDepartureDelay());
+            }
+            setIfPresent(trip.getVehicleId(), encoded::setVehicleId);
+            setIfPresent(trip.getTripId(), encoded::setTripId);
+            setIfPresent(trip.getRouteId(), encoded::setRouteId);
+            setIfPresent(departure.getFeed(), encoded::setMode);
+            if (alerts != null) {
+                alerts.get(i).forEach(alert -> encoded.addAlerts(toMessage(alert)));
+            }
+        }
+        return message.build().toByteArray();
+    }
+
+    /**
+     * @param vehicleId Vehicle as requested, which the trip may report under a different descriptor.
+     * @param current Trip the vehicle is serving.
+     * @param stops Remaining stop times of the trip.
+     */
+    public byte[] vehicle(String vehicleId, VehicleTrip current, List<StopTimeRecord> stops, ResponseFormat format) {
+        if (format == ResponseFormat.JSON) {
+            return json(VehicleService.toDto(vehicleId, current, stops));
+        }
+        TripRecord trip = current.getTrip();
+        ZtpApi.Vehicle.Builder message = ZtpApi.Vehicle.newBuilder();
+        setIfPresent(vehicleId, message::setVehicleId);
+        setIfPresent(trip.getTripId(), message::setTripId);
+        setIfPresent(trip.getRouteId(), message::setRouteId);
+        setIfPresent(current.getFeed(), message::setMode);
+        for (StopTimeRecord stop : stops) {
+            ZtpApi.VehicleStop.Builder encoded = message.addStopsBuilder();
+            setIfPresent(stop.getStopId(), encoded::setStopId);
+            if (stop.hasArrivalTime()) {
+                encoded.setArrivalTime(stop.getArrivalTime());
+            }
+            if (stop.hasArrivalDelay()) {
+                encoded.setArrivalDelay(stop.getArrivalDelay());
+            }
+            if (stop.hasDepartureTime()) {
+                encoded.setDepartureTime(stop.getDepartureTime());
+            }
+            if (stop.hasDepartureDelay()) {
+                encoded.setDepartureDelay(stop.getDepartureDelay());
+            }
+        }
+        return message.build().toByteArray();
+    }
+
+    private byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ZtpApi.Alert toMessage(AlertDto alert) {
+        ZtpApi.Alert.Builder message = ZtpApi.Alert.newBuilder();
+        setIfPresent(alert.getAlertId(), message::setAlertId);
+        setIfPresent(alert.getMode(), message::setMode);
+        setIfPresent(alert.getCause(), message::setCause);
+        setIfPresent(alert.getEffect(), message::setEffect);
+        setIfPresent(alert.getSeverity(), message::setSeverity);
+        setIfPresent(alert.getHeader(), message::setHeader);
+        setIfPresent(alert.getDescription(), message::setDescription);
+        setIfPresent(alert.getUrl(), message::setUrl);
+        return message.build();
+    }
+
+    private static void setIfPresent(String value, Consumer<String> setter) {
+        if (value != null) {
+            setter.accept(value);
+        }
+    }
+}
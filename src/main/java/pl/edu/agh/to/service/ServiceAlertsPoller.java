@@ -0,0 +1,54 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.AlertRecord;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodically fetches the ServiceAlerts feeds of the configured feeds that name one
+ * ({@code ztp.gtfs.feeds[i].alerts-path}) and publishes them to the alerts store.
+ */
+@Service
+public class ServiceAlertsPoller extends AuxiliaryFeedPoller {
+
+    private final GtfsClient gtfsClient;
+    private final GtfsParser gtfsParser;
+    private final AlertsStore alertsStore;
+
+    public ServiceAlertsPoller(GtfsClient gtfsClient, GtfsParser gtfsParser, AlertsStore alertsStore,
+                               PipelineMetrics metrics, GtfsFeedsProperties feedsProperties, Clock clock,
+                               @Value("${ztp.gtfs.initial-delay-ms:0}") long initialDelayMs,
+                               @Value("${ztp.gtfs.refresh-interval-ms:15000}") long refreshIntervalMs,
+                               @Value("${ztp.gtfs.circuit.failure-threshold:3}") int failureThreshold,
+                               @Value("${ztp.gtfs.circuit.open-ms:30000}") long openMs) {
+        super("ServiceAlerts", GtfsClient.ALERTS_SUFFIX, metrics, feedsProperties,
+                GtfsFeedsProperties.Feed::getAlertsPath, clock,
+                initialDelayMs, refreshIntervalMs, failureThreshold, openMs);
+        this.gtfsClient = gtfsClient;
+        this.gtfsParser = gtfsParser;
+        this.alertsStore = alertsStore;
+    }
+
+    @Override
+    protected Mono<FeedFetchResult> fetch(GtfsFeedsProperties.Feed feed, FeedValidators validators) {
+        return gtfsClient.fetchAlerts(feed, validators);
+    }
+
+    @Override
+    protected void ingest(String feed, InputStream body) throws IOException {
+        List<AlertRecord> alerts = new ArrayList<>();
+        GtfsRealtime.FeedHeader header = gtfsParser.streamAlerts(body, alerts::add);
+        alertsStore.publish(feed, alerts, header.getTimestamp());
+    }
+}
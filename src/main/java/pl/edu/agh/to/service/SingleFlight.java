@@ -0,0 +1,89 @@
+package pl.edu.agh.to.service;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent executions of the same keyed operation: while one is in flight, later callers
+ * subscribe to it instead of starting their own, and all of them receive its value, emptiness or error.
+ * <p>
+ * The shared execution is detached from its callers, so a caller cancelling or timing out neither cancels it
+ * nor affects the others. Once it terminates, whether with a result or by being cancelled, the key is released
+ * and the next caller starts a new execution.
+ *
+ * @param <K> Key identifying the operation, e.g. a feed name.
+ * @param <V> Value emitted by the operation.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param key Operation to run or join.
+     * @param operation Supplies the operation; called only by the caller that starts a new execution.
+     * @param onJoin Called whenever a caller joins an execution already in flight.
+     * @return Mono emitting the result of the shared execution.
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> operation, Runnable onJoin) {
+        return Mono.defer(() -> {
+            Flight started = new Flight(key);
+            Flight current = inFlight.putIfAbsent(key, started);
+            if (current != null) {
+                onJoin.run();
+                return current.outcome.asMono();
+            }
+            started.start(operation);
+            return started.outcome.asMono();
+        });
+    }
+
+    /**
+     * Cancels every execution in flight, e.g. on shutdown. Their callers fail with CancellationException.
+     */
+    public void cancelAll() {
+        inFlight.values().forEach(Flight::cancel);
+    }
+
+    /**
+     * @return Number of executions currently in flight.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private final class Flight {
+
+        private final K key;
+        private final Sinks.One<V> outcome = Sinks.one();
+        private final Disposable.Swap execution = Disposables.swap();
+
+        private Flight(K key) {
+            this.key = key;
+        }
+
+        private void start(Supplier<Mono<V>> operation) {
+            // released before the result reaches any caller, so a caller reacting to it starts a new execution;
+            // doFinally also covers an execution cancelled before it terminated
+            execution.update(Mono.defer(operation)
+                    .doOnSuccess(value -> release())
+                    .doOnError(error -> release())
+                    .doFinally(signal -> release())
+                    .subscribe(outcome::tryEmitValue, outcome::tryEmitError, outcome::tryEmitEmpty));
+        }
+
+        private void cancel() {
+            execution.dispose();
+            outcome.tryEmitError(new CancellationException("Execution of " + key + " was cancelled"));
+        }
+
+        private void release() {
+            inFlight.remove(key, this);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.index.IdDictionary;
+import pl.edu.agh.to.index.TripColumns;
+import pl.edu.agh.to.index.TripPartition;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.SnapshotChangedEvent;
+import pl.edu.agh.to.model.SnapshotChanges;
+import pl.edu.agh.to.model.SnapshotChangesDto;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Computes what changed between consecutive snapshots and publishes it as a {@link SnapshotChangedEvent}.
+ * <p>
+ * Partitions shared with the previous snapshot are skipped without being read. In a rebuilt partition trips are
+ * matched by entity id and compared by their content hashes first, so an unchanged trip costs a hash lookup
+ * and its stop times are only read when the hashes differ.
+ */
+@Service
+public class SnapshotDiffService {
+
+    private final ApplicationEventPublisher events;
+    private final PipelineMetrics metrics;
+
+    /** Changes that led to the current snapshot. */
+    private volatile SnapshotChanges latest;
+
+    public SnapshotDiffService(ApplicationEventPublisher events, PipelineMetrics metrics) {
+        this.events = events;
+        this.metrics = metrics;
+    }
+
+    @EventListener
+    public void onSnapshotPublished(SnapshotPublishedEvent event) {
+        Timer.Sample sample = metrics.startTimer();
+        SnapshotChanges changes = diff(event.getPrevious(), event.getCurrent());
+        metrics.snapshotDiffed(sample, changes);
+        latest = changes;
+        events.publishEvent(new SnapshotChangedEvent(event.getCurrent(), changes));
+    }
+
+    public Optional<SnapshotChanges> latest() {
+        return Optional.ofNullable(latest);
+    }
+
+    /**
+     * @return Number of changes of every kind that led to the current snapshot.
+     * @throws UpstreamUnavailableException if no snapshot has been published yet.
+     */
+    public SnapshotChangesDto getLatestChanges() {
+        SnapshotChanges changes = latest().orElseThrow(() ->
+                new UpstreamUnavailableException("No TripUpdates loaded yet", Duration.ZERO));
+        return SnapshotChangesDto.builder()
+                .generation(changes.getGeneration())
+                .previousGeneration(changes.getPreviousGeneration())
+                .addedTrips(changes.getAddedTrips().size())
+                .removedTrips(changes.getRemovedTrips().size())
+                .changedStopTimes(changes.getStopTimeChanges().size())
+                .reassignedVehicles(changes.getVehicleReassignments().size())
+                .unchangedTrips(changes.getUnchangedTrips())
+                .build();
+    }
+
+    /**
+     * @param previous Earlier snapshot, null to report every trip of the later one as added.
+     */
+    static SnapshotChanges diff(TripUpdatesSnapshot previous, TripUpdatesSnapshot current) {
+        TreeSet<String> feedNames = new TreeSet<>();
+        if (previous != null) {
+            previous.getFeeds().forEach(feed -> feedNames.add(feed.getName()));
+        }
+        current.getFeeds().forEach(feed -> feedNames.add(feed.getName()));
+
+        Changes changes = new Changes();
+        for (String feedName : feedNames) {
+            List<TripPartition> before = partitionsOf(previous, feedName);
+            List<TripPartition> after = partitionsOf(current, feedName);
+            if (before.size() == after.size()) {
+                for (int p = 0; p < after.size(); p++) {
+                    if (before.get(p) == after.get(p)) {
+                        changes.unchanged += after.get(p).getColumns().tripCount();
+                    } else {
+                        changes.diff(feedName, List.of(before.get(p)), List.of(after.get(p)));
+                    }
+                }
+            } else {
+                // a feed added, removed or split into more partitions shares none of them
+                changes.diff(feedName, before, after);
+            }
+        }
+
+        return SnapshotChanges.builder()
+                .previousGeneration(previous != null ? previous.getGeneration() : 0)
+                .generation(current.getGeneration())
+                .addedTrips(changes.added)
+                .removedTrips(changes.removed)
+                .stopTimeChanges(changes.stopTimes)
+                .vehicleReassignments(changes.vehicles)
+                .unchangedTrips(changes.unchanged)
+                .build();
+    }
+
+    private static List<TripPartition> partitionsOf(TripUpdatesSnapshot snapshot, String feedName) {
+        return Optional.ofNullable(snapshot)
+                .flatMap(s -> s.feed(feedName))
+                .map(FeedSnapshot::getPartitions)
+                .orElse(List.of());
+    }
+
+    /**
+     * Accumulates the changes found in rebuilt partitions.
+     */
+    private static final class Changes {
+
+        private static final int UNTRANSLATED = -2;
+
+        private final List<SnapshotChanges.TripChange> added = new ArrayList<>();
+        private final List<SnapshotChanges.TripChange> removed = new ArrayList<>();
+        private final List<SnapshotChanges.StopTimeChange> stopTimes = new ArrayList<>();
+        private final List<SnapshotChanges.VehicleReassignment> vehicles = new ArrayList<>();
+        private int unchanged;
+        /** Codes of earlier ids in the dictionary of the later side, for feeds whose dictionary was replaced. */
+        private final Map<IdDictionary, int[]> translations = new IdentityHashMap<>();
+        private IdDictionary target;
+
+        /**
+         * Matches the trips of the partitions by entity id; the trips of an entity are in one partition per side.
+         * Earlier codes are translated into the later dictionary, so the sides compare even after the feed's
+         * dictionary was compacted; content hashes are only compared within one dictionary.
+         */
+        private void diff(String feed, List<TripPartition> beforePartitions, List<TripPartition> afterPartitions) {
+            target = afterPartitions.isEmpty() ? null : afterPartitions.getFirst().getColumns().dictionary();
+            // entity id -> partition in the high and trip in the low half
+            Map<Integer, Long> beforeByEntity = new HashMap<>();
+            boolean[][] matched = new boolean[beforePartitions.size()][];
+            for (int p = 0; p < beforePartitions.size(); p++) {
+                TripColumns before = beforePartitions.get(p).getColumns();
+                matched[p] = new boolean[before.tripCount()];
+                for (int trip = 0; trip < before.tripCount(); trip++) {
+                    int entityId = translate(before, before.entityId(trip));
+                    if (entityId != IdDictionary.ABSENT) {
+                        beforeByEntity.put(entityId, (long) p << 32 | trip);
+                    }
+                }
+            }
+
+            for (TripPartition partition : afterPartitions) {
+                TripColumns after = partition.getColumns();
+                for (int trip = 0; trip < after.tripCount(); trip++) {
+                    Long found = beforeByEntity.get(after.entityId(trip));
+                    if (found == null) {
+                        added.add(new SnapshotChanges.TripChange(feed, after.trip(trip)));
+                        continue;
+                    }
+                    int p = (int) (found >>> 32);
+                    int earlier = (int) (long) found;
+                    TripColumns before = beforePartitions.get(p).getColumns();
+                    matched[p][earlier] = true;
+                    if (before.dictionary() == after.dictionary()
+                            && before.contentHash(earlier) == after.contentHash(trip)) {
+                        unchanged++;
+                    } else if (translate(before, before.tripId(earlier)) != after.tripId(trip)
+                            || translate(before, before.routeId(earlier)) != after.routeId(trip)) {
+                        removed.add(new SnapshotChanges.TripChange(feed, before.trip(earlier)));
+                        added.add(new SnapshotChanges.TripChange(feed, after.trip(trip)));
+                    } else if (!diffTrip(feed, before, earlier, after, trip)) {
+                        unchanged++;
+                    }
+                }
+            }
+
+            for (int p = 0; p < beforePartitions.size(); p++) {
+                for (int trip = 0; trip < matched[p].length; trip++) {
+                    if (!matched[p][trip]) {
+                        TripColumns before = beforePartitions.get(p).getColumns();
+                        removed.add(new SnapshotChanges.TripChange(feed, before.trip(trip)));
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return Whether any change of the trip was reported.
+         */
+        private boolean diffTrip(String feed, TripColumns before, int earlier, TripColumns after, int trip) {
+            int reported = stopTimes.size() + vehicles.size();
+            String entityId = after.dictionary().decode(after.entityId(trip));
+            String tripId = after.dictionary().decode(after.tripId(trip));
+            String routeId = after.dictionary().decode(after.routeId(trip));
+            String vehicleId = after.dictionary().decode(after.vehicleId(trip));
+            if (translate(before, before.vehicleId(earlier)) != after.vehicleId(trip)) {
+                vehicles.add(new SnapshotChanges.VehicleReassignment(feed, entityId, tripId,
+                        before.dictionary().decode(before.vehicleId(earlier)), vehicleId));
+            }
+
+            // stop times are matched in sequence order, so a loop calling twice at a stop pairs up call by call
+            int first = before.firstRow(earlier);
+            int end = before.endRow(earlier);
+            boolean[] matched = new boolean[end - first];
+            int cursor = first;
+            for (int row = after.firstRow(trip); row < after.endRow(trip); row++) {
+                int match = find(before, cursor, end, after.stopId(row));
+                if (match < 0) {
+                    stopTimes.add(new SnapshotChanges.StopTimeChange(feed, entityId, tripId, routeId, vehicleId,
+                            after.dictionary().decode(after.stopId(row)), null, after.stopTime(row)));
+                    continue;
+                }
+                matched[match - first] = true;
+                cursor = match + 1;
+                if (!sameTimes(before, match, after, row)) {
+                    stopTimes.add(new SnapshotChanges.StopTimeChange(feed, entityId, tripId, routeId, vehicleId,
+                            after.dictionary().decode(after.stopId(row)), before.stopTime(match), after.stopTime(row)));
+                }
+            }
+            for (int row = first; row < end; row++) {
+                if (!matched[row - first]) {
+                    stopTimes.add(new SnapshotChanges.StopTimeChange(feed, entityId, tripId, routeId, vehicleId,
+                            before.dictionary().decode(before.stopId(row)), before.stopTime(row), null));
+                }
+            }
+            return stopTimes.size() + vehicles.size() > reported;
+        }
+
+        private int find(TripColumns columns, int from, int end, int stopId) {
+            for (int row = from; row < end; row++) {
+                if (translate(columns, columns.stopId(row)) == stopId) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return Code of an id of the earlier columns in the later dictionary, {@link IdDictionary#ABSENT}
+         * if the later side does not know the id.
+         */
+        private int translate(TripColumns before, int code) {
+            IdDictionary source = before.dictionary();
+            if (source == target || target == null) {
+                return code;
+            }
+            int[] codes = translations.computeIfAbsent(source, dictionary -> new int[0]);
+            if (code >= codes.length) {
+                int[] grown = Arrays.copyOf(codes, Math.max(code + 1, source.size()));
+                Arrays.fill(grown, codes.length, grown.length, UNTRANSLATED);
+                codes = grown;
+                translations.put(source, codes);
+            }
+            if (codes[code] == UNTRANSLATED) {
+                codes[code] = target.find(source.decode(code));
+            }
+            return codes[code];
+        }
+
+        private static boolean sameTimes(TripColumns before, int beforeRow, TripColumns after, int afterRow) {
+            return before.arrivalTime(beforeRow) == after.arrivalTime(afterRow)
+                    && before.arrivalDelay(beforeRow) == after.arrivalDelay(afterRow)
+                    && before.departureTime(beforeRow) == after.departureTime(afterRow)
+                    && before.departureDelay(beforeRow) == after.departureDelay(afterRow);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package pl.edu.agh.to.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Entry point of request handlers to the current snapshot.
+ * <p>
+ * Once a snapshot is published requests are served from the store without waiting for the upstream
+ * (stale-while-revalidate): a feed whose data is older than {@code ztp.gtfs.revalidate-after-ms}, or restored
+ * from disk, is refreshed in the background and the request gets the data at hand. Refreshes are shared through
+ * {@link TripUpdatesPoller#refreshShared}, so a burst of requests causes at most one fetch per feed, and a feed
+ * whose circuit is open is not fetched at all.
+ * <p>
+ * Before the first snapshot (cold start with no snapshot on disk, or polling not started yet) there is nothing
+ * to serve, so a request triggers a refresh of every feed and waits for it. The wait is bounded by
+ * {@code ztp.gtfs.cold-start-wait-ms}, while the shared refresh carries on for later requests; if every feed fails
+ * or the wait runs out the request fails with UpstreamUnavailableException.
+ */
+@Slf4j
+@Service
+public class SnapshotLoader {
+
+    private final TripUpdatesSnapshotStore snapshotStore;
+    private final TripUpdatesPoller poller;
+    private final Clock clock;
+    private final Duration coldStartWait;
+    private final Duration revalidateAfter;
+
+    public SnapshotLoader(TripUpdatesSnapshotStore snapshotStore, TripUpdatesPoller poller, Clock clock,
+                          @Value("${ztp.gtfs.cold-start-wait-ms:5000}") long coldStartWaitMs,
+                          @Value("${ztp.gtfs.revalidate-after-ms:30000}") long revalidateAfterMs) {
+        this.snapshotStore = snapshotStore;
+        this.poller = poller;
+        this.clock = clock;
+        this.coldStartWait = Duration.ofMillis(coldStartWaitMs);
+        this.revalidateAfter = Duration.ofMillis(revalidateAfterMs);
+    }
+
+    /**
+     * @return Mono emitting the current snapshot, loading it first if none has been published yet.
+     * Fails with UpstreamUnavailableException if every feed failed to load or loading did not finish within the wait.
+     */
+    public Mono<TripUpdatesSnapshot> load() {
+        return Mono.defer(() -> {
+            Optional<TripUpdatesSnapshot> current = snapshotStore.current();
+            if (current.isEmpty()) {
+                return loadCold();
+            }
+            revalidate(current.get());
+            return Mono.just(current.get());
+        });
+    }
+
+    /**
+     * @return Whether the feed's data is restored from disk or older than {@code ztp.gtfs.revalidate-after-ms}.
+     */
+    public boolean isExpired(FeedSnapshot feed) {
+        return feed.isStale() || age(feed).compareTo(revalidateAfter) > 0;
+    }
+
+    /**
+     * @return Time since the least recently fetched feed of the snapshot was fetched.
+     */
+    public Duration age(TripUpdatesSnapshot snapshot) {
+        Duration oldest = Duration.ZERO;
+        for (FeedSnapshot feed : snapshot.getFeeds()) {
+            Duration age = age(feed);
+            if (age.compareTo(oldest) > 0) {
+                oldest = age;
+            }
+        }
+        return oldest;
+    }
+
+    private Duration age(FeedSnapshot feed) {
+        return Duration.between(feed.getFetchedAt(), clock.instant());
+    }
+
+    /**
+     * Starts a background refresh of every expired feed; never waits for it, and its failures are already logged.
+     */
+    private void revalidate(TripUpdatesSnapshot snapshot) {
+        for (FeedSnapshot feed : snapshot.getFeeds()) {
+            if (isExpired(feed)) {
+                for (GtfsFeedsProperties.Feed configured : poller.getFeeds()) {
+                    if (configured.getName().equals(feed.getName())) {
+                        poller.refreshShared(configured).onErrorComplete().subscribe();
+                    }
+                }
+            }
+        }
+    }
+
+    private Mono<TripUpdatesSnapshot> loadCold() {
+        return Flux.fromIterable(poller.getFeeds())
+                .flatMapDelayError(poller::refreshShared, poller.getFeeds().size(), 1)
+                .then(Mono.fromSupplier(snapshotStore::require))
+                // one failed feed is fine as long as another one was published
+                .onErrorResume(ex -> snapshotStore.current()
+                        .map(Mono::just)
+                        .orElseGet(() -> Mono.error(unavailable(Exceptions.unwrapMultiple(ex).getFirst()))))
+                .timeout(coldStartWait, Mono.defer(() -> snapshotStore.current()
+                        .map(Mono::just)
+                        .orElseGet(() -> {
+                            log.warn("No TripUpdates snapshot loaded within {} ms", coldStartWait.toMillis());
+                            return Mono.error(new UpstreamUnavailableException(
+                                    "No TripUpdates snapshot loaded within " + coldStartWait.toMillis() + " ms",
+                                    retryAfter()));
+                        })));
+    }
+
+    private UpstreamUnavailableException unavailable(Throwable cause) {
+        return new UpstreamUnavailableException("TripUpdates upstream is unavailable: " + cause.getMessage(),
+                retryAfter(), cause);
+    }
+
+    /**
+     * @return Time until the first open circuit lets a trial fetch through, zero if none is open.
+     */
+    private Duration retryAfter() {
+        Duration earliest = Duration.ZERO;
+        for (GtfsFeedsProperties.Feed feed : poller.getFeeds()) {
+            Duration retryAfter = poller.retryAfter(feed);
+            if (retryAfter.isPositive() && (earliest.isZero() || retryAfter.compareTo(earliest) < 0)) {
+                earliest = retryAfter;
+            }
+        }
+        return earliest;
+    }
+}
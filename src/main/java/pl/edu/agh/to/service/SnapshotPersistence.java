@@ -0,0 +1,158 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.persistence.SnapshotFile;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the last published snapshot on local disk, so a restarted instance can serve requests
+ * from the last known state before its first fetch completes.
+ * The restored snapshot is marked stale until a feed fetched by this process replaces it.
+ * <p>
+ * Disk problems never affect serving: failed writes and unreadable files are logged and ignored.
+ * Published snapshots are written in the background at most once per {@code ztp.snapshot.save-interval-ms};
+ * snapshots published in between replace each other, so only the latest one is written.
+ * Persistence is disabled if {@code ztp.snapshot.path} is blank.
+ */
+@Slf4j
+@Service
+public class SnapshotPersistence {
+
+    private final TripUpdatesSnapshotStore snapshotStore;
+    private final PipelineMetrics metrics;
+    private final Path path;
+    private final long saveIntervalMs;
+    private final Scheduler scheduler;
+    /** Newest snapshot not written yet. */
+    private final AtomicReference<TripUpdatesSnapshot> pending = new AtomicReference<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private volatile long lastSaveAt = Long.MIN_VALUE / 2;
+    /** Generation of the last snapshot written, so a slower concurrent save cannot overwrite a newer one. */
+    private long savedGeneration;
+
+    @Autowired
+    public SnapshotPersistence(TripUpdatesSnapshotStore snapshotStore, PipelineMetrics metrics,
+                               @Value("${ztp.snapshot.path:}") String path,
+                               @Value("${ztp.snapshot.save-interval-ms:10000}") long saveIntervalMs) {
+        this(snapshotStore, metrics, path, saveIntervalMs, Schedulers.boundedElastic());
+    }
+
+    SnapshotPersistence(TripUpdatesSnapshotStore snapshotStore, PipelineMetrics metrics, String path,
+                        long saveIntervalMs, Scheduler scheduler) {
+        this.snapshotStore = snapshotStore;
+        this.metrics = metrics;
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.saveIntervalMs = saveIntervalMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Publishes the persisted snapshot, if there is one, before the first refresh is scheduled.
+     * Runs once the application is ready rather than during bean initialization, as {@code @EventListener}
+     * methods are only registered after all beans are created and would miss the restored snapshot.
+     * The pollers start on the same event, after this listener.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void restore() {
+        load().ifPresent(snapshotStore::restore);
+    }
+
+    /**
+     * Memory-maps and decodes the persisted snapshot.
+     *
+     * @return The stale snapshot, or empty if persistence is disabled, there is no file or it cannot be read.
+     */
+    public Optional<TripUpdatesSnapshot> load() {
+        if (path == null || !Files.exists(path)) {
+            return Optional.empty();
+        }
+        Timer.Sample sample = metrics.startTimer();
+        try {
+            TripUpdatesSnapshot snapshot = SnapshotFile.read(path);
+            metrics.snapshotFileAccessed(sample, PipelineMetrics.OPERATION_LOAD, PipelineMetrics.OUTCOME_OK);
+            return Optional.of(snapshot);
+        } catch (IOException ex) {
+            metrics.snapshotFileAccessed(sample, PipelineMetrics.OPERATION_LOAD, PipelineMetrics.OUTCOME_ERROR);
+            log.warn("Ignoring unreadable snapshot file {}: {}", path, ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Queues the snapshot to be written in the background, replacing any snapshot still waiting.
+     * The write starts once {@code ztp.snapshot.save-interval-ms} have passed since the previous one started.
+     *
+     * @param snapshot Freshly published snapshot.
+     */
+    public void scheduleSave(TripUpdatesSnapshot snapshot) {
+        if (path == null) {
+            return;
+        }
+        pending.accumulateAndGet(snapshot, (waiting, next) ->
+                waiting == null || next.getGeneration() > waiting.getGeneration() ? next : waiting);
+        if (saveScheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, lastSaveAt + saveIntervalMs - scheduler.now(TimeUnit.MILLISECONDS));
+            scheduler.schedule(this::savePending, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the snapshot still waiting for its scheduled save, so it is not lost on shutdown.
+     */
+    @PreDestroy
+    public void flush() {
+        TripUpdatesSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot != null) {
+            save(snapshot);
+        }
+    }
+
+    private void savePending() {
+        lastSaveAt = scheduler.now(TimeUnit.MILLISECONDS);
+        // cleared before taking the snapshot, so one published meanwhile schedules the next save
+        saveScheduled.set(false);
+        flush();
+    }
+
+    /**
+     * Replaces the persisted snapshot. Blocks on file I/O, so it must not run on an event loop thread.
+     * Feeds are refreshed concurrently, so saves are serialized and snapshots older than the saved one are skipped.
+     *
+     * @param snapshot Freshly published snapshot.
+     */
+    public synchronized void save(TripUpdatesSnapshot snapshot) {
+        if (path == null || snapshot.getGeneration() <= savedGeneration) {
+            return;
+        }
+        Timer.Sample sample = metrics.startTimer();
+        try {
+            SnapshotFile.write(path, snapshot);
+            savedGeneration = snapshot.getGeneration();
+            metrics.snapshotFileAccessed(sample, PipelineMetrics.OPERATION_SAVE, PipelineMetrics.OUTCOME_OK);
+        } catch (IOException ex) {
+            metrics.snapshotFileAccessed(sample, PipelineMetrics.OPERATION_SAVE, PipelineMetrics.OUTCOME_ERROR);
+            log.warn("Could not persist TripUpdates snapshot #{} to {}: {}",
+                    snapshot.getGeneration(), path, ex.getMessage());
+        }
+    }
+}
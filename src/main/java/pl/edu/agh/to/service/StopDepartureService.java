@@ -0,0 +1,142 @@
+package pl.edu.agh.to.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.Departure;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service responsible for building departure boards of single stops
+ * from the current TripUpdates snapshot.
+ */
+@Service
+@RequiredArgsConstructor
+public class StopDepartureService {
+
+    public static final int MAX_LIMIT = 100;
+
+    private final SnapshotLoader snapshotLoader;
+    private final AlertService alertService;
+    private final EncodedResponseCache responseCache;
+    private final ResponseEncoder responseEncoder;
+    private final Clock clock;
+    private final GtfsFeedsProperties feedsProperties;
+
+    /**
+     * Returns the next departures from a stop, ordered by departure time, already encoded.
+     * Reads the in-memory snapshot and never blocks; before the first snapshot it waits for the shared initial load.
+     * Boards without alerts requested for the same time of the same snapshot share one cached encoding;
+     * without {@code from} the board is computed as of the start of the current
+     * {@linkplain EncodedResponseCache#timeBucket time bucket}, so it may still list departures of the last
+     * few seconds. Boards with alerts are encoded per request, as alerts are refreshed independently of the snapshot.
+     *
+     * @param stopId Stop to build the board for.
+     * @param from Earliest departure time, inclusive; the current time if null.
+     * @param limit Maximum number of departures, between 1 and {@link #MAX_LIMIT}.
+     * @param mode Feed to restrict the board to, or null for all feeds.
+     * @param includeAlerts Whether to attach to every departure the alerts active at its departure time.
+     * @param format Encoding of the response.
+     * @return Mono emitting the encoded departures; an empty board if the stop has none.
+     * Fails with IllegalArgumentException if the limit is out of range or the mode is not a configured feed,
+     * or with IllegalStateException if no snapshot could be loaded.
+     */
+    public Mono<byte[]> getEncodedDepartures(String stopId, LocalDateTime from, int limit, String mode,
+                                             boolean includeAlerts, ResponseFormat format) {
+        return Mono.fromRunnable(() -> checkQuery(limit, mode))
+                .then(Mono.defer(snapshotLoader::load))
+                .map(snapshot -> {
+                    if (includeAlerts) {
+                        List<Departure> departures = departures(snapshot, stopId, fromTime(from), limit, mode);
+                        return responseEncoder.stopBoard(departures, alertService.forDepartures(departures), format);
+                    }
+                    long fromTime = from == null
+                            ? responseCache.timeBucket(clock.instant())
+                            : from.atZone(ZoneId.systemDefault()).toEpochSecond();
+                    return responseCache.get(snapshot.getGeneration(),
+                            new BoardKey(stopId, fromTime, limit, mode, format),
+                            () -> responseEncoder.stopBoard(
+                                    departures(snapshot, stopId, fromTime, limit, mode), null, format));
+                });
+    }
+
+    private long fromTime(LocalDateTime from) {
+        return from == null
+                ? clock.instant().getEpochSecond()
+                : from.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    /**
+     * Builds the board of a stop from any snapshot, not necessarily the current one.
+     *
+     * @param fromTime Earliest departure time in POSIX seconds, inclusive.
+     * @param limit Maximum number of departures, between 1 and {@link #MAX_LIMIT}.
+     * @param mode Feed to restrict the board to, or null for all feeds.
+     * @throws IllegalArgumentException if the limit is out of range or the mode is not a configured feed.
+     */
+    public List<StopDepartureDto> board(TripUpdatesSnapshot snapshot, String stopId, long fromTime, int limit,
+                                        String mode) {
+
+        List<Departure> departures = departures(snapshot, stopId, fromTime, limit, mode);
+
+        List<StopDepartureDto> board = new ArrayList<>(departures.size());
+        for (Departure departure : departures) {
+            board.add(toDto(departure, null));
+        }
+        return board;
+    }
+
+    private List<Departure> departures(TripUpdatesSnapshot snapshot, String stopId, long fromTime, int limit,
+                                       String mode) {
+        checkQuery(limit, mode);
+        return snapshot.stopDepartures(stopId, fromTime, limit, mode);
+    }
+
+    private void checkQuery(int limit, String mode) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        feedsProperties.checkMode(mode);
+    }
+
+    /**
+     * @param alerts Alerts of the departure, or null if they were not requested.
+     */
+    static StopDepartureDto toDto(Departure departure, List<AlertDto> alerts) {
+
+        TripRecord trip = departure.getTrip();
+        StopTimeRecord stopTime = departure.getStopTime();
+
+        return StopDepartureDto.builder()
+                .stopId(stopTime.getStopId())
+                .departureTime(LocalDateTime.ofInstant(
+                        Instant.ofEpochSecond(departure.getDepartureTime()),
+                        ZoneId.systemDefault()))
+                .departureDelay(stopTime.hasDepartureDelay() ? stopTime.getDepartureDelay() : null)
+                .vehicleId(trip.getVehicleId())
+                .tripId(trip.getTripId())
+                .routeId(trip.getRouteId())
+                .mode(departure.getFeed())
+                .alerts(alerts)
+                .build();
+    }
+
+    /**
+     * Everything a board without alerts depends on besides the snapshot.
+     */
+    private record BoardKey(String stopId, long fromTime, int limit, String mode, ResponseFormat format) {
+    }
+}
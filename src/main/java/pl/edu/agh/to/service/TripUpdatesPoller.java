@@ -0,0 +1,310 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.persistence.FeedArchive;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodically fetches and parses the configured TripUpdates feeds and publishes them to the snapshot store.
+ * This is the only place that talks to the GTFS API; request handlers read the published snapshot.
+ * <p>
+ * Every feed is polled by its own loop with its own refresh interval, so feeds are fetched concurrently
+ * and a slow or failing feed never delays the others; each publication replaces only its own feed's data.
+ * Concurrent refreshes of the same feed are coalesced into one.
+ * <p>
+ * Every feed has its own {@link CircuitBreaker}: after {@code ztp.gtfs.circuit.failure-threshold} failed refreshes
+ * in a row the feed is not fetched for {@code ztp.gtfs.circuit.open-ms}, so a failing upstream gets no traffic
+ * beyond one trial fetch per period and its previous data keeps being served.
+ * <p>
+ * Unchanged feeds are detected twice: by HTTP validators (304 skips the download)
+ * and by FeedHeader.timestamp (an identical feed served with new validators skips parsing).
+ * <p>
+ * The response body is decoded while it is still arriving, one entity at a time,
+ * so peak memory does not grow with the size of the feed's wire representation.
+ * <p>
+ * FULL_DATASET feeds replace the feed's data; DIFFERENTIAL feeds are applied to it by FeedEntity.id.
+ * Every published snapshot is persisted to disk for warm restarts, and every distinct feed
+ * is appended to the feed archive as received.
+ */
+@Slf4j
+@Service
+public class TripUpdatesPoller {
+
+    private final GtfsClient gtfsClient;
+    private final GtfsParser gtfsParser;
+    private final TripUpdatesSnapshotStore snapshotStore;
+    private final PipelineMetrics metrics;
+    private final SnapshotPersistence snapshotPersistence;
+    private final FeedArchive feedArchive;
+    private final List<GtfsFeedsProperties.Feed> feeds;
+    private final Duration initialDelay;
+    private final Duration refreshInterval;
+
+    /** Number of network buffers requested ahead of the decoder. */
+    private static final int BUFFER_DEMAND = 16;
+
+    /** Validators of the last processed response, by feed name. */
+    private final Map<String, FeedValidators> validators = new ConcurrentHashMap<>();
+    /** Refreshes in flight, by feed name. */
+    private final SingleFlight<String, TripUpdatesSnapshot> refreshes = new SingleFlight<>();
+    /** Circuits guarding the upstream, by feed name. */
+    private final Map<String, FeedGuard> guards = new ConcurrentHashMap<>();
+    private volatile Disposable schedule;
+
+    public TripUpdatesPoller(GtfsClient gtfsClient, GtfsParser gtfsParser, TripUpdatesSnapshotStore snapshotStore,
+                             PipelineMetrics metrics, SnapshotPersistence snapshotPersistence, FeedArchive feedArchive,
+                             GtfsFeedsProperties feedsProperties, Clock clock,
+                             @Value("${ztp.gtfs.initial-delay-ms:0}") long initialDelayMs,
+                             @Value("${ztp.gtfs.refresh-interval-ms:15000}") long refreshIntervalMs,
+                             @Value("${ztp.gtfs.circuit.failure-threshold:3}") int failureThreshold,
+                             @Value("${ztp.gtfs.circuit.open-ms:30000}") long openMs) {
+        this.gtfsClient = gtfsClient;
+        this.gtfsParser = gtfsParser;
+        this.snapshotStore = snapshotStore;
+        this.metrics = metrics;
+        this.snapshotPersistence = snapshotPersistence;
+        this.feedArchive = feedArchive;
+        this.feeds = feedsProperties.getFeeds();
+        this.initialDelay = Duration.ofMillis(initialDelayMs);
+        this.refreshInterval = Duration.ofMillis(refreshIntervalMs);
+        for (GtfsFeedsProperties.Feed feed : feeds) {
+            guards.put(feed.getName(), new FeedGuard(feed.getName() + " TripUpdates", feed.getName(), metrics,
+                    failureThreshold, Duration.ofMillis(openMs), clock));
+        }
+    }
+
+    /**
+     * Starts one refresh loop per feed once the application is ready.
+     * Each loop waits for its refresh to complete before scheduling the next one (fixed delay).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (schedule != null) {
+            return;
+        }
+        schedule = Flux.fromIterable(feeds)
+                .flatMap(feed -> Mono.delay(initialDelay)
+                        .thenMany(poll(feed).then(Mono.delay(refreshInterval(feed))).repeat()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+            schedule = null;
+        }
+        refreshes.cancelAll();
+    }
+
+    /**
+     * Refreshes all feeds concurrently, e.g. on demand.
+     *
+     * @return Mono completing once every feed's refresh has finished.
+     */
+    public Mono<Void> poll() {
+        return Flux.fromIterable(feeds)
+                .flatMap(this::poll)
+                .then();
+    }
+
+    /**
+     * Refreshes a single feed. Failures are logged and the previous data of the feed stays in place.
+     *
+     * @return Mono completing once the refresh has finished.
+     */
+    public Mono<Void> poll(GtfsFeedsProperties.Feed feed) {
+        return refreshShared(feed)
+                .onErrorComplete()
+                .then();
+    }
+
+    /**
+     * Refreshes the feed, or joins its refresh if one is already in flight, so concurrent callers
+     * (the polling loop, on-demand polls, requests revalidating or loading a snapshot) cause a single
+     * upstream fetch and parse. Failures are logged and counted once per refresh, not once per caller.
+     *
+     * @return Mono emitting the published snapshot, or empty if the feed has not changed.
+     * Fails with the error of the shared refresh, or with UpstreamUnavailableException
+     * without contacting the upstream while the feed's circuit is open.
+     */
+    public Mono<TripUpdatesSnapshot> refreshShared(GtfsFeedsProperties.Feed feed) {
+        return refreshes.execute(feed.getName(),
+                () -> guards.get(feed.getName()).refresh(() -> refresh(feed)),
+                () -> metrics.fetchCoalesced(feed.getName()));
+    }
+
+    /**
+     * @return Time until the feed's open circuit lets a trial fetch through, zero if the circuit is not open.
+     */
+    public Duration retryAfter(GtfsFeedsProperties.Feed feed) {
+        return guards.get(feed.getName()).retryAfter();
+    }
+
+    /**
+     * @return The configured feeds, in configuration order.
+     */
+    public List<GtfsFeedsProperties.Feed> getFeeds() {
+        return feeds;
+    }
+
+    /**
+     * Fetches the feed and, if it changed, parses it and publishes it as part of a new snapshot.
+     * The decoder pulls from the network buffers through a blocking InputStream,
+     * so it runs on the bounded elastic scheduler and never occupies an HTTP event loop thread.
+     *
+     * @return Mono emitting the published snapshot, or empty if the feed has not changed.
+     * Fails with InvalidProtocolBufferException if the fetched data is corrupted.
+     */
+    private Mono<TripUpdatesSnapshot> refresh(GtfsFeedsProperties.Feed feed) {
+        return Mono.defer(() -> gtfsClient.fetchTripUpdates(feed,
+                        validators.getOrDefault(feed.getName(), FeedValidators.NONE)))
+                .filter(result -> !result.isNotModified())
+                .flatMap(result -> Mono.fromCallable(() -> ingest(feed.getName(), result))
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * @return The published snapshot, or null if the feed timestamp did not change.
+     */
+    private TripUpdatesSnapshot ingest(String feed, FeedFetchResult result) throws IOException {
+        List<TripRecord> trips = new ArrayList<>();
+        Set<String> deletedEntityIds = new HashSet<>();
+        GtfsRealtime.FeedHeader header;
+        Timer.Sample parse = metrics.startTimer();
+        // the archive compresses the raw feed as it is read, as it is otherwise never held in memory
+        FeedArchive.Appender archived = openArchiveEntry(feed);
+
+        try (archived) {
+            try (InputStream body = copying(DataBufferUtils.subscriberInputStream(result.getBody(), BUFFER_DEMAND),
+                    archived)) {
+                header = gtfsParser.streamTripUpdates(body,
+                        feedHeader -> !isCurrentFeed(feed, feedHeader.getTimestamp()),
+                        trips::add,
+                        deletedEntityIds::add);
+            }
+            metrics.parseCompleted(parse, trips.size() + deletedEntityIds.size());
+
+            long feedTimestamp = header.getTimestamp();
+            if (isCurrentFeed(feed, feedTimestamp)) {
+                log.info("{} TripUpdates feed timestamp {} unchanged, skipping rebuild", feed, feedTimestamp);
+                validators.put(feed, result.getValidators());
+                return null;
+            }
+
+            TripUpdatesSnapshot snapshot =
+                    header.getIncrementality() == GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL
+                            ? snapshotStore.publishDifferential(feed, trips, deletedEntityIds, feedTimestamp)
+                            : snapshotStore.publish(feed, trips, feedTimestamp);
+            validators.put(feed, result.getValidators());
+            snapshotPersistence.scheduleSave(snapshot);
+            archive(feed, header, archived);
+
+            return snapshot;
+        }
+    }
+
+    private FeedArchive.Appender openArchiveEntry(String feed) {
+        if (!feedArchive.isEnabled()) {
+            return null;
+        }
+        try {
+            return feedArchive.begin(feed);
+        } catch (IOException ex) {
+            log.warn("Could not archive {} TripUpdates feed: {}", feed, ex.getMessage());
+            return null;
+        }
+    }
+
+    private void archive(String feed, GtfsRealtime.FeedHeader header, FeedArchive.Appender archived) {
+        if (archived == null) {
+            return;
+        }
+        try {
+            archived.commit(header.getTimestamp(),
+                    header.getIncrementality() != GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL);
+        } catch (IOException ex) {
+            log.warn("Could not archive {} TripUpdates feed {}: {}", feed, header.getTimestamp(), ex.getMessage());
+        }
+    }
+
+    private static InputStream copying(InputStream input, OutputStream copy) {
+        if (copy == null) {
+            return input;
+        }
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    copy.write(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    copy.write(buffer, offset, n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // skipped fields still belong to the archived feed, so they are read instead of skipped
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                long skipped = 0;
+                while (skipped < n) {
+                    int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                    if (read < 0) {
+                        break;
+                    }
+                    skipped += read;
+                }
+                return skipped;
+            }
+        };
+    }
+
+    private boolean isCurrentFeed(String feed, long feedTimestamp) {
+        return feedTimestamp != 0 && snapshotStore.current()
+                .flatMap(snapshot -> snapshot.feed(feed))
+                .map(current -> current.getFeedTimestamp() == feedTimestamp)
+                .orElse(false);
+    }
+
+    private Duration refreshInterval(GtfsFeedsProperties.Feed feed) {
+        return feed.getRefreshInterval() != null ? feed.getRefreshInterval() : refreshInterval;
+    }
+}
@@ -0,0 +1,183 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.model.FeedInfoDto;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.SnapshotInfoDto;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the most recent TripUpdates snapshot, merged from all configured feeds.
+ * Snapshots are swapped atomically, so request handlers only ever read a complete, immutable state.
+ * Every swap is announced with a {@link SnapshotPublishedEvent}, so derived state can be updated incrementally.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TripUpdatesSnapshotStore {
+
+    private final Clock clock;
+    private final PipelineMetrics metrics;
+    private final ApplicationEventPublisher events;
+    private final AtomicReference<TripUpdatesSnapshot> current = new AtomicReference<>();
+
+    /**
+     * Builds the feed, including its indexes, from a full dataset and publishes it, replacing the previous data
+     * of that feed; the other feeds are carried over unchanged.
+     * Publishing is serialized so generations stay strictly increasing; readers are never blocked.
+     *
+     * @param feed Name of the feed the trips come from.
+     * @param tripRecords Freshly parsed trip records.
+     * @param feedTimestamp FeedHeader.timestamp of the parsed feed, 0 if unknown.
+     * @return The published snapshot.
+     */
+    public synchronized TripUpdatesSnapshot publish(String feed, List<TripRecord> tripRecords, long feedTimestamp) {
+        TripUpdatesSnapshot previous = current.get();
+        Timer.Sample build = metrics.startTimer();
+
+        Instant now = clock.instant();
+        // the previous version of the feed hands its id dictionary on, so unchanged ids keep their codes
+        FeedSnapshot base = previous == null ? null : previous.feed(feed).orElse(null);
+        FeedSnapshot feedSnapshot = base == null
+                ? FeedSnapshot.build(feed, now, feedTimestamp, tripRecords)
+                : base.applyFullDataset(now, feedTimestamp, tripRecords);
+        TripUpdatesSnapshot published = previous == null
+                ? TripUpdatesSnapshot.of(1, now, List.of(feedSnapshot))
+                : previous.withFeed(previous.getGeneration() + 1, now, feedSnapshot);
+        current.set(published);
+        metrics.snapshotPublished(build, PipelineMetrics.MODE_FULL, published);
+        events.publishEvent(new SnapshotPublishedEvent(previous, published));
+
+        log.info("Published TripUpdates snapshot #{} with {} {} trips, {} trips and {} departures in total",
+                published.getGeneration(), feedSnapshot.getTripCount(), feed,
+                published.getTripCount(), published.getDepartureCount());
+        return published;
+    }
+
+    /**
+     * Applies a DIFFERENTIAL feed to the current data of that feed and publishes the result.
+     * Only partitions containing changed entities are rebuilt; the others, and all other feeds,
+     * are shared with the previous snapshot.
+     * Without previous data of the feed the upserts alone form it.
+     *
+     * @param feed Name of the feed the changes come from.
+     * @param upserts Trips added or replaced by FeedEntity.id.
+     * @param deletedEntityIds FeedEntity.id of entities marked with is_deleted.
+     * @param feedTimestamp FeedHeader.timestamp of the parsed feed, 0 if unknown.
+     * @return The published snapshot.
+     */
+    public synchronized TripUpdatesSnapshot publishDifferential(String feed, List<TripRecord> upserts,
+                                                                Set<String> deletedEntityIds, long feedTimestamp) {
+        TripUpdatesSnapshot previous = current.get();
+        FeedSnapshot base = previous == null ? null : previous.feed(feed).orElse(null);
+        if (base == null) {
+            log.warn("Received a differential {} TripUpdates feed without a base snapshot, using it as a full dataset",
+                    feed);
+            return publish(feed, upserts, feedTimestamp);
+        }
+        Timer.Sample build = metrics.startTimer();
+
+        Instant now = clock.instant();
+        TripUpdatesSnapshot published = previous.withFeed(previous.getGeneration() + 1, now,
+                base.applyDifferential(now, feedTimestamp, upserts, deletedEntityIds));
+        current.set(published);
+        metrics.snapshotPublished(build, PipelineMetrics.MODE_DIFFERENTIAL, published);
+        events.publishEvent(new SnapshotPublishedEvent(previous, published));
+
+        log.info("Published TripUpdates snapshot #{} from a differential {} feed ({} upserts, {} deletions): "
+                        + "{} trips and {} departures in total",
+                published.getGeneration(), feed, upserts.size(), deletedEntityIds.size(),
+                published.getTripCount(), published.getDepartureCount());
+        return published;
+    }
+
+    /**
+     * Publishes a snapshot persisted by a previous run, unless a feed has already been fetched in the meantime.
+     *
+     * @param restored Stale snapshot loaded from disk.
+     * @return Whether the snapshot was published.
+     */
+    public synchronized boolean restore(TripUpdatesSnapshot restored) {
+        if (current.get() != null) {
+            log.info("Skipping restored TripUpdates snapshot #{}, a fresher one is already published",
+                    restored.getGeneration());
+            return false;
+        }
+        current.set(restored);
+        metrics.snapshotRestored(restored);
+        events.publishEvent(new SnapshotPublishedEvent(null, restored));
+
+        log.info("Restored TripUpdates snapshot #{} fetched at {} with {} trips and {} departures",
+                restored.getGeneration(), restored.getFetchedAt(),
+                restored.getTripCount(), restored.getDepartureCount());
+        return true;
+    }
+
+    /**
+     * @return The current snapshot, or empty if no feed has been fetched yet.
+     */
+    public Optional<TripUpdatesSnapshot> current() {
+        return Optional.ofNullable(current.get());
+    }
+
+    /**
+     * @return The current snapshot.
+     * @throws IllegalStateException if no feed has been fetched yet.
+     */
+    public TripUpdatesSnapshot require() {
+        return current().orElseThrow(() -> new IllegalStateException("No TripUpdates snapshot available yet"));
+    }
+
+    /**
+     * @return Generation, fetch time, age and staleness of the current snapshot and of each of its feeds.
+     * @throws IllegalStateException if no feed has been fetched yet.
+     */
+    public SnapshotInfoDto getSnapshotInfo() {
+        TripUpdatesSnapshot snapshot = require();
+        Instant now = clock.instant();
+
+        List<FeedInfoDto> feeds = new ArrayList<>(snapshot.getFeeds().size());
+        for (FeedSnapshot feed : snapshot.getFeeds()) {
+            feeds.add(FeedInfoDto.builder()
+                    .mode(feed.getName())
+                    .fetchedAt(toLocalDateTime(feed.getFetchedAt()))
+                    .feedTimestamp(toLocalDateTime(Instant.ofEpochSecond(feed.getFeedTimestamp())))
+                    .ageSeconds(Duration.between(feed.getFetchedAt(), now).toSeconds())
+                    .stale(feed.isStale())
+                    .tripCount(feed.getTripCount())
+                    .departureCount(feed.getDepartureCount())
+                    .build());
+        }
+
+        return SnapshotInfoDto.builder()
+                .generation(snapshot.getGeneration())
+                .fetchedAt(toLocalDateTime(snapshot.getFetchedAt()))
+                .feedTimestamp(toLocalDateTime(Instant.ofEpochSecond(snapshot.getFeedTimestamp())))
+                .ageSeconds(snapshot.age(now).toSeconds())
+                .stale(snapshot.isStale())
+                .tripCount(snapshot.getTripCount())
+                .departureCount(snapshot.getDepartureCount())
+                .feeds(feeds)
+                .build();
+    }
+
+    private LocalDateTime toLocalDateTime(Instant instant) {
+        return LocalDateTime.ofInstant(instant, clock.getZone());
+    }
+}
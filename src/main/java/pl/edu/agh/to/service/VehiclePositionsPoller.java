@@ -0,0 +1,54 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import pl.edu.agh.to.model.VehiclePositionRecord;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodically fetches the VehiclePositions feeds of the configured feeds that name one
+ * ({@code ztp.gtfs.feeds[i].positions-path}) and publishes them to the positions store.
+ */
+@Service
+public class VehiclePositionsPoller extends AuxiliaryFeedPoller {
+
+    private final GtfsClient gtfsClient;
+    private final GtfsParser gtfsParser;
+    private final VehiclePositionsStore positionsStore;
+
+    public VehiclePositionsPoller(GtfsClient gtfsClient, GtfsParser gtfsParser, VehiclePositionsStore positionsStore,
+                                  PipelineMetrics metrics, GtfsFeedsProperties feedsProperties, Clock clock,
+                                  @Value("${ztp.gtfs.initial-delay-ms:0}") long initialDelayMs,
+                                  @Value("${ztp.gtfs.refresh-interval-ms:15000}") long refreshIntervalMs,
+                                  @Value("${ztp.gtfs.circuit.failure-threshold:3}") int failureThreshold,
+                                  @Value("${ztp.gtfs.circuit.open-ms:30000}") long openMs) {
+        super("VehiclePositions", GtfsClient.POSITIONS_SUFFIX, metrics, feedsProperties,
+                GtfsFeedsProperties.Feed::getPositionsPath, clock,
+                initialDelayMs, refreshIntervalMs, failureThreshold, openMs);
+        this.gtfsClient = gtfsClient;
+        this.gtfsParser = gtfsParser;
+        this.positionsStore = positionsStore;
+    }
+
+    @Override
+    protected Mono<FeedFetchResult> fetch(GtfsFeedsProperties.Feed feed, FeedValidators validators) {
+        return gtfsClient.fetchVehiclePositions(feed, validators);
+    }
+
+    @Override
+    protected void ingest(String feed, InputStream body) throws IOException {
+        List<VehiclePositionRecord> positions = new ArrayList<>();
+        GtfsRealtime.FeedHeader header = gtfsParser.streamVehiclePositions(body, positions::add);
+        positionsStore.publish(feed, positions, header.getTimestamp());
+    }
+}
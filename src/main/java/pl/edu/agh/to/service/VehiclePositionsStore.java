@@ -0,0 +1,58 @@
+package pl.edu.agh.to.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.model.FeedPositions;
+import pl.edu.agh.to.model.VehiclePositionRecord;
+import pl.edu.agh.to.model.VehiclePositionsSnapshot;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the most recent VehiclePositions snapshot, merged from all configured feeds.
+ * Positions go stale within seconds, so unlike TripUpdates they are neither persisted nor archived.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VehiclePositionsStore {
+
+    private final Clock clock;
+    private final AtomicReference<VehiclePositionsSnapshot> current = new AtomicReference<>();
+
+    /**
+     * Builds the feed and its grid index and publishes it, replacing the previous positions of that feed.
+     * Publishing is serialized so generations stay strictly increasing; readers are never blocked.
+     *
+     * @param feed Name of the feed the positions come from.
+     * @param positions Freshly parsed positions.
+     * @param feedTimestamp FeedHeader.timestamp of the parsed feed, 0 if unknown.
+     * @return The published snapshot.
+     */
+    public synchronized VehiclePositionsSnapshot publish(String feed, List<VehiclePositionRecord> positions,
+                                                         long feedTimestamp) {
+        VehiclePositionsSnapshot previous = current.get();
+        Instant now = clock.instant();
+        FeedPositions feedPositions = FeedPositions.build(feed, now, feedTimestamp, positions);
+        VehiclePositionsSnapshot published = previous == null
+                ? VehiclePositionsSnapshot.of(1, now, List.of(feedPositions))
+                : previous.withFeed(previous.getGeneration() + 1, now, feedPositions);
+        current.set(published);
+
+        log.info("Published VehiclePositions snapshot #{} with {} {} vehicles, {} vehicles in total",
+                published.getGeneration(), positions.size(), feed, published.getVehicleCount());
+        return published;
+    }
+
+    /**
+     * @return The current snapshot, or empty if no positions have been loaded yet.
+     */
+    public Optional<VehiclePositionsSnapshot> current() {
+        return Optional.ofNullable(current.get());
+    }
+}
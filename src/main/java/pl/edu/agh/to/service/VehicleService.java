@@ -0,0 +1,213 @@
+package pl.edu.agh.to.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.NearbyVehicle;
+import pl.edu.agh.to.model.NearbyVehicleDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.model.VehicleDto;
+import pl.edu.agh.to.model.VehiclePositionRecord;
+import pl.edu.agh.to.model.VehiclePositionsSnapshot;
+import pl.edu.agh.to.model.VehicleStopDto;
+import pl.edu.agh.to.model.VehicleTrip;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service responsible for looking up a vehicle's current trip
+ * in the current TripUpdates snapshot, and for finding vehicles around a point
+ * in the current VehiclePositions snapshot.
+ */
+@Service
+@RequiredArgsConstructor
+public class VehicleService {
+
+    /** Largest radius of a nearby query; larger areas are better served by the full fleet. */
+    public static final int MAX_RADIUS_METERS = 50_000;
+    public static final int MAX_NEARBY_LIMIT = 100;
+
+    private final SnapshotLoader snapshotLoader;
+    private final VehiclePositionsStore positionsStore;
+    private final EncodedResponseCache responseCache;
+    private final ResponseEncoder responseEncoder;
+    private final Clock clock;
+    private final GtfsFeedsProperties feedsProperties;
+
+    /**
+     * Returns the trip currently served by the vehicle together with its remaining stops, already encoded.
+     * Reads the in-memory snapshot and never blocks; before the first snapshot it waits for the shared initial load.
+     * Lookups within the same {@linkplain EncodedResponseCache#timeBucket time bucket} of the same snapshot share
+     * one cached encoding, computed as of the start of the bucket.
+     *
+     * @param vehicleId VehicleDescriptor.id as used in the feed.
+     * @param mode Feed to look the vehicle up in, or null for all feeds.
+     * @param format Encoding of the response.
+     * @return Mono emitting the encoded VehicleDto with stop-time updates from the start of the bucket onwards.
+     * Fails with IllegalArgumentException if the mode is not a configured feed,
+     * NotFoundException if the vehicle is not in the snapshot,
+     * or IllegalStateException if no snapshot could be loaded.
+     */
+    public Mono<byte[]> getEncodedVehicle(String vehicleId, String mode, ResponseFormat format) {
+        return Mono.fromRunnable(() -> feedsProperties.checkMode(mode))
+                .then(Mono.defer(snapshotLoader::load))
+                .map(snapshot -> {
+                    long now = responseCache.timeBucket(clock.instant());
+                    return responseCache.get(snapshot.getGeneration(), new VehicleKey(vehicleId, mode, now, format),
+                            () -> encodeVehicle(snapshot, vehicleId, mode, now, format));
+                });
+    }
+
+    /**
+     * Finds the vehicles around a point: all of them within the radius, or the nearest ones if no radius is given.
+     * Every vehicle is joined to its TripUpdate by trip id to report its next stop; if no TripUpdates snapshot
+     * can be loaded the vehicles are returned without it.
+     *
+     * @param radiusMeters Search radius in meters, or null for a k-nearest query.
+     * @param limit Maximum number of vehicles, between 1 and {@link #MAX_NEARBY_LIMIT}.
+     * @param mode Feed to search, or null for all feeds.
+     * @return Mono emitting the vehicles nearest first.
+     * Fails with IllegalArgumentException for invalid parameters,
+     * or with UpstreamUnavailableException if no positions have been loaded yet.
+     */
+    public Mono<List<NearbyVehicleDto>> getNearbyVehicles(double latitude, double longitude, Double radiusMeters,
+                                                          int limit, String mode) {
+        return Mono.fromCallable(() -> {
+            checkNearbyQuery(latitude, longitude, radiusMeters, limit);
+            feedsProperties.checkMode(mode);
+            VehiclePositionsSnapshot positions = positionsStore.current().orElseThrow(() ->
+                    new UpstreamUnavailableException("No VehiclePositions loaded yet", Duration.ZERO));
+            return radiusMeters == null
+                    ? positions.nearest(latitude, longitude, limit, mode)
+                    : positions.within(latitude, longitude, radiusMeters, limit, mode);
+        }).zipWith(snapshotLoader.load().map(Optional::of).onErrorReturn(Optional.empty()),
+                (vehicles, trips) -> toNearbyDtos(vehicles, trips.orElse(null)));
+    }
+
+    private static void checkNearbyQuery(double latitude, double longitude, Double radiusMeters, int limit) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("lat must be between -90 and 90 and lon between -180 and 180");
+        }
+        if (radiusMeters != null && !(radiusMeters > 0 && radiusMeters <= MAX_RADIUS_METERS)) {
+            throw new IllegalArgumentException("radius must be greater than 0 and at most " + MAX_RADIUS_METERS);
+        }
+        if (limit < 1 || limit > MAX_NEARBY_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_NEARBY_LIMIT);
+        }
+    }
+
+    private List<NearbyVehicleDto> toNearbyDtos(List<NearbyVehicle> vehicles, TripUpdatesSnapshot trips) {
+        long now = clock.instant().getEpochSecond();
+        List<NearbyVehicleDto> dtos = new ArrayList<>(vehicles.size());
+        for (NearbyVehicle vehicle : vehicles) {
+            VehiclePositionRecord position = vehicle.getPosition();
+            dtos.add(NearbyVehicleDto.builder()
+                    .vehicleId(position.getVehicleId())
+                    .mode(vehicle.getFeed())
+                    .tripId(position.getTripId())
+                    .routeId(position.getRouteId())
+                    .latitude(position.getLatitude())
+                    .longitude(position.getLongitude())
+                    .bearing(position.hasBearing() ? position.getBearing() : null)
+                    .distanceMeters(Math.round(vehicle.getDistanceMeters()))
+                    .positionTime(position.getTimestamp() != VehiclePositionRecord.NO_TIMESTAMP
+                            ? toLocal(position.getTimestamp()) : null)
+                    .nextStop(nextStop(trips, vehicle, now))
+                    .build());
+        }
+        return dtos;
+    }
+
+    /**
+     * @return The next stop of the vehicle's trip, null if the trip is not in the snapshot or has no stop left.
+     */
+    private static VehicleStopDto nextStop(TripUpdatesSnapshot trips, NearbyVehicle vehicle, long now) {
+        if (trips == null) {
+            return null;
+        }
+        Optional<VehicleTrip> trip = trips.trip(vehicle.getPosition().getTripId(), vehicle.getFeed());
+        if (trip.isEmpty()) {
+            return null;
+        }
+        List<StopTimeRecord> stopTimes = trip.get().getTrip().getStopTimes();
+        int next = firstRemaining(stopTimes, now);
+        return next < stopTimes.size() ? toDto(stopTimes.get(next)) : null;
+    }
+
+    private byte[] encodeVehicle(TripUpdatesSnapshot snapshot, String vehicleId, String mode, long now,
+                                 ResponseFormat format) {
+
+        VehicleTrip current = snapshot.currentVehicleTrip(vehicleId, now, mode)
+                .orElseThrow(() -> new NotFoundException("Vehicle " + vehicleId + " not found"));
+        List<StopTimeRecord> stopTimes = current.getTrip().getStopTimes();
+
+        int first = firstRemaining(stopTimes, now);
+        return responseEncoder.vehicle(vehicleId, current, stopTimes.subList(first, stopTimes.size()), format);
+    }
+
+    /**
+     * @param stops Remaining stop times of the trip.
+     */
+    static VehicleDto toDto(String vehicleId, VehicleTrip current, List<StopTimeRecord> stops) {
+
+        TripRecord trip = current.getTrip();
+        List<VehicleStopDto> dtos = new ArrayList<>(stops.size());
+        for (StopTimeRecord stopTime : stops) {
+            dtos.add(toDto(stopTime));
+        }
+
+        return VehicleDto.builder()
+                .vehicleId(vehicleId)
+                .tripId(trip.getTripId())
+                .routeId(trip.getRouteId())
+                .mode(current.getFeed())
+                .stops(dtos)
+                .build();
+    }
+
+    /**
+     * @return Position of the first stop time at or after {@code now}, the list size if there is none.
+     */
+    private static int firstRemaining(List<StopTimeRecord> stopTimes, long now) {
+        for (int i = 0; i < stopTimes.size(); i++) {
+            long time = stopTimes.get(i).eventTime();
+            if (time != StopTimeRecord.NO_TIME && time >= now) {
+                return i;
+            }
+        }
+        return stopTimes.size();
+    }
+
+    private static VehicleStopDto toDto(StopTimeRecord stopTime) {
+        return VehicleStopDto.builder()
+                .stopId(stopTime.getStopId())
+                .arrivalTime(stopTime.hasArrivalTime() ? toLocal(stopTime.getArrivalTime()) : null)
+                .arrivalDelay(stopTime.hasArrivalDelay() ? stopTime.getArrivalDelay() : null)
+                .departureTime(stopTime.hasDepartureTime() ? toLocal(stopTime.getDepartureTime()) : null)
+                .departureDelay(stopTime.hasDepartureDelay() ? stopTime.getDepartureDelay() : null)
+                .build();
+    }
+
+    private static LocalDateTime toLocal(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+
+    /**
+     * Everything a vehicle response depends on besides the snapshot.
+     */
+    private record VehicleKey(String vehicleId, String mode, long now, ResponseFormat format) {
+    }
+}
@@ -0,0 +1,126 @@
+package pl.edu.agh.to.stats;
+
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Delay histograms of a set of stop time observations, overall, by route and by stop.
+ * A stop time contributes its departure delay, or its arrival delay if the feed reports no departure delay.
+ * Keys whose histogram becomes empty are dropped, so the maps only hold routes and stops with data.
+ * Not thread-safe.
+ */
+public final class DelayAggregate {
+
+    private final DelayHistogram overall = new DelayHistogram();
+    private final Map<String, DelayHistogram> routes = new HashMap<>();
+    private final Map<String, DelayHistogram> stops = new HashMap<>();
+
+    public void add(Iterable<TripRecord> trips) {
+        update(trips, 1);
+    }
+
+    public void remove(Iterable<TripRecord> trips) {
+        update(trips, -1);
+    }
+
+    public void add(DelayAggregate other) {
+        merge(other, 1);
+    }
+
+    public void subtract(DelayAggregate other) {
+        merge(other, -1);
+    }
+
+    public void clear() {
+        overall.clear();
+        routes.clear();
+        stops.clear();
+    }
+
+    public DelayHistogram overall() {
+        return overall;
+    }
+
+    /**
+     * @return Histogram of the route, or null if it has no observations.
+     */
+    public DelayHistogram route(String routeId) {
+        return routes.get(routeId);
+    }
+
+    /**
+     * @return Histogram of the stop, or null if it has no observations.
+     */
+    public DelayHistogram stop(String stopId) {
+        return stops.get(stopId);
+    }
+
+    /**
+     * @return Histograms by route id; a live view, so it must not be used after the aggregate changes.
+     */
+    public Map<String, DelayHistogram> routes() {
+        return routes;
+    }
+
+    private void update(Iterable<TripRecord> trips, int sign) {
+        for (TripRecord trip : trips) {
+            DelayHistogram route = null;
+            for (StopTimeRecord stopTime : trip.getStopTimes()) {
+                int delay;
+                if (stopTime.hasDepartureDelay()) {
+                    delay = stopTime.getDepartureDelay();
+                } else if (stopTime.hasArrivalDelay()) {
+                    delay = stopTime.getArrivalDelay();
+                } else {
+                    continue;
+                }
+                if (route == null) {
+                    route = routes.computeIfAbsent(trip.getRouteId(), id -> new DelayHistogram());
+                }
+                DelayHistogram stop = stops.computeIfAbsent(stopTime.getStopId(), id -> new DelayHistogram());
+                if (sign > 0) {
+                    overall.record(delay);
+                    route.record(delay);
+                    stop.record(delay);
+                } else {
+                    overall.remove(delay);
+                    route.remove(delay);
+                    stop.remove(delay);
+                    if (stop.isEmpty()) {
+                        stops.remove(stopTime.getStopId());
+                    }
+                }
+            }
+            if (route != null && route.isEmpty()) {
+                routes.remove(trip.getRouteId());
+            }
+        }
+    }
+
+    private void merge(DelayAggregate other, int sign) {
+        apply(overall, other.overall, sign);
+        mergeKeys(routes, other.routes, sign);
+        mergeKeys(stops, other.stops, sign);
+    }
+
+    private static void mergeKeys(Map<String, DelayHistogram> target, Map<String, DelayHistogram> source, int sign) {
+        for (Map.Entry<String, DelayHistogram> entry : source.entrySet()) {
+            DelayHistogram histogram = target.computeIfAbsent(entry.getKey(), id -> new DelayHistogram());
+            apply(histogram, entry.getValue(), sign);
+            if (histogram.isEmpty()) {
+                target.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static void apply(DelayHistogram target, DelayHistogram source, int sign) {
+        if (sign > 0) {
+            target.add(source);
+        } else {
+            target.subtract(source);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package pl.edu.agh.to.stats;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable histogram of delays in seconds with log-linear buckets, in the spirit of HdrHistogram.
+ * <p>
+ * Delays below 8 s in magnitude get exact buckets; above that every power-of-two range is split
+ * into {@link #SUB_BUCKETS} buckets, which keeps the relative error of reported percentiles under 12.5%
+ * with a fixed {@value #BUCKET_COUNT} counters. Negative delays (running early) are mirrored.
+ * Magnitudes above {@link #MAX_MAGNITUDE} are clamped into the last bucket.
+ * <p>
+ * Histograms can be added and subtracted, so aggregates are updated by the observations that changed
+ * instead of being rebuilt. Count, sum and late/early counters are exact. Not thread-safe.
+ */
+public final class DelayHistogram {
+
+    /** Delays at or above this many seconds count as late. */
+    public static final int LATE_THRESHOLD = 60;
+    /** Delays at or below this many seconds count as early. */
+    public static final int EARLY_THRESHOLD = -60;
+
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int EXACT_LIMIT = 2 * SUB_BUCKETS;
+    /** A bit over 9 hours. */
+    static final int MAX_MAGNITUDE = (1 << 15) - 1;
+    static final int BUCKETS_PER_SIGN = EXACT_LIMIT + (15 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS;
+    static final int BUCKET_COUNT = 2 * BUCKETS_PER_SIGN;
+
+    private final int[] buckets = new int[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long late;
+    private long early;
+
+    public void record(int delay) {
+        update(delay, 1);
+    }
+
+    public void remove(int delay) {
+        update(delay, -1);
+    }
+
+    public void add(DelayHistogram other) {
+        merge(other, 1);
+    }
+
+    public void subtract(DelayHistogram other) {
+        merge(other, -1);
+    }
+
+    public void clear() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sum = 0;
+        late = 0;
+        early = 0;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getLateCount() {
+        return late;
+    }
+
+    public long getEarlyCount() {
+        return early;
+    }
+
+    /**
+     * @return Exact mean delay in seconds, NaN if the histogram is empty.
+     */
+    public double mean() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    /**
+     * @param quantile Value between 0 and 1.
+     * @return Representative delay of the bucket holding the quantile, 0 if the histogram is empty.
+     */
+    public int percentile(double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return valueOf(bucket);
+            }
+        }
+        return 0;
+    }
+
+    static int bucketOf(int delay) {
+        int magnitude = Math.min(Math.abs(delay), MAX_MAGNITUDE);
+        int index;
+        if (magnitude < EXACT_LIMIT) {
+            index = magnitude;
+        } else {
+            int exponent = 31 - Integer.numberOfLeadingZeros(magnitude);
+            int subBucket = (magnitude >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            index = EXACT_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+        }
+        return delay < 0 ? BUCKETS_PER_SIGN - 1 - index : BUCKETS_PER_SIGN + index;
+    }
+
+    /**
+     * @return Midpoint of the bucket, exact for the linear buckets.
+     */
+    static int valueOf(int bucket) {
+        boolean negative = bucket < BUCKETS_PER_SIGN;
+        int index = negative ? BUCKETS_PER_SIGN - 1 - bucket : bucket - BUCKETS_PER_SIGN;
+        int magnitude;
+        if (index < EXACT_LIMIT) {
+            magnitude = index;
+        } else {
+            int exponent = (index - EXACT_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+            int subBucket = (index - EXACT_LIMIT) % SUB_BUCKETS;
+            int width = 1 << (exponent - SUB_BUCKET_BITS);
+            magnitude = (SUB_BUCKETS + subBucket) * width + width / 2;
+        }
+        return negative ? -magnitude : magnitude;
+    }
+
+    private void update(int delay, int sign) {
+        buckets[bucketOf(delay)] += sign;
+        count += sign;
+        sum += (long) sign * delay;
+        if (delay >= LATE_THRESHOLD) {
+            late += sign;
+        } else if (delay <= EARLY_THRESHOLD) {
+            early += sign;
+        }
+    }
+
+    private void merge(DelayHistogram other, int sign) {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            buckets[bucket] += sign * other.buckets[bucket];
+        }
+        count += sign * other.count;
+        sum += sign * other.sum;
+        late += sign * other.late;
+        early += sign * other.early;
+    }
+}
@@ -0,0 +1,40 @@
+package pl.edu.agh.to.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.service.ArchiveReplayService;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArchiveControllerTest {
+
+    @Test
+    void shouldReturnReplayedBoard_givenServiceReturnsBoard_thenControllerReturnsSameBoard() {
+
+        // given
+        var service = Mockito.mock(ArchiveReplayService.class);
+        var at = LocalDateTime.of(2025, 5, 15, 8, 0);
+
+        var board = List.of(StopDepartureDto.builder()
+                .stopId("2048494")
+                .vehicleId("A:57")
+                .tripId("T1")
+                .departureTime(at.plusMinutes(3))
+                .build());
+
+        Mockito.when(service.getDepartures("2048494", at, 5, null)).thenReturn(Mono.just(board));
+
+        var controller = new ArchiveController(service);
+
+        // when
+        List<StopDepartureDto> result = controller.departures("2048494", at, 5, null).block();
+
+        // then
+        assertEquals(board, result);
+    }
+}
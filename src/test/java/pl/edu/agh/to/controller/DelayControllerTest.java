@@ -0,0 +1,34 @@
+package pl.edu.agh.to.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import pl.edu.agh.to.model.DelayDistributionDto;
+import pl.edu.agh.to.model.RouteDelaysDto;
+import pl.edu.agh.to.service.DelayStatisticsService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DelayControllerTest {
+
+    @Test
+    void shouldReturnRouteDelays_givenServiceReturnsDelays_thenControllerReturnsSameDelays() {
+
+        // given
+        var service = Mockito.mock(DelayStatisticsService.class);
+        var delays = RouteDelaysDto.builder()
+                .routeId("52")
+                .current(DelayDistributionDto.builder().count(3).mean(42.0).p50(40).build())
+                .rolling(DelayDistributionDto.builder().build())
+                .build();
+
+        Mockito.when(service.getRouteDelays("52")).thenReturn(delays);
+
+        var controller = new DelayController(service);
+
+        // when
+        RouteDelaysDto result = controller.routeDelays("52");
+
+        // then
+        assertEquals(delays, result);
+    }
+}
@@ -0,0 +1,63 @@
+package pl.edu.agh.to.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import pl.edu.agh.to.model.SnapshotChangesDto;
+import pl.edu.agh.to.model.SnapshotInfoDto;
+import pl.edu.agh.to.service.SnapshotDiffService;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnapshotControllerTest {
+
+    @Test
+    void shouldReturnSnapshotInfo_givenStoreHasSnapshot_thenControllerReturnsSameInfo() {
+
+        // given
+        var store = Mockito.mock(TripUpdatesSnapshotStore.class);
+
+        var info = SnapshotInfoDto.builder()
+                .generation(7)
+                .fetchedAt(LocalDateTime.now())
+                .ageSeconds(3)
+                .tripCount(120)
+                .build();
+
+        Mockito.when(store.getSnapshotInfo()).thenReturn(info);
+
+        var controller = new SnapshotController(store, Mockito.mock(SnapshotDiffService.class));
+
+        // when
+        SnapshotInfoDto result = controller.snapshot();
+
+        // then
+        assertEquals(info, result);
+    }
+
+    @Test
+    void shouldReturnChanges_givenDiffServiceHasChanges_thenControllerReturnsSameChanges() {
+
+        // given
+        var diffService = Mockito.mock(SnapshotDiffService.class);
+
+        var changes = SnapshotChangesDto.builder()
+                .generation(8)
+                .previousGeneration(7)
+                .changedStopTimes(12)
+                .unchangedTrips(100)
+                .build();
+
+        Mockito.when(diffService.getLatestChanges()).thenReturn(changes);
+
+        var controller = new SnapshotController(Mockito.mock(TripUpdatesSnapshotStore.class), diffService);
+
+        // when
+        SnapshotChangesDto result = controller.changes();
+
+        // then
+        assertEquals(changes, result);
+    }
+}
@@ -0,0 +1,75 @@
+package pl.edu.agh.to.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import pl.edu.agh.to.service.PipelineMetrics;
+import pl.edu.agh.to.service.SnapshotLoader;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotFreshnessFilterTest {
+
+    private static final WebFilterChain CHAIN = exchange -> exchange.getResponse().setComplete();
+
+    private TripUpdatesSnapshotStore store;
+    private SnapshotFreshnessFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        store = new TripUpdatesSnapshotStore(Clock.systemUTC(), new PipelineMetrics(new SimpleMeterRegistry()),
+                event -> { });
+        // requests are served 45 s after the store's clock, past the 30 s revalidation threshold
+        Clock later = Clock.offset(Clock.systemUTC(), Duration.ofSeconds(45));
+        filter = new SnapshotFreshnessFilter(store, new SnapshotLoader(store, null, later, 0, 30_000));
+    }
+
+    @Test
+    void shouldAddAgeAndStaleHeaders_givenSnapshotDueForRevalidation_thenHeadersDescribeIt() {
+        // given
+        store.publish("bus", List.of(), 100L);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/random-departure"));
+
+        // when
+        filter.filter(exchange, CHAIN).block();
+
+        // then
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(Long.parseLong(headers.getFirst(HttpHeaders.AGE))).isBetween(44L, 46L);
+        assertThat(headers.getFirst(SnapshotFreshnessFilter.STALE_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    void shouldLeaveHeadersOut_givenNoSnapshotYet_thenResponseUnchanged() {
+        // given
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/random-departure"));
+
+        // when
+        filter.filter(exchange, CHAIN).block();
+
+        // then
+        assertThat(exchange.getResponse().getHeaders().containsKey(HttpHeaders.AGE)).isFalse();
+    }
+
+    @Test
+    void shouldLeaveHeadersOut_givenArchiveReplay_thenResponseUnchanged() {
+        // given
+        store.publish("bus", List.of(), 100L);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/archive/snapshot"));
+
+        // when
+        filter.filter(exchange, CHAIN).block();
+
+        // then
+        assertThat(exchange.getResponse().getHeaders().containsKey(HttpHeaders.AGE)).isFalse();
+    }
+}
@@ -0,0 +1,69 @@
+package pl.edu.agh.to.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.service.AlertService;
+import pl.edu.agh.to.service.StopDepartureService;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StopControllerTest {
+
+    @Test
+    void shouldReturnEncodedBoard_givenNoAcceptHeader_thenBodyServedAsJson() {
+
+        // given
+        var service = Mockito.mock(StopDepartureService.class);
+        var from = LocalDateTime.now();
+
+        byte[] board = "[{\"stopId\":\"2048494\"}]".getBytes(StandardCharsets.UTF_8);
+        Mockito.when(service.getEncodedDepartures("2048494", from, 5, null, false, ResponseFormat.JSON))
+                .thenReturn(Mono.just(board));
+
+        var controller = new StopController(service, Mockito.mock(AlertService.class));
+
+        // when
+        ResponseEntity<byte[]> result = controller.departures("2048494", 5, from, null, false, new HttpHeaders())
+                .block();
+
+        // then
+        assertSame(board, result.getBody());
+        assertEquals(MediaType.APPLICATION_JSON, result.getHeaders().getContentType());
+        assertEquals(List.of(HttpHeaders.ACCEPT), result.getHeaders().getVary());
+    }
+
+    @Test
+    void shouldReturnAlerts_givenServiceReturnsAlerts_thenControllerReturnsSameAlerts() {
+
+        // given
+        var alertService = Mockito.mock(AlertService.class);
+        var at = LocalDateTime.now();
+
+        var alerts = List.of(AlertDto.builder()
+                .alertId("stop-closed")
+                .mode("tram")
+                .effect("STOP_MOVED")
+                .build());
+
+        Mockito.when(alertService.getStopAlerts("2048494", at, "tram")).thenReturn(Mono.just(alerts));
+
+        var controller = new StopController(Mockito.mock(StopDepartureService.class), alertService);
+
+        // when
+        List<AlertDto> result = controller.alerts("2048494", at, "tram").block();
+
+        // then
+        assertEquals(alerts, result);
+    }
+}
@@ -4,15 +4,18 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import pl.edu.agh.to.model.RandomDepartureDto;
 import pl.edu.agh.to.service.RandomDepartureService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TransportControllerTest {
 
     @Test
-    void shouldReturnDto_givenServiceReturnsDto_thenControllerReturnsSameDto() throws Exception {
+    void shouldReturnDto_givenServiceReturnsDto_thenControllerReturnsSameDto() {
 
         // given
         var service = Mockito.mock(RandomDepartureService.class);
@@ -23,17 +26,40 @@ class TransportControllerTest {
                 .departureTime(LocalDateTime.now())
                 .build();
 
-        Mockito.when(service.getRandomDepartureInfo()).thenReturn(dto);
+        Mockito.when(service.getRandomDepartureInfo(null)).thenReturn(Mono.just(dto));
 
         var controller = new TransportController(service);
 
         // when
-        RandomDepartureDto result = controller.randomDeparture();
+        RandomDepartureDto result = controller.randomDeparture(null).block();
 
         // then
         assertEquals(dto, result);
     }
 
+    @Test
+    void shouldReturnBatch_givenServiceReturnsBatch_thenControllerReturnsSameBatch() {
+
+        // given
+        var service = Mockito.mock(RandomDepartureService.class);
+
+        var dto = RandomDepartureDto.builder()
+                .vehicleId("A:57")
+                .stopId("2048494")
+                .departureTime(LocalDateTime.now())
+                .build();
+
+        Mockito.when(service.getRandomDepartures(3, false, 1L, null)).thenReturn(Flux.just(dto, dto, dto));
+
+        var controller = new TransportController(service);
+
+        // when
+        List<RandomDepartureDto> result = controller.randomDepartures(3, false, 1L, null).collectList().block();
+
+        // then
+        assertEquals(List.of(dto, dto, dto), result);
+    }
+
     @Test
     void shouldReturnHomeMessage_whenHomeEndpointCalled_thenCorrectMessageReturned() {
 
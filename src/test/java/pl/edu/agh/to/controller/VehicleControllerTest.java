@@ -0,0 +1,64 @@
+package pl.edu.agh.to.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import pl.edu.agh.to.model.NearbyVehicleDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.service.VehicleService;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VehicleControllerTest {
+
+    @Test
+    void shouldReturnEncodedVehicle_givenProtobufAccepted_thenBodyServedAsProtobuf() {
+
+        // given
+        var service = Mockito.mock(VehicleService.class);
+
+        byte[] encoded = {8, 1};
+        Mockito.when(service.getEncodedVehicle("A:57", null, ResponseFormat.PROTOBUF)).thenReturn(Mono.just(encoded));
+
+        var controller = new VehicleController(service);
+        var headers = new HttpHeaders();
+        headers.setAccept(List.of(ResponseFormat.PROTOBUF.getMediaType()));
+
+        // when
+        ResponseEntity<byte[]> result = controller.vehicle("A:57", null, headers).block();
+
+        // then
+        assertSame(encoded, result.getBody());
+        assertEquals(ResponseFormat.PROTOBUF.getMediaType(), result.getHeaders().getContentType());
+    }
+
+    @Test
+    void shouldReturnNearbyVehicles_givenServiceReturnsVehicles_thenControllerReturnsSameVehicles() {
+
+        // given
+        var service = Mockito.mock(VehicleService.class);
+
+        var dto = NearbyVehicleDto.builder()
+                .vehicleId("A:57")
+                .mode("bus")
+                .latitude(50.06)
+                .longitude(19.94)
+                .distanceMeters(120)
+                .build();
+
+        Mockito.when(service.getNearbyVehicles(50.06, 19.94, 500.0, 10, "bus")).thenReturn(Mono.just(List.of(dto)));
+
+        var controller = new VehicleController(service);
+
+        // when
+        List<NearbyVehicleDto> result = controller.nearby(50.06, 19.94, 500.0, 10, "bus").block();
+
+        // then
+        assertEquals(List.of(dto), result);
+    }
+}
@@ -0,0 +1,149 @@
+package pl.edu.agh.to.e2e;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.google.transit.realtime.GtfsRealtime;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.persistence.SnapshotFile;
+import pl.edu.agh.to.service.TripUpdatesPoller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts the application on top of a snapshot persisted by a previous run.
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        // the test context loader does not read this from application.properties
+        properties = "spring.main.web-application-type=reactive")
+class SnapshotRestartE2ETest {
+
+    private static final String UPDATES_URL = "/TripUpdates.pb";
+    private static final String STATS_ENDPOINT_PART = "/stats/delays";
+
+    private static WireMockServer wireMockServer;
+    private static Path snapshotFile;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TripUpdatesPoller poller;
+
+    @BeforeAll
+    static void startWireMock() {
+        wireMockServer = new WireMockServer(0);
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    static void stopWireMock() throws IOException {
+        wireMockServer.stop();
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        snapshotFile = persistSnapshot();
+        registry.add("ztp.gtfs.url", wireMockServer::baseUrl);
+        registry.add("ztp.gtfs.feeds[0].name", () -> "bus");
+        registry.add("ztp.gtfs.feeds[0].path", () -> UPDATES_URL);
+        // polling is triggered explicitly once the stub is in place
+        registry.add("ztp.gtfs.initial-delay-ms", () -> "3600000");
+        registry.add("ztp.snapshot.path", snapshotFile::toString);
+        registry.add("ztp.archive.path", () -> "");
+    }
+
+    @Test
+    void shouldReplaceRestoredDelays_givenFirstFetchAfterRestart_thenStatsCoverFetchedFeedOnly() {
+        // given
+        JsonNode restored = restTemplate.getForObject(statsUrl(), JsonNode.class);
+        long now = Instant.now().getEpochSecond();
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/x-protobuf")
+                        .withBody(feed(now, 30))));
+
+        // when
+        poller.poll().block();
+        JsonNode fetched = restTemplate.getForObject(statsUrl(), JsonNode.class);
+
+        // then
+        assertThat(restored.at("/current/count").asLong()).isEqualTo(3);
+        assertThat(restored.at("/current/mean").asDouble()).isEqualTo(120.0);
+        assertThat(fetched.at("/current/count").asLong()).isEqualTo(1);
+        assertThat(fetched.at("/current/mean").asDouble()).isEqualTo(30.0);
+    }
+
+    private String statsUrl() {
+        return "http://localhost:" + port + STATS_ENDPOINT_PART;
+    }
+
+    private static Path persistSnapshot() {
+        try {
+            Path file = Files.createTempFile("to-ztp-restart", ".snapshot");
+            Instant fetchedAt = Instant.now().minusSeconds(60);
+            List<TripRecord> trips = IntStream.range(0, 3)
+                    .mapToObj(i -> TripRecord.builder()
+                            .entityId("R" + i)
+                            .tripId("T-R" + i)
+                            .routeId("R1")
+                            .stopTimes(List.of(new StopTimeRecord("STOP-" + i, StopTimeRecord.NO_TIME,
+                                    StopTimeRecord.NO_DELAY, fetchedAt.getEpochSecond() + 600, 120)))
+                            .build())
+                    .toList();
+            SnapshotFile.write(file, TripUpdatesSnapshot.build(7, fetchedAt, "bus", 100L, trips));
+            return file;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static byte[] feed(long time, int delay) {
+        GtfsRealtime.TripUpdate tripUpdate = GtfsRealtime.TripUpdate.newBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("T1").setRouteId("R1").build())
+                .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                        .setStopId("STOP-E2E")
+                        .setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder()
+                                .setTime(time + 600)
+                                .setDelay(delay)
+                                .build())
+                        .build())
+                .build();
+        return GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET)
+                        .setTimestamp(time)
+                        .build())
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("E1").setTripUpdate(tripUpdate).build())
+                .build()
+                .toByteArray();
+    }
+}
@@ -1,29 +1,48 @@
 package pl.edu.agh.to.e2e;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.transit.realtime.GtfsRealtime;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import pl.edu.agh.to.controller.SnapshotFreshnessFilter;
 import pl.edu.agh.to.model.RandomDepartureDto;
+import pl.edu.agh.to.model.SnapshotInfoDto;
+import pl.edu.agh.to.service.TripUpdatesPoller;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static org.assertj.core.api.Assertions.assertThat;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        // the test context loader does not read this from application.properties
+        properties = "spring.main.web-application-type=reactive")
+// metrics exporters, including Prometheus, are disabled in tests unless requested
+@AutoConfigureObservability
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 class ToZtpApplicationE2ETest {
 
     @LocalServerPort
@@ -32,6 +51,9 @@ class ToZtpApplicationE2ETest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private TripUpdatesPoller poller;
+
     private static WireMockServer wireMockServer;
 
     private static final String UPDATES_URL = "/TripUpdates.pb";
@@ -39,6 +61,12 @@ class ToZtpApplicationE2ETest {
     private static final String ENDPOINT_PART = "/random-departure";
     private static final String CONTENT_TYPE_HEADER = "Content-Type";
     private static final String CONTENT_TYPE_VALUE = "application/x-protobuf";
+    private static final String SNAPSHOT_ENDPOINT_PART = "/snapshot";
+    private static final String PROMETHEUS_ENDPOINT_PART = "/actuator/prometheus";
+    private static final String ETAG_VALUE = "\"feed-v1\"";
+    private static final String DIFFERENTIAL_SCENARIO = "differential";
+    private static final String DELTA_STATE = "delta";
+    private static final int READ_TIMEOUT_MS = 1000;
 
     @BeforeAll
     static void startWireMock() {
@@ -59,6 +87,15 @@ class ToZtpApplicationE2ETest {
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
         registry.add("ztp.gtfs.url", wireMockServer::baseUrl);
+        // a single stubbed feed replaces the configured bus and tram feeds
+        registry.add("ztp.gtfs.feeds[0].name", () -> "bus");
+        registry.add("ztp.gtfs.feeds[0].path", () -> UPDATES_URL);
+        // polling is triggered explicitly by each test once the stub is in place
+        registry.add("ztp.gtfs.initial-delay-ms", () -> "3600000");
+        // state left on disk by another run would make the "no data yet" scenarios flaky
+        registry.add("ztp.snapshot.path", () -> "");
+        registry.add("ztp.archive.path", () -> "");
+        registry.add("ztp.gtfs.read-timeout-ms", () -> String.valueOf(READ_TIMEOUT_MS));
     }
 
     @Test
@@ -72,6 +109,7 @@ class ToZtpApplicationE2ETest {
                         .withStatus(200)
                         .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
                         .withBody(validGtfsData)));
+        poller.poll().block();
 
         // when
         ResponseEntity<RandomDepartureDto> response = restTemplate.getForEntity(
@@ -87,10 +125,127 @@ class ToZtpApplicationE2ETest {
     }
 
     @Test
-    void shouldReturnError500_whenExternalGtfsIsDown() {
+    void shouldKeepSnapshot_whenExternalGtfsAnswersNotModified() {
+        // given
+        byte[] validGtfsData = createGtfsProtobufData("BUS-E2E", "STOP-E2E", Instant.now().getEpochSecond(), true);
+
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withHeader("ETag", ETAG_VALUE)
+                        .withBody(validGtfsData)));
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .withHeader("If-None-Match", equalTo(ETAG_VALUE))
+                .willReturn(aResponse().withStatus(304)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+        ResponseEntity<SnapshotInfoDto> response = restTemplate.getForEntity(
+                DOMAIN_PART + port + SNAPSHOT_ENDPOINT_PART,
+                SnapshotInfoDto.class
+        );
+
+        // then
+        wireMockServer.verify(getRequestedFor(urlEqualTo(UPDATES_URL)).withHeader("If-None-Match", equalTo(ETAG_VALUE)));
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getGeneration()).isEqualTo(1);
+        assertThat(response.getBody().getTripCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldApplyDelta_whenExternalGtfsEmitsDifferentialFeed() throws InvalidProtocolBufferException {
+        // given
+        long now = Instant.now().getEpochSecond();
+        GtfsRealtime.FeedMessage full = GtfsRealtime.FeedMessage.parseFrom(
+                createGtfsProtobufData("BUS-E2E", "STOP-E2E", now, true));
+        GtfsRealtime.FeedMessage delta = full.toBuilder()
+                .setHeader(full.getHeader().toBuilder()
+                        .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL)
+                        .setTimestamp(now + 30))
+                .clearEntity()
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("E1").setIsDeleted(true))
+                .addEntity(full.getEntity(0).toBuilder()
+                        .setId("E2")
+                        .setTripUpdate(full.getEntity(0).getTripUpdate().toBuilder()
+                                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("BUS-DELTA"))))
+                .build();
+
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .inScenario(DIFFERENTIAL_SCENARIO)
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withBody(full.toByteArray()))
+                .willSetStateTo(DELTA_STATE));
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .inScenario(DIFFERENTIAL_SCENARIO)
+                .whenScenarioStateIs(DELTA_STATE)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withBody(delta.toByteArray())));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+        ResponseEntity<RandomDepartureDto> departure = restTemplate.getForEntity(
+                DOMAIN_PART + port + ENDPOINT_PART,
+                RandomDepartureDto.class
+        );
+        ResponseEntity<SnapshotInfoDto> snapshot = restTemplate.getForEntity(
+                DOMAIN_PART + port + SNAPSHOT_ENDPOINT_PART,
+                SnapshotInfoDto.class
+        );
+
+        // then
+        assertThat(departure.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(departure.getBody()).isNotNull();
+        assertThat(departure.getBody().getVehicleId()).isEqualTo("BUS-DELTA");
+        assertThat(snapshot.getBody()).isNotNull();
+        assertThat(snapshot.getBody().getGeneration()).isEqualTo(2);
+        assertThat(snapshot.getBody().getTripCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldExposePipelineMetrics_whenPrometheusEndpointScraped() {
+        // given
+        byte[] validGtfsData = createGtfsProtobufData("BUS-E2E", "STOP-E2E", Instant.now().getEpochSecond(), true);
+
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withBody(validGtfsData)));
+        poller.poll().block();
+        restTemplate.getForEntity(DOMAIN_PART + port + ENDPOINT_PART, String.class);
+
+        // when
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                DOMAIN_PART + port + PROMETHEUS_ENDPOINT_PART,
+                String.class
+        );
+
+        // then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody())
+                .contains("ztp_gtfs_fetch_seconds_count{feed=\"bus\",outcome=\"ok\"")
+                .contains("ztp_gtfs_fetch_bytes_sum")
+                .contains("ztp_gtfs_parse_seconds_bucket")
+                .contains("ztp_snapshot_trips 1.0")
+                .contains("ztp_departure_selection_seconds_count")
+                .contains("ztp_gtfs_parse_errors_total 0.0");
+    }
+
+    @Test
+    void shouldReturnError503_whenExternalGtfsIsDown() {
         // given
         wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
                 .willReturn(aResponse().withStatus(500)));
+        poller.poll().block();
 
         // when
         ResponseEntity<String> response = restTemplate.getForEntity(
@@ -99,11 +254,59 @@ class ToZtpApplicationE2ETest {
         );
 
         // then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void shouldServePreviousSnapshotWithAge_whenExternalGtfsFailsAfterFirstFetch() {
+        // given
+        byte[] validGtfsData = createGtfsProtobufData("BUS-E2E", "STOP-E2E", Instant.now().getEpochSecond(), true);
+
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withBody(validGtfsData)));
+        poller.poll().block();
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse().withStatus(500)));
+        poller.poll().block();
+
+        // when
+        ResponseEntity<RandomDepartureDto> response = restTemplate.getForEntity(
+                DOMAIN_PART + port + ENDPOINT_PART,
+                RandomDepartureDto.class
+        );
+
+        // then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getVehicleId()).isEqualTo("BUS-E2E");
+        assertThat(response.getHeaders().getFirst(HttpHeaders.AGE)).isNotNull();
+        assertThat(response.getHeaders().getFirst(SnapshotFreshnessFilter.STALE_HEADER)).isEqualTo("false");
     }
 
     @Test
-    void shouldReturnError500_whenGtfsDataContainsNoTrips() {
+    void shouldReturnError503_whenExternalGtfsExceedsReadTimeout() {
+        // given
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(READ_TIMEOUT_MS * 3)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withBody(createGtfsProtobufData("X", "Y", 0, true))));
+
+        // when
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                DOMAIN_PART + port + ENDPOINT_PART,
+                String.class
+        );
+
+        // then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void shouldReturnError404_whenConfiguredFeedHasNoDepartures() {
         // given
         byte[] emptyTripsData = createGtfsProtobufData("X", "Y", 0, false);
 
@@ -112,6 +315,7 @@ class ToZtpApplicationE2ETest {
                         .withStatus(200)
                         .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
                         .withBody(emptyTripsData)));
+        poller.poll().block();
 
         // when
         ResponseEntity<String> response = restTemplate.getForEntity(
@@ -120,11 +324,34 @@ class ToZtpApplicationE2ETest {
         );
 
         // then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void shouldReturnError400_whenModeIsNotAConfiguredFeed() {
+        // given
+        wireMockServer.stubFor(get(urlEqualTo(UPDATES_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
+                        .withBody(createGtfsProtobufData("V1", "Y", Instant.now().getEpochSecond() + 60, true))));
+        poller.poll().block();
+
+        // when
+        List<HttpStatusCode> statuses = Stream.of(
+                        ENDPOINT_PART + "?mode=metro",
+                        "/stops/Y/departures?mode=metro",
+                        "/vehicles/V1?mode=metro",
+                        "/stream/departures?stopId=Y&mode=metro")
+                .map(path -> restTemplate.getForEntity(DOMAIN_PART + port + path, String.class).getStatusCode())
+                .toList();
+
+        // then
+        assertThat(statuses).containsOnly(HttpStatus.BAD_REQUEST);
     }
 
     @Test
-    void shouldReturnError500_whenGtfsDataIsCorrupted() {
+    void shouldReturnError503_whenGtfsDataIsCorrupted() {
         // given
         byte[] corruptedData = new byte[]{1, 2, 3, 4, 5};
 
@@ -133,6 +360,7 @@ class ToZtpApplicationE2ETest {
                         .withStatus(200)
                         .withHeader(CONTENT_TYPE_HEADER, CONTENT_TYPE_VALUE)
                         .withBody(corruptedData)));
+        poller.poll().block();
 
         // when
         ResponseEntity<String> response = restTemplate.getForEntity(
@@ -141,7 +369,7 @@ class ToZtpApplicationE2ETest {
         );
 
         // then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
     }
 
     private byte[] createGtfsProtobufData(String vehicleId, String stopId, long time, boolean includeTrip) {
@@ -0,0 +1,125 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.AlertRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertIndexTest {
+
+    private static final long T0 = 1_700_000_000L;
+
+    @Test
+    void shouldMatchByStopTripRouteAndFeed_givenSelectorsOfEachKind_thenOnlyApplicableAlertsReturned() {
+        // given
+        AlertIndex index = AlertIndex.build(List.of(
+                alert(new AlertRecord.Selector("", "S1", "")),
+                alert(new AlertRecord.Selector("R1", "S1", "")),
+                alert(new AlertRecord.Selector("", "", "T1")),
+                alert(new AlertRecord.Selector("R2", "", "")),
+                alert(new AlertRecord.Selector("", "", ""))));
+
+        // when
+        int[] departureOnRoute1 = index.matching("S1", "R1", "T1", T0);
+        int[] departureOnRoute2 = index.matching("S1", "R2", "T9", T0);
+        int[] stop = index.matching("S1", null, null, T0);
+        int[] otherStop = index.matching("S2", "", "", T0);
+
+        // then
+        assertThat(departureOnRoute1).containsExactly(0, 1, 2, 4);
+        assertThat(departureOnRoute2).containsExactly(0, 3, 4);
+        assertThat(stop).containsExactly(0, 1, 4);
+        assertThat(otherStop).containsExactly(4);
+    }
+
+    @Test
+    void shouldReturnAlertOnce_givenSeveralPeriodsAndSelectorsMatching_thenDeduplicated() {
+        // given
+        AlertIndex index = AlertIndex.build(List.of(AlertRecord.builder()
+                .informedEntities(List.of(new AlertRecord.Selector("", "S1", ""),
+                        new AlertRecord.Selector("R1", "", "")))
+                .activePeriods(List.of(new AlertRecord.Period(T0 - 100, T0 + 100),
+                        new AlertRecord.Period(T0 - 10, AlertRecord.Period.NO_END)))
+                .build()));
+
+        // when
+        int[] matches = index.matching("S1", "R1", "T1", T0);
+
+        // then
+        assertThat(matches).containsExactly(0);
+    }
+
+    @Test
+    void shouldMatchFullScan_givenRandomPeriods_thenIntervalLookupAgrees() {
+        // given
+        Random random = new Random(7);
+        List<AlertRecord> alerts = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            List<AlertRecord.Period> periods = new ArrayList<>();
+            for (int p = random.nextInt(3); p > 0; p--) {
+                long start = random.nextInt(5) == 0 ? AlertRecord.Period.NO_START : T0 + random.nextInt(10_000);
+                long end = random.nextInt(5) == 0 ? AlertRecord.Period.NO_END : start + random.nextInt(3_000);
+                periods.add(new AlertRecord.Period(start, end));
+            }
+            alerts.add(AlertRecord.builder()
+                    .informedEntities(List.of(new AlertRecord.Selector("", "S" + random.nextInt(3), "")))
+                    .activePeriods(periods)
+                    .build());
+        }
+        AlertIndex index = AlertIndex.build(alerts);
+
+        for (int query = 0; query < 200; query++) {
+            long time = T0 - 500 + random.nextInt(14_000);
+
+            // when
+            int[] matches = index.matching("S1", null, null, time);
+
+            // then
+            assertThat(matches).containsExactly(IntStream.range(0, alerts.size())
+                    .filter(i -> alerts.get(i).getInformedEntities().getFirst().getStopId().equals("S1"))
+                    .filter(i -> alerts.get(i).isActiveAt(time))
+                    .toArray());
+        }
+    }
+
+    @Test
+    void shouldMatchFullScan_givenNestedPeriodsQueriedAtTheirBounds_thenBoundsInclusive() {
+        // given
+        List<AlertRecord> alerts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            long end = i % 10 == 0 ? AlertRecord.Period.NO_END : T0 + 1_000 - i * 10L;
+            alerts.add(AlertRecord.builder()
+                    .informedEntities(List.of(new AlertRecord.Selector("", "S1", "")))
+                    .activePeriods(List.of(new AlertRecord.Period(T0 + i * 10L, end)))
+                    .build());
+        }
+        AlertIndex index = AlertIndex.build(alerts);
+
+        for (long time = T0 - 1; time <= T0 + 1_001; time++) {
+            long at = time;
+
+            // when
+            int[] matches = index.matching("S1", null, null, at);
+
+            // then
+            assertThat(matches).containsExactly(IntStream.range(0, alerts.size())
+                    .filter(i -> alerts.get(i).isActiveAt(at))
+                    .toArray());
+        }
+    }
+
+    @Test
+    void shouldReturnNothing_givenEmptyIndex_thenNoMatches() {
+        // when & then
+        assertThat(AlertIndex.EMPTY.matching("S1", "R1", "T1", T0)).isEmpty();
+    }
+
+    private static AlertRecord alert(AlertRecord.Selector selector) {
+        return AlertRecord.builder().informedEntities(List.of(selector)).build();
+    }
+}
@@ -0,0 +1,61 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DepartureIndexTest {
+
+    private final IdDictionary dictionary = new IdDictionary();
+
+    @Test
+    void shouldIndexOnlyStopsWithDepartureTime_givenMixedTrips_thenTuplesPointAtSourceRecords() {
+        // given
+        TripRecord first = TripRecord.builder()
+                .tripId("T1")
+                .stopTimes(List.of(
+                        stopTime("A", StopTimeRecord.NO_TIME),
+                        stopTime("B", 200L)))
+                .build();
+        TripRecord empty = TripRecord.builder().tripId("T2").build();
+        TripRecord third = TripRecord.builder()
+                .tripId("T3")
+                .stopTimes(List.of(stopTime("C", 300L)))
+                .build();
+
+        // when
+        DepartureIndex index = DepartureIndex.build(TripColumns.of(dictionary, List.of(first, empty, third)));
+
+        // then
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.tripIndex(0)).isZero();
+        assertThat(index.stopIndex(0)).isEqualTo(1);
+        assertThat(index.departureTime(0)).isEqualTo(200L);
+        assertThat(index.tripIndex(1)).isEqualTo(2);
+        assertThat(index.stopIndex(1)).isZero();
+        assertThat(index.departureTime(1)).isEqualTo(300L);
+    }
+
+    @Test
+    void shouldBeEmpty_givenNoDepartureTimes_thenSizeZero() {
+        // given
+        TripRecord trip = TripRecord.builder()
+                .stopTimes(List.of(stopTime("A", StopTimeRecord.NO_TIME)))
+                .build();
+
+        // when
+        DepartureIndex index = DepartureIndex.build(TripColumns.of(dictionary, List.of(trip)));
+
+        // then
+        assertThat(index.isEmpty()).isTrue();
+    }
+
+    private static StopTimeRecord stopTime(String stopId, long departureTime) {
+        return new StopTimeRecord(stopId, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                departureTime, StopTimeRecord.NO_DELAY);
+    }
+}
@@ -0,0 +1,39 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdDictionaryTest {
+
+    @Test
+    void shouldAssignStableCodes_givenRepeatedIds_thenSameCodeAndCanonicalString() {
+        // given
+        IdDictionary dictionary = new IdDictionary();
+
+        // when
+        int first = dictionary.encode("stop_1");
+        int second = dictionary.encode(new String("stop_1"));
+
+        // then
+        assertThat(first).isEqualTo(second).isEqualTo(1);
+        assertThat(dictionary.decode(first)).isSameAs(dictionary.decode(second));
+        assertThat(dictionary.encode("")).isEqualTo(IdDictionary.EMPTY);
+        assertThat(dictionary.find("missing")).isEqualTo(IdDictionary.ABSENT);
+    }
+
+    @Test
+    void shouldGrowStorage_givenManyIds_thenAllIdsDecode() {
+        // given
+        IdDictionary dictionary = new IdDictionary();
+
+        // when
+        for (int i = 0; i < 5000; i++) {
+            dictionary.encode("id_" + i);
+        }
+
+        // then
+        assertThat(dictionary.size()).isEqualTo(5001);
+        assertThat(dictionary.decode(dictionary.find("id_4999"))).isEqualTo("id_4999");
+    }
+}
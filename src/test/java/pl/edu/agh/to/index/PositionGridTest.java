@@ -0,0 +1,87 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class PositionGridTest {
+
+    /** Main Market Square, Kraków. */
+    private static final double LAT = 50.0617;
+    private static final double LON = 19.9373;
+    /** Roughly 1 km north and 1 km east of the square. */
+    private static final double KM_LAT = 0.009;
+    private static final double KM_LON = 0.014;
+
+    @Test
+    void shouldReturnVehiclesWithinRadius_givenVehiclesAroundPoint_thenNearestFirstAndFarOnesOmitted() {
+        // given
+        PositionGrid grid = PositionGrid.build(
+                new double[] { LAT + 2 * KM_LAT, LAT + 0.1 * KM_LAT, LAT, LAT - 0.5 * KM_LAT },
+                new double[] { LON, LON, LON + 0.3 * KM_LON, LON });
+
+        // when
+        int[] within = grid.within(LAT, LON, 1_000, 10);
+
+        // then
+        assertThat(within).containsExactly(1, 2, 3);
+        assertThat(grid.distanceMeters(1, LAT, LON)).isCloseTo(100, offset(1.0));
+    }
+
+    @Test
+    void shouldMatchFullScan_givenRandomFleet_thenRadiusAndNearestQueriesAgree() {
+        // given
+        Random random = new Random(42);
+        int size = 2_000;
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = LAT + (random.nextDouble() - 0.5) * 20 * KM_LAT;
+            longitudes[i] = LON + (random.nextDouble() - 0.5) * 20 * KM_LON;
+        }
+        PositionGrid grid = PositionGrid.build(latitudes, longitudes);
+
+        for (int query = 0; query < 50; query++) {
+            double latitude = LAT + (random.nextDouble() - 0.5) * 24 * KM_LAT;
+            double longitude = LON + (random.nextDouble() - 0.5) * 24 * KM_LON;
+            Integer[] byDistance = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingDouble(i -> grid.distanceMeters(i, latitude, longitude)))
+                    .toArray(Integer[]::new);
+
+            // when
+            int[] nearest = grid.nearest(latitude, longitude, 7);
+            int[] within = grid.within(latitude, longitude, 600, 1_000);
+
+            // then
+            assertThat(nearest).containsExactly(IntStream.range(0, 7).map(i -> byDistance[i]).toArray());
+            assertThat(within).containsExactly(IntStream.range(0, size)
+                    .map(i -> byDistance[i])
+                    .filter(i -> grid.distanceMeters(i, latitude, longitude) <= 600)
+                    .toArray());
+        }
+    }
+
+    @Test
+    void shouldReturnWholeFleet_givenKLargerThanFleetAndPointFarAway_thenAllVehiclesNearestFirst() {
+        // given
+        PositionGrid grid = PositionGrid.build(new double[] { LAT, LAT + KM_LAT }, new double[] { LON, LON });
+
+        // when
+        int[] nearest = grid.nearest(LAT + 100 * KM_LAT, LON - 50 * KM_LON, 5);
+
+        // then
+        assertThat(nearest).containsExactly(1, 0);
+    }
+
+    @Test
+    void shouldReturnNothing_givenEmptyGrid_thenQueriesEmpty() {
+        // when & then
+        assertThat(PositionGrid.EMPTY.nearest(LAT, LON, 5)).isEmpty();
+        assertThat(PositionGrid.EMPTY.within(LAT, LON, 1_000, 5)).isEmpty();
+    }
+}
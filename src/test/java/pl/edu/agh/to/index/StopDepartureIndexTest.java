@@ -0,0 +1,124 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StopDepartureIndexTest {
+
+    private final IdDictionary dictionary = new IdDictionary();
+
+    @Test
+    void shouldReturnDeparturesInTimeOrder_givenUnorderedTrips_thenBoardSortedAcrossTrips() {
+        // given
+        TripRecord late = trip("T1", stopTime("A", 300L), stopTime("B", 350L));
+        TripRecord early = trip("T2", stopTime("A", 100L));
+        TripRecord middle = trip("T3", stopTime("C", 50L), stopTime("A", 200L));
+        List<TripRecord> trips = List.of(late, early, middle);
+
+        DepartureIndex departures = DepartureIndex.build(TripColumns.of(dictionary, trips));
+
+        // when
+        StopDepartureIndex index = StopDepartureIndex.build(TripColumns.of(dictionary, trips), departures);
+        int[] board = index.departuresFrom("A", 0L, 10);
+
+        // then
+        assertThat(index.stopCount()).isEqualTo(3);
+        assertThat(board).hasSize(3);
+        assertThat(departures.departureTime(board[0])).isEqualTo(100L);
+        assertThat(departures.departureTime(board[1])).isEqualTo(200L);
+        assertThat(departures.departureTime(board[2])).isEqualTo(300L);
+        assertThat(departures.tripIndex(board[1])).isEqualTo(2);
+        assertThat(departures.stopIndex(board[1])).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStartAtFromTimeAndRespectLimit_givenLongBoard_thenBoundedSliceReturned() {
+        // given
+        List<TripRecord> trips = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            trips.add(trip("T" + i, stopTime("A", 100L * i)));
+        }
+        DepartureIndex departures = DepartureIndex.build(TripColumns.of(dictionary, trips));
+        StopDepartureIndex index = StopDepartureIndex.build(TripColumns.of(dictionary, trips), departures);
+
+        // when
+        int[] board = index.departuresFrom("A", 450L, 3);
+
+        // then
+        assertThat(board).hasSize(3);
+        assertThat(departures.departureTime(board[0])).isEqualTo(500L);
+        assertThat(departures.departureTime(board[2])).isEqualTo(700L);
+        assertThat(index.departuresFrom("A", 900L, 3)).hasSize(1);
+        assertThat(index.departuresFrom("A", 901L, 3)).isEmpty();
+    }
+
+    @Test
+    void shouldReturnEmptyBoard_givenUnknownStop_thenNoDepartures() {
+        // given
+        List<TripRecord> trips = List.of(trip("T1", stopTime("A", 100L)));
+
+        // when
+        TripColumns columns = TripColumns.of(dictionary, trips);
+        StopDepartureIndex index = StopDepartureIndex.build(columns, DepartureIndex.build(columns));
+
+        // then
+        assertThat(index.departuresFrom("missing", 0L, 10)).isEmpty();
+    }
+
+    @Test
+    void shouldMatchLinearScan_givenRandomTrips_thenSameBoardForEveryStop() {
+        // given
+        Random random = new Random(42);
+        List<TripRecord> trips = new ArrayList<>();
+        for (int t = 0; t < 200; t++) {
+            List<StopTimeRecord> stops = new ArrayList<>();
+            for (int s = 0; s < 15; s++) {
+                long time = random.nextInt(5) == 0 ? StopTimeRecord.NO_TIME : 1_700_000_000L + random.nextInt(7200);
+                stops.add(stopTime("S" + random.nextInt(40), time));
+            }
+            trips.add(trip("T" + t, stops.toArray(StopTimeRecord[]::new)));
+        }
+        DepartureIndex departures = DepartureIndex.build(TripColumns.of(dictionary, trips));
+
+        // when
+        StopDepartureIndex index = StopDepartureIndex.build(TripColumns.of(dictionary, trips), departures);
+
+        // then
+        long from = 1_700_003_600L;
+        for (int s = 0; s < 40; s++) {
+            String stopId = "S" + s;
+            List<Long> expected = trips.stream()
+                    .flatMap(trip -> trip.getStopTimes().stream())
+                    .filter(stop -> stop.getStopId().equals(stopId))
+                    .filter(stop -> stop.hasDepartureTime() && stop.getDepartureTime() >= from)
+                    .map(StopTimeRecord::getDepartureTime)
+                    .sorted()
+                    .limit(20)
+                    .toList();
+
+            List<Long> actual = new ArrayList<>();
+            for (int departure : index.departuresFrom(stopId, from, 20)) {
+                assertThat(trips.get(departures.tripIndex(departure))
+                        .getStopTimes().get(departures.stopIndex(departure)).getStopId()).isEqualTo(stopId);
+                actual.add(departures.departureTime(departure));
+            }
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    private static TripRecord trip(String tripId, StopTimeRecord... stopTimes) {
+        return TripRecord.builder().tripId(tripId).stopTimes(List.of(stopTimes)).build();
+    }
+
+    private static StopTimeRecord stopTime(String stopId, long departureTime) {
+        return new StopTimeRecord(stopId, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                departureTime, StopTimeRecord.NO_DELAY);
+    }
+}
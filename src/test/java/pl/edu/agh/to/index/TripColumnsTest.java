@@ -0,0 +1,79 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripColumnsTest {
+
+    private final IdDictionary dictionary = new IdDictionary();
+
+    @Test
+    void shouldRoundTripTrips_givenRecords_thenViewsEqualSourceRecords() {
+        // given
+        TripRecord tram = TripRecord.builder()
+                .entityId("E1").tripId("T1").routeId("R1").vehicleId("V1")
+                .stopTimes(List.of(
+                        new StopTimeRecord("A", 100L, 10, 110L, 10),
+                        new StopTimeRecord("B", 200L, StopTimeRecord.NO_DELAY, StopTimeRecord.NO_TIME, -30)))
+                .build();
+        TripRecord empty = TripRecord.builder().entityId("E2").build();
+
+        // when
+        TripColumns columns = TripColumns.of(dictionary, List.of(tram, empty));
+
+        // then
+        assertThat(columns.tripCount()).isEqualTo(2);
+        assertThat(columns.rowCount()).isEqualTo(2);
+        assertThat(columns.asTrips()).containsExactly(tram, empty);
+        assertThat(columns.vehicleId(1)).isEqualTo(IdDictionary.EMPTY);
+        assertThat(columns.eventTime(1)).isEqualTo(200L);
+    }
+
+    @Test
+    void shouldCopyEncodedTrips_givenBuilderCopy_thenOnlySelectedTripsKept() {
+        // given
+        TripRecord first = trip("E1", "A");
+        TripRecord second = trip("E2", "B");
+        TripColumns source = TripColumns.of(dictionary, List.of(first, second));
+
+        // when
+        TripColumns copy = TripColumns.builder(dictionary, 1, 1).copy(source, 1).add(first).build();
+
+        // then
+        assertThat(copy.asTrips()).containsExactly(second, first);
+        assertThat(copy.stopId(0)).isEqualTo(source.stopId(1));
+    }
+
+    @Test
+    void shouldHashContent_givenEqualAndChangedTrips_thenOnlyContentChangesHash() {
+        // given
+        TripRecord trip = trip("E1", "A");
+        TripRecord sameContent = trip("E2", "A");
+        TripRecord otherStop = trip("E1", "B");
+        TripRecord delayed = TripRecord.builder().entityId("E1")
+                .stopTimes(List.of(new StopTimeRecord("A", 100L, 0, 100L, 60)))
+                .build();
+
+        // when
+        TripColumns columns = TripColumns.of(dictionary, List.of(trip, sameContent, otherStop, delayed));
+        TripColumns copy = TripColumns.builder(dictionary, 1, 1).copy(columns, 0).build();
+
+        // then
+        assertThat(columns.contentHash(1)).isEqualTo(columns.contentHash(0));
+        assertThat(columns.contentHash(2)).isNotEqualTo(columns.contentHash(0));
+        assertThat(columns.contentHash(3)).isNotEqualTo(columns.contentHash(0));
+        assertThat(copy.contentHash(0)).isEqualTo(columns.contentHash(0));
+    }
+
+    private static TripRecord trip(String entityId, String stopId) {
+        return TripRecord.builder()
+                .entityId(entityId)
+                .stopTimes(List.of(new StopTimeRecord(stopId, 100L, 0, 100L, 0)))
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripIdIndexTest {
+
+    @Test
+    void shouldFindTrip_givenTripIdInPartition_thenFirstTripPositionReturned() {
+        // given
+        List<TripRecord> trips = List.of(
+                TripRecord.builder().entityId("e1").tripId("T-ID-2").build(),
+                TripRecord.builder().entityId("e2").build(),
+                TripRecord.builder().entityId("e3").tripId("T-ID-1").build(),
+                TripRecord.builder().entityId("e4").tripId("T-ID-2").build());
+        IdDictionary dictionary = new IdDictionary();
+
+        // when
+        TripIdIndex index = TripIdIndex.build(TripColumns.of(dictionary, trips));
+
+        // then
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.find(dictionary.find("T-ID-1"))).isEqualTo(2);
+        assertThat(index.find(dictionary.find("T-ID-2"))).isZero();
+        assertThat(index.find(dictionary.encode("T-ID-missing"))).isEqualTo(-1);
+        assertThat(index.find(IdDictionary.ABSENT)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.agh.to.index;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VehicleIndexTest {
+
+    private final IdDictionary dictionary = new IdDictionary();
+
+    @Test
+    void shouldFindTrip_givenVehicleInSnapshot_thenTripPositionReturned() {
+        // given
+        List<TripRecord> trips = List.of(
+                trip("T1", "V1", 100L, 200L),
+                trip("T2", "V2", 100L, 200L));
+
+        // when
+        VehicleIndex index = VehicleIndex.build(TripColumns.of(dictionary, trips));
+
+        // then
+        assertThat(index.vehicleCount()).isEqualTo(2);
+        assertThat(index.currentTrip("V2", 150L)).isEqualTo(1);
+        assertThat(index.currentTrip("missing", 150L)).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldPickEarliestUnfinishedTrip_givenVehicleWithTwoTrips_thenCurrentTripDependsOnTime() {
+        // given
+        List<TripRecord> trips = List.of(
+                trip("NEXT", "V1", 300L, 400L),
+                trip("NOW", "V1", 100L, 200L));
+
+        // when
+        VehicleIndex index = VehicleIndex.build(TripColumns.of(dictionary, trips));
+
+        // then
+        assertThat(index.currentTrip("V1", 150L)).isEqualTo(1);
+        assertThat(index.currentTrip("V1", 250L)).isZero();
+        assertThat(index.currentTrip("V1", 500L)).isZero();
+    }
+
+    @Test
+    void shouldSkipTrips_givenEmptyVehicleId_thenNotIndexed() {
+        // given
+        List<TripRecord> trips = List.of(trip("T1", "", 100L, 200L));
+
+        // when
+        VehicleIndex index = VehicleIndex.build(TripColumns.of(dictionary, trips));
+
+        // then
+        assertThat(index.vehicleCount()).isZero();
+        assertThat(index.currentTrip("", 0L)).isEqualTo(-1);
+    }
+
+    private static TripRecord trip(String tripId, String vehicleId, long... departureTimes) {
+        List<StopTimeRecord> stopTimes = Arrays.stream(departureTimes)
+                .mapToObj(time -> new StopTimeRecord("S" + time,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, time, StopTimeRecord.NO_DELAY))
+                .toList();
+        return TripRecord.builder().tripId(tripId).vehicleId(vehicleId).stopTimes(stopTimes).build();
+    }
+}
@@ -0,0 +1,167 @@
+package pl.edu.agh.to.integration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.edu.agh.to.api.ZtpApi;
+import pl.edu.agh.to.controller.StopController;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.service.AlertService;
+import pl.edu.agh.to.service.StopDepartureService;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.BDDMockito.given;
+
+/** Integration test for the StopController using WebTestClient. */
+@WebFluxTest(StopController.class)
+class StopControllerIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private StopDepartureService service;
+
+    @MockitoBean
+    private AlertService alertService;
+
+    private static final String STOP_ID = "STOP-KRA";
+
+    @Test
+    void shouldReturnBoardJson_whenServiceReturnsData() {
+        // given
+        LocalDateTime from = LocalDateTime.of(2025, 5, 15, 12, 0, 0);
+        StopDepartureDto dto = StopDepartureDto.builder()
+                .stopId(STOP_ID)
+                .departureTime(from.plusMinutes(5))
+                .departureDelay(30)
+                .vehicleId("TRAM-123")
+                .tripId("T1")
+                .routeId("R1")
+                .build();
+
+        given(service.getEncodedDepartures(STOP_ID, from, 3, null, false, ResponseFormat.JSON))
+                .willReturn(Mono.just(json(List.of(dto))));
+
+        // when & then
+        webTestClient.get()
+                .uri("/stops/{stopId}/departures?limit=3&from=2025-05-15T12:00:00", STOP_ID)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].vehicleId").isEqualTo("TRAM-123")
+                .jsonPath("$[0].departureDelay").isEqualTo(30)
+                .jsonPath("$[0].departureTime").isEqualTo("2025-05-15 12:05:00")
+                .jsonPath("$[0].alerts").doesNotExist();
+    }
+
+    @Test
+    void shouldReturnAlertsJson_whenAlertsIncluded() {
+        // given
+        StopDepartureDto dto = StopDepartureDto.builder()
+                .stopId(STOP_ID)
+                .tripId("T1")
+                .alerts(List.of(AlertDto.builder().alertId("A1").mode("tram").effect("DETOUR").build()))
+                .build();
+
+        given(service.getEncodedDepartures(STOP_ID, null, 10, null, true, ResponseFormat.JSON))
+                .willReturn(Mono.just(json(List.of(dto))));
+
+        // when & then
+        webTestClient.get()
+                .uri("/stops/{stopId}/departures?includeAlerts=true", STOP_ID)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].alerts[0].alertId").isEqualTo("A1")
+                .jsonPath("$[0].alerts[0].effect").isEqualTo("DETOUR")
+                .jsonPath("$[0].alerts[0].url").doesNotExist();
+    }
+
+    @Test
+    void shouldReturn503_whenNoAlertsLoaded() {
+        // given
+        given(alertService.getStopAlerts(STOP_ID, null, null))
+                .willReturn(Mono.error(new UpstreamUnavailableException("No ServiceAlerts loaded yet", Duration.ZERO)));
+
+        // when & then
+        webTestClient.get().uri("/stops/{stopId}/alerts", STOP_ID)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().doesNotExist(HttpHeaders.RETRY_AFTER);
+    }
+
+    @Test
+    void shouldReturn400_whenLimitIsOutOfRange() {
+        // given
+        given(service.getEncodedDepartures(STOP_ID, null, 0, null, false, ResponseFormat.JSON))
+                .willReturn(Mono.error(new IllegalArgumentException("limit must be between 1 and 100")));
+
+        // when & then
+        webTestClient.get().uri("/stops/{stopId}/departures?limit=0", STOP_ID)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.BAD_REQUEST)
+                .expectBody(String.class).value(containsString("limit must be between 1 and 100"));
+    }
+
+    @Test
+    void shouldReturnBoardProtobuf_whenProtobufAccepted() {
+        // given
+        ZtpApi.StopBoard board = ZtpApi.StopBoard.newBuilder()
+                .addDepartures(ZtpApi.StopDeparture.newBuilder()
+                        .setStopId(STOP_ID)
+                        .setDepartureTime(1_747_303_500L)
+                        .setTripId("T1"))
+                .build();
+
+        given(service.getEncodedDepartures(STOP_ID, null, 10, null, false, ResponseFormat.PROTOBUF))
+                .willReturn(Mono.just(board.toByteArray()));
+
+        // when & then
+        webTestClient.get().uri("/stops/{stopId}/departures", STOP_ID)
+                .accept(ResponseFormat.PROTOBUF.getMediaType(), MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ResponseFormat.PROTOBUF.getMediaType())
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .expectBody(byte[].class).value(body -> assertThat(parse(body).getDepartures(0).getTripId())
+                        .isEqualTo("T1"));
+    }
+
+    private byte[] json(List<StopDepartureDto> board) {
+        try {
+            return objectMapper.writeValueAsBytes(board);
+        } catch (JsonProcessingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static ZtpApi.StopBoard parse(byte[] body) {
+        try {
+            return ZtpApi.StopBoard.parseFrom(body);
+        } catch (InvalidProtocolBufferException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
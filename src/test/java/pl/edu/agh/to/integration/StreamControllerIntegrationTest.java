@@ -0,0 +1,62 @@
+package pl.edu.agh.to.integration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.edu.agh.to.controller.StreamController;
+import pl.edu.agh.to.model.DepartureChangesDto;
+import pl.edu.agh.to.model.DepartureStreamFilter;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.service.DepartureStreamService;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.BDDMockito.given;
+
+/** Integration test for the StreamController using WebTestClient. */
+@WebFluxTest(StreamController.class)
+class StreamControllerIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private DepartureStreamService service;
+
+    @Test
+    void shouldStreamEvents_givenStopFilter_thenServerSentEventsReturned() {
+        // given
+        DepartureChangesDto changes = DepartureChangesDto.builder()
+                .generation(7)
+                .changed(List.of(StopDepartureDto.builder().stopId("S1").tripId("T1").mode("bus").build()))
+                .removed(List.of())
+                .build();
+        given(service.subscribe(DepartureStreamFilter.of("S1", null, null, null)))
+                .willReturn(Flux.just(ServerSentEvent.builder(changes).id("7").event("snapshot").build()));
+
+        // when & then
+        webTestClient.get().uri("/stream/departures?stopId=S1")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class).value(containsString("event:snapshot"))
+                .value(containsString("\"tripId\":\"T1\""));
+    }
+
+    @Test
+    void shouldReturn400_givenSeveralFilters_thenStreamNotOpened() {
+        // when & then
+        webTestClient.get().uri("/stream/departures?stopId=S1&routeId=R1")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+}
@@ -1,41 +1,43 @@
 package pl.edu.agh.to.integration;
 
-import com.google.protobuf.InvalidProtocolBufferException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
-import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import pl.edu.agh.to.controller.TransportController;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
 import pl.edu.agh.to.model.RandomDepartureDto;
 import pl.edu.agh.to.service.RandomDepartureService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 
-import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.BDDMockito.given;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 
-/** Integration test for the TransportController using MockMvc. */
-@WebMvcTest(TransportController.class)
+/** Integration test for the TransportController using WebTestClient. */
+@WebFluxTest(TransportController.class)
 class TransportControllerIntegrationTest {
 
     @Autowired
-    private MockMvc mockMvc;
+    private WebTestClient webTestClient;
 
     @MockitoBean
     private RandomDepartureService service;
 
     private static final String RANDOM_DEPARTURE_ENDPOINT = "/random-departure";
+    private static final String RANDOM_DEPARTURES_ENDPOINT = "/random-departures";
 
     // --- Positive Scenario (Happy Path) ---
 
     @Test
-    void shouldReturnDepartureJson_whenServiceReturnsData() throws Exception {
+    void shouldReturnDepartureJson_whenServiceReturnsData() {
         // given
         LocalDateTime departureTime = LocalDateTime.of(2025, 5, 15, 12, 0, 0);
         RandomDepartureDto dto = RandomDepartureDto.builder()
@@ -44,39 +46,94 @@ class TransportControllerIntegrationTest {
                 .departureTime(departureTime)
                 .build();
 
-        given(service.getRandomDepartureInfo()).willReturn(dto);
+        given(service.getRandomDepartureInfo(null)).willReturn(Mono.just(dto));
 
         // when & then
-        mockMvc.perform(get(RANDOM_DEPARTURE_ENDPOINT)
-                        .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.vehicleId", is("TRAM-123")))
-                .andExpect(jsonPath("$.stopId", is("STOP-KRA")))
-                .andExpect(jsonPath("$.departureTime", is("2025-05-15 12:00:00")));
+        webTestClient.get().uri(RANDOM_DEPARTURE_ENDPOINT)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.vehicleId").isEqualTo("TRAM-123")
+                .jsonPath("$.stopId").isEqualTo("STOP-KRA")
+                .jsonPath("$.departureTime").isEqualTo("2025-05-15 12:00:00");
+    }
+
+    @Test
+    void shouldReturnJsonArray_whenBatchOfDeparturesRequested() {
+        // given
+        LocalDateTime departureTime = LocalDateTime.of(2025, 5, 15, 12, 0, 0);
+        RandomDepartureDto first = RandomDepartureDto.builder()
+                .vehicleId("TRAM-1").stopId("STOP-1").departureTime(departureTime).build();
+        RandomDepartureDto second = RandomDepartureDto.builder()
+                .vehicleId("TRAM-2").stopId("STOP-2").departureTime(departureTime).build();
+
+        given(service.getRandomDepartures(2, true, 7L, null)).willReturn(Flux.just(first, second));
+
+        // when & then
+        webTestClient.get().uri(RANDOM_DEPARTURES_ENDPOINT + "?count=2&distinct=true&seed=7")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].vehicleId").isEqualTo("TRAM-1")
+                .jsonPath("$[1].stopId").isEqualTo("STOP-2");
     }
 
     // --- Negative Scenarios (Exception Handling) ---
 
     @Test
-    void shouldReturn500_whenServiceThrowsInvalidProtocolBufferException() throws Exception {
+    void shouldReturn400_whenBatchSizeIsOutOfRange() {
+        // given
+        given(service.getRandomDepartures(0, false, null, null))
+                .willReturn(Flux.error(new IllegalArgumentException("count must be between 1 and 10000")));
+
+        // when & then
+        webTestClient.get().uri(RANDOM_DEPARTURES_ENDPOINT + "?count=0")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.BAD_REQUEST)
+                .expectBody(String.class).value(containsString("count must be between 1 and 10000"));
+    }
+
+    @Test
+    void shouldReturn500_whenNoSnapshotIsAvailableYet() {
+        // given
+        given(service.getRandomDepartureInfo(null))
+                .willReturn(Mono.error(new IllegalStateException("No TripUpdates snapshot available yet")));
+
+        // when & then
+        webTestClient.get().uri(RANDOM_DEPARTURE_ENDPOINT)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR)
+                .expectBody(String.class).value(containsString("No TripUpdates snapshot available yet"));
+    }
+
+    @Test
+    void shouldReturn503WithRetryAfter_whenUpstreamIsUnavailable() {
         // given
-        given(service.getRandomDepartureInfo()).willThrow(new InvalidProtocolBufferException("Test exception"));
+        given(service.getRandomDepartureInfo(null)).willReturn(Mono.error(
+                new UpstreamUnavailableException("circuit of bus is open", Duration.ofMillis(12_300))));
 
         // when & then
-        mockMvc.perform(get(RANDOM_DEPARTURE_ENDPOINT))
-                .andExpect(status().isInternalServerError())
-                .andExpect(content().string(org.hamcrest.Matchers.containsString("Data parsing failed")));
+        webTestClient.get().uri(RANDOM_DEPARTURE_ENDPOINT)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "13")
+                .expectBody(String.class).value(containsString("circuit of bus is open"));
     }
 
     @Test
-    void shouldReturn500_whenServiceThrowsLogicException() throws Exception {
+    void shouldReturn500_whenServiceThrowsLogicException() {
         // given
-        given(service.getRandomDepartureInfo()).willThrow(new IllegalStateException("No trip updates available"));
+        given(service.getRandomDepartureInfo(null))
+                .willReturn(Mono.error(new IllegalStateException("No trip updates available")));
 
         // when & then
-        mockMvc.perform(get(RANDOM_DEPARTURE_ENDPOINT))
-                .andExpect(status().isInternalServerError())
-                .andExpect(content().string(org.hamcrest.Matchers.containsString("No trip updates available")));
+        webTestClient.get().uri(RANDOM_DEPARTURE_ENDPOINT)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR)
+                .expectBody(String.class).value(containsString("No trip updates available"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package pl.edu.agh.to.integration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import pl.edu.agh.to.controller.VehicleController;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.service.VehicleService;
+import reactor.core.publisher.Mono;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.BDDMockito.given;
+
+/** Integration test for the VehicleController using WebTestClient. */
+@WebFluxTest(VehicleController.class)
+class VehicleControllerIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private VehicleService service;
+
+    @Test
+    void shouldReturn404_whenVehicleIsNotInSnapshot() {
+        // given
+        given(service.getEncodedVehicle("TRAM-404", null, ResponseFormat.JSON))
+                .willReturn(Mono.error(new NotFoundException("Vehicle TRAM-404 not found")));
+
+        // when & then
+        webTestClient.get().uri("/vehicles/{vehicleId}", "TRAM-404")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_FOUND)
+                .expectBody(String.class).value(containsString("Vehicle TRAM-404 not found"));
+    }
+}
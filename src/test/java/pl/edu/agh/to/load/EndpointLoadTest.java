@@ -0,0 +1,173 @@
+package pl.edu.agh.to.load;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import pl.edu.agh.to.ToZtpApplication;
+import pl.edu.agh.to.service.TripUpdatesSnapshotStore;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the public endpoints at fixed concurrency levels while a WireMock stand-in publishes
+ * a new generated feed at a fixed cadence and the application polls it on its real schedule.
+ * Reports throughput, p50/p99/p99.9 latency and the number of upstream calls for every run,
+ * prints them and writes them as CSV so results of different releases can be compared.
+ * <p>
+ * Not part of the regular build; run with {@code gradle loadTest}. Tunable with system properties:
+ * load.concurrencyLevels (e.g. 16,64,256), load.requests (per endpoint and level),
+ * load.trips, load.stopsPerTrip, load.stopPool, load.feedIntervalMs, load.pollIntervalMs and load.report.
+ */
+@Tag("load")
+class EndpointLoadTest {
+
+    private static final List<Integer> CONCURRENCY_LEVELS = Arrays.stream(
+                    System.getProperty("load.concurrencyLevels", "16,64,256").split(","))
+            .map(String::trim)
+            .map(Integer::valueOf)
+            .toList();
+    private static final int REQUESTS = Integer.getInteger("load.requests", 20_000);
+    private static final int WARMUP_REQUESTS = REQUESTS / 5;
+    private static final int TRIPS = Integer.getInteger("load.trips", 1_000);
+    private static final int STOPS_PER_TRIP = Integer.getInteger("load.stopsPerTrip", 20);
+    private static final int STOP_POOL = Integer.getInteger("load.stopPool", 2_000);
+    private static final long FEED_INTERVAL_MS = Long.getLong("load.feedIntervalMs", 5_000);
+    private static final long POLL_INTERVAL_MS = Long.getLong("load.pollIntervalMs", 1_000);
+    private static final Path REPORT = Path.of(System.getProperty("load.report", "build/reports/load/endpoints.csv"));
+
+    private static final String FEED_PATH = "/TripUpdates.pb";
+
+    private static WireMockServer wireMockServer;
+    private static ScheduledExecutorService feedPublisher;
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void startEnvironment() throws InterruptedException {
+        wireMockServer = new WireMockServer(0);
+        wireMockServer.start();
+
+        AtomicLong version = new AtomicLong();
+        long firstTimestamp = Instant.now().getEpochSecond();
+        Runnable publishFeed = () -> {
+            long next = version.getAndIncrement();
+            long timestamp = firstTimestamp + next * Math.max(1, FEED_INTERVAL_MS / 1_000);
+            wireMockServer.stubFor(get(urlEqualTo(FEED_PATH))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withHeader("Content-Type", "application/x-protobuf")
+                            .withBody(SyntheticFeed.tripUpdates(TRIPS, STOPS_PER_TRIP, STOP_POOL, next, timestamp))));
+        };
+        publishFeed.run();
+        feedPublisher = Executors.newSingleThreadScheduledExecutor();
+        feedPublisher.scheduleAtFixedRate(publishFeed, FEED_INTERVAL_MS, FEED_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        // command line arguments take precedence over application.properties
+        context = new SpringApplicationBuilder(ToZtpApplication.class).run(
+                "--server.port=0",
+                "--ztp.gtfs.url=" + wireMockServer.baseUrl(),
+                "--ztp.gtfs.feeds[0].name=bus",
+                "--ztp.gtfs.feeds[0].path=" + FEED_PATH,
+                "--ztp.gtfs.initial-delay-ms=0",
+                "--ztp.gtfs.refresh-interval-ms=" + POLL_INTERVAL_MS,
+                "--ztp.snapshot.path=",
+                "--ztp.archive.path=",
+                "--logging.level.root=WARN");
+
+        TripUpdatesSnapshotStore store = context.getBean(TripUpdatesSnapshotStore.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (store.current().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(store.current()).as("first snapshot published").isPresent();
+    }
+
+    @AfterAll
+    static void stopEnvironment() {
+        if (context != null) {
+            context.close();
+        }
+        if (feedPublisher != null) {
+            feedPublisher.shutdownNow();
+        }
+        wireMockServer.stop();
+    }
+
+    @Test
+    void measureEndpointsAtFixedConcurrency() throws InterruptedException, IOException {
+        String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        TripUpdatesSnapshotStore store = context.getBean(TripUpdatesSnapshotStore.class);
+
+        Map<String, IntFunction<String>> endpoints = new LinkedHashMap<>();
+        endpoints.put("/random-departure", index -> "/random-departure");
+        endpoints.put("/random-departures?count=10", index -> "/random-departures?count=10");
+        endpoints.put("/stops/{stopId}/departures", index -> "/stops/stop-" + spread(index, STOP_POOL) + "/departures?limit=10");
+        endpoints.put("/vehicles/{vehicleId}", index -> "/vehicles/vehicle-" + spread(index, TRIPS));
+        endpoints.put("/snapshot", index -> "/snapshot");
+
+        List<String> rows = new ArrayList<>();
+        rows.add("endpoint,concurrency,requests,errors,seconds,throughput,p50_us,p99_us,p999_us,upstream_calls,generations");
+        System.out.printf("%d trips x %d stops, feed changes every %d ms, polled every %d ms%n",
+                TRIPS, STOPS_PER_TRIP, FEED_INTERVAL_MS, POLL_INTERVAL_MS);
+
+        for (int concurrency : CONCURRENCY_LEVELS) {
+            for (Map.Entry<String, IntFunction<String>> endpoint : endpoints.entrySet()) {
+                IntFunction<HttpRequest> requests = index ->
+                        HttpRequest.newBuilder(URI.create(base + endpoint.getValue().apply(index))).GET().build();
+                LoadDriver.run(requests, concurrency, WARMUP_REQUESTS);
+
+                long upstreamBefore = upstreamCalls();
+                long generationBefore = store.require().getGeneration();
+                LoadResult result = LoadDriver.run(requests, concurrency, REQUESTS);
+                long upstream = upstreamCalls() - upstreamBefore;
+                long generations = store.require().getGeneration() - generationBefore;
+
+                System.out.printf("  c=%-4d %-28s %s, %d upstream calls, %d new snapshots%n",
+                        concurrency, endpoint.getKey(), result, upstream, generations);
+                rows.add(String.format("%s,%d,%d,%d,%.3f,%.1f,%d,%d,%d,%d,%d",
+                        endpoint.getKey(), concurrency, result.requests(), result.errors(), result.seconds(),
+                        result.throughput(), result.p50Micros(), result.p99Micros(), result.p999Micros(),
+                        upstream, generations));
+                assertThat(result.errors()).as("%s at concurrency %d", endpoint.getKey(), concurrency).isZero();
+            }
+        }
+
+        Files.createDirectories(REPORT.toAbsolutePath().getParent());
+        Files.write(REPORT, rows);
+        System.out.println("Report written to " + REPORT.toAbsolutePath());
+    }
+
+    private static long upstreamCalls() {
+        return wireMockServer.countRequestsMatching(getRequestedFor(urlEqualTo(FEED_PATH)).build()).getCount();
+    }
+
+    /** Spreads sequence numbers over [0, bound) so consecutive requests hit different ids. */
+    private static int spread(int index, int bound) {
+        return Math.floorMod(index * 7_919, bound);
+    }
+}
@@ -0,0 +1,81 @@
+package pl.edu.agh.to.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Closed-loop load generator: a fixed number of workers, each sending its next request
+ * as soon as the previous one completes.
+ */
+final class LoadDriver {
+
+    private LoadDriver() {
+    }
+
+    static LoadResult run(URI uri, int concurrency, int requests) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        return run(index -> request, concurrency, requests);
+    }
+
+    /**
+     * @param requestFactory Builds the request with the given sequence number, e.g. to vary path parameters.
+     */
+    static LoadResult run(IntFunction<HttpRequest> requestFactory, int concurrency, int requests)
+            throws InterruptedException {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(concurrency);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int worker = 0; worker < concurrency; worker++) {
+            workers.execute(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < requests) {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response =
+                                client.send(requestFactory.apply(index), HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException ex) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    latencies[index] = System.nanoTime() - sent;
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        clientExecutor.shutdown();
+
+        Arrays.sort(latencies);
+        return new LoadResult(requests, errors.get(), seconds,
+                percentileMicros(latencies, 0.50), percentileMicros(latencies, 0.99), percentileMicros(latencies, 0.999));
+    }
+
+    private static long percentileMicros(long[] sorted, double percentile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(index, 0)]);
+    }
+}
@@ -0,0 +1,17 @@
+package pl.edu.agh.to.load;
+
+/**
+ * Summary of a single load run.
+ */
+record LoadResult(int requests, int errors, double seconds, long p50Micros, long p99Micros, long p999Micros) {
+
+    double throughput() {
+        return requests / seconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d requests (%d errors) in %.2f s: %,.0f req/s, p50 %,d us, p99 %,d us, p99.9 %,d us",
+                requests, errors, seconds, throughput(), p50Micros, p99Micros, p999Micros);
+    }
+}
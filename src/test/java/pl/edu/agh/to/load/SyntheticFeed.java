@@ -0,0 +1,66 @@
+package pl.edu.agh.to.load;
+
+import com.google.transit.realtime.GtfsRealtime;
+
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Generates GTFS Realtime TripUpdates feeds of a given size for load tests.
+ */
+final class SyntheticFeed {
+
+    private SyntheticFeed() {
+    }
+
+    /**
+     * @param trips Number of TripUpdate entities.
+     * @param stopsPerTrip Number of StopTimeUpdates in every trip.
+     * @param stopPool Number of distinct stop ids the trips visit.
+     * @param seed Seed making the feed reproducible.
+     * @return Serialized FeedMessage.
+     */
+    static byte[] tripUpdates(int trips, int stopsPerTrip, int stopPool, long seed) {
+        return tripUpdates(trips, stopsPerTrip, stopPool, seed, Instant.now().getEpochSecond());
+    }
+
+    /**
+     * @param timestamp FeedHeader.timestamp; stop times are generated shortly after it.
+     * @return Serialized FeedMessage.
+     */
+    static byte[] tripUpdates(int trips, int stopsPerTrip, int stopPool, long seed, long timestamp) {
+        Random random = new Random(seed);
+        long now = timestamp;
+
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET)
+                        .setTimestamp(now));
+
+        for (int trip = 0; trip < trips; trip++) {
+            GtfsRealtime.TripUpdate.Builder tripUpdate = GtfsRealtime.TripUpdate.newBuilder()
+                    .setTrip(GtfsRealtime.TripDescriptor.newBuilder()
+                            .setTripId("trip-" + trip)
+                            .setRouteId("route-" + (trip % 150)))
+                    .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("vehicle-" + trip));
+
+            long time = now + random.nextInt(600);
+            for (int stop = 0; stop < stopsPerTrip; stop++) {
+                int delay = random.nextInt(300) - 60;
+                time += 60 + random.nextInt(120);
+                tripUpdate.addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                        .setStopSequence(stop)
+                        .setStopId("stop-" + random.nextInt(stopPool))
+                        .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(time).setDelay(delay))
+                        .setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(time + 30).setDelay(delay)));
+            }
+
+            feed.addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                    .setId("entity-" + trip)
+                    .setTripUpdate(tripUpdate));
+        }
+
+        return feed.build().toByteArray();
+    }
+}
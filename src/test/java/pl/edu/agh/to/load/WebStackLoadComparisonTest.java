@@ -0,0 +1,87 @@
+package pl.edu.agh.to.load;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import pl.edu.agh.to.ToZtpApplication;
+import pl.edu.agh.to.service.TripUpdatesPoller;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares /random-departure on the servlet (Tomcat, thread per request) and reactive (Netty) stacks.
+ * Not part of the regular build; run with {@code gradle loadTest}.
+ * Concurrency and request count can be overridden with -Dload.concurrency and -Dload.requests.
+ */
+@Tag("load")
+class WebStackLoadComparisonTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 512);
+    private static final int REQUESTS = Integer.getInteger("load.requests", 100_000);
+    private static final int WARMUP_REQUESTS = REQUESTS / 5;
+
+    private static WireMockServer wireMockServer;
+
+    @BeforeAll
+    static void startWireMock() {
+        wireMockServer = new WireMockServer(0);
+        wireMockServer.start();
+        wireMockServer.stubFor(get(urlEqualTo("/TripUpdates.pb"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/x-protobuf")
+                        .withBody(SyntheticFeed.tripUpdates(1_000, 20, 2_000, 42))));
+    }
+
+    @AfterAll
+    static void stopWireMock() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void compareServletAndReactiveStacks() throws InterruptedException {
+        Map<String, LoadResult> results = new LinkedHashMap<>();
+
+        for (String stack : List.of("servlet", "reactive")) {
+            try (ConfigurableApplicationContext context = start(stack)) {
+                context.getBean(TripUpdatesPoller.class).poll().block();
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                URI uri = URI.create("http://localhost:" + port + "/random-departure");
+
+                LoadDriver.run(uri, CONCURRENCY, WARMUP_REQUESTS);
+                results.put(stack, LoadDriver.run(uri, CONCURRENCY, REQUESTS));
+            }
+        }
+
+        System.out.printf("/random-departure at concurrency %d%n", CONCURRENCY);
+        results.forEach((stack, result) -> System.out.printf("  %-8s %s%n", stack, result));
+        results.values().forEach(result -> assertThat(result.errors()).isZero());
+    }
+
+    private static ConfigurableApplicationContext start(String stack) {
+        // command line arguments take precedence over application.properties
+        return new SpringApplicationBuilder(ToZtpApplication.class).run(
+                "--spring.main.web-application-type=" + stack,
+                "--server.port=0",
+                "--ztp.gtfs.url=" + wireMockServer.baseUrl(),
+                "--ztp.gtfs.feeds[0].name=bus",
+                "--ztp.gtfs.feeds[0].path=/TripUpdates.pb",
+                "--ztp.gtfs.initial-delay-ms=3600000",
+                "--ztp.snapshot.path=",
+                "--ztp.archive.path=",
+                "--logging.level.root=WARN");
+    }
+}
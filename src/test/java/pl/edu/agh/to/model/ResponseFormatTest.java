@@ -0,0 +1,34 @@
+package pl.edu.agh.to.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseFormatTest {
+
+    @Test
+    void shouldPickJson_givenMissingOrWildcardAccept_thenProtobufOnlyWhenNamed() {
+        // when + then
+        assertThat(ResponseFormat.negotiate(List.of())).isEqualTo(ResponseFormat.JSON);
+        assertThat(ResponseFormat.negotiate(List.of(MediaType.ALL))).isEqualTo(ResponseFormat.JSON);
+        assertThat(ResponseFormat.negotiate(MediaType.parseMediaTypes("application/*"))).isEqualTo(ResponseFormat.JSON);
+        assertThat(ResponseFormat.negotiate(MediaType.parseMediaTypes("text/html"))).isEqualTo(ResponseFormat.JSON);
+        assertThat(ResponseFormat.negotiate(MediaType.parseMediaTypes("application/x-protobuf")))
+                .isEqualTo(ResponseFormat.PROTOBUF);
+    }
+
+    @Test
+    void shouldFollowQuality_givenBothFormatsAccepted_thenPreferredOneReturned() {
+        // when + then
+        assertThat(ResponseFormat.negotiate(MediaType.parseMediaTypes("application/x-protobuf, */*;q=0.1")))
+                .isEqualTo(ResponseFormat.PROTOBUF);
+        assertThat(ResponseFormat.negotiate(
+                MediaType.parseMediaTypes("application/x-protobuf;q=0.5, application/json")))
+                .isEqualTo(ResponseFormat.JSON);
+        assertThat(ResponseFormat.negotiate(MediaType.parseMediaTypes("application/json, application/x-protobuf;q=0")))
+                .isEqualTo(ResponseFormat.JSON);
+    }
+}
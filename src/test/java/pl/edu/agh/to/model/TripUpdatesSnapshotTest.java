@@ -0,0 +1,286 @@
+package pl.edu.agh.to.model;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.index.IdDictionary;
+import pl.edu.agh.to.index.TripPartition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripUpdatesSnapshotTest {
+
+    private static final Instant FETCHED_AT = Instant.ofEpochSecond(1_700_000_000L);
+
+    @Test
+    void shouldShareUntouchedPartitions_givenDifferentialUpdate_thenOnlyChangedPartitionsRebuilt() {
+        // given
+        List<TripRecord> trips = IntStream.range(0, 1_000)
+                .mapToObj(i -> trip("entity-" + i, "V" + i, "S" + i % 10, 1_000L + i))
+                .toList();
+        FeedSnapshot base = FeedSnapshot.build("bus", FETCHED_AT, 100L, trips);
+
+        // when
+        FeedSnapshot next = base.applyDifferential(FETCHED_AT, 200L,
+                List.of(trip("entity-7", "V7", "S7", 5_000L)), Set.of("entity-8"));
+
+        // then
+        Set<Integer> touched = Set.of(
+                base.partitionOf("entity-7"),
+                base.partitionOf("entity-8"));
+        assertThat(next.getPartitions()).hasSize(4);
+        for (int p = 0; p < next.getPartitions().size(); p++) {
+            TripPartition before = base.getPartitions().get(p);
+            TripPartition after = next.getPartitions().get(p);
+            if (touched.contains(p)) {
+                assertThat(after).isNotSameAs(before);
+            } else {
+                assertThat(after).isSameAs(before);
+            }
+        }
+        assertThat(next.getTripCount()).isEqualTo(999);
+        assertThat(base.getTripCount()).isEqualTo(1_000);
+    }
+
+    @Test
+    void shouldSplitPartitions_givenDifferentialOutgrowingThem_thenEveryTripStillFound() {
+        // given
+        List<TripRecord> trips = IntStream.range(0, FeedSnapshot.TRIPS_PER_PARTITION)
+                .mapToObj(i -> trip("entity-" + i, "V" + i, "S" + i % 10, 1_000L + i))
+                .toList();
+        TripUpdatesSnapshot base = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, trips);
+
+        // when
+        TripUpdatesSnapshot next = base.withFeed(2, FETCHED_AT, base.feed("bus").orElseThrow()
+                .applyDifferential(FETCHED_AT, 200L, List.of(trip("entity-new", "V-new", "S1", 5_000L)), Set.of()));
+
+        // then
+        assertThat(base.feed("bus").orElseThrow().getPartitions()).hasSize(1);
+        assertThat(next.feed("bus").orElseThrow().getPartitions()).hasSize(2);
+        assertThat(next.getTripCount()).isEqualTo(FeedSnapshot.TRIPS_PER_PARTITION + 1);
+        assertThat(next.trip("trip-entity-new", "bus")).isPresent();
+        assertThat(next.trip("trip-entity-0", "bus")).isPresent();
+    }
+
+    @Test
+    void shouldReplaceAddAndDelete_givenDifferentialUpdate_thenTripsMatchMergedFeed() {
+        // given
+        TripUpdatesSnapshot base = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of(
+                trip("E1", "V1", "A", 100L),
+                trip("E2", "V2", "A", 200L),
+                trip("E3", "V3", "B", 300L)));
+
+        // when
+        TripUpdatesSnapshot next = base.withFeed(2, FETCHED_AT, base.feed("bus").orElseThrow()
+                .applyDifferential(FETCHED_AT, 200L,
+                        List.of(trip("E1", "V1", "A", 150L), trip("E4", "V4", "A", 50L)),
+                        Set.of("E2", "missing")));
+
+        // then
+        assertThat(next.getGeneration()).isEqualTo(2);
+        assertThat(next.getFeedTimestamp()).isEqualTo(200L);
+        assertThat(next.getTrips()).extracting(TripRecord::getEntityId)
+                .containsExactlyInAnyOrder("E1", "E3", "E4");
+        assertThat(next.stopDepartures("A", 0L, 10)).extracting(Departure::getDepartureTime)
+                .containsExactly(50L, 150L);
+        assertThat(next.currentVehicleTrip("V2", 0L)).isEmpty();
+        assertThat(next.getDepartureCount()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldResolveEveryDeparture_givenTripsInManyPartitions_thenGlobalNumberingCoversAll() {
+        // given
+        List<TripRecord> trips = IntStream.range(0, 300)
+                .mapToObj(i -> trip("entity-" + i, "V" + i, "S", i))
+                .toList();
+
+        // when
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, trips);
+
+        // then
+        Set<String> resolved = new HashSet<>();
+        for (int i = 0; i < snapshot.getDepartureCount(); i++) {
+            resolved.add(snapshot.departure(i).getTrip().getEntityId());
+        }
+        assertThat(snapshot.getDepartureCount()).isEqualTo(300);
+        assertThat(resolved).hasSize(300);
+    }
+
+    @Test
+    void shouldMergeBoardsInTimeOrder_givenStopServedFromManyPartitions_thenLimitApplied() {
+        // given
+        List<TripRecord> trips = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            trips.add(trip("entity-" + i, "V" + i, "S", 10_000L - 7L * i));
+        }
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, trips);
+
+        // when
+        List<Departure> board = snapshot.stopDepartures("S", 9_000L, 20);
+
+        // then
+        assertThat(board).hasSize(20);
+        assertThat(board).extracting(Departure::getDepartureTime).isSorted().allMatch(time -> time >= 9_000L);
+        assertThat(board.getFirst().getDepartureTime()).isEqualTo(10_000L - 7L * 142);
+    }
+
+    @Test
+    void shouldPickRunningTrip_givenVehicleTripsInDifferentPartitions_thenEarliestUnfinishedReturned() {
+        // given
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of(
+                trip("first", "V1", "A", 100L),
+                trip("second", "V1", "B", 300L),
+                trip("third", "V1", "C", 500L)));
+
+        // when + then
+        assertThat(snapshot.currentVehicleTrip("V1", 200L)).get()
+                .extracting(vehicleTrip -> vehicleTrip.getTrip().getEntityId()).isEqualTo("second");
+        assertThat(snapshot.currentVehicleTrip("V1", 600L)).get()
+                .extracting(vehicleTrip -> vehicleTrip.getTrip().getEntityId()).isEqualTo("third");
+    }
+
+    @Test
+    void shouldShareOtherFeed_givenRefreshOfOneFeed_thenOnlyRefreshedFeedReplaced() {
+        // given
+        TripUpdatesSnapshot base = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                List.of(trip("E1", "V1", "A", 100L)));
+        FeedSnapshot tram = FeedSnapshot.build("tram", FETCHED_AT.plusSeconds(5), 200L,
+                List.of(trip("E1", "T1", "A", 50L)));
+
+        // when
+        TripUpdatesSnapshot next = base.withFeed(2, FETCHED_AT.plusSeconds(5), tram);
+
+        // then
+        assertThat(next.getFeeds()).extracting(FeedSnapshot::getName).containsExactly("bus", "tram");
+        assertThat(next.feed("bus")).get().isSameAs(base.feed("bus").orElseThrow());
+        assertThat(next.getTripCount()).isEqualTo(2);
+        assertThat(next.getFeedTimestamp()).isEqualTo(200L);
+    }
+
+    @Test
+    void shouldFilterByFeed_givenTwoFeedsServingStop_thenOnlySelectedFeedReturned() {
+        // given
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.of(1, FETCHED_AT, List.of(
+                FeedSnapshot.build("tram", FETCHED_AT, 100L, List.of(
+                        trip("E1", "T1", "A", 50L), trip("E2", "T2", "A", 250L))),
+                FeedSnapshot.build("bus", FETCHED_AT, 100L, List.of(
+                        trip("E1", "V1", "A", 100L), trip("E2", "V2", "B", 200L), trip("E3", "V3", "A", 300L)))));
+
+        // when
+        List<Departure> all = snapshot.stopDepartures("A", 0L, 10);
+        List<Departure> trams = snapshot.stopDepartures("A", 0L, 10, "tram");
+
+        // then
+        assertThat(all).extracting(Departure::getFeed).containsExactly("tram", "bus", "tram", "bus");
+        assertThat(trams).extracting(Departure::getDepartureTime).containsExactly(50L, 250L);
+        assertThat(snapshot.stopDepartures("A", 0L, 10, "ferry")).isEmpty();
+        assertThat(snapshot.getDepartureCount("bus")).isEqualTo(3);
+        assertThat(snapshot.getDepartureCount("tram")).isEqualTo(2);
+        assertThat(snapshot.getDepartureCount("ferry")).isZero();
+        assertThat(IntStream.range(0, 2).mapToObj(i -> snapshot.departure("tram", i)))
+                .extracting(Departure::getFeed).containsOnly("tram");
+        assertThat(snapshot.currentVehicleTrip("T1", 0L, "bus")).isEmpty();
+        assertThat(snapshot.currentVehicleTrip("T1", 0L)).get()
+                .extracting(VehicleTrip::getFeed).isEqualTo("tram");
+    }
+
+    @Test
+    void shouldFindTripById_givenSameTripIdInTwoFeeds_thenTripOfSelectedFeedReturned() {
+        // given
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.of(1, FETCHED_AT, List.of(
+                FeedSnapshot.build("tram", FETCHED_AT, 100L, List.of(trip("E1", "T1", "A", 50L))),
+                FeedSnapshot.build("bus", FETCHED_AT, 100L, List.of(
+                        trip("E1", "V1", "B", 100L), trip("E2", "V2", "C", 200L)))));
+
+        // when
+        Optional<VehicleTrip> busTrip = snapshot.trip("trip-E1", "bus");
+
+        // then
+        assertThat(busTrip).get().extracting(found -> found.getTrip().getVehicleId()).isEqualTo("V1");
+        assertThat(snapshot.trip("trip-E2", "tram")).isEmpty();
+        assertThat(snapshot.trip("trip-E2", null)).get().extracting(VehicleTrip::getFeed).isEqualTo("bus");
+        assertThat(snapshot.trip("missing", null)).isEmpty();
+    }
+
+    @Test
+    void shouldListRouteDepartures_givenTripsOfSeveralRoutes_thenOnlyLaterCallsOfRouteSortedByTime() {
+        // given
+        TripRecord first = TripRecord.builder().entityId("E1").tripId("T1").routeId("R1")
+                .stopTimes(List.of(
+                        new StopTimeRecord("A", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                                100L, StopTimeRecord.NO_DELAY),
+                        new StopTimeRecord("B", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                                400L, StopTimeRecord.NO_DELAY)))
+                .build();
+        TripRecord second = TripRecord.builder().entityId("E2").tripId("T2").routeId("R1")
+                .stopTimes(List.of(new StopTimeRecord("A", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                        300L, StopTimeRecord.NO_DELAY)))
+                .build();
+        TripRecord other = TripRecord.builder().entityId("E3").tripId("T3").routeId("R2")
+                .stopTimes(List.of(new StopTimeRecord("A", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                        200L, StopTimeRecord.NO_DELAY)))
+                .build();
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                List.of(first, second, other));
+
+        // when
+        List<Departure> departures = snapshot.routeDepartures("R1", 200L, null);
+
+        // then
+        assertThat(departures).extracting(Departure::getDepartureTime).containsExactly(300L, 400L);
+        assertThat(departures).extracting(departure -> departure.getTrip().getTripId()).containsExactly("T2", "T1");
+        assertThat(snapshot.routeDepartures("R1", 200L, "tram")).isEmpty();
+        assertThat(snapshot.routeDepartures("missing", 0L, null)).isEmpty();
+    }
+
+    @Test
+    void shouldCompactDictionary_givenFullDatasetsReplacingIds_thenOnlyLiveIdsKeptAndTripsStillFound() {
+        // given
+        FeedSnapshot base = FeedSnapshot.build("bus", FETCHED_AT, 100L, trips("a", 1_000L));
+        FeedSnapshot refreshed = base.applyFullDataset(FETCHED_AT, 200L, trips("a", 2_000L));
+        FeedSnapshot replaced = refreshed.applyFullDataset(FETCHED_AT, 300L, trips("b", 2_000L));
+        // the ids of "a" are unused by now, but it is the version being replaced that decides on compaction
+        FeedSnapshot replacedAgain = replaced.applyFullDataset(FETCHED_AT, 400L, trips("c", 3_000L));
+
+        // when
+        FeedSnapshot compacted = replacedAgain.applyFullDataset(FETCHED_AT, 500L, trips("d", 4_000L));
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.of(1, FETCHED_AT, List.of(compacted));
+
+        // then
+        assertThat(refreshed.getDictionary()).isSameAs(base.getDictionary());
+        assertThat(replaced.getDictionary()).isSameAs(base.getDictionary());
+        assertThat(replacedAgain.getDictionary()).isSameAs(base.getDictionary());
+        assertThat(compacted.getDictionary()).isNotSameAs(base.getDictionary());
+        // the empty id, then entity, trip, vehicle and stop ids of 100 trips
+        assertThat(compacted.getDictionary().size()).isEqualTo(401);
+        assertThat(compacted.getDictionary().find("a-7")).isEqualTo(IdDictionary.ABSENT);
+        assertThat(compacted.getDictionary().find("c-7")).isEqualTo(IdDictionary.ABSENT);
+        assertThat(snapshot.currentVehicleTrip("V-d-7", 4_000L)).get()
+                .extracting(trip -> trip.getTrip().getEntityId()).isEqualTo("d-7");
+        assertThat(snapshot.stopDepartures("S-d-7", 0L, 10)).singleElement()
+                .extracting(Departure::getDepartureTime).isEqualTo(4_007L);
+    }
+
+    private static List<TripRecord> trips(String prefix, long firstDepartureTime) {
+        return IntStream.range(0, 100)
+                .mapToObj(i -> trip(prefix + "-" + i, "V-" + prefix + "-" + i, "S-" + prefix + "-" + i,
+                        firstDepartureTime + i))
+                .toList();
+    }
+
+    private static TripRecord trip(String entityId, String vehicleId, String stopId, long departureTime) {
+        return TripRecord.builder()
+                .entityId(entityId)
+                .tripId("trip-" + entityId)
+                .vehicleId(vehicleId)
+                .stopTimes(List.of(new StopTimeRecord(stopId,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, departureTime, StopTimeRecord.NO_DELAY)))
+                .build();
+    }
+}
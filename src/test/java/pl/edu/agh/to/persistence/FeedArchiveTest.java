@@ -0,0 +1,192 @@
+package pl.edu.agh.to.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedArchiveTest {
+
+    private static final String BUS = "bus";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldSkipFeed_givenTimestampAlreadyArchived_thenOneEntryKept() throws IOException {
+        // given
+        FeedArchive archive = open(1 << 20);
+
+        // when
+        boolean first = archive.append(BUS, 100L, true, feed("a"));
+        boolean repeated = archive.append(BUS, 100L, true, feed("a"));
+        boolean older = archive.append(BUS, 90L, true, feed("b"));
+
+        // then
+        assertThat(first).isTrue();
+        assertThat(repeated).isFalse();
+        assertThat(older).isFalse();
+        assertThat(archive.replayChain(BUS, Long.MAX_VALUE)).hasSize(1);
+    }
+
+    @Test
+    void shouldReturnLastFullFeedAndFollowingDeltas_givenTimeBetweenFeeds_thenLaterFeedsExcluded() throws IOException {
+        // given
+        FeedArchive archive = open(1 << 20);
+        archive.append(BUS, 100L, true, feed("full-1"));
+        archive.append(BUS, 110L, false, feed("delta-1"));
+        archive.append(BUS, 120L, true, feed("full-2"));
+        archive.append(BUS, 130L, false, feed("delta-2"));
+        archive.append(BUS, 140L, false, feed("delta-3"));
+        archive.append(BUS, 150L, false, feed("delta-4"));
+
+        // when
+        List<FeedArchive.ArchivedFeed> chain = archive.replayChain(BUS, 145L);
+
+        // then
+        assertThat(chain)
+                .extracting(feed -> new String(feed.getFeed(), StandardCharsets.UTF_8))
+                .containsExactly("full-2", "delta-2", "delta-3");
+        assertThat(archive.replayChain(BUS, 99L)).isEmpty();
+    }
+
+    @Test
+    void shouldRotateSegments_givenSmallSegmentSize_thenChainSpansSegments() throws IOException {
+        // given
+        FeedArchive archive = open(1);
+        archive.append(BUS, 100L, true, feed("full"));
+        archive.append(BUS, 110L, false, feed("delta-1"));
+        archive.append(BUS, 120L, false, feed("delta-2"));
+
+        // when
+        List<FeedArchive.ArchivedFeed> chain = archive.replayChain(BUS, 115L);
+
+        // then
+        assertThat(archive.segments()).hasSize(3);
+        assertThat(chain).extracting(FeedArchive.ArchivedFeed::getFeedTimestamp).containsExactly(100L, 110L);
+    }
+
+    @Test
+    void shouldRebuildIndexAndDropTornEntry_givenReopenedArchive_thenCompleteEntriesReplayed() throws IOException {
+        // given
+        FeedArchive archive = open(1 << 20);
+        archive.append(BUS, 100L, true, feed("full"));
+        archive.append(BUS, 110L, false, feed("delta"));
+        Path segment = archive.segments().getFirst().getPath();
+        long completeSize = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 0, 0, 0, 0, 120, 1}, StandardOpenOption.APPEND);
+
+        // when
+        FeedArchive reopened = open(1 << 20);
+
+        // then
+        assertThat(Files.size(segment)).isEqualTo(completeSize);
+        assertThat(reopened.segments()).singleElement()
+                .satisfies(s -> assertThat(s.getLastTimestamp()).isEqualTo(110L));
+        assertThat(reopened.replayChain(BUS, 200L)).hasSize(2);
+        assertThat(reopened.append(BUS, 110L, false, feed("delta"))).isFalse();
+    }
+
+    @Test
+    void shouldKeepFeedsApart_givenTwoFeedsWithSameTimestamps_thenEachReplayedFromOwnDirectory() throws IOException {
+        // given
+        FeedArchive archive = open(1 << 20);
+        archive.append(BUS, 100L, true, feed("bus-full"));
+        archive.append("tram", 100L, true, feed("tram-full"));
+        archive.append("tram", 110L, false, feed("tram-delta"));
+
+        // when
+        List<FeedArchive.ArchivedFeed> tram = archive.replayChain("tram", 200L);
+        FeedArchive reopened = open(1 << 20);
+
+        // then
+        assertThat(tram)
+                .extracting(feed -> new String(feed.getFeed(), StandardCharsets.UTF_8))
+                .containsExactly("tram-full", "tram-delta");
+        assertThat(archive.replayChain(BUS, 200L)).hasSize(1);
+        assertThat(archive.segments()).extracting(FeedArchive.Segment::getFeed).containsExactly(BUS, "tram");
+        assertThat(archive.segments().getLast().getPath().getParent()).isEqualTo(directory.resolve("tram"));
+        assertThat(reopened.feeds()).containsExactly(BUS, "tram");
+        assertThat(reopened.replayChain("ferry", 200L)).isEmpty();
+    }
+
+    @Test
+    void shouldStayEmpty_givenBlankPath_thenNothingArchived() throws IOException {
+        // given
+        FeedArchive archive = new FeedArchive("", 1 << 20, 0);
+        archive.open();
+
+        // when
+        boolean appended = archive.append(BUS, 100L, true, feed("full"));
+
+        // then
+        assertThat(archive.isEnabled()).isFalse();
+        assertThat(appended).isFalse();
+        assertThat(archive.segments()).isEmpty();
+    }
+
+    @Test
+    void shouldDiscardEntry_givenStreamedFeedNotCommitted_thenSegmentUnchanged() throws IOException {
+        // given
+        FeedArchive archive = open(1 << 20);
+        archive.append(BUS, 100L, true, feed("full"));
+        Path segment = archive.segments().getFirst().getPath();
+        long completeSize = Files.size(segment);
+
+        // when
+        try (FeedArchive.Appender abandoned = archive.begin(BUS)) {
+            abandoned.write(feed("partial"));
+        }
+        try (FeedArchive.Appender appender = archive.begin(BUS)) {
+            appender.write(feed("del"));
+            appender.write(feed("ta"));
+            appender.commit(110L, false);
+        }
+
+        // then
+        assertThat(Files.size(segment)).isGreaterThan(completeSize);
+        assertThat(archive.replayChain(BUS, 200L))
+                .extracting(feed -> new String(feed.getFeed(), StandardCharsets.UTF_8))
+                .containsExactly("full", "delta");
+        assertThat(open(1 << 20).replayChain(BUS, 200L)).hasSize(2);
+    }
+
+    @Test
+    void shouldDeleteOldestSegments_givenArchiveOverSizeLimit_thenNewestSegmentsKept() throws IOException {
+        // given
+        FeedArchive archive = open(1, 1);
+        archive.append(BUS, 100L, true, feed("bus-full"));
+        archive.append("tram", 105L, true, feed("tram-full"));
+        Path oldest = archive.segments().getFirst().getPath();
+
+        // when
+        archive.append(BUS, 110L, false, feed("bus-delta"));
+
+        // then
+        assertThat(Files.exists(oldest)).isFalse();
+        assertThat(archive.segments()).extracting(FeedArchive.Segment::getFirstTimestamp).containsExactly(110L, 105L);
+        assertThat(archive.replayChain(BUS, 200L)).extracting(FeedArchive.ArchivedFeed::getFeedTimestamp)
+                .containsExactly(110L);
+    }
+
+    private FeedArchive open(long segmentBytes) throws IOException {
+        return open(segmentBytes, 0);
+    }
+
+    private FeedArchive open(long segmentBytes, long maxBytes) throws IOException {
+        FeedArchive archive = new FeedArchive(directory.toString(), segmentBytes, maxBytes);
+        archive.open();
+        return archive;
+    }
+
+    private static byte[] feed(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package pl.edu.agh.to.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SnapshotFileTest {
+
+    private static final Instant FETCHED_AT = Instant.parse("2025-05-15T12:00:00.123Z");
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldRestoreEveryField_givenWrittenSnapshot_thenStaleCopyReturned() throws IOException {
+        // given
+        TripRecord tram = TripRecord.builder()
+                .entityId("E1").tripId("T1").routeId("R1").vehicleId("V1")
+                .stopTimes(List.of(
+                        new StopTimeRecord("Rondo Mogilskie", 1_000L, 30, 1_060L, 45),
+                        new StopTimeRecord("Teatr Bagatela", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                                1_200L, StopTimeRecord.NO_DELAY)))
+                .build();
+        TripRecord bus = TripRecord.builder().entityId("E2").tripId("T2").build();
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.of(5, FETCHED_AT, List.of(
+                FeedSnapshot.build("tram", FETCHED_AT, 100L, List.of(tram)),
+                FeedSnapshot.build("bus", FETCHED_AT.minusSeconds(10), 90L, List.of(bus))));
+        Path file = directory.resolve("snapshot.bin");
+
+        // when
+        SnapshotFile.write(file, snapshot);
+        TripUpdatesSnapshot restored = SnapshotFile.read(file);
+
+        // then
+        assertThat(restored.isStale()).isTrue();
+        assertThat(restored.getGeneration()).isEqualTo(5);
+        assertThat(restored.getFetchedAt()).isEqualTo(FETCHED_AT);
+        assertThat(restored.getFeeds()).extracting(FeedSnapshot::getName, FeedSnapshot::getFetchedAt,
+                        FeedSnapshot::getFeedTimestamp, FeedSnapshot::isStale)
+                .containsExactly(
+                        tuple("bus", FETCHED_AT.minusSeconds(10), 90L, true),
+                        tuple("tram", FETCHED_AT, 100L, true));
+        assertThat(restored.feed("tram").orElseThrow().getTripCount()).isEqualTo(1);
+        assertThat(restored.getTrips()).containsExactlyInAnyOrder(tram, bus);
+        assertThat(restored.getDepartureCount()).isEqualTo(snapshot.getDepartureCount());
+        assertThat(Files.list(directory)).containsExactly(file);
+    }
+
+    @Test
+    void shouldRejectFile_givenFlippedByte_thenChecksumMismatchReported() throws IOException {
+        // given
+        Path file = directory.resolve("snapshot.bin");
+        SnapshotFile.write(file, TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                List.of(TripRecord.builder().entityId("E1").tripId("T1").build())));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x7F;
+        Files.write(file, bytes);
+
+        // when
+        Throwable thrown = catchThrowable(() -> SnapshotFile.read(file));
+
+        // then
+        assertThat(thrown).isInstanceOf(IOException.class).hasMessageContaining("checksum");
+    }
+
+    @Test
+    void shouldRejectFile_givenTruncatedFile_thenIOExceptionThrown() throws IOException {
+        // given
+        Path file = directory.resolve("snapshot.bin");
+        SnapshotFile.write(file, TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of()));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, 2));
+
+        // when
+        Throwable thrown = catchThrowable(() -> SnapshotFile.read(file));
+
+        // then
+        assertThat(thrown).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,76 @@
+package pl.edu.agh.to.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.AlertDto;
+import pl.edu.agh.to.model.AlertRecord;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertServiceTest {
+
+    private static final GtfsFeedsProperties FEEDS = new GtfsFeedsProperties(List.of(
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null),
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null)));
+    private static final String STOP_TEST_ID = "2048408";
+    private static final long NOW = 1_700_000_000L;
+
+    private AlertsStore alertsStore;
+    private AlertService service;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+        alertsStore = new AlertsStore(clock);
+        service = new AlertService(alertsStore, clock, FEEDS);
+    }
+
+    @Test
+    void shouldReturnStopAlerts_givenAlertsOfSeveralFeeds_thenActiveAlertsOfStopAndFeedReturned() {
+        // given
+        alertsStore.publish("bus", List.of(
+                alert("bus-stop", new AlertRecord.Selector("", STOP_TEST_ID, ""), NOW - 60, NOW + 60),
+                alert("bus-later", new AlertRecord.Selector("", STOP_TEST_ID, ""), NOW + 3600, NOW + 7200),
+                alert("bus-route", new AlertRecord.Selector("R1", "", ""), NOW - 60, NOW + 60)), 0);
+        alertsStore.publish("tram", List.of(
+                alert("tram-network", new AlertRecord.Selector("", "", ""), NOW - 60, NOW + 60)), 0);
+
+        // when
+        List<AlertDto> now = service.getStopAlerts(STOP_TEST_ID, null, null).block();
+        List<AlertDto> later = service.getStopAlerts(STOP_TEST_ID,
+                LocalDateTime.ofInstant(Instant.ofEpochSecond(NOW + 5000), ZoneId.systemDefault()), "bus").block();
+
+        // then
+        assertThat(now).extracting(AlertDto::getAlertId).containsExactly("bus-stop", "tram-network");
+        assertThat(now).extracting(AlertDto::getMode).containsExactly("bus", "tram");
+        assertThat(now.getFirst().getHeader()).isEqualTo("Header of bus-stop");
+        assertThat(now.getFirst().getUrl()).isNull();
+        assertThat(later).extracting(AlertDto::getAlertId).containsExactly("bus-later");
+    }
+
+    @Test
+    void shouldFail_givenNoAlertsLoaded_thenUpstreamUnavailableThrown() {
+        // when + then
+        StepVerifier.create(service.getStopAlerts(STOP_TEST_ID, null, null))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+    }
+
+    private static AlertRecord alert(String alertId, AlertRecord.Selector selector, long start, long end) {
+        return AlertRecord.builder()
+                .alertId(alertId)
+                .headerText("Header of " + alertId)
+                .informedEntities(List.of(selector))
+                .activePeriods(List.of(new AlertRecord.Period(start, end)))
+                .build();
+    }
+}
@@ -0,0 +1,125 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.persistence.FeedArchive;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+
+class ArchiveReplayServiceTest {
+
+    private static final GtfsFeedsProperties FEEDS = new GtfsFeedsProperties(List.of(
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null),
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null)));
+    private static final String STOP_TEST_ID = "2048408";
+    private static final long T0 = 1_700_000_000L;
+
+    @TempDir
+    private Path directory;
+
+    private FeedArchive archive;
+    private ArchiveReplayService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        archive = new FeedArchive(directory.toString(), 1 << 20, 0);
+        archive.open();
+        StopDepartureService stopDepartureService = new StopDepartureService(mock(SnapshotLoader.class),
+                mock(AlertService.class), mock(EncodedResponseCache.class), mock(ResponseEncoder.class),
+                Clock.systemDefaultZone(), FEEDS);
+        service = new ArchiveReplayService(archive, new GtfsParser(), stopDepartureService);
+    }
+
+    @Test
+    void shouldReplayBoard_givenFullFeedAndLaterDeltas_thenStateAtRequestedTimeReturned() throws IOException {
+        // given
+        archive.append("bus", T0, true, feed(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET, T0,
+                entity("E1", "T1", T0 + 600), entity("E2", "T2", T0 + 300)));
+        archive.append("bus", T0 + 60, false, feed(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL, T0 + 60,
+                entity("E1", "T1", T0 + 120)));
+        archive.append("bus", T0 + 120, false, feed(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL, T0 + 120,
+                GtfsRealtime.FeedEntity.newBuilder().setId("E2").setIsDeleted(true).build()));
+
+        // when
+        List<StopDepartureDto> board = service.getDepartures(STOP_TEST_ID, at(T0 + 90), 10, null).block();
+
+        // then
+        assertThat(board).extracting(StopDepartureDto::getTripId).containsExactly("T1", "T2");
+        assertThat(board.get(0).getDepartureTime()).isEqualTo(at(T0 + 120));
+    }
+
+    @Test
+    void shouldFailWithNotFound_givenTimeBeforeFirstArchivedFeed_thenNothingReplayed() throws IOException {
+        // given
+        archive.append("bus", T0, true, feed(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET, T0,
+                entity("E1", "T1", T0 + 600)));
+
+        // when & then
+        StepVerifier.create(service.getDepartures(STOP_TEST_ID, at(T0 - 1), 10, null))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldReplayEveryFeed_givenTwoArchivedFeeds_thenModeFilterSelectsOne() throws IOException {
+        // given
+        archive.append("bus", T0, true, feed(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET, T0,
+                entity("E1", "T1", T0 + 600)));
+        archive.append("tram", T0 + 30, true, feed(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET, T0 + 30,
+                entity("E1", "T9", T0 + 300)));
+
+        // when
+        List<StopDepartureDto> all = service.getDepartures(STOP_TEST_ID, at(T0 + 60), 10, null).block();
+        List<StopDepartureDto> bus = service.getDepartures(STOP_TEST_ID, at(T0 + 60), 10, "bus").block();
+
+        // then
+        assertThat(all).extracting(StopDepartureDto::getTripId, StopDepartureDto::getMode)
+                .containsExactly(tuple("T9", "tram"), tuple("T1", "bus"));
+        assertThat(bus).extracting(StopDepartureDto::getTripId).containsExactly("T1");
+    }
+
+    private static LocalDateTime at(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+
+    private static byte[] feed(GtfsRealtime.FeedHeader.Incrementality incrementality, long timestamp,
+                               GtfsRealtime.FeedEntity... entities) {
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setIncrementality(incrementality)
+                        .setTimestamp(timestamp));
+        for (GtfsRealtime.FeedEntity entity : entities) {
+            feed.addEntity(entity);
+        }
+        return feed.build().toByteArray();
+    }
+
+    private static GtfsRealtime.FeedEntity entity(String entityId, String tripId, long departureTime) {
+        return GtfsRealtime.FeedEntity.newBuilder()
+                .setId(entityId)
+                .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder()
+                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId(tripId))
+                        .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                                .setStopId(STOP_TEST_ID)
+                                .setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder()
+                                        .setTime(departureTime))))
+                .build();
+    }
+}
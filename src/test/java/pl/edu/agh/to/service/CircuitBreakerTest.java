@@ -0,0 +1,118 @@
+package pl.edu.agh.to.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CircuitBreakerTest {
+
+    private static final Instant START = Instant.parse("2025-05-15T12:00:00Z");
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+    private Instant now;
+    private CircuitBreaker circuit;
+
+    @BeforeEach
+    void setUp() {
+        now = START;
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenAnswer(invocation -> now);
+        circuit = new CircuitBreaker("bus", 3, OPEN_DURATION, clock);
+    }
+
+    @Test
+    void shouldStayClosed_givenFailuresInterruptedBySuccess_thenCallsPermitted() {
+        // given
+        circuit.onFailure();
+        circuit.onFailure();
+        circuit.onSuccess();
+        circuit.onFailure();
+        circuit.onFailure();
+
+        // when & then
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuit.tryAcquire()).isTrue();
+        assertThat(circuit.retryAfter()).isZero();
+    }
+
+    @Test
+    void shouldOpen_givenFailuresReachingThreshold_thenCallsRejectedUntilOpenDurationPassed() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            circuit.onFailure();
+        }
+        now = START.plusSeconds(10);
+
+        // when & then
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuit.tryAcquire()).isFalse();
+        assertThat(circuit.retryAfter()).isEqualTo(Duration.ofSeconds(20));
+    }
+
+    @Test
+    void shouldLetSingleTrialThrough_givenOpenDurationPassed_thenSuccessClosesCircuit() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            circuit.onFailure();
+        }
+        now = START.plus(OPEN_DURATION);
+
+        // when
+        boolean trial = circuit.tryAcquire();
+        boolean concurrent = circuit.tryAcquire();
+        circuit.onSuccess();
+
+        // then
+        assertThat(trial).isTrue();
+        assertThat(concurrent).isFalse();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldReopen_givenFailedTrial_thenCallsRejectedForAnotherOpenDuration() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            circuit.onFailure();
+        }
+        now = START.plus(OPEN_DURATION);
+        circuit.tryAcquire();
+
+        // when
+        circuit.onFailure();
+
+        // then
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuit.tryAcquire()).isFalse();
+        assertThat(circuit.retryAfter()).isEqualTo(OPEN_DURATION);
+    }
+
+    @Test
+    void shouldStartNewTrial_givenTrialNeverReported_thenCallPermittedAfterOpenDuration() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            circuit.onFailure();
+        }
+        now = START.plus(OPEN_DURATION);
+        circuit.tryAcquire();
+
+        // when
+        now = START.plus(OPEN_DURATION).plusSeconds(10);
+        boolean whileTrialInFlight = circuit.tryAcquire();
+        now = START.plus(OPEN_DURATION).plus(OPEN_DURATION);
+        boolean afterTrialLost = circuit.tryAcquire();
+
+        // then
+        assertThat(whileTrialInFlight).isFalse();
+        assertThat(afterTrialLost).isTrue();
+        assertThat(circuit.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuit.tryAcquire()).isFalse();
+    }
+}
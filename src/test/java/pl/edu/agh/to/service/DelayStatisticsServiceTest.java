@@ -0,0 +1,160 @@
+package pl.edu.agh.to.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.model.DelayStatsDto;
+import pl.edu.agh.to.model.RouteDelaysDto;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.StopDelaysDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DelayStatisticsServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-05-15T12:00:00Z");
+
+    private Clock clock;
+    private DelayStatisticsService service;
+
+    @BeforeEach
+    void setUp() {
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW);
+        service = new DelayStatisticsService(clock, 60, 6);
+    }
+
+    @Test
+    void shouldReplaceCurrentAndAccumulateRolling_givenDifferentialUpdate_thenOnlyChangedTripsMoved() {
+        // given
+        TripUpdatesSnapshot first = TripUpdatesSnapshot.build(1, NOW, "bus", 100L, List.of(
+                trip("E1", "R1", "S1", 120),
+                trip("E2", "R1", "S2", 0),
+                trip("E3", "R2", "S1", -90)));
+        TripUpdatesSnapshot second = first.withFeed(2, NOW, first.feed("bus").orElseThrow()
+                .applyDifferential(NOW, 200L, List.of(trip("E1", "R1", "S1", 300)), Set.of("E3")));
+
+        // when
+        service.onSnapshotPublished(new SnapshotPublishedEvent(null, first));
+        service.onSnapshotPublished(new SnapshotPublishedEvent(first, second));
+        RouteDelaysDto route = service.getRouteDelays("R1");
+        DelayStatsDto stats = service.getStats();
+
+        // then
+        assertThat(route.getCurrent().getCount()).isEqualTo(2);
+        assertThat(route.getCurrent().getMean()).isEqualTo(150.0);
+        assertThat(route.getCurrent().getLateCount()).isEqualTo(1);
+        assertThat(route.getRolling().getCount()).isEqualTo(3);
+        assertThat(stats.getCurrent().getCount()).isEqualTo(2);
+        assertThat(stats.getCurrent().getEarlyCount()).isZero();
+        assertThat(stats.getRolling().getEarlyCount()).isEqualTo(1);
+        assertThat(stats.getRoutes()).extracting(RouteDelaysDto::getRouteId).containsExactly("R1", "R2");
+        assertThat(stats.getRoutes().get(1).getCurrent().getMean()).isNull();
+    }
+
+    @Test
+    void shouldExpireRollingObservations_givenWindowPassed_thenOnlyCurrentRemains() {
+        // given
+        TripUpdatesSnapshot snapshot = TripUpdatesSnapshot.build(1, NOW, "bus", 100L,
+                List.of(trip("E1", "R1", "S1", 60)));
+        service.onSnapshotPublished(new SnapshotPublishedEvent(null, snapshot));
+
+        // when
+        when(clock.instant()).thenReturn(NOW.plusSeconds(50 * 60));
+        StopDelaysDto withinWindow = service.getStopDelays("S1");
+        when(clock.instant()).thenReturn(NOW.plusSeconds(61 * 60));
+        StopDelaysDto afterWindow = service.getStopDelays("S1");
+
+        // then
+        assertThat(withinWindow.getRolling().getCount()).isEqualTo(1);
+        assertThat(afterWindow.getRolling().getCount()).isZero();
+        assertThat(afterWindow.getCurrent().getP50()).isEqualTo(60);
+    }
+
+    @Test
+    void shouldSkipRollingWindow_givenSnapshotFetchedBeforeWindow_thenOnlyCurrentUpdated() {
+        // given
+        Instant fetchedAt = NOW.minusSeconds(2 * 3600);
+        TripUpdatesSnapshot restored = TripUpdatesSnapshot.of(1, fetchedAt,
+                List.of(FeedSnapshot.restore("bus", fetchedAt, 100L, List.of(trip("E1", "R1", "S1", 30)))));
+        service.onSnapshotPublished(new SnapshotPublishedEvent(null,
+                TripUpdatesSnapshot.build(1, NOW, "bus", 50L, List.of())));
+
+        // when
+        service.onSnapshotPublished(new SnapshotPublishedEvent(null, restored));
+        RouteDelaysDto route = service.getRouteDelays("R1");
+
+        // then
+        assertThat(route.getCurrent().getCount()).isEqualTo(1);
+        assertThat(route.getRolling().getCount()).isZero();
+    }
+
+    @Test
+    void shouldCountDelaysOnce_givenIdenticalFullDatasetPublishedTwice_thenRollingCountUnchanged() {
+        // given
+        List<TripRecord> trips = List.of(trip("E1", "R1", "S1", 120), trip("E2", "R1", "S2", 0));
+        TripUpdatesSnapshot first = TripUpdatesSnapshot.build(1, NOW, "bus", 100L, trips);
+        TripUpdatesSnapshot second = first.withFeed(2, NOW.plusSeconds(15), first.feed("bus").orElseThrow()
+                .applyFullDataset(NOW.plusSeconds(15), 115L, trips));
+        service.onSnapshotPublished(new SnapshotPublishedEvent(null, first));
+
+        // when
+        service.onSnapshotPublished(new SnapshotPublishedEvent(first, second));
+        DelayStatsDto stats = service.getStats();
+
+        // then
+        assertThat(stats.getCurrent().getCount()).isEqualTo(2);
+        assertThat(stats.getRolling().getCount()).isEqualTo(2);
+        assertThat(stats.getRolling().getLateCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRebuildCurrent_givenPreviousSnapshotNeverSeen_thenOnlyPublishedDelaysCounted() {
+        // given
+        TripUpdatesSnapshot restored = TripUpdatesSnapshot.build(1, NOW, "bus", 100L, List.of(
+                trip("R1", "R1", "S1", 120),
+                trip("R2", "R1", "S2", 120),
+                trip("R3", "R1", "S3", 120)));
+        TripUpdatesSnapshot fetched = restored.withFeed(2, NOW, FeedSnapshot.build("bus", NOW, 200L,
+                List.of(trip("E1", "R1", "S1", 30))));
+
+        // when
+        service.onSnapshotPublished(new SnapshotPublishedEvent(restored, fetched));
+        DelayStatsDto stats = service.getStats();
+
+        // then
+        assertThat(stats.getCurrent().getCount()).isEqualTo(1);
+        assertThat(stats.getCurrent().getMean()).isEqualTo(30.0);
+    }
+
+    @Test
+    void shouldThrowNotFound_givenRouteWithoutDelays_thenNothingReported() {
+        // when
+        Throwable thrown = catchThrowable(() -> service.getRouteDelays("unknown"));
+
+        // then
+        assertThat(thrown).isInstanceOf(NotFoundException.class);
+    }
+
+    private static TripRecord trip(String entityId, String routeId, String stopId, int delay) {
+        return TripRecord.builder()
+                .entityId(entityId)
+                .tripId("trip-" + entityId)
+                .routeId(routeId)
+                .stopTimes(List.of(new StopTimeRecord(stopId,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, 1_000L, delay)))
+                .build();
+    }
+}
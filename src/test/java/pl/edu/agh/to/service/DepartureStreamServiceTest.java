@@ -0,0 +1,194 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.DepartureRefDto;
+import pl.edu.agh.to.model.DepartureStreamFilter;
+import pl.edu.agh.to.model.SnapshotChangedEvent;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.StopDepartureDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DepartureStreamServiceTest {
+
+    private static final GtfsFeedsProperties FEEDS = new GtfsFeedsProperties(List.of(
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null),
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null)));
+    private static final Instant NOW = Instant.ofEpochSecond(1_000L);
+    private static final DepartureStreamFilter STOP_A = DepartureStreamFilter.of("A", null, null, null);
+
+    private SimpleMeterRegistry registry;
+    private TripUpdatesSnapshotStore snapshotStore;
+    private DepartureStreamService service;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        SnapshotDiffService diffService = new SnapshotDiffService(
+                event -> service.onSnapshotChanged((SnapshotChangedEvent) event), metrics);
+        snapshotStore = new TripUpdatesSnapshotStore(clock, metrics,
+                event -> diffService.onSnapshotPublished((SnapshotPublishedEvent) event));
+        service = new DepartureStreamService(snapshotStore, metrics, clock, FEEDS, 2, 60_000);
+    }
+
+    @Test
+    void shouldPushSnapshotThenChanges_givenStopStream_thenOnlyChangedAndRemovedDeparturesSent() {
+        // given
+        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", 2_000L), trip("T2", "V2", "A", 3_000L)), 0);
+
+        // when / then
+        StepVerifier.create(service.subscribe(STOP_A))
+                .assertNext(event -> {
+                    assertThat(event.event()).isEqualTo(DepartureStreamService.SNAPSHOT_EVENT);
+                    assertThat(event.id()).isEqualTo("1");
+                    assertThat(event.data().getChanged()).extracting(StopDepartureDto::getTripId)
+                            .containsExactly("T1", "T2");
+                    assertThat(event.data().getRemoved()).isEmpty();
+                })
+                .then(() -> snapshotStore.publish("bus", List.of(
+                        trip("T1", "V1", "A", 2_100L), trip("T3", "V3", "A", 2_500L)), 0))
+                .assertNext(event -> {
+                    assertThat(event.event()).isEqualTo(DepartureStreamService.CHANGES_EVENT);
+                    assertThat(event.data().getGeneration()).isEqualTo(2);
+                    assertThat(event.data().getChanged()).extracting(StopDepartureDto::getTripId)
+                            .containsExactly("T1", "T3");
+                    assertThat(event.data().getRemoved()).extracting(DepartureRefDto::getTripId)
+                            .containsExactly("T2");
+                })
+                .then(() -> snapshotStore.publish("bus", List.of(
+                        trip("T1", "V1", "A", 2_100L), trip("T3", "V3", "A", 2_500L), trip("T4", "V4", "B", 0L)), 0))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void shouldSkipRecomputation_givenChangesElsewhere_thenOnlyAffectedTopicRecomputed() {
+        // given
+        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", 2_000L), trip("T2", "V2", "B", 2_000L)), 0);
+        Disposable stopA = service.subscribe(STOP_A).subscribe();
+        Disposable stopB = service.subscribe(DepartureStreamFilter.of("B", null, null, null)).subscribe();
+        Disposable vehicle = service.subscribe(DepartureStreamFilter.of(null, null, "V1", null)).subscribe();
+
+        // when
+        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", 2_000L), trip("T2", "V2", "B", 2_060L)), 0);
+
+        // then
+        assertThat(registry.get("ztp.stream.topic.updates").tag("result", "recomputed").counter().count())
+                .isEqualTo(4);
+        assertThat(registry.get("ztp.stream.topic.updates").tag("result", "skipped").counter().count())
+                .isEqualTo(2);
+        stopA.dispose();
+        stopB.dispose();
+        vehicle.dispose();
+    }
+
+    @Test
+    void shouldFollowRemainingStops_givenVehicleStream_thenPastStopsLeftOut() {
+        // given
+        TripRecord trip = TripRecord.builder().entityId("T1").tripId("T1").vehicleId("V1")
+                .stopTimes(List.of(stopTime("A", 900L), stopTime("B", 1_100L), stopTime("C", 1_200L)))
+                .build();
+        snapshotStore.publish("bus", List.of(trip), 0);
+
+        // when / then
+        StepVerifier.create(service.subscribe(DepartureStreamFilter.of(null, null, "V1", "bus")))
+                .assertNext(event -> assertThat(event.data().getChanged()).extracting(StopDepartureDto::getStopId)
+                        .containsExactly("B", "C"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void shouldShareTopic_givenEqualFilters_thenTopicDroppedWithLastSubscriber() {
+        // given
+        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", 2_000L)), 0);
+
+        // when
+        Disposable first = service.subscribe(STOP_A).subscribe();
+        Disposable second = service.subscribe(DepartureStreamFilter.of("A", null, null, null)).subscribe();
+        Disposable other = service.subscribe(DepartureStreamFilter.of("A", null, null, "bus")).subscribe();
+
+        // then
+        assertThat(registry.get("ztp.stream.topics").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("ztp.stream.subscribers").gauge().value()).isEqualTo(3);
+
+        first.dispose();
+        other.dispose();
+        assertThat(registry.get("ztp.stream.topics").gauge().value()).isEqualTo(1);
+        second.dispose();
+        assertThat(registry.get("ztp.stream.topics").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldFail_givenUnknownMode_thenNoTopicCreated() {
+        // when + then
+        StepVerifier.create(service.subscribe(DepartureStreamFilter.of("A", null, null, "metro")))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        assertThat(registry.get("ztp.stream.topics").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldDisconnect_givenSubscriberNotKeepingUp_thenStreamCompletesAfterBufferedEvents() {
+        // given
+        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", 2_000L)), 0);
+
+        // when / then
+        StepVerifier.create(service.subscribe(STOP_A), 0)
+                .then(() -> {
+                    for (long time = 2_001L; time < 2_010L; time++) {
+                        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", time)), 0);
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(event -> true)
+                .verifyComplete();
+        assertThat(registry.get("ztp.stream.overflows").counter().count()).isEqualTo(1);
+        assertThat(registry.get("ztp.stream.topics").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldSendHeartbeats_givenNoChanges_thenCommentsKeepStreamOpen() {
+        // given
+        snapshotStore.publish("bus", List.of(trip("T1", "V1", "A", 2_000L)), 0);
+        DepartureStreamService heartbeating = new DepartureStreamService(snapshotStore,
+                new PipelineMetrics(new SimpleMeterRegistry()), Clock.fixed(NOW, ZoneOffset.UTC), FEEDS, 2, 10);
+
+        // when / then
+        StepVerifier.create(heartbeating.subscribe(STOP_A).skip(1).map(ServerSentEvent::comment))
+                .expectNext("heartbeat", "heartbeat")
+                .thenCancel()
+                .verify();
+    }
+
+    private static TripRecord trip(String tripId, String vehicleId, String stopId, long departureTime) {
+        return TripRecord.builder()
+                .entityId(tripId)
+                .tripId(tripId)
+                .vehicleId(vehicleId)
+                .stopTimes(List.of(stopTime(stopId, departureTime)))
+                .build();
+    }
+
+    private static StopTimeRecord stopTime(String stopId, long departureTime) {
+        return new StopTimeRecord(stopId, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                departureTime, StopTimeRecord.NO_DELAY);
+    }
+}
@@ -0,0 +1,105 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class EncodedResponseCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private EncodedResponseCache cache;
+    private AtomicInteger encodings;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new EncodedResponseCache(new PipelineMetrics(registry), 2, 5000);
+        encodings = new AtomicInteger();
+    }
+
+    @Test
+    void shouldEncodeOnce_givenSameKeyAndGeneration_thenCachedBytesReturned() {
+        // when
+        byte[] first = cache.get(1, "board", this::encode);
+        byte[] second = cache.get(1, "board", this::encode);
+
+        // then
+        assertThat(second).isSameAs(first);
+        assertThat(encodings).hasValue(1);
+        assertThat(registry.get("ztp.response.cache").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get("ztp.response.cache").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDropEntries_givenNewerGeneration_thenOlderGenerationNoLongerCached() {
+        // given
+        cache.get(1, "board", this::encode);
+
+        // when
+        cache.onSnapshotPublished(new SnapshotPublishedEvent(null,
+                TripUpdatesSnapshot.build(2, Instant.EPOCH, "bus", 0, List.of())));
+        int afterPublish = cache.size();
+        cache.get(2, "board", this::encode);
+        cache.get(1, "board", this::encode);
+        cache.get(1, "board", this::encode);
+
+        // then
+        assertThat(afterPublish).isZero();
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(encodings).hasValue(4);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed_givenMaxEntriesReached_thenNewResponsesStillCached() {
+        // when
+        cache.get(1, "a", this::encode);
+        cache.get(1, "b", this::encode);
+        cache.get(1, "a", this::encode);
+        cache.get(1, "c", this::encode);
+        cache.get(1, "c", this::encode);
+        cache.get(1, "a", this::encode);
+        cache.get(1, "b", this::encode);
+
+        // then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(encodings).hasValue(4);
+    }
+
+    @Test
+    void shouldShareTimeBucket_givenInstantsWithinBucket_thenSameBucketStart() {
+        // when
+        long start = cache.timeBucket(Instant.parse("2025-05-15T12:00:00Z"));
+        long within = cache.timeBucket(Instant.parse("2025-05-15T12:00:04.999Z"));
+        long next = cache.timeBucket(Instant.parse("2025-05-15T12:00:05Z"));
+
+        // then
+        assertThat(within).isEqualTo(start).isEqualTo(Instant.parse("2025-05-15T12:00:00Z").getEpochSecond());
+        assertThat(next).isEqualTo(start + 5);
+    }
+
+    @Test
+    void shouldNotCacheFailure_givenEncoderThrows_thenNextLookupEncodesAgain() {
+        // when
+        Throwable thrown = catchThrowable(() -> cache.get(1, "vehicle", () -> {
+            throw new IllegalStateException("not found");
+        }));
+        byte[] encoded = cache.get(1, "vehicle", this::encode);
+
+        // then
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        assertThat(encoded).containsExactly(1);
+    }
+
+    private byte[] encode() {
+        return new byte[] { (byte) encodings.incrementAndGet() };
+    }
+}
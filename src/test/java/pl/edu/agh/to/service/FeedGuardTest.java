@@ -0,0 +1,90 @@
+package pl.edu.agh.to.service;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedGuardTest {
+
+    private static final String FEED = "bus-positions";
+
+    private SimpleMeterRegistry registry;
+    private FeedGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        guard = new FeedGuard("bus VehiclePositions", FEED, new PipelineMetrics(registry), 1,
+                Duration.ofMinutes(1), Clock.systemUTC());
+    }
+
+    @Test
+    void shouldKeepCircuitClosed_givenCancellationAfterSuccess_thenOutcomeReportedOnce() {
+        // when
+        StepVerifier.create(guard.refresh(() -> Mono.just(1)).flux().take(1))
+                .expectNext(1)
+                .verifyComplete();
+
+        // then
+        assertThat(circuitState()).isZero();
+        assertThat(guard.retryAfter()).isZero();
+    }
+
+    @Test
+    void shouldOpenCircuit_givenRefreshCancelled_thenNextRefreshRejectedWithoutCallingUpstream() {
+        // given
+        AtomicInteger calls = new AtomicInteger();
+        Disposable inFlight = guard.refresh(() -> {
+            calls.incrementAndGet();
+            return Mono.never();
+        }).subscribe();
+
+        // when
+        inFlight.dispose();
+
+        // then
+        assertThat(circuitState()).isEqualTo(1.0);
+        StepVerifier.create(guard.refresh(() -> {
+                    calls.incrementAndGet();
+                    return Mono.just(1);
+                }))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void shouldCountParseAndFetchFailures_givenFailedRefreshes_thenErrorsPropagated() {
+        // given
+        FeedGuard tolerant = new FeedGuard("tram VehiclePositions", "tram-positions",
+                new PipelineMetrics(registry), 3, Duration.ofMinutes(1), Clock.systemUTC());
+
+        // when
+        StepVerifier.create(tolerant.refresh(() -> Mono.error(new InvalidProtocolBufferException("corrupted"))))
+                .expectError(InvalidProtocolBufferException.class)
+                .verify();
+        StepVerifier.create(tolerant.refresh(() -> Mono.error(new IllegalStateException("upstream down"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        // then
+        assertThat(registry.get("ztp.gtfs.parse.errors").counter().count()).isEqualTo(1);
+        assertThat(registry.get("ztp.gtfs.fetch.failures").tag("feed", "tram-positions").counter().count())
+                .isEqualTo(1);
+    }
+
+    private double circuitState() {
+        return registry.get("ztp.gtfs.circuit.state").tag("feed", FEED).gauge().value();
+    }
+}
@@ -1,19 +1,44 @@
 package pl.edu.agh.to.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.reactive.function.client.WebClient;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class GtfsClientTest {
+    private static final GtfsFeedsProperties.Feed FEED =
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null);
+
     @Mock
     private WebClient webClient;
 
@@ -28,23 +53,91 @@ class GtfsClientTest {
     @Mock
     private WebClient.ResponseSpec responseSpec;
 
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private PipelineMetrics metrics = new PipelineMetrics(registry);
+
     @InjectMocks
     private GtfsClient gtfsClient;
 
     @Test
-    void shouldReturnByteArray_givenWebClientReturnsData_whenFetchTripUpdatesAsBytes_thenCorrectBytesReturned() {
+    void shouldStreamBody_givenWebClientReturnsData_whenFetchTripUpdates_thenCorrectBytesReturned() {
         // given
         byte[] expectedBytes = new byte[]{1, 2, 3, 4};
+        givenResponse(ResponseEntity.ok()
+                .eTag("\"v1\"")
+                .header(HttpHeaders.LAST_MODIFIED, "Thu, 15 May 2025 12:00:00 GMT")
+                .body(Flux.just(
+                        DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{1, 2}),
+                        DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{3, 4}))));
 
-        when(webClient.get()).thenReturn(uriSpec);
-        when(uriSpec.uri(anyString())).thenReturn(headersSpec);
-        when(headersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(expectedBytes));
+        // when
+        FeedFetchResult result = gtfsClient.fetchTripUpdates(FEED, FeedValidators.NONE).block();
+        boolean timedBeforeBodyRead = registry.find("ztp.gtfs.fetch").timer() != null;
+        DataBuffer joined = DataBufferUtils.join(result.getBody()).block();
+
+        // then
+        assertFalse(timedBeforeBodyRead);
+        byte[] actualBytes = new byte[joined.readableByteCount()];
+        joined.read(actualBytes);
+        assertArrayEquals(expectedBytes, actualBytes);
+        assertEquals("\"v1\"", result.getValidators().getEtag());
+        assertEquals("Thu, 15 May 2025 12:00:00 GMT", result.getValidators().getLastModified());
+        assertEquals(1, registry.get("ztp.gtfs.fetch")
+                .tag("feed", "tram").tag("outcome", PipelineMetrics.OUTCOME_OK).timer().count());
+        assertEquals(4.0, registry.get("ztp.gtfs.fetch.bytes").summary().totalAmount());
+    }
+
+    @Test
+    void shouldRecordError_givenBodyFailingAfterHeaders_whenBodyRead_thenFetchTimedUntilFailure() {
+        // given
+        givenResponse(ResponseEntity.ok().body(Flux.concat(
+                Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{1, 2})),
+                Flux.error(new IllegalStateException("connection reset")))));
+        FeedFetchResult result = gtfsClient.fetchTripUpdates(FEED, FeedValidators.NONE).block();
 
         // when
-        byte[] result = gtfsClient.fetchTripUpdatesAsBytes();
+        StepVerifier.create(result.getBody())
+                .expectNextCount(1)
+                .verifyError(IllegalStateException.class);
 
         // then
-        assertArrayEquals(expectedBytes, result);
+        assertEquals(1, registry.get("ztp.gtfs.fetch")
+                .tag("feed", "tram").tag("outcome", PipelineMetrics.OUTCOME_ERROR).timer().count());
+        assertNull(registry.find("ztp.gtfs.fetch").tag("outcome", PipelineMetrics.OUTCOME_OK).timer());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void shouldSendConditionalHeaders_givenValidators_whenNotModified_thenNotModifiedResultReturned() {
+        // given
+        FeedValidators validators = new FeedValidators("\"v1\"", "Thu, 15 May 2025 12:00:00 GMT");
+        givenResponse(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+
+        // when
+        FeedFetchResult result = gtfsClient.fetchTripUpdates(FEED, validators).block();
+
+        // then
+        assertTrue(result.isNotModified());
+        assertEquals(validators, result.getValidators());
+        assertEquals(1, registry.get("ztp.gtfs.fetch")
+                .tag("feed", "tram").tag("outcome", PipelineMetrics.OUTCOME_NOT_MODIFIED).timer().count());
+
+        ArgumentCaptor<Consumer<HttpHeaders>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(headersSpec).headers(captor.capture());
+        HttpHeaders sent = new HttpHeaders();
+        captor.getValue().accept(sent);
+        assertEquals(List.of("\"v1\""), sent.getIfNoneMatch());
+        assertEquals("Thu, 15 May 2025 12:00:00 GMT", sent.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenResponse(ResponseEntity<Flux<DataBuffer>> response) {
+        when(webClient.get()).thenReturn(uriSpec);
+        when(uriSpec.uri("/TripUpdates_T.pb")).thenReturn(headersSpec);
+        when(headersSpec.headers(any())).thenReturn(headersSpec);
+        when(headersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.toEntityFlux(DataBuffer.class)).thenReturn(Mono.just(response));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package pl.edu.agh.to.service;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.transit.realtime.GtfsRealtime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the wire-format scanner in GtfsParser extracts exactly what the generated
+ * GtfsRealtime classes would, for feeds containing every kind of field the scanner skips.
+ */
+class GtfsParserConformanceTest {
+
+    private final GtfsParser parser = new GtfsParser();
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 5, 8, 13, 21, 34, 55, 89})
+    void shouldMatchGeneratedClasses_givenRandomFeed_thenSameRecordsExtracted(long seed) throws Exception {
+        // given
+        GtfsRealtime.FeedMessage feed = randomFeed(new Random(seed), 200);
+
+        // when
+        List<TripRecord> result = parser.parseTripUpdates(feed.toByteArray());
+
+        // then
+        assertThat(result).isEqualTo(expectedRecords(feed));
+    }
+
+    @Test
+    void shouldMergeRepeatedMessageFields_givenEntityEncodedTwice_thenSameRecordsAsGeneratedClasses() throws Exception {
+        // given
+        GtfsRealtime.FeedEntity first = GtfsRealtime.FeedEntity.newBuilder()
+                .setId("entity-1")
+                .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder()
+                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip-1").setRouteId("route-1"))
+                        .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                                .setStopId("stop-1")
+                                .setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(100).setDelay(5))))
+                .build();
+        GtfsRealtime.FeedEntity second = GtfsRealtime.FeedEntity.newBuilder()
+                .setId("entity-1")
+                .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder()
+                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip-2"))
+                        .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("vehicle-2"))
+                        .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder().setStopId("stop-2")))
+                .build();
+
+        ByteArrayOutputStream mergedEntity = new ByteArrayOutputStream();
+        first.writeTo(mergedEntity);
+        second.writeTo(mergedEntity);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        output.writeMessage(GtfsRealtime.FeedMessage.HEADER_FIELD_NUMBER, header());
+        output.writeByteArray(GtfsRealtime.FeedMessage.ENTITY_FIELD_NUMBER, mergedEntity.toByteArray());
+        output.flush();
+
+        // when
+        List<TripRecord> result = parser.parseTripUpdates(bytes.toByteArray());
+
+        // then
+        assertThat(result).isEqualTo(expectedRecords(GtfsRealtime.FeedMessage.parseFrom(bytes.toByteArray())));
+        assertThat(result.getFirst().getTripId()).isEqualTo("trip-2");
+        assertThat(result.getFirst().getRouteId()).isEqualTo("route-1");
+        assertThat(result.getFirst().getStopTimes()).hasSize(2);
+    }
+
+    private static List<TripRecord> expectedRecords(GtfsRealtime.FeedMessage feed) {
+        return feed.getEntityList().stream()
+                .filter(entity -> entity.hasTripUpdate() && !entity.getIsDeleted())
+                .map(entity -> {
+                    GtfsRealtime.TripUpdate tripUpdate = entity.getTripUpdate();
+                    return TripRecord.builder()
+                            .entityId(entity.getId())
+                            .tripId(tripUpdate.getTrip().getTripId())
+                            .routeId(tripUpdate.getTrip().getRouteId())
+                            .vehicleId(tripUpdate.getVehicle().getId())
+                            .stopTimes(tripUpdate.getStopTimeUpdateList().stream()
+                                    .map(GtfsParserConformanceTest::expectedStopTime)
+                                    .toList())
+                            .build();
+                })
+                .toList();
+    }
+
+    private static StopTimeRecord expectedStopTime(GtfsRealtime.TripUpdate.StopTimeUpdate update) {
+        GtfsRealtime.TripUpdate.StopTimeEvent arrival = update.getArrival();
+        GtfsRealtime.TripUpdate.StopTimeEvent departure = update.getDeparture();
+        return new StopTimeRecord(
+                update.getStopId(),
+                update.hasArrival() && arrival.hasTime() ? arrival.getTime() : StopTimeRecord.NO_TIME,
+                update.hasArrival() && arrival.hasDelay() ? arrival.getDelay() : StopTimeRecord.NO_DELAY,
+                update.hasDeparture() && departure.hasTime() ? departure.getTime() : StopTimeRecord.NO_TIME,
+                update.hasDeparture() && departure.hasDelay() ? departure.getDelay() : StopTimeRecord.NO_DELAY);
+    }
+
+    private static GtfsRealtime.FeedHeader header() {
+        return GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("2.0")
+                .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET)
+                .setTimestamp(1_747_310_400L)
+                .build();
+    }
+
+    private static GtfsRealtime.FeedMessage randomFeed(Random random, int entities) {
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder().setHeader(header());
+        IntStream.range(0, entities).forEach(i -> feed.addEntity(randomEntity(random, i)));
+        return feed.build();
+    }
+
+    private static GtfsRealtime.FeedEntity randomEntity(Random random, int index) {
+        GtfsRealtime.FeedEntity.Builder entity = GtfsRealtime.FeedEntity.newBuilder()
+                .setId("entity-" + index)
+                .setIsDeleted(random.nextInt(10) == 0);
+
+        switch (random.nextInt(5)) {
+            case 0 -> entity.setVehicle(randomVehiclePosition(random));
+            case 1 -> entity.setAlert(randomAlert(random));
+            case 2 -> entity
+                    .setTripUpdate(randomTripUpdate(random))
+                    .setVehicle(randomVehiclePosition(random));
+            default -> entity.setTripUpdate(randomTripUpdate(random));
+        }
+        return entity.build();
+    }
+
+    private static GtfsRealtime.TripUpdate randomTripUpdate(Random random) {
+        GtfsRealtime.TripDescriptor.Builder trip = GtfsRealtime.TripDescriptor.newBuilder()
+                .setStartDate("20250515")
+                .setScheduleRelationship(GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED);
+        if (random.nextBoolean()) {
+            trip.setTripId("trip-" + random.nextInt(1_000));
+        }
+        if (random.nextBoolean()) {
+            trip.setRouteId("route-" + random.nextInt(100)).setDirectionId(random.nextInt(2));
+        }
+
+        GtfsRealtime.TripUpdate.Builder tripUpdate = GtfsRealtime.TripUpdate.newBuilder()
+                .setTrip(trip)
+                .setTimestamp(1_747_310_400L + random.nextInt(60));
+        if (random.nextBoolean()) {
+            tripUpdate.setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder()
+                    .setId("vehicle-" + random.nextInt(500))
+                    .setLabel("label")
+                    .setLicensePlate("KR 12345"));
+        }
+        if (random.nextBoolean()) {
+            tripUpdate.setDelay(random.nextInt(600) - 120);
+        }
+        if (random.nextInt(4) == 0) {
+            tripUpdate.setTripProperties(GtfsRealtime.TripUpdate.TripProperties.newBuilder()
+                    .setTripId("replacement")
+                    .setTripHeadsign("Nowy Bieżanów")
+                    .setShapeId("shape-1"));
+        }
+
+        int stops = random.nextInt(12);
+        for (int stop = 0; stop < stops; stop++) {
+            GtfsRealtime.TripUpdate.StopTimeUpdate.Builder update = GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                    .setStopSequence(stop);
+            if (random.nextInt(8) != 0) {
+                update.setStopId("stop-" + random.nextInt(3_000));
+            }
+            if (random.nextBoolean()) {
+                update.setArrival(randomEvent(random));
+            }
+            if (random.nextInt(4) != 0) {
+                update.setDeparture(randomEvent(random));
+            }
+            if (random.nextInt(5) == 0) {
+                update.setStopTimeProperties(GtfsRealtime.TripUpdate.StopTimeUpdate.StopTimeProperties.newBuilder()
+                        .setAssignedStopId("assigned")
+                        .setStopHeadsign("Czerwone Maki"));
+            }
+            if (random.nextInt(10) == 0) {
+                update.setScheduleRelationship(
+                        GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED);
+            }
+            tripUpdate.addStopTimeUpdate(update);
+        }
+        return tripUpdate.build();
+    }
+
+    private static GtfsRealtime.TripUpdate.StopTimeEvent randomEvent(Random random) {
+        GtfsRealtime.TripUpdate.StopTimeEvent.Builder event = GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder();
+        if (random.nextInt(5) != 0) {
+            event.setTime(1_747_310_400L + random.nextInt(7_200));
+        }
+        if (random.nextBoolean()) {
+            // negative delays exercise the ten-byte varint encoding of int32
+            event.setDelay(random.nextInt(900) - 300);
+        }
+        if (random.nextInt(3) == 0) {
+            event.setUncertainty(random.nextInt(120)).setScheduledTime(1_747_310_000L);
+        }
+        return event.build();
+    }
+
+    private static GtfsRealtime.VehiclePosition randomVehiclePosition(Random random) {
+        return GtfsRealtime.VehiclePosition.newBuilder()
+                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("vehicle-" + random.nextInt(500)))
+                .setPosition(GtfsRealtime.Position.newBuilder()
+                        .setLatitude(50.06f + random.nextFloat() / 10)
+                        .setLongitude(19.94f + random.nextFloat() / 10)
+                        .setBearing(random.nextInt(360)))
+                .setStopId("stop-" + random.nextInt(3_000))
+                .setTimestamp(1_747_310_400L)
+                .build();
+    }
+
+    private static GtfsRealtime.Alert randomAlert(Random random) {
+        return GtfsRealtime.Alert.newBuilder()
+                .addActivePeriod(GtfsRealtime.TimeRange.newBuilder().setStart(1_747_310_000L).setEnd(1_747_320_000L))
+                .addInformedEntity(GtfsRealtime.EntitySelector.newBuilder()
+                        .setStopId("stop-" + random.nextInt(3_000))
+                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip-1")))
+                .setHeaderText(GtfsRealtime.TranslatedString.newBuilder()
+                        .addTranslation(GtfsRealtime.TranslatedString.Translation.newBuilder().setText("Objazd")))
+                .build();
+    }
+}
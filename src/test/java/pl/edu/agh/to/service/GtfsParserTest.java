@@ -3,8 +3,13 @@ package pl.edu.agh.to.service;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.transit.realtime.GtfsRealtime;
 import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.AlertRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.VehiclePositionRecord;
 
+import java.io.ByteArrayInputStream;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -21,11 +26,13 @@ class GtfsParserTest {
         byte[] feed = createFeedWithTrips(1);
 
         // when
-        List<GtfsRealtime.TripUpdate> result = parser.parseTripUpdates(feed);
+        List<TripRecord> result = parser.parseTripUpdates(feed);
 
         // then
         assertEquals(1, result.size());
-        assertEquals("M:401", result.getFirst().getVehicle().getId());
+        assertEquals("M:401", result.getFirst().getVehicleId());
+        assertEquals("trip-0", result.getFirst().getTripId());
+        assertEquals("2048408", result.getFirst().getStopTimes().getFirst().getStopId());
     }
 
 
@@ -47,7 +54,7 @@ class GtfsParserTest {
         byte[] feed = feedMessage.toByteArray();
 
         // when
-        List<GtfsRealtime.TripUpdate> result = parser.parseTripUpdates(feed);
+        List<TripRecord> result = parser.parseTripUpdates(feed);
 
         // then
         assertTrue(result.isEmpty());
@@ -80,7 +87,7 @@ class GtfsParserTest {
         byte[] feed = feedMessage.toByteArray();
 
         // when
-        List<GtfsRealtime.TripUpdate> result = parser.parseTripUpdates(feed);
+        List<TripRecord> result = parser.parseTripUpdates(feed);
 
         // then
         assertTrue(result.isEmpty());
@@ -93,7 +100,7 @@ class GtfsParserTest {
         byte[] feed = createFeedWithTrips(3);
 
         // when
-        List<GtfsRealtime.TripUpdate> result = parser.parseTripUpdates(feed);
+        List<TripRecord> result = parser.parseTripUpdates(feed);
 
         // then
         assertEquals(3, result.size());
@@ -110,6 +117,167 @@ class GtfsParserTest {
                 () -> parser.parseTripUpdates(invalidData));
     }
 
+    @Test
+    void shouldStreamTripUpdates_givenValidFeed_thenEveryTripAndHeaderDelivered() throws Exception {
+        // given
+        byte[] feed = createFeedWithTrips(3);
+        List<TripRecord> streamed = new ArrayList<>();
+
+        // when
+        GtfsRealtime.FeedHeader header = parser.streamTripUpdates(
+                new ByteArrayInputStream(feed), feedHeader -> true, streamed::add);
+
+        // then
+        GtfsRealtime.FeedMessage expected = GtfsRealtime.FeedMessage.parseFrom(feed);
+        assertEquals(expected.getHeader(), header);
+        assertEquals(parser.parseTripUpdates(feed), streamed);
+    }
+
+    @Test
+    void shouldStopDecoding_givenHeaderCheckRejectsFeed_thenNoTripsDelivered() throws Exception {
+        // given
+        byte[] feed = createFeedWithTrips(3);
+        List<TripRecord> streamed = new ArrayList<>();
+
+        // when
+        GtfsRealtime.FeedHeader header = parser.streamTripUpdates(
+                new ByteArrayInputStream(feed), feedHeader -> false, streamed::add);
+
+        // then
+        assertEquals("2.0", header.getGtfsRealtimeVersion());
+        assertTrue(streamed.isEmpty());
+    }
+
+    @Test
+    void shouldReportDeletion_givenEntityMarkedAsDeleted_thenEntityNotDeliveredAsTrip() throws Exception {
+        // given
+        byte[] feed = GtfsRealtime.FeedMessage.parseFrom(createFeedWithTrips(2)).toBuilder()
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("gone").setIsDeleted(true))
+                .addEntity(createValidEntity(2, 0).toBuilder().setIsDeleted(true))
+                .build()
+                .toByteArray();
+        List<TripRecord> streamed = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+
+        // when
+        parser.streamTripUpdates(new ByteArrayInputStream(feed), feedHeader -> true, streamed::add, deleted::add);
+
+        // then
+        assertEquals(2, streamed.size());
+        assertEquals(List.of("gone", "entity-2"), deleted);
+    }
+
+    @Test
+    void shouldThrowException_givenFeedWithoutHeader_thenExceptionThrown() throws Exception {
+        // given
+        byte[] entitiesOnly = GtfsRealtime.FeedMessage.parseFrom(createFeedWithTrips(2))
+                .toBuilder().clearHeader().buildPartial().toByteArray();
+
+        // when + then
+        assertThrows(InvalidProtocolBufferException.class,
+                () -> parser.parseTripUpdates(entitiesOnly));
+    }
+
+    @Test
+    void shouldThrowException_givenInvalidProtobufStream_thenExceptionThrown() {
+        // given
+        byte[] invalidData = new byte[]{1, 2, 3, 4, 5};
+
+        // when + then
+        assertThrows(InvalidProtocolBufferException.class,
+                () -> parser.streamTripUpdates(new ByteArrayInputStream(invalidData), header -> true, trip -> { }));
+    }
+
+    @Test
+    void shouldStreamVehiclePositions_givenPositionsFeed_thenOnlyLocatedLiveVehiclesDelivered() throws Exception {
+        // given
+        GtfsRealtime.FeedMessage feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(300L))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("located")
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("T1").setRouteId("R1"))
+                                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("M:401"))
+                                .setPosition(GtfsRealtime.Position.newBuilder()
+                                        .setLatitude(50.0617f).setLongitude(19.9373f).setBearing(90f))
+                                .setTimestamp(290L)))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("unlocated")
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("M:402"))))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("deleted")
+                        .setIsDeleted(true)
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setPosition(GtfsRealtime.Position.newBuilder().setLatitude(1f).setLongitude(1f))))
+                .addEntity(createValidEntity(0, 300L))
+                .build();
+        List<VehiclePositionRecord> positions = new ArrayList<>();
+
+        // when
+        GtfsRealtime.FeedHeader header =
+                parser.streamVehiclePositions(new ByteArrayInputStream(feed.toByteArray()), positions::add);
+
+        // then
+        assertEquals(300L, header.getTimestamp());
+        assertEquals(1, positions.size());
+        VehiclePositionRecord position = positions.getFirst();
+        assertEquals("M:401", position.getVehicleId());
+        assertEquals("T1", position.getTripId());
+        assertEquals("R1", position.getRouteId());
+        assertEquals(50.0617, position.getLatitude(), 1e-5);
+        assertEquals(19.9373, position.getLongitude(), 1e-5);
+        assertEquals(90f, position.getBearing());
+        assertEquals(290L, position.getTimestamp());
+    }
+
+    @Test
+    void shouldStreamAlerts_givenAlertsFeed_thenLiveAlertsDeliveredWithSelectorsAndPeriods() throws Exception {
+        // given
+        GtfsRealtime.FeedMessage feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(300L))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("detour")
+                        .setAlert(GtfsRealtime.Alert.newBuilder()
+                                .addActivePeriod(GtfsRealtime.TimeRange.newBuilder().setStart(100L))
+                                .addInformedEntity(GtfsRealtime.EntitySelector.newBuilder()
+                                        .setRouteId("R1").setStopId("S1"))
+                                .addInformedEntity(GtfsRealtime.EntitySelector.newBuilder()
+                                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("T1")))
+                                .setCause(GtfsRealtime.Alert.Cause.CONSTRUCTION)
+                                .setEffect(GtfsRealtime.Alert.Effect.DETOUR)
+                                .setHeaderText(GtfsRealtime.TranslatedString.newBuilder()
+                                        .addTranslation(GtfsRealtime.TranslatedString.Translation.newBuilder()
+                                                .setText("Roadworks").setLanguage("en"))
+                                        .addTranslation(GtfsRealtime.TranslatedString.Translation.newBuilder()
+                                                .setText("Remont")))))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("deleted")
+                        .setIsDeleted(true)
+                        .setAlert(GtfsRealtime.Alert.newBuilder()
+                                .addInformedEntity(GtfsRealtime.EntitySelector.newBuilder().setStopId("S2"))))
+                .addEntity(createValidEntity(0, 300L))
+                .build();
+        List<AlertRecord> alerts = new ArrayList<>();
+
+        // when
+        GtfsRealtime.FeedHeader header =
+                parser.streamAlerts(new ByteArrayInputStream(feed.toByteArray()), alerts::add);
+
+        // then
+        assertEquals(300L, header.getTimestamp());
+        assertEquals(1, alerts.size());
+        AlertRecord alert = alerts.getFirst();
+        assertEquals("detour", alert.getAlertId());
+        assertEquals("CONSTRUCTION", alert.getCause());
+        assertEquals("DETOUR", alert.getEffect());
+        assertEquals("Remont", alert.getHeaderText());
+        assertEquals("", alert.getDescriptionText());
+        assertEquals(List.of(new AlertRecord.Period(100L, AlertRecord.Period.NO_END)), alert.getActivePeriods());
+        assertEquals(List.of(new AlertRecord.Selector("R1", "S1", ""), new AlertRecord.Selector("", "", "T1")),
+                alert.getInformedEntities());
+    }
+
     private byte[] createFeedWithTrips(int numberOfTrips) {
         long now = Instant.now().getEpochSecond();
 
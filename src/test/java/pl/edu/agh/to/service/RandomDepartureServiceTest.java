@@ -1,28 +1,35 @@
 package pl.edu.agh.to.service;
 
-import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.transit.realtime.GtfsRealtime;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.model.FeedSnapshot;
 import pl.edu.agh.to.model.RandomDepartureDto;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class RandomDepartureServiceTest {
 
-    private GtfsClient client;
-    private GtfsParser parser;
+    private SnapshotLoader snapshotLoader;
     private RandomDepartureService service;
     private static final String VEHICLE_TEST_ID = "M:401";
     private static final String STOP_TEST_ID = "2048408";
@@ -30,25 +37,24 @@ class RandomDepartureServiceTest {
 
     @BeforeEach
     void setUp() {
-        client = mock(GtfsClient.class);
-        parser = mock(GtfsParser.class);
-        service = new RandomDepartureService(client, parser, new Random(0));
+        snapshotLoader = mock(SnapshotLoader.class);
+        service = new RandomDepartureService(snapshotLoader, new Random(0),
+                new PipelineMetrics(new SimpleMeterRegistry()), new GtfsFeedsProperties(List.of(
+                        new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null),
+                        new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null),
+                        new GtfsFeedsProperties.Feed("ferry", "/TripUpdates_F.pb", null, null, null))));
     }
 
     @Test
-    void shouldReturnDto_givenValidData_thenCorrectDtoReturned() throws Exception {
+    void shouldReturnDto_givenValidData_thenCorrectDtoReturned() {
         // given
-        byte[] bytes = new byte[]{1, 2, 3};
-        when(client.fetchTripUpdatesAsBytes()).thenReturn(bytes);
-
         long now = Instant.now().getEpochSecond();
-        GtfsRealtime.TripUpdate tripUpdate = createValidTripUpdate(now);
+        TripRecord trip = createValidTrip(now);
 
-        when(parser.parseTripUpdates(bytes))
-                .thenReturn(List.of(tripUpdate));
+        givenSnapshot(List.of(trip));
 
         // when
-        RandomDepartureDto dto = service.getRandomDepartureInfo();
+        RandomDepartureDto dto = service.getRandomDepartureInfo(null).block();
 
         // then
         assertEquals(VEHICLE_TEST_ID, dto.getVehicleId());
@@ -57,107 +63,232 @@ class RandomDepartureServiceTest {
     }
 
     @Test
-    void shouldThrowException_givenNoTrips_thenNoSuchElementThrown() throws Exception {
+    void shouldThrowException_givenNoTrips_thenNotFoundThrown() {
+        // given
+        givenSnapshot(List.of());
+
+        // when + then
+        StepVerifier.create(service.getRandomDepartureInfo(null))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldThrowException_givenNoStops_thenNotFoundThrown() {
+        // given
+        TripRecord trip = TripRecord.builder()
+                .tripId(TRIP_TEST_ID)
+                .vehicleId(VEHICLE_TEST_ID)
+                .build();
+
+        givenSnapshot(List.of(trip));
+
+        // when + then
+        StepVerifier.create(service.getRandomDepartureInfo(null))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldThrowException_givenStopWithoutDepartureTime_thenNotFoundThrown() {
         // given
-        when(client.fetchTripUpdatesAsBytes()).thenReturn(new byte[]{});
-        when(parser.parseTripUpdates(Mockito.any()))
-                .thenReturn(List.of());
+        StopTimeRecord stop = new StopTimeRecord(STOP_TEST_ID,
+                StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY);
+
+        TripRecord trip = TripRecord.builder()
+                .tripId(TRIP_TEST_ID)
+                .vehicleId(VEHICLE_TEST_ID)
+                .stopTimes(List.of(stop))
+                .build();
+
+        givenSnapshot(List.of(trip));
+
+        // when + then
+        StepVerifier.create(service.getRandomDepartureInfo(null))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldAlwaysReturnDeparture_givenSparseDepartureTimes_thenNoRetriesNeeded() {
+        // given
+        List<StopTimeRecord> stops = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stops.add(new StopTimeRecord("no-departure-" + i,
+                    StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY));
+        }
+        stops.add(new StopTimeRecord(STOP_TEST_ID, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, 1_000L, 0));
+
+        TripRecord sparseTrip = TripRecord.builder().vehicleId(VEHICLE_TEST_ID).stopTimes(stops).build();
+        List<TripRecord> trips = new ArrayList<>(List.of(sparseTrip));
+        for (int i = 0; i < 100; i++) {
+            trips.add(TripRecord.builder().vehicleId("empty-" + i).build());
+        }
+        givenSnapshot(trips);
+
+        // when + then
+        for (int i = 0; i < 50; i++) {
+            RandomDepartureDto dto = service.getRandomDepartureInfo(null).block();
+            assertEquals(STOP_TEST_ID, dto.getStopId());
+        }
+    }
+
+    @Test
+    void shouldSampleUniformlyOverDepartures_givenTripsWithDifferentStopCounts_thenNotBiasedTowardsShortTrips() {
+        // given
+        TripRecord shortTrip = TripRecord.builder()
+                .vehicleId("short")
+                .stopTimes(List.of(new StopTimeRecord("s", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, 1L, 0)))
+                .build();
+        List<StopTimeRecord> longStops = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            longStops.add(new StopTimeRecord("l" + i, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, 1L, 0));
+        }
+        TripRecord longTrip = TripRecord.builder().vehicleId("long").stopTimes(longStops).build();
+        givenSnapshot(List.of(shortTrip, longTrip));
 
         // when
-        Throwable thrown = catchThrowable(() -> service.getRandomDepartureInfo());
+        int samples = 10_000;
+        long shortCount = IntStream.range(0, samples)
+                .mapToObj(i -> service.getRandomDepartureInfo(null).block())
+                .filter(dto -> "short".equals(dto.getVehicleId()))
+                .count();
 
         // then
-        assertThat(thrown).isInstanceOf(NoSuchElementException.class);
+        assertThat(shortCount).isBetween(800L, 1_200L);
     }
 
     @Test
-    void shouldThrowException_givenNoStops_thenNoSuchElementThrown() throws Exception {
+    void shouldPropagateException_givenNoSnapshotYet_thenIllegalStateThrown() {
         // given
-        when(client.fetchTripUpdatesAsBytes()).thenReturn(new byte[]{});
+        when(snapshotLoader.load())
+                .thenReturn(Mono.error(new IllegalStateException("No TripUpdates snapshot available yet")));
 
-        GtfsRealtime.TripUpdate tripUpdate =
-                GtfsRealtime.TripUpdate.newBuilder()
-                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId(TRIP_TEST_ID).build())
-                        .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId(VEHICLE_TEST_ID).build())
-                        .build();
+        // when + then
+        StepVerifier.create(service.getRandomDepartureInfo(null))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
 
-        when(parser.parseTripUpdates(Mockito.any()))
-                .thenReturn(List.of(tripUpdate));
+    @Test
+    void shouldReturnDistinctDepartures_givenDistinctBatchLargerThanSnapshot_thenCappedAtDepartureCount() {
+        // given
+        givenSnapshot(createTripsWithDistinctStops(50));
 
         // when
-        Throwable thrown = catchThrowable(() -> service.getRandomDepartureInfo());
+        List<RandomDepartureDto> batch = service.getRandomDepartures(80, true, null, null).collectList().block();
 
         // then
-        assertThat(thrown).isInstanceOf(NoSuchElementException.class);
+        assertThat(batch).hasSize(50);
+        assertThat(batch).extracting(RandomDepartureDto::getStopId).doesNotHaveDuplicates();
     }
 
     @Test
-    void shouldThrowException_givenStopWithoutDepartureTime_thenNoSuchElementThrown() throws Exception {
+    void shouldReturnSameBatch_givenSameSeed_thenSamplesReproducible() {
         // given
-        when(client.fetchTripUpdatesAsBytes()).thenReturn(new byte[]{});
+        givenSnapshot(createTripsWithDistinctStops(500));
+
+        // when
+        List<RandomDepartureDto> first = service.getRandomDepartures(20, false, 42L, null).collectList().block();
+        List<RandomDepartureDto> second = service.getRandomDepartures(20, false, 42L, null).collectList().block();
+        List<RandomDepartureDto> distinct = service.getRandomDepartures(20, true, 42L, null).collectList().block();
 
-        GtfsRealtime.TripUpdate.StopTimeUpdate stop =
-                GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
-                        .setStopId(STOP_TEST_ID)
-                        .build();
+        // then
+        assertThat(first).hasSize(20).isEqualTo(second);
+        assertThat(distinct).isEqualTo(service.getRandomDepartures(20, true, 42L, null).collectList().block());
+    }
 
-        GtfsRealtime.TripUpdate tripUpdate =
-                GtfsRealtime.TripUpdate.newBuilder()
-                        .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId(TRIP_TEST_ID).build())
-                        .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId(VEHICLE_TEST_ID).build())
-                        .addStopTimeUpdate(stop)
-                        .build();
+    @Test
+    void shouldFail_givenBatchSizeOutOfRange_thenIllegalArgumentThrown() {
+        // given
+        givenSnapshot(createTripsWithDistinctStops(5));
+
+        // when + then
+        StepVerifier.create(service.getRandomDepartures(0, false, null, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getRandomDepartures(RandomDepartureService.MAX_BATCH_SIZE + 1, false, null, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
 
-        when(parser.parseTripUpdates(Mockito.any()))
-                .thenReturn(List.of(tripUpdate));
+    @Test
+    void shouldDrawFromSelectedFeed_givenModeFilter_thenOnlyThatFeedSampled() {
+        // given
+        Instant now = Instant.now();
+        when(snapshotLoader.load()).thenReturn(Mono.just(TripUpdatesSnapshot.of(1, now, List.of(
+                FeedSnapshot.build("bus", now, 0, createTripsWithDistinctStops(50)),
+                FeedSnapshot.restore("tram", now, 0, createTripsWithDistinctStops(3))))));
 
         // when
-        Throwable thrown = catchThrowable(() -> service.getRandomDepartureInfo());
+        List<RandomDepartureDto> trams = service.getRandomDepartures(3, true, null, "tram").collectList().block();
 
         // then
-        assertThat(thrown).isInstanceOf(NoSuchElementException.class);
+        assertThat(trams).extracting(RandomDepartureDto::getMode).containsOnly("tram");
+        assertThat(trams).allMatch(RandomDepartureDto::isStale);
+        assertThat(trams).extracting(RandomDepartureDto::getStopId)
+                .containsExactlyInAnyOrder("stop-0", "stop-1", "stop-2");
+        StepVerifier.create(service.getRandomDepartureInfo("ferry"))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldRejectMode_givenUnknownOrEmptyMode_thenIllegalArgumentBeforeSnapshotLoaded() {
+        // when + then
+        StepVerifier.create(service.getRandomDepartureInfo("metro"))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getRandomDepartures(5, false, null, ""))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        verifyNoInteractions(snapshotLoader);
     }
 
     @Test
-    void shouldPropagateException_givenParserThrowsException_thenExceptionPropagated() throws Exception {
+    void shouldCoverRangeEvenly_givenFloydSampling_thenEveryValueEquallyLikely() {
         // given
-        when(client.fetchTripUpdatesAsBytes()).thenReturn(new byte[]{});
-        when(parser.parseTripUpdates(Mockito.any()))
-                .thenThrow(new InvalidProtocolBufferException("invalid"));
+        Random generator = new Random(7);
+        int[] hits = new int[20];
 
         // when
-        Throwable thrown = catchThrowable(() -> service.getRandomDepartureInfo());
+        for (int round = 0; round < 10_000; round++) {
+            int[] sample = RandomDepartureService.sampleDistinct(20, 5, generator);
+            assertThat(sample).doesNotHaveDuplicates();
+            for (int value : sample) {
+                hits[value]++;
+            }
+        }
 
         // then
-        assertThat(thrown).isInstanceOf(InvalidProtocolBufferException.class);
-    }
-
-    private GtfsRealtime.TripUpdate createValidTripUpdate(long epochTime) {
-
-        GtfsRealtime.TripDescriptor tripDescriptor =
-                GtfsRealtime.TripDescriptor.newBuilder()
-                        .setTripId("test-trip")
-                        .build();
-
-        GtfsRealtime.VehicleDescriptor vehicleDescriptor =
-                GtfsRealtime.VehicleDescriptor.newBuilder()
-                        .setId(VEHICLE_TEST_ID)
-                        .build();
-
-        GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate =
-                GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
-                        .setStopId(STOP_TEST_ID)
-                        .setDeparture(
-                                GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder()
-                                        .setTime(epochTime)
-                                        .build()
-                        )
-                        .build();
-
-        return GtfsRealtime.TripUpdate.newBuilder()
-                .setTrip(tripDescriptor)
-                .setVehicle(vehicleDescriptor)
-                .addStopTimeUpdate(stopTimeUpdate)
+        assertThat(Arrays.stream(hits).boxed().toList()).allMatch(count -> count > 2_200 && count < 2_800);
+    }
+
+    private void givenSnapshot(List<TripRecord> trips) {
+        when(snapshotLoader.load())
+                .thenReturn(Mono.just(TripUpdatesSnapshot.build(1, Instant.now(), "bus", 0, trips)));
+    }
+
+    private static List<TripRecord> createTripsWithDistinctStops(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> TripRecord.builder()
+                        .entityId("entity-" + i)
+                        .vehicleId(VEHICLE_TEST_ID)
+                        .stopTimes(List.of(new StopTimeRecord("stop-" + i,
+                                StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, 1_000L + i, StopTimeRecord.NO_DELAY)))
+                        .build())
+                .toList();
+    }
+
+    private TripRecord createValidTrip(long epochTime) {
+
+        StopTimeRecord stopTime = new StopTimeRecord(STOP_TEST_ID,
+                StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, epochTime, StopTimeRecord.NO_DELAY);
+
+        return TripRecord.builder()
+                .tripId("test-trip")
+                .vehicleId(VEHICLE_TEST_ID)
+                .stopTimes(List.of(stopTime))
                 .build();
     }
-}
\ No newline at end of file
+}
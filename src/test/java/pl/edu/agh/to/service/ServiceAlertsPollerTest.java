@@ -0,0 +1,62 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.AlertsSnapshot;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ServiceAlertsPollerTest {
+
+    private static final FeedValidators VALIDATORS = new FeedValidators("\"v1\"", "Thu, 15 May 2025 12:00:00 GMT");
+    private static final GtfsFeedsProperties.Feed BUS =
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, "/ServiceAlerts_A.pb");
+    private static final GtfsFeedsProperties.Feed TRAM =
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, "/VehiclePositions_T.pb", null);
+
+    @Test
+    void shouldPublishAlerts_givenFeedWithAlertsPath_thenOnlyThatFeedFetched() {
+        // given
+        GtfsClient client = mock(GtfsClient.class);
+        AlertsStore store = new AlertsStore(Clock.systemUTC());
+        ServiceAlertsPoller poller = new ServiceAlertsPoller(client, new GtfsParser(), store,
+                new PipelineMetrics(new SimpleMeterRegistry()), new GtfsFeedsProperties(List.of(BUS, TRAM)),
+                Clock.systemUTC(), 0, 15_000, 3, 60_000);
+        byte[] feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(100L))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("closure")
+                        .setAlert(GtfsRealtime.Alert.newBuilder()
+                                .addInformedEntity(GtfsRealtime.EntitySelector.newBuilder().setStopId("S1"))))
+                .build()
+                .toByteArray();
+        when(client.fetchAlerts(BUS, FeedValidators.NONE)).thenReturn(Mono.just(new FeedFetchResult(
+                Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(feed)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+
+        // then
+        AlertsSnapshot snapshot = store.current().orElseThrow();
+        assertThat(snapshot.getAlertCount()).isEqualTo(1);
+        assertThat(snapshot.forStop("S1", 0, "bus")).singleElement()
+                .satisfies(alert -> assertThat(alert.getAlert().getAlertId()).isEqualTo("closure"));
+        verify(client, never()).fetchAlerts(eq(TRAM), any());
+    }
+}
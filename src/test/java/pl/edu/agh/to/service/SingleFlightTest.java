@@ -0,0 +1,97 @@
+package pl.edu.agh.to.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger executions = new AtomicInteger();
+    private final AtomicInteger joins = new AtomicInteger();
+
+    @Test
+    void shouldRunOnce_givenConcurrentCallers_thenEveryCallerGetsSharedValue() {
+        // given
+        Sinks.One<String> upstream = Sinks.one();
+        CompletableFuture<String> first = execute(upstream.asMono()).toFuture();
+        CompletableFuture<String> second = execute(upstream.asMono()).toFuture();
+
+        // when
+        upstream.tryEmitValue("feed");
+
+        // then
+        assertThat(first).isCompletedWithValue("feed");
+        assertThat(second).isCompletedWithValue("feed");
+        assertThat(executions).hasValue(1);
+        assertThat(joins).hasValue(1);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldShareError_givenFailingExecution_thenNextCallerStartsAgain() {
+        // given
+        Sinks.One<String> upstream = Sinks.one();
+        CompletableFuture<String> first = execute(upstream.asMono()).toFuture();
+        CompletableFuture<String> second = execute(upstream.asMono()).toFuture();
+
+        // when
+        upstream.tryEmitError(new IllegalStateException("upstream down"));
+
+        // then
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(execute(Mono.just("recovered")).block()).isEqualTo("recovered");
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    void shouldKeepExecutionRunning_givenCallerTimedOut_thenLaterCallerJoinsIt() {
+        // given
+        Sinks.One<String> upstream = Sinks.one();
+        CompletableFuture<String> impatient = execute(upstream.asMono()).timeout(Duration.ofMillis(10)).toFuture();
+        assertThat(impatient).failsWithin(Duration.ofSeconds(1)).withThrowableOfType(Exception.class)
+                .withCauseInstanceOf(TimeoutException.class);
+
+        // when
+        CompletableFuture<String> later = execute(upstream.asMono()).toFuture();
+        upstream.tryEmitValue("feed");
+
+        // then
+        assertThat(later).isCompletedWithValue("feed");
+        assertThat(executions).hasValue(1);
+        assertThat(joins).hasValue(1);
+    }
+
+    @Test
+    void shouldReleaseKey_givenExecutionCancelled_thenNextCallerStartsNewExecution() {
+        // given
+        Sinks.One<String> upstream = Sinks.one();
+        CompletableFuture<String> first = execute(upstream.asMono()).toFuture();
+
+        // when
+        singleFlight.cancelAll();
+
+        // then
+        assertThat(first).isCompletedExceptionally();
+        assertThat(upstream.currentSubscriberCount()).isZero();
+        assertThat(singleFlight.inFlight()).isZero();
+        assertThat(execute(Mono.just("restarted")).block()).isEqualTo("restarted");
+        assertThat(executions).hasValue(2);
+        assertThat(joins).hasValue(0);
+    }
+
+    private Mono<String> execute(Mono<String> upstream) {
+        return singleFlight.execute("bus", () -> {
+            executions.incrementAndGet();
+            return upstream;
+        }, joins::incrementAndGet);
+    }
+}
@@ -0,0 +1,225 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.SnapshotChangedEvent;
+import pl.edu.agh.to.model.SnapshotChanges;
+import pl.edu.agh.to.model.SnapshotChangesDto;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SnapshotDiffServiceTest {
+
+    private static final Instant FETCHED_AT = Instant.ofEpochSecond(1_700_000_000L);
+
+    private SimpleMeterRegistry registry;
+    private List<Object> events;
+    private SnapshotDiffService service;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        events = new ArrayList<>();
+        service = new SnapshotDiffService(events::add, new PipelineMetrics(registry));
+    }
+
+    @Test
+    void shouldReportEveryTripAdded_givenFirstSnapshot_thenNothingUnchanged() {
+        // given
+        TripUpdatesSnapshot first = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                List.of(trip("E1", "T1", "V1", stop("A", 100L, 0)), trip("E2", "T2", "V2", stop("A", 200L, 0))));
+
+        // when
+        SnapshotChanges changes = SnapshotDiffService.diff(null, first);
+
+        // then
+        assertThat(changes.getPreviousGeneration()).isZero();
+        assertThat(changes.getAddedTrips()).extracting(change -> change.getTrip().getEntityId())
+                .containsExactlyInAnyOrder("E1", "E2");
+        assertThat(changes.getRemovedTrips()).isEmpty();
+        assertThat(changes.getUnchangedTrips()).isZero();
+    }
+
+    @Test
+    void shouldFindEntityChanges_givenFullRefresh_thenAddedRemovedStopTimesAndVehiclesReported() {
+        // given
+        TripUpdatesSnapshot previous = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of(
+                trip("E1", "T1", "V1", stop("A", 100L, 0), stop("B", 200L, 0), stop("C", 300L, 0)),
+                trip("E2", "T2", "V2", stop("A", 150L, 0)),
+                trip("E3", "T3", "V3", stop("A", 180L, 0)),
+                trip("E4", "T4", "V4", stop("A", 190L, 0))));
+        TripUpdatesSnapshot current = TripUpdatesSnapshot.build(2, FETCHED_AT, "bus", 200L, List.of(
+                trip("E1", "T1", "V1", stop("A", 100L, 0), stop("B", 260L, 60), stop("D", 400L, 0)),
+                trip("E2", "T2", "V9", stop("A", 150L, 0)),
+                trip("E3", "T3", "V3", stop("A", 180L, 0)),
+                trip("E5", "T5", "V5", stop("A", 500L, 0))));
+
+        // when
+        SnapshotChanges changes = SnapshotDiffService.diff(previous, current);
+
+        // then
+        assertThat(changes.getPreviousGeneration()).isEqualTo(1);
+        assertThat(changes.getGeneration()).isEqualTo(2);
+        assertThat(changes.getAddedTrips()).extracting(change -> change.getTrip().getEntityId())
+                .containsExactly("E5");
+        assertThat(changes.getRemovedTrips()).extracting(change -> change.getTrip().getEntityId())
+                .containsExactly("E4");
+        assertThat(changes.getStopTimeChanges())
+                .extracting(SnapshotChanges.StopTimeChange::getStopId,
+                        change -> change.getPrevious() != null ? change.getPrevious().getDepartureTime() : null,
+                        change -> change.getCurrent() != null ? change.getCurrent().getDepartureTime() : null)
+                .containsExactlyInAnyOrder(tuple("B", 200L, 260L), tuple("D", null, 400L), tuple("C", 300L, null));
+        assertThat(changes.getVehicleReassignments())
+                .extracting(SnapshotChanges.VehicleReassignment::getPreviousVehicleId,
+                        SnapshotChanges.VehicleReassignment::getVehicleId)
+                .containsExactly(tuple("V2", "V9"));
+        assertThat(changes.getUnchangedTrips()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldMatchTripsAcrossPartitions_givenFeedSplitByDifferential_thenOnlyAddedTripReported() {
+        // given
+        TripUpdatesSnapshot previous = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                IntStream.range(0, FeedSnapshot.TRIPS_PER_PARTITION)
+                        .mapToObj(i -> trip("E" + i, "T" + i, "V" + i, stop("A", 100L + i, 0)))
+                        .toList());
+        TripUpdatesSnapshot current = previous.withFeed(2, FETCHED_AT, previous.feed("bus").orElseThrow()
+                .applyDifferential(FETCHED_AT, 200L, List.of(trip("E-new", "T-new", "V-new", stop("A", 900L, 0))),
+                        Set.of()));
+
+        // when
+        SnapshotChanges changes = SnapshotDiffService.diff(previous, current);
+
+        // then
+        assertThat(current.feed("bus").orElseThrow().getPartitions()).hasSize(2);
+        assertThat(changes.getAddedTrips()).extracting(change -> change.getTrip().getEntityId())
+                .containsExactly("E-new");
+        assertThat(changes.getRemovedTrips()).isEmpty();
+        assertThat(changes.getStopTimeChanges()).isEmpty();
+        assertThat(changes.getUnchangedTrips()).isEqualTo(FeedSnapshot.TRIPS_PER_PARTITION);
+    }
+
+    @Test
+    void shouldReplaceTrip_givenEntityServingAnotherTrip_thenReportedAsRemovedAndAdded() {
+        // given
+        TripUpdatesSnapshot previous = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                List.of(trip("E1", "T1", "V1", stop("A", 100L, 0))));
+        TripUpdatesSnapshot current = TripUpdatesSnapshot.build(2, FETCHED_AT, "bus", 200L,
+                List.of(trip("E1", "T2", "V1", stop("A", 100L, 0))));
+
+        // when
+        SnapshotChanges changes = SnapshotDiffService.diff(previous, current);
+
+        // then
+        assertThat(changes.getRemovedTrips()).extracting(change -> change.getTrip().getTripId()).containsExactly("T1");
+        assertThat(changes.getAddedTrips()).extracting(change -> change.getTrip().getTripId()).containsExactly("T2");
+        assertThat(changes.getStopTimeChanges()).isEmpty();
+    }
+
+    @Test
+    void shouldSkipSharedPartitions_givenDifferentialUpdate_thenOnlyChangedEntityReported() {
+        // given
+        List<TripRecord> trips = IntStream.range(0, 500)
+                .mapToObj(i -> trip("entity-" + i, "T" + i, "V" + i, stop("S", 1_000L + i, 0)))
+                .toList();
+        TripUpdatesSnapshot previous = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, trips);
+        TripUpdatesSnapshot current = previous.withFeed(2, FETCHED_AT, previous.feed("bus").orElseThrow()
+                .applyDifferential(FETCHED_AT, 200L,
+                        List.of(trip("entity-7", "T7", "V7", stop("S", 1_067L, 60))), Set.of()));
+
+        // when
+        SnapshotChanges changes = SnapshotDiffService.diff(previous, current);
+
+        // then
+        assertThat(changes.getStopTimeChanges()).extracting(SnapshotChanges.StopTimeChange::getEntityId)
+                .containsExactly("entity-7");
+        assertThat(changes.getUnchangedTrips()).isEqualTo(499);
+        assertThat(changes.getAddedTrips()).isEmpty();
+        assertThat(changes.getRemovedTrips()).isEmpty();
+    }
+
+    @Test
+    void shouldPublishChanges_givenSnapshotPublished_thenEventSentAndLatestChangesCounted() {
+        // given
+        TripUpdatesSnapshot previous = TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L,
+                List.of(trip("E1", "T1", "V1", stop("A", 100L, 0))));
+        TripUpdatesSnapshot current = TripUpdatesSnapshot.build(2, FETCHED_AT, "bus", 200L,
+                List.of(trip("E1", "T1", "V1", stop("A", 160L, 60))));
+        Throwable beforeFirst = catchThrowable(() -> service.getLatestChanges());
+
+        // when
+        service.onSnapshotPublished(new SnapshotPublishedEvent(previous, current));
+
+        // then
+        assertThat(beforeFirst).isInstanceOf(UpstreamUnavailableException.class);
+        assertThat(events).singleElement().isInstanceOfSatisfying(SnapshotChangedEvent.class,
+                event -> assertThat(event.getChanges()).isSameAs(service.latest().orElseThrow()));
+        SnapshotChangesDto dto = service.getLatestChanges();
+        assertThat(dto.getGeneration()).isEqualTo(2);
+        assertThat(dto.getChangedStopTimes()).isEqualTo(1);
+        assertThat(registry.get("ztp.snapshot.changes").tag("kind", "stop_time").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCompareDecodedIds_givenFeedWithCompactedDictionary_thenOnlyRealChangesReported() {
+        // given
+        FeedSnapshot before = FeedSnapshot.build("bus", FETCHED_AT, 100L, List.of(
+                trip("E1", "T1", "V1", stop("A", 100L, 0), stop("B", 200L, 0)),
+                trip("E2", "T2", "V2", stop("A", 150L, 0)),
+                trip("E3", "T3", "V3", stop("A", 180L, 0)),
+                trip("E5", "T5", "V5", stop("A", 300L, 0))));
+        FeedSnapshot after = FeedSnapshot.build("bus", FETCHED_AT, 200L, List.of(
+                trip("E1", "T1", "V1", stop("A", 100L, 0), stop("B", 260L, 60)),
+                trip("E2", "T2", "V9", stop("A", 150L, 0)),
+                trip("E4", "T4", "V4", stop("C", 500L, 0)),
+                trip("E5", "T5", "V5", stop("A", 300L, 0))));
+
+        // when
+        SnapshotChanges changes = SnapshotDiffService.diff(TripUpdatesSnapshot.of(1, FETCHED_AT, List.of(before)),
+                TripUpdatesSnapshot.of(2, FETCHED_AT, List.of(after)));
+
+        // then
+        assertThat(after.getDictionary()).isNotSameAs(before.getDictionary());
+        assertThat(changes.getAddedTrips()).extracting(change -> change.getTrip().getEntityId())
+                .containsExactly("E4");
+        assertThat(changes.getRemovedTrips()).extracting(change -> change.getTrip().getEntityId())
+                .containsExactly("E3");
+        assertThat(changes.getStopTimeChanges()).extracting(SnapshotChanges.StopTimeChange::getStopId)
+                .containsExactly("B");
+        assertThat(changes.getVehicleReassignments())
+                .extracting(SnapshotChanges.VehicleReassignment::getPreviousVehicleId,
+                        SnapshotChanges.VehicleReassignment::getVehicleId)
+                .containsExactly(tuple("V2", "V9"));
+        assertThat(changes.getUnchangedTrips()).isEqualTo(1);
+    }
+
+    private static TripRecord trip(String entityId, String tripId, String vehicleId, StopTimeRecord... stopTimes) {
+        return TripRecord.builder()
+                .entityId(entityId)
+                .tripId(tripId)
+                .routeId("R1")
+                .vehicleId(vehicleId)
+                .stopTimes(List.of(stopTimes))
+                .build();
+    }
+
+    private static StopTimeRecord stop(String stopId, long departureTime, int departureDelay) {
+        return new StopTimeRecord(stopId, StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY,
+                departureTime, departureDelay);
+    }
+}
@@ -0,0 +1,134 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SnapshotLoaderTest {
+
+    private static final GtfsFeedsProperties.Feed BUS =
+            new GtfsFeedsProperties.Feed("bus", "/bus.pb", null, null, null);
+    private static final GtfsFeedsProperties.Feed TRAM =
+            new GtfsFeedsProperties.Feed("tram", "/tram.pb", null, null, null);
+
+    private TripUpdatesSnapshotStore store;
+    private TripUpdatesPoller poller;
+    private SnapshotLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        store = new TripUpdatesSnapshotStore(Clock.systemUTC(), new PipelineMetrics(new SimpleMeterRegistry()),
+                event -> { });
+        poller = mock(TripUpdatesPoller.class);
+        when(poller.getFeeds()).thenReturn(List.of(BUS, TRAM));
+        when(poller.retryAfter(any())).thenReturn(Duration.ZERO);
+        loader = new SnapshotLoader(store, poller, Clock.systemUTC(), 200, 30_000);
+    }
+
+    @Test
+    void shouldReadStore_givenFreshSnapshot_thenNoRefreshTriggered() {
+        // given
+        TripUpdatesSnapshot published = store.publish("bus", List.of(), 100L);
+
+        // when
+        TripUpdatesSnapshot loaded = loader.load().block();
+
+        // then
+        assertThat(loaded).isSameAs(published);
+        verifyNoInteractions(poller);
+    }
+
+    @Test
+    void shouldServeLoadedFeed_givenColdStoreAndOneFeedFailing_thenSnapshotOfOtherFeedReturned() {
+        // given
+        when(poller.refreshShared(BUS)).thenReturn(Mono.error(new IllegalStateException("bus down")));
+        when(poller.refreshShared(TRAM)).thenReturn(Mono.fromSupplier(() -> store.publish("tram", List.of(), 100L)));
+
+        // when
+        TripUpdatesSnapshot loaded = loader.load().block();
+
+        // then
+        assertThat(loaded.getFeeds()).extracting(FeedSnapshot::getName).containsExactly("tram");
+    }
+
+    @Test
+    void shouldFailAsUnavailable_givenColdStoreAndEveryFeedFailing_thenRefreshErrorIsCause() {
+        // given
+        when(poller.refreshShared(BUS)).thenReturn(Mono.error(new IllegalArgumentException("bus down")));
+        when(poller.refreshShared(TRAM)).thenReturn(Mono.error(new IllegalArgumentException("tram down")));
+
+        // when & then
+        StepVerifier.create(loader.load())
+                .expectErrorSatisfies(ex -> assertThat(ex)
+                        .isInstanceOf(UpstreamUnavailableException.class)
+                        .hasCauseInstanceOf(IllegalArgumentException.class))
+                .verify();
+    }
+
+    @Test
+    void shouldSuggestRetry_givenColdStoreAndOpenCircuits_thenEarliestTrialReturned() {
+        // given
+        when(poller.refreshShared(any()))
+                .thenReturn(Mono.error(new UpstreamUnavailableException("circuit open", Duration.ofSeconds(20))));
+        when(poller.retryAfter(BUS)).thenReturn(Duration.ofSeconds(20));
+        when(poller.retryAfter(TRAM)).thenReturn(Duration.ofSeconds(5));
+
+        // when & then
+        StepVerifier.create(loader.load())
+                .expectErrorSatisfies(ex -> assertThat(ex)
+                        .isInstanceOf(UpstreamUnavailableException.class)
+                        .extracting(e -> ((UpstreamUnavailableException) e).getRetryAfter())
+                        .isEqualTo(Duration.ofSeconds(5)))
+                .verify();
+    }
+
+    @Test
+    void shouldServeCurrentSnapshot_givenExpiredFeed_thenRefreshStartedInBackground() {
+        // given
+        Clock minuteLater = Clock.offset(Clock.systemUTC(), Duration.ofMinutes(1));
+        loader = new SnapshotLoader(store, poller, minuteLater, 200, 30_000);
+        TripUpdatesSnapshot published = store.publish("bus", List.of(), 100L);
+        AtomicBoolean refreshed = new AtomicBoolean();
+        when(poller.refreshShared(BUS)).thenReturn(Mono.<TripUpdatesSnapshot>never()
+                .doOnSubscribe(subscription -> refreshed.set(true)));
+
+        // when
+        TripUpdatesSnapshot loaded = loader.load().block(Duration.ofSeconds(1));
+
+        // then
+        assertThat(loaded).isSameAs(published);
+        assertThat(refreshed).isTrue();
+        verify(poller, never()).refreshShared(TRAM);
+    }
+
+    @Test
+    void shouldStopWaiting_givenRefreshSlowerThanWait_thenUnavailableErrorReturned() {
+        // given
+        when(poller.refreshShared(BUS)).thenReturn(Mono.never());
+        when(poller.refreshShared(TRAM)).thenReturn(Mono.never());
+
+        // when & then
+        StepVerifier.create(loader.load())
+                .expectErrorMessage("No TripUpdates snapshot loaded within 200 ms")
+                .verify();
+    }
+}
@@ -0,0 +1,129 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.persistence.SnapshotFile;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotPersistenceTest {
+
+    private static final Instant FETCHED_AT = Instant.parse("2025-05-15T12:00:00Z");
+
+    @TempDir
+    private Path directory;
+
+    private SimpleMeterRegistry registry;
+    private PipelineMetrics metrics;
+    private TripUpdatesSnapshotStore store;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new PipelineMetrics(registry);
+        store = new TripUpdatesSnapshotStore(Clock.systemUTC(), metrics, event -> { });
+    }
+
+    @Test
+    void shouldServeLastSnapshot_givenRestart_thenStaleSnapshotPublished() {
+        // given
+        Path file = directory.resolve("trip-updates.snapshot");
+        TripRecord trip = TripRecord.builder().entityId("E1").tripId("T1").build();
+        new SnapshotPersistence(store, metrics, file.toString(), 0)
+                .save(TripUpdatesSnapshot.build(3, FETCHED_AT, "bus", 100L, List.of(trip)));
+        TripUpdatesSnapshotStore restartedStore = new TripUpdatesSnapshotStore(Clock.systemUTC(), metrics, event -> { });
+
+        // when
+        new SnapshotPersistence(restartedStore, metrics, file.toString(), 0).restore();
+
+        // then
+        assertThat(restartedStore.require().isStale()).isTrue();
+        assertThat(restartedStore.require().getGeneration()).isEqualTo(3);
+        assertThat(restartedStore.require().getTrips()).containsExactly(trip);
+        assertThat(registry.get("ztp.snapshot.stale").gauge().value()).isEqualTo(1.0);
+        assertThat(registry.get("ztp.snapshot.file").tag("operation", "load").tag("outcome", "ok")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStartEmpty_givenCorruptedFile_thenErrorRecorded() throws IOException {
+        // given
+        Path file = directory.resolve("trip-updates.snapshot");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        // when
+        new SnapshotPersistence(store, metrics, file.toString(), 0).restore();
+
+        // then
+        assertThat(store.current()).isEmpty();
+        assertThat(registry.get("ztp.snapshot.file").tag("operation", "load").tag("outcome", "error")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDoNothing_givenBlankPath_thenNoFileWritten() throws IOException {
+        // given
+        SnapshotPersistence disabled = new SnapshotPersistence(store, metrics, " ", 0);
+
+        // when
+        disabled.save(TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of()));
+        disabled.restore();
+
+        // then
+        assertThat(store.current()).isEmpty();
+        assertThat(Files.list(directory)).isEmpty();
+    }
+
+    @Test
+    void shouldWriteLatestSnapshotOnce_givenSnapshotsPublishedWithinInterval_thenSavesCoalesced() throws IOException {
+        // given
+        Path file = directory.resolve("trip-updates.snapshot");
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        SnapshotPersistence persistence = new SnapshotPersistence(store, metrics, file.toString(), 10_000, scheduler);
+        persistence.scheduleSave(TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of()));
+        scheduler.advanceTime();
+
+        // when
+        persistence.scheduleSave(TripUpdatesSnapshot.build(2, FETCHED_AT, "bus", 101L, List.of()));
+        persistence.scheduleSave(TripUpdatesSnapshot.build(3, FETCHED_AT, "bus", 102L, List.of()));
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        long generationBeforeInterval = SnapshotFile.read(file).getGeneration();
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+
+        // then
+        assertThat(generationBeforeInterval).isEqualTo(1);
+        assertThat(SnapshotFile.read(file).getGeneration()).isEqualTo(3);
+        assertThat(registry.get("ztp.snapshot.file").tag("operation", "save").tag("outcome", "ok")
+                .timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldWritePendingSnapshot_givenShutdownBeforeScheduledSave_thenFlushed() throws IOException {
+        // given
+        Path file = directory.resolve("trip-updates.snapshot");
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        SnapshotPersistence persistence = new SnapshotPersistence(store, metrics, file.toString(), 10_000, scheduler);
+        persistence.scheduleSave(TripUpdatesSnapshot.build(1, FETCHED_AT, "bus", 100L, List.of()));
+        scheduler.advanceTime();
+        persistence.scheduleSave(TripUpdatesSnapshot.build(2, FETCHED_AT, "bus", 101L, List.of()));
+
+        // when
+        persistence.flush();
+
+        // then
+        assertThat(SnapshotFile.read(file).getGeneration()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,248 @@
+package pl.edu.agh.to.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.api.ZtpApi;
+import pl.edu.agh.to.model.AlertRecord;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class StopDepartureServiceTest {
+
+    private static final GtfsFeedsProperties FEEDS = new GtfsFeedsProperties(List.of(
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null),
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null)));
+    private static final String STOP_TEST_ID = "2048408";
+    private static final long NOW = 1_700_000_000L;
+
+    private SnapshotLoader snapshotLoader;
+    private AlertsStore alertsStore;
+    private StopDepartureService service;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        snapshotLoader = mock(SnapshotLoader.class);
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+        alertsStore = new AlertsStore(clock);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        service = new StopDepartureService(snapshotLoader, new AlertService(alertsStore, clock, FEEDS),
+                new EncodedResponseCache(new PipelineMetrics(new SimpleMeterRegistry()), 100, 5000),
+                new ResponseEncoder(objectMapper), clock, FEEDS);
+    }
+
+    @Test
+    void shouldReturnUpcomingDepartures_givenNoFromTime_thenBoardStartsAtClockTime() {
+        // given
+        givenSnapshot(List.of(
+                trip("T1", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 120, 60)),
+                trip("T2", "R2", "V2", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW - 60, StopTimeRecord.NO_DELAY)),
+                trip("T3", "R3", "V3", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 30, StopTimeRecord.NO_DELAY))));
+
+        // when
+        JsonNode board = jsonBoard(null, 10, false);
+
+        // then
+        assertThat(board.findValuesAsText("tripId")).containsExactly("T3", "T1");
+        assertThat(board.get(0).get("departureDelay").isNull()).isTrue();
+        assertThat(board.get(1).get("departureDelay").asInt()).isEqualTo(60);
+        assertThat(board.get(1).get("vehicleId").asText()).isEqualTo("V1");
+        assertThat(board.get(1).get("routeId").asText()).isEqualTo("R1");
+        assertThat(board.get(1).get("departureTime").asText())
+                .isEqualTo(LocalDateTime.ofInstant(Instant.ofEpochSecond(NOW + 120), ZoneId.systemDefault())
+                        .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+    }
+
+    @Test
+    void shouldStartAtGivenTime_givenFromParameter_thenEarlierDeparturesIncluded() {
+        // given
+        givenSnapshot(List.of(
+                trip("T1", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW - 60, StopTimeRecord.NO_DELAY))));
+        LocalDateTime from = LocalDateTime.ofInstant(Instant.ofEpochSecond(NOW - 3600), ZoneId.systemDefault());
+
+        // when
+        JsonNode board = jsonBoard(from, 1, false);
+
+        // then
+        assertThat(board.findValuesAsText("tripId")).containsExactly("T1");
+    }
+
+    @Test
+    void shouldFail_givenLimitOutOfRange_thenIllegalArgumentThrown() {
+        // given
+        givenSnapshot(List.of());
+
+        // when + then
+        StepVerifier.create(service.getEncodedDepartures(STOP_TEST_ID, null, 0, null, false, ResponseFormat.JSON))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getEncodedDepartures(STOP_TEST_ID, null, StopDepartureService.MAX_LIMIT + 1,
+                        null, false, ResponseFormat.JSON))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldFail_givenUnknownMode_thenIllegalArgumentThrownBeforeSnapshotLoaded() {
+        // when + then
+        StepVerifier.create(service.getEncodedDepartures(STOP_TEST_ID, null, 10, "metro", false, ResponseFormat.JSON))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        verifyNoInteractions(snapshotLoader);
+    }
+
+    @Test
+    void shouldFail_givenNoSnapshot_thenIllegalStateThrown() {
+        // given
+        when(snapshotLoader.load())
+                .thenReturn(Mono.error(new IllegalStateException("No TripUpdates snapshot available yet")));
+
+        // when + then
+        StepVerifier.create(service.getEncodedDepartures(STOP_TEST_ID, null, 10, null, false, ResponseFormat.JSON))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldAttachActiveAlerts_givenIncludeAlerts_thenEachDepartureGetsAlertsOfItsStopRouteAndTime() {
+        // given
+        givenSnapshot(List.of(
+                trip("T1", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 60, StopTimeRecord.NO_DELAY)),
+                trip("T2", "R2", "V2", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 600, StopTimeRecord.NO_DELAY))));
+        alertsStore.publish("bus", List.of(
+                alert("stop-closed", new AlertRecord.Selector("", STOP_TEST_ID, ""),
+                        new AlertRecord.Period(NOW, NOW + 300)),
+                alert("route-detour", new AlertRecord.Selector("R2", "", ""),
+                        new AlertRecord.Period(AlertRecord.Period.NO_START, AlertRecord.Period.NO_END))), 0);
+
+        // when
+        JsonNode withAlerts = jsonBoard(null, 10, true);
+        JsonNode withoutAlerts = jsonBoard(null, 10, false);
+
+        // then
+        assertThat(withAlerts.get(0).get("alerts").findValuesAsText("alertId")).containsExactly("stop-closed");
+        assertThat(withAlerts.get(1).get("alerts").findValuesAsText("alertId")).containsExactly("route-detour");
+        assertThat(withAlerts.get(1).at("/alerts/0/mode").asText()).isEqualTo("bus");
+        assertThat(withoutAlerts).allSatisfy(departure -> assertThat(departure.has("alerts")).isFalse());
+    }
+
+    @Test
+    void shouldAttachEmptyAlerts_givenIncludeAlertsBeforeAnyAlertsLoaded_thenBoardStillServed() {
+        // given
+        givenSnapshot(List.of(
+                trip("T1", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 60, StopTimeRecord.NO_DELAY))));
+
+        // when
+        JsonNode board = jsonBoard(null, 10, true);
+
+        // then
+        assertThat(board).singleElement().satisfies(departure -> assertThat(departure.get("alerts")).isEmpty());
+    }
+
+    @Test
+    void shouldReuseEncodedBoard_givenSameRequestAndGeneration_thenEncodedAgainForNewGeneration() {
+        // given
+        givenSnapshot(1, List.of(trip("T1", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 60, StopTimeRecord.NO_DELAY))));
+
+        // when
+        byte[] first = service.getEncodedDepartures(STOP_TEST_ID, null, 10, null, false, ResponseFormat.JSON).block();
+        byte[] second = service.getEncodedDepartures(STOP_TEST_ID, null, 10, null, false, ResponseFormat.JSON).block();
+        givenSnapshot(2, List.of(trip("T2", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 60, StopTimeRecord.NO_DELAY))));
+        byte[] next = service.getEncodedDepartures(STOP_TEST_ID, null, 10, null, false, ResponseFormat.JSON).block();
+
+        // then
+        assertThat(second).isSameAs(first);
+        assertThat(new String(first, StandardCharsets.UTF_8)).contains("\"tripId\":\"T1\"");
+        assertThat(new String(next, StandardCharsets.UTF_8)).contains("\"tripId\":\"T2\"");
+    }
+
+    @Test
+    void shouldEncodeStopBoard_givenProtobufFormat_thenPosixTimesAndAbsentDelaysUnset() throws IOException {
+        // given
+        givenSnapshot(List.of(
+                trip("T1", "R1", "V1", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 120, 60)),
+                trip("T2", "R2", "V2", new StopTimeRecord(STOP_TEST_ID,
+                        StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW + 30, StopTimeRecord.NO_DELAY))));
+
+        // when
+        byte[] encoded = service.getEncodedDepartures(STOP_TEST_ID, null, 10, null, false, ResponseFormat.PROTOBUF)
+                .block();
+
+        // then
+        ZtpApi.StopBoard board = ZtpApi.StopBoard.parseFrom(encoded);
+        assertThat(board.getDeparturesList()).extracting(ZtpApi.StopDeparture::getTripId).containsExactly("T2", "T1");
+        assertThat(board.getDepartures(0).hasDepartureDelay()).isFalse();
+        assertThat(board.getDepartures(1).getDepartureDelay()).isEqualTo(60);
+        assertThat(board.getDepartures(1).getDepartureTime()).isEqualTo(NOW + 120);
+        assertThat(board.getDepartures(1).getMode()).isEqualTo("bus");
+    }
+
+    private static AlertRecord alert(String alertId, AlertRecord.Selector selector, AlertRecord.Period period) {
+        return AlertRecord.builder()
+                .alertId(alertId)
+                .informedEntities(List.of(selector))
+                .activePeriods(List.of(period))
+                .build();
+    }
+
+    private JsonNode jsonBoard(LocalDateTime from, int limit, boolean includeAlerts) {
+        try {
+            return objectMapper.readTree(service.getEncodedDepartures(STOP_TEST_ID, from, limit, null, includeAlerts,
+                    ResponseFormat.JSON).block());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void givenSnapshot(List<TripRecord> trips) {
+        givenSnapshot(1, trips);
+    }
+
+    private void givenSnapshot(long generation, List<TripRecord> trips) {
+        when(snapshotLoader.load()).thenReturn(
+                Mono.just(TripUpdatesSnapshot.build(generation, Instant.ofEpochSecond(NOW), "bus", 0, trips)));
+    }
+
+    private static TripRecord trip(String tripId, String routeId, String vehicleId, StopTimeRecord stopTime) {
+        return TripRecord.builder()
+                .tripId(tripId)
+                .routeId(routeId)
+                .vehicleId(vehicleId)
+                .stopTimes(List.of(stopTime))
+                .build();
+    }
+}
@@ -0,0 +1,370 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.FeedValidators;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.persistence.FeedArchive;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TripUpdatesPollerTest {
+
+    private static final FeedValidators VALIDATORS = new FeedValidators("\"v1\"", "Thu, 15 May 2025 12:00:00 GMT");
+    private static final int CHUNK_SIZE = 7;
+    private static final GtfsFeedsProperties.Feed BUS =
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null);
+    private static final GtfsFeedsProperties.Feed TRAM =
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null);
+
+    private GtfsClient client;
+    private TripUpdatesSnapshotStore store;
+    private SnapshotPersistence persistence;
+    private TripUpdatesPoller poller;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        client = mock(GtfsClient.class);
+        registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+        store = new TripUpdatesSnapshotStore(Clock.systemUTC(), metrics, event -> { });
+        persistence = mock(SnapshotPersistence.class);
+        poller = poller(metrics, new FeedArchive("", 0, 0), BUS);
+    }
+
+    @Test
+    void shouldPublishSnapshot_givenFeedSplitIntoManyBuffers_thenStoreContainsEveryTrip() {
+        // given
+        when(client.fetchTripUpdates(BUS, FeedValidators.NONE))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 5)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+
+        // then
+        assertThat(store.require().getGeneration()).isEqualTo(1);
+        assertThat(store.require().getFeedTimestamp()).isEqualTo(100L);
+        assertThat(registry.get("ztp.gtfs.parse").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ztp.gtfs.feed.entities").summary().totalAmount()).isEqualTo(5.0);
+        assertThat(registry.get("ztp.snapshot.trips").gauge().value()).isEqualTo(5.0);
+        assertThat(store.require().getTrips())
+                .extracting(TripRecord::getTripId)
+                .containsExactlyInAnyOrder("trip-0", "trip-1", "trip-2", "trip-3", "trip-4");
+    }
+
+    @Test
+    void shouldSendValidatorsAndSkipParsing_givenFeedNotModified_thenGenerationUnchanged() {
+        // given
+        when(client.fetchTripUpdates(BUS, FeedValidators.NONE))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 1)), VALIDATORS)));
+        when(client.fetchTripUpdates(BUS, VALIDATORS)).thenReturn(Mono.just(FeedFetchResult.notModified(VALIDATORS)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        verify(client).fetchTripUpdates(BUS, VALIDATORS);
+        assertThat(store.require().getGeneration()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStopReadingBody_givenSameFeedTimestamp_thenGenerationUnchanged() {
+        // given
+        FeedValidators newValidators = new FeedValidators("\"v2\"", null);
+        List<DataBuffer> requested = new ArrayList<>();
+        Flux<DataBuffer> sameFeed = chunked(createFeed(100L, 2_000)).doOnNext(requested::add);
+
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 2_000)), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(sameFeed, newValidators)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        verify(client).fetchTripUpdates(BUS, newValidators);
+        assertThat(store.require().getGeneration()).isEqualTo(1);
+        assertThat(requested.size() * CHUNK_SIZE).isLessThan(createFeed(100L, 2_000).length);
+    }
+
+    @Test
+    void shouldPublishNewGeneration_givenNewFeedTimestamp_thenLatestTripsServed() {
+        // given
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 1)), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(200L, 2)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        assertThat(store.require().getGeneration()).isEqualTo(2);
+        assertThat(store.require().getTrips()).hasSize(2);
+    }
+
+    @Test
+    void shouldArchiveRawFeed_givenNewFeedTimestamp_thenArchivedBytesMatchDownloadedFeed(@TempDir Path archiveDirectory)
+            throws IOException {
+        // given
+        FeedArchive archive = new FeedArchive(archiveDirectory.toString(), 1 << 20, 0);
+        archive.open();
+        poller = poller(new PipelineMetrics(registry), archive, BUS);
+        byte[] feed = createFeed(100L, 50);
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(feed), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(feed), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        assertThat(archive.replayChain("bus", 100L)).singleElement()
+                .satisfies(archived -> assertThat(archived.getFeed()).isEqualTo(feed));
+    }
+
+    @Test
+    void shouldPersistOnlyPublishedSnapshots_givenRepeatedFeed_thenSavedOnce() {
+        // given
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 1)), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 1)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        verify(persistence, times(1)).scheduleSave(any());
+        verify(persistence).scheduleSave(store.require());
+    }
+
+    @Test
+    void shouldApplyDelta_givenDifferentialFeed_thenEntitiesMergedIntoSnapshot() {
+        // given
+        GtfsRealtime.FeedMessage delta = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.DIFFERENTIAL)
+                        .setTimestamp(200L))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                        .setId("entity-1")
+                        .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder()
+                                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip-1-replaced"))))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("entity-2").setIsDeleted(true))
+                .build();
+
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 3)), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(delta.toByteArray()), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        assertThat(store.require().getGeneration()).isEqualTo(2);
+        assertThat(store.require().getFeedTimestamp()).isEqualTo(200L);
+        assertThat(store.require().getTrips())
+                .extracting(TripRecord::getTripId)
+                .containsExactlyInAnyOrder("trip-0", "trip-1-replaced");
+    }
+
+    @Test
+    void shouldKeepPreviousSnapshot_givenCorruptedFeed_thenGenerationUnchanged() {
+        // given
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 1)), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(new byte[]{1, 2, 3, 4, 5}), FeedValidators.NONE)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        assertThat(store.require().getGeneration()).isEqualTo(1);
+        assertThat(registry.get("ztp.gtfs.parse.errors").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldKeepStoreEmpty_givenUpstreamFailure_thenNoSnapshotPublished() {
+        // given
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.error(new IllegalStateException("upstream down")));
+
+        // when
+        poller.poll().block();
+
+        // then
+        assertThat(store.current()).isEmpty();
+        assertThat(registry.get("ztp.gtfs.fetch.failures").tag("feed", "bus").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldPublishHealthyFeed_givenOtherFeedFailing_thenOnlyHealthyFeedServed() {
+        // given
+        poller = poller(new PipelineMetrics(registry), new FeedArchive("", 0, 0), BUS, TRAM);
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.error(new IllegalStateException("upstream down")));
+        when(client.fetchTripUpdates(eq(TRAM), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 3)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+
+        // then
+        assertThat(store.require().getFeeds()).extracting(FeedSnapshot::getName).containsExactly("tram");
+        assertThat(store.require().getTripCount()).isEqualTo(3);
+        assertThat(registry.get("ztp.gtfs.fetch.failures").tag("feed", "bus").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldMergeFeeds_givenBothFeedsRefreshed_thenEachFeedKeepsOwnTrips() {
+        // given
+        poller = poller(new PipelineMetrics(registry), new FeedArchive("", 0, 0), BUS, TRAM);
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 2)), VALIDATORS)))
+                .thenReturn(Mono.just(FeedFetchResult.notModified(VALIDATORS)));
+        when(client.fetchTripUpdates(eq(TRAM), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 3)), VALIDATORS)))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(200L, 1)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        assertThat(store.require().getGeneration()).isEqualTo(3);
+        assertThat(store.require().feed("bus")).get().extracting(FeedSnapshot::getTripCount).isEqualTo(2);
+        assertThat(store.require().feed("tram")).get()
+                .extracting(FeedSnapshot::getTripCount, FeedSnapshot::getFeedTimestamp)
+                .containsExactly(1, 200L);
+    }
+
+    @Test
+    void shouldFetchOnce_givenConcurrentPollsOfSameFeed_thenCallersShareOneRefresh() {
+        // given
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.delay(Duration.ofMillis(50))
+                        .map(tick -> new FeedFetchResult(chunked(createFeed(100L, 2)), VALIDATORS)));
+
+        // when
+        Mono.when(poller.poll(), poller.poll(), poller.refreshShared(BUS)).block();
+
+        // then
+        verify(client, times(1)).fetchTripUpdates(eq(BUS), any());
+        assertThat(store.require().getGeneration()).isEqualTo(1);
+        assertThat(registry.get("ztp.gtfs.fetch.coalesced").tag("feed", "bus").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void shouldStopFetching_givenFailuresReachingThreshold_thenCircuitRejectsRefreshWithoutUpstreamCall() {
+        // given
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.error(new IllegalStateException("upstream down")));
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            poller.poll().block();
+        }
+
+        // then
+        verify(client, times(3)).fetchTripUpdates(eq(BUS), any());
+        assertThat(poller.retryAfter(BUS)).isPositive();
+        assertThat(registry.get("ztp.gtfs.circuit.state").tag("feed", "bus").gauge().value()).isEqualTo(1.0);
+        StepVerifier.create(poller.refreshShared(BUS))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldReopenCircuit_givenTrialCancelledOnShutdown_thenNextRefreshIsNewTrial() {
+        // given
+        SimpleMeterRegistry reopeningRegistry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(reopeningRegistry);
+        TripUpdatesPoller reopening = new TripUpdatesPoller(client, new GtfsParser(), store, metrics, persistence,
+                new FeedArchive("", 0, 0), new GtfsFeedsProperties(List.of(BUS)), Clock.systemUTC(), 0, 15_000, 3, 0);
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.error(new IllegalStateException("upstream down")));
+        for (int i = 0; i < 3; i++) {
+            reopening.poll().block();
+        }
+        when(client.fetchTripUpdates(eq(BUS), any())).thenReturn(Mono.never());
+        reopening.refreshShared(BUS).subscribe();
+
+        // when
+        reopening.stop();
+
+        // then
+        assertThat(reopeningRegistry.get("ztp.gtfs.circuit.state").tag("feed", "bus").gauge().value())
+                .isEqualTo(1.0);
+        when(client.fetchTripUpdates(eq(BUS), any()))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(100L, 2)), VALIDATORS)));
+        reopening.poll().block();
+        verify(client, times(5)).fetchTripUpdates(eq(BUS), any());
+        assertThat(store.require().getGeneration()).isEqualTo(1);
+    }
+
+    private TripUpdatesPoller poller(PipelineMetrics metrics, FeedArchive archive,
+                                     GtfsFeedsProperties.Feed... feeds) {
+        return new TripUpdatesPoller(client, new GtfsParser(), store, metrics, persistence, archive,
+                new GtfsFeedsProperties(List.of(feeds)), Clock.systemUTC(), 0, 15_000, 3, 60_000);
+    }
+
+    private static Flux<DataBuffer> chunked(byte[] data) {
+        return Flux.defer(() -> {
+            List<DataBuffer> buffers = new ArrayList<>();
+            for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+                byte[] chunk = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + CHUNK_SIZE));
+                buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+            }
+            return Flux.fromIterable(buffers);
+        });
+    }
+
+    private static byte[] createFeed(long timestamp, int trips) {
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setTimestamp(timestamp));
+
+        for (int i = 0; i < trips; i++) {
+            feed.addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                    .setId("entity-" + i)
+                    .setTripUpdate(GtfsRealtime.TripUpdate.newBuilder()
+                            .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip-" + i))));
+        }
+        return feed.build().toByteArray();
+    }
+}
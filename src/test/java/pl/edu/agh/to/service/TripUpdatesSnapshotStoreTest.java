@@ -0,0 +1,158 @@
+package pl.edu.agh.to.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.edu.agh.to.model.FeedInfoDto;
+import pl.edu.agh.to.model.FeedSnapshot;
+import pl.edu.agh.to.model.SnapshotInfoDto;
+import pl.edu.agh.to.model.SnapshotPublishedEvent;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TripUpdatesSnapshotStoreTest {
+
+    private static final Instant FETCH_TIME = Instant.parse("2025-05-15T12:00:00Z");
+
+    private Clock clock;
+    private TripUpdatesSnapshotStore store;
+    private List<Object> events;
+
+    @BeforeEach
+    void setUp() {
+        clock = mock(Clock.class);
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(FETCH_TIME);
+        events = new ArrayList<>();
+        store = new TripUpdatesSnapshotStore(clock, new PipelineMetrics(new SimpleMeterRegistry()), events::add);
+    }
+
+    @Test
+    void shouldBeEmpty_givenNothingPublished_thenRequireThrows() {
+        // when
+        Throwable thrown = catchThrowable(() -> store.require());
+
+        // then
+        assertThat(store.current()).isEmpty();
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldIncrementGeneration_givenConsecutivePublishes_thenLatestSnapshotReturned() {
+        // given
+        TripRecord trip = TripRecord.builder().tripId("T1").build();
+
+        // when
+        store.publish("bus", List.of(), 0);
+        TripUpdatesSnapshot second = store.publish("bus", List.of(trip), 0);
+
+        // then
+        assertThat(second.getGeneration()).isEqualTo(2);
+        assertThat(store.require()).isSameAs(second);
+        assertThat(store.require().getTrips()).containsExactly(trip);
+    }
+
+    @Test
+    void shouldReportAge_givenClockMovedForward_thenAgeInSecondsReturned() {
+        // given
+        store.publish("bus", List.of(), 0);
+        when(clock.instant()).thenReturn(FETCH_TIME.plusSeconds(42));
+
+        // when
+        SnapshotInfoDto info = store.getSnapshotInfo();
+
+        // then
+        assertThat(info.getGeneration()).isEqualTo(1);
+        assertThat(info.getAgeSeconds()).isEqualTo(42);
+        assertThat(info.getTripCount()).isZero();
+    }
+
+    @Test
+    void shouldPublishRestoredSnapshot_givenEmptyStore_thenReportedAsStale() {
+        // given
+        TripUpdatesSnapshot restored = TripUpdatesSnapshot.of(7, FETCH_TIME.minusSeconds(60),
+                List.of(FeedSnapshot.restore("bus", FETCH_TIME.minusSeconds(60), 100L, List.of())));
+
+        // when
+        boolean published = store.restore(restored);
+
+        // then
+        assertThat(published).isTrue();
+        assertThat(store.getSnapshotInfo().isStale()).isTrue();
+        assertThat(store.getSnapshotInfo().getAgeSeconds()).isEqualTo(60);
+    }
+
+    @Test
+    void shouldIgnoreRestoredSnapshot_givenFeedAlreadyPublished_thenFreshSnapshotKept() {
+        // given
+        TripUpdatesSnapshot fresh = store.publish("bus", List.of(), 200L);
+
+        // when
+        boolean published = store.restore(TripUpdatesSnapshot.of(7, FETCH_TIME,
+                List.of(FeedSnapshot.restore("bus", FETCH_TIME, 100L, List.of()))));
+
+        // then
+        assertThat(published).isFalse();
+        assertThat(store.require()).isSameAs(fresh);
+    }
+
+    @Test
+    void shouldContinueGenerations_givenRestoredSnapshot_thenNextPublishIsFresh() {
+        // given
+        store.restore(TripUpdatesSnapshot.of(7, FETCH_TIME,
+                List.of(FeedSnapshot.restore("bus", FETCH_TIME, 100L, List.of()))));
+
+        // when
+        TripUpdatesSnapshot next = store.publish("bus", List.of(), 200L);
+
+        // then
+        assertThat(next.getGeneration()).isEqualTo(8);
+        assertThat(next.isStale()).isFalse();
+    }
+
+    @Test
+    void shouldAnnounceEverySwap_givenFullAndDifferentialPublishes_thenEventsLinkConsecutiveSnapshots() {
+        // when
+        TripUpdatesSnapshot first = store.publish("bus", List.of(), 100L);
+        TripUpdatesSnapshot second = store.publishDifferential("bus", List.of(), Set.of(), 200L);
+
+        // then
+        assertThat(events).containsExactly(
+                new SnapshotPublishedEvent(null, first),
+                new SnapshotPublishedEvent(first, second));
+    }
+
+    @Test
+    void shouldKeepOtherFeed_givenPublishOfSecondFeed_thenInfoReportedPerFeed() {
+        // given
+        TripRecord bus = TripRecord.builder().entityId("E1").tripId("T1").build();
+        TripRecord tram = TripRecord.builder().entityId("E1").tripId("T2").build();
+        store.restore(TripUpdatesSnapshot.of(7, FETCH_TIME.minusSeconds(60),
+                List.of(FeedSnapshot.restore("bus", FETCH_TIME.minusSeconds(60), 100L, List.of(bus)))));
+
+        // when
+        store.publish("tram", List.of(tram), 200L);
+
+        // then
+        SnapshotInfoDto info = store.getSnapshotInfo();
+        assertThat(info.getGeneration()).isEqualTo(8);
+        assertThat(info.getTripCount()).isEqualTo(2);
+        assertThat(info.isStale()).isTrue();
+        assertThat(info.getFeeds()).extracting(FeedInfoDto::getMode, FeedInfoDto::getAgeSeconds, FeedInfoDto::isStale)
+                .containsExactly(tuple("bus", 60L, true), tuple("tram", 0L, false));
+        assertThat(store.require().getTrips()).containsExactlyInAnyOrder(bus, tram);
+    }
+}
@@ -0,0 +1,117 @@
+package pl.edu.agh.to.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.model.FeedFetchResult;
+import pl.edu.agh.to.model.FeedValidators;
+import pl.edu.agh.to.model.VehiclePositionsSnapshot;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VehiclePositionsPollerTest {
+
+    private static final FeedValidators VALIDATORS = new FeedValidators("\"v1\"", "Thu, 15 May 2025 12:00:00 GMT");
+    private static final int CHUNK_SIZE = 7;
+    private static final GtfsFeedsProperties.Feed BUS =
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, "/VehiclePositions_A.pb", null);
+    private static final GtfsFeedsProperties.Feed TRAM =
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null);
+
+    private GtfsClient client;
+    private VehiclePositionsStore store;
+    private VehiclePositionsPoller poller;
+
+    @BeforeEach
+    void setUp() {
+        client = mock(GtfsClient.class);
+        store = new VehiclePositionsStore(Clock.systemUTC());
+        poller = new VehiclePositionsPoller(client, new GtfsParser(), store,
+                new PipelineMetrics(new SimpleMeterRegistry()), new GtfsFeedsProperties(List.of(BUS, TRAM)),
+                Clock.systemUTC(), 0, 15_000, 2, 60_000);
+    }
+
+    @Test
+    void shouldPublishPositions_givenFeedWithPositionsPath_thenOnlyThatFeedFetched() {
+        // given
+        when(client.fetchVehiclePositions(BUS, FeedValidators.NONE))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(3)), VALIDATORS)));
+
+        // when
+        poller.poll().block();
+
+        // then
+        VehiclePositionsSnapshot snapshot = store.current().orElseThrow();
+        assertThat(snapshot.getVehicleCount()).isEqualTo(3);
+        assertThat(snapshot.feed("bus").orElseThrow().getFeedTimestamp()).isEqualTo(100L);
+        verify(client, never()).fetchVehiclePositions(eq(TRAM), any());
+    }
+
+    @Test
+    void shouldKeepPositions_givenNotModifiedThenFailures_thenCircuitStopsFetching() {
+        // given
+        when(client.fetchVehiclePositions(BUS, FeedValidators.NONE))
+                .thenReturn(Mono.just(new FeedFetchResult(chunked(createFeed(2)), VALIDATORS)));
+        when(client.fetchVehiclePositions(BUS, VALIDATORS))
+                .thenReturn(Mono.just(FeedFetchResult.notModified(VALIDATORS)))
+                .thenReturn(Mono.error(new IOException("upstream down")));
+
+        // when
+        poller.poll().block();
+        poller.poll().block();
+        poller.poll().block();
+        poller.poll().block();
+        poller.poll().block();
+
+        // then
+        assertThat(store.current().orElseThrow().getGeneration()).isEqualTo(1);
+        assertThat(store.current().orElseThrow().getVehicleCount()).isEqualTo(2);
+        // one not-modified response and two failures opening the circuit
+        verify(client, times(3)).fetchVehiclePositions(BUS, VALIDATORS);
+    }
+
+    private static Flux<DataBuffer> chunked(byte[] data) {
+        return Flux.defer(() -> {
+            List<DataBuffer> buffers = new ArrayList<>();
+            for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+                byte[] chunk = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + CHUNK_SIZE));
+                buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+            }
+            return Flux.fromIterable(buffers);
+        });
+    }
+
+    private static byte[] createFeed(int vehicles) {
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0").setTimestamp(100L));
+        for (int i = 0; i < vehicles; i++) {
+            feed.addEntity(GtfsRealtime.FeedEntity.newBuilder()
+                    .setId("vehicle-" + i)
+                    .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                            .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("trip-" + i))
+                            .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("B:" + i))
+                            .setPosition(GtfsRealtime.Position.newBuilder()
+                                    .setLatitude(50.06f + i * 0.001f).setLongitude(19.94f))));
+        }
+        return feed.build().toByteArray();
+    }
+}
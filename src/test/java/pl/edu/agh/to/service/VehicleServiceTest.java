@@ -0,0 +1,205 @@
+package pl.edu.agh.to.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.edu.agh.to.config.GtfsFeedsProperties;
+import pl.edu.agh.to.api.ZtpApi;
+import pl.edu.agh.to.exceptions.NotFoundException;
+import pl.edu.agh.to.exceptions.UpstreamUnavailableException;
+import pl.edu.agh.to.model.NearbyVehicleDto;
+import pl.edu.agh.to.model.ResponseFormat;
+import pl.edu.agh.to.model.StopTimeRecord;
+import pl.edu.agh.to.model.TripRecord;
+import pl.edu.agh.to.model.TripUpdatesSnapshot;
+import pl.edu.agh.to.model.VehiclePositionRecord;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VehicleServiceTest {
+
+    private static final GtfsFeedsProperties FEEDS = new GtfsFeedsProperties(List.of(
+            new GtfsFeedsProperties.Feed("bus", "/TripUpdates_A.pb", null, null, null),
+            new GtfsFeedsProperties.Feed("tram", "/TripUpdates_T.pb", null, null, null)));
+    private static final String VEHICLE_TEST_ID = "M:401";
+    private static final long NOW = 1_700_000_000L;
+
+    private SnapshotLoader snapshotLoader;
+    private VehiclePositionsStore positionsStore;
+    private VehicleService service;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        snapshotLoader = mock(SnapshotLoader.class);
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+        positionsStore = new VehiclePositionsStore(clock);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        service = new VehicleService(snapshotLoader, positionsStore,
+                new EncodedResponseCache(new PipelineMetrics(new SimpleMeterRegistry()), 100, 5000),
+                new ResponseEncoder(objectMapper), clock, FEEDS);
+    }
+
+    @Test
+    void shouldReturnRemainingStops_givenTripInProgress_thenPassedStopsOmitted() throws IOException {
+        // given
+        TripRecord trip = TripRecord.builder()
+                .tripId("T1")
+                .routeId("R1")
+                .vehicleId(VEHICLE_TEST_ID)
+                .stopTimes(List.of(
+                        new StopTimeRecord("A", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW - 120, 0),
+                        new StopTimeRecord("B", NOW + 60, 30, NOW + 90, 30),
+                        new StopTimeRecord("C", NOW + 300, StopTimeRecord.NO_DELAY,
+                                StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY)))
+                .build();
+        when(snapshotLoader.load()).thenReturn(Mono.just(
+                TripUpdatesSnapshot.build(1, Instant.ofEpochSecond(NOW), "bus", 0, List.of(trip))));
+
+        // when
+        JsonNode vehicle = objectMapper.readTree(
+                service.getEncodedVehicle(VEHICLE_TEST_ID, null, ResponseFormat.JSON).block());
+
+        // then
+        assertThat(vehicle.get("tripId").asText()).isEqualTo("T1");
+        assertThat(vehicle.get("routeId").asText()).isEqualTo("R1");
+        assertThat(vehicle.get("stops").findValuesAsText("stopId")).containsExactly("B", "C");
+        assertThat(vehicle.at("/stops/0/arrivalDelay").asInt()).isEqualTo(30);
+        assertThat(vehicle.at("/stops/1/departureTime").isNull()).isTrue();
+        assertThat(vehicle.at("/stops/1/arrivalTime").isTextual()).isTrue();
+    }
+
+    @Test
+    void shouldEncodeVehicle_givenProtobufFormat_thenCachedMessageWithRemainingStops() throws IOException {
+        // given
+        TripRecord trip = TripRecord.builder()
+                .tripId("T1")
+                .routeId("R1")
+                .vehicleId(VEHICLE_TEST_ID)
+                .stopTimes(List.of(
+                        new StopTimeRecord("A", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW - 120, 0),
+                        new StopTimeRecord("B", NOW + 60, 30, NOW + 90, 30)))
+                .build();
+        when(snapshotLoader.load()).thenReturn(Mono.just(
+                TripUpdatesSnapshot.build(1, Instant.ofEpochSecond(NOW), "bus", 0, List.of(trip))));
+
+        // when
+        byte[] encoded = service.getEncodedVehicle(VEHICLE_TEST_ID, null, ResponseFormat.PROTOBUF).block();
+        byte[] again = service.getEncodedVehicle(VEHICLE_TEST_ID, null, ResponseFormat.PROTOBUF).block();
+
+        // then
+        ZtpApi.Vehicle vehicle = ZtpApi.Vehicle.parseFrom(encoded);
+        assertThat(vehicle.getTripId()).isEqualTo("T1");
+        assertThat(vehicle.getMode()).isEqualTo("bus");
+        assertThat(vehicle.getStopsList()).extracting(ZtpApi.VehicleStop::getStopId).containsExactly("B");
+        assertThat(vehicle.getStops(0).getArrivalTime()).isEqualTo(NOW + 60);
+        assertThat(vehicle.getStops(0).getDepartureDelay()).isEqualTo(30);
+        assertThat(again).isSameAs(encoded);
+    }
+
+    @Test
+    void shouldFail_givenUnknownVehicle_thenNotFoundThrown() {
+        // given
+        when(snapshotLoader.load()).thenReturn(
+                Mono.just(TripUpdatesSnapshot.build(1, Instant.ofEpochSecond(NOW), "bus", 0, List.of())));
+
+        // when + then
+        StepVerifier.create(service.getEncodedVehicle(VEHICLE_TEST_ID, null, ResponseFormat.JSON))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldFail_givenUnknownMode_thenIllegalArgumentThrownForLookupAndNearbyQuery() {
+        // given
+        when(snapshotLoader.load()).thenReturn(Mono.empty());
+        positionsStore.publish("bus", List.of(position("B:1", "T1", 50.0618)), 0);
+
+        // when + then
+        StepVerifier.create(service.getEncodedVehicle(VEHICLE_TEST_ID, "metro", ResponseFormat.JSON))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getNearbyVehicles(50.0617, 19.9373, null, 10, "metro"))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldJoinNextStop_givenVehiclesAroundPoint_thenNearestFirstWithNextStopOfTrip() {
+        // given
+        TripRecord trip = TripRecord.builder()
+                .tripId("T1")
+                .vehicleId(VEHICLE_TEST_ID)
+                .stopTimes(List.of(
+                        new StopTimeRecord("A", StopTimeRecord.NO_TIME, StopTimeRecord.NO_DELAY, NOW - 60, 0),
+                        new StopTimeRecord("B", NOW + 60, 30, NOW + 90, 30)))
+                .build();
+        when(snapshotLoader.load()).thenReturn(Mono.just(
+                TripUpdatesSnapshot.build(1, Instant.ofEpochSecond(NOW), "tram", 0, List.of(trip))));
+        positionsStore.publish("tram", List.of(position(VEHICLE_TEST_ID, "T1", 50.0620)), 0);
+        positionsStore.publish("bus", List.of(position("B:1", "T1", 50.0618), position("B:2", "T2", 50.2)), 0);
+
+        // when
+        List<NearbyVehicleDto> nearby = service.getNearbyVehicles(50.0617, 19.9373, 500.0, 10, null).block();
+
+        // then
+        assertThat(nearby).extracting(NearbyVehicleDto::getVehicleId).containsExactly("B:1", VEHICLE_TEST_ID);
+        assertThat(nearby).extracting(NearbyVehicleDto::getDistanceMeters).containsExactly(11L, 33L);
+        assertThat(nearby.get(0).getNextStop()).isNull();
+        assertThat(nearby.get(1).getMode()).isEqualTo("tram");
+        assertThat(nearby.get(1).getNextStop().getStopId()).isEqualTo("B");
+    }
+
+    @Test
+    void shouldReturnNearestWithoutTrips_givenNoRadiusAndTripUpdatesUnavailable_thenKNearestReturned() {
+        // given
+        when(snapshotLoader.load()).thenReturn(Mono.error(new IllegalStateException("upstream down")));
+        positionsStore.publish("bus", List.of(position("B:1", "T1", 50.0618), position("B:2", "T2", 50.2)), 0);
+
+        // when
+        List<NearbyVehicleDto> nearby = service.getNearbyVehicles(50.3, 19.9373, null, 1, "bus").block();
+
+        // then
+        assertThat(nearby).extracting(NearbyVehicleDto::getVehicleId).containsExactly("B:2");
+        assertThat(nearby.getFirst().getNextStop()).isNull();
+    }
+
+    @Test
+    void shouldFail_givenInvalidNearbyQueryOrNoPositions_thenBadRequestOrUnavailable() {
+        // given
+        when(snapshotLoader.load()).thenReturn(Mono.empty());
+
+        // when + then
+        StepVerifier.create(service.getNearbyVehicles(91, 19.9, null, 10, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getNearbyVehicles(50, 19.9, 0.0, 10, null))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.getNearbyVehicles(50, 19.9, null, 10, null))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+    }
+
+    private static VehiclePositionRecord position(String vehicleId, String tripId, double latitude) {
+        return VehiclePositionRecord.builder()
+                .vehicleId(vehicleId)
+                .tripId(tripId)
+                .latitude(latitude)
+                .longitude(19.9373)
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package pl.edu.agh.to.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DelayHistogramTest {
+
+    @Test
+    void shouldMapEveryDelayIntoItsBucket_givenWholeRange_thenBucketsOrderedAndValuesClose() {
+        // given
+        int previousBucket = -1;
+
+        for (int delay = -DelayHistogram.MAX_MAGNITUDE; delay <= DelayHistogram.MAX_MAGNITUDE; delay++) {
+            // when
+            int bucket = DelayHistogram.bucketOf(delay);
+            int value = DelayHistogram.valueOf(bucket);
+
+            // then
+            assertThat(bucket).isBetween(previousBucket, DelayHistogram.BUCKET_COUNT - 1);
+            assertThat((double) value).isCloseTo(delay, within(Math.max(0.5, Math.abs(delay) * 0.125)));
+            previousBucket = bucket;
+        }
+    }
+
+    @Test
+    void shouldReportExactCountsAndApproximatePercentiles_givenUniformDelays_thenWithinBucketError() {
+        // given
+        DelayHistogram histogram = new DelayHistogram();
+        IntStream.rangeClosed(-100, 899).forEach(histogram::record);
+
+        // when
+        int median = histogram.percentile(0.5);
+        int p90 = histogram.percentile(0.9);
+
+        // then
+        assertThat(histogram.getCount()).isEqualTo(1_000);
+        assertThat(histogram.mean()).isEqualTo(399.5);
+        assertThat(histogram.getLateCount()).isEqualTo(840);
+        assertThat(histogram.getEarlyCount()).isEqualTo(41);
+        assertThat((double) median).isCloseTo(399, within(399 * 0.125));
+        assertThat((double) p90).isCloseTo(799, within(799 * 0.125));
+    }
+
+    @Test
+    void shouldCancelOut_givenSubtractedHistogram_thenOnlyRemainingObservationsKept() {
+        // given
+        Random random = new Random(7);
+        DelayHistogram total = new DelayHistogram();
+        DelayHistogram part = new DelayHistogram();
+        for (int i = 0; i < 500; i++) {
+            int delay = random.nextInt(1_200) - 300;
+            total.record(delay);
+            if (i % 2 == 0) {
+                part.record(delay);
+            }
+        }
+        DelayHistogram expected = new DelayHistogram();
+        expected.add(total);
+
+        // when
+        total.subtract(part);
+        total.add(part);
+        total.subtract(part);
+
+        // then
+        assertThat(total.getCount()).isEqualTo(250);
+        expected.subtract(part);
+        assertThat(total.mean()).isEqualTo(expected.mean());
+        assertThat(total.percentile(0.5)).isEqualTo(expected.percentile(0.5));
+    }
+
+    @Test
+    void shouldBeEmpty_givenEveryObservationRemoved_thenMeanUndefined() {
+        // given
+        DelayHistogram histogram = new DelayHistogram();
+        histogram.record(120);
+
+        // when
+        histogram.remove(120);
+
+        // then
+        assertThat(histogram.isEmpty()).isTrue();
+        assertThat(histogram.getLateCount()).isZero();
+        assertThat(histogram.mean()).isNaN();
+    }
+}